@@ -0,0 +1,117 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers and a trading thread working on one portfolio at the same time, through {@link ConcurrentPortfolio} and, as
+ * the baseline, through an {@link ePortfolio} that every thread locks as a whole. Each group runs three readers and one
+ * writer; JMH reports the throughput of both sides.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+    @Param({"1000", "100000"})
+    int holdings;
+
+    private File directory;
+    private ConcurrentPortfolio concurrent;
+    private ePortfolio synchronizedPortfolio;
+
+    private final BigDecimal price = new BigDecimal("12.34");
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        var file = PortfolioFixture.writeCsv(holdings, directory);
+
+        concurrent = new ConcurrentPortfolio();
+        concurrent.loadInvestments(file);
+        synchronizedPortfolio = new ePortfolio();
+        synchronizedPortfolio.loadInvestments(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    private String randomSymbol() {
+        return PortfolioFixture.symbol(ThreadLocalRandom.current().nextInt(holdings));
+    }
+
+    @Benchmark
+    @Group("gain")
+    @GroupThreads(3)
+    public String gainReader() {
+        return concurrent.calculateGain();
+    }
+
+    @Benchmark
+    @Group("gain")
+    @GroupThreads(1)
+    public BigDecimal gainWriter() throws Exception {
+        var symbol = randomSymbol();
+        concurrent.buy(InvestmentType.STOCK, symbol, "", price, 1);
+        return concurrent.sell(symbol, 1, price);
+    }
+
+    @Benchmark
+    @Group("gainSynchronized")
+    @GroupThreads(3)
+    public String gainSynchronizedReader() {
+        synchronized (synchronizedPortfolio) {
+            return synchronizedPortfolio.calculateGain();
+        }
+    }
+
+    @Benchmark
+    @Group("gainSynchronized")
+    @GroupThreads(1)
+    public BigDecimal gainSynchronizedWriter() throws Exception {
+        var symbol = randomSymbol();
+        synchronized (synchronizedPortfolio) {
+            synchronizedPortfolio.buy(InvestmentType.STOCK, symbol, "", price, 1);
+            return synchronizedPortfolio.sell(symbol, 1, price);
+        }
+    }
+
+    @Benchmark
+    @Group("query")
+    @GroupThreads(3)
+    public List<String> queryReader() {
+        return concurrent.query("", PortfolioFixture.RARE_TOKEN, "");
+    }
+
+    @Benchmark
+    @Group("query")
+    @GroupThreads(1)
+    public BigDecimal queryWriter() throws Exception {
+        return gainWriter();
+    }
+
+    @Benchmark
+    @Group("querySynchronized")
+    @GroupThreads(3)
+    public List<String> querySynchronizedReader() {
+        synchronized (synchronizedPortfolio) {
+            return synchronizedPortfolio.query("", PortfolioFixture.RARE_TOKEN, "");
+        }
+    }
+
+    @Benchmark
+    @Group("querySynchronized")
+    @GroupThreads(1)
+    public BigDecimal querySynchronizedWriter() throws Exception {
+        return gainSynchronizedWriter();
+    }
+}
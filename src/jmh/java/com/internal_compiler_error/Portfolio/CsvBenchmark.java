@@ -0,0 +1,74 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of loading and saving the CSV persistence format
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private File input;
+    private File output;
+    private ePortfolio portfolio;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        input = PortfolioFixture.writeCsv(holdings, directory);
+        output = new File(directory, "output.csv");
+
+        portfolio = new ePortfolio();
+        portfolio.loadInvestments(input);
+
+        var scanned = new ePortfolio();
+        scanned.loadInvestmentsWithScanner(input, Charset.defaultCharset());
+        if (!scanned.getInvestments().equals(portfolio.getInvestments())) {
+            throw new IllegalStateException("Byte tokenizer and Scanner loaded different portfolios");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public ePortfolio load() throws Exception {
+        var loaded = new ePortfolio();
+        loaded.loadInvestments(input);
+        return loaded;
+    }
+
+    @Benchmark
+    public ePortfolio loadInParallel() throws Exception {
+        var loaded = new ePortfolio();
+        loaded.loadInvestmentsInParallel(input);
+        return loaded;
+    }
+
+    @Benchmark
+    public ePortfolio loadWithScanner() throws Exception {
+        var loaded = new ePortfolio();
+        loaded.loadInvestmentsWithScanner(input, Charset.defaultCharset());
+        return loaded;
+    }
+
+    @Benchmark
+    public File save() {
+        portfolio.saveInvestments(output);
+        return output;
+    }
+}
@@ -0,0 +1,65 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap a loaded portfolio retains, holdings with their symbols and names plus every index, reported as the secondary
+ * result bytesPerHolding. Each invocation loads the portfolio afresh between full collections, so the time measured
+ * includes them and says little, see {@link CsvBenchmark} for load times. Fixture names repeat a small vocabulary the
+ * way real listings do, which is what sharing names and tokens saves on.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+// counted events add up over the iterations, one keeps the result a size
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+@State(Scope.Benchmark)
+public class FootprintBenchmark {
+    @Param({"100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private File input;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double bytesPerHolding;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        input = PortfolioFixture.writeCsv(holdings, directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public ePortfolio load(Footprint footprint) throws Exception {
+        var before = usedHeap();
+        var portfolio = new ePortfolio();
+        portfolio.loadInvestments(input);
+        footprint.bytesPerHolding = (usedHeap() - before) / (double) holdings;
+        return portfolio;
+    }
+
+    /**
+     * The heap in use once everything unreachable is collected
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (var i = 0; i < 3; ++i) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
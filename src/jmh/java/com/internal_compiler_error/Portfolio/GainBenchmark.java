@@ -0,0 +1,45 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of computing the total gain of the portfolio, from the running totals and by adding up every holding
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GainBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private ePortfolio portfolio;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        portfolio = PortfolioFixture.portfolio(holdings, directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public String calculateGain() {
+        return portfolio.calculateGain();
+    }
+
+    @Benchmark
+    public BigDecimal recalculateGain() {
+        return portfolio.recalculateGain();
+    }
+}
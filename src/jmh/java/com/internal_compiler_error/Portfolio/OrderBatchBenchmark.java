@@ -0,0 +1,75 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of replaying a file's worth of fills, as one batch and as single trades. The fills buy into and sell out of
+ * existing holdings at new prices and open and close new listings, leaving the portfolio as large as it was.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderBatchBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    @Param({"10000"})
+    int orders;
+
+    private File directory;
+    private ePortfolio portfolio;
+    private final List<TradeOrder> batch = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        portfolio = PortfolioFixture.portfolio(holdings, directory);
+
+        var random = new Random(11);
+        for (var i = 0; batch.size() < orders; ++i) {
+            var price = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+            if (i % 10 == 0) {
+                var symbol = "NEW" + i;
+                batch.add(TradeOrder.buy(InvestmentType.MUTUAL_FUND, symbol, "Batch Fund Listing", price, 10));
+                batch.add(TradeOrder.sell(symbol, 10, price));
+            } else {
+                var symbol = PortfolioFixture.symbol(random.nextInt(holdings));
+                batch.add(TradeOrder.buy(InvestmentType.STOCK, symbol, "", price, 10));
+                batch.add(TradeOrder.sell(symbol, 10, price));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public TradeBatchResult executeOrders() {
+        return portfolio.executeOrders(batch);
+    }
+
+    @Benchmark
+    public BigDecimal singleTrades() throws Exception {
+        var gain = BigDecimal.ZERO;
+        for (var order : batch) {
+            if (order.getAction() == TradeOrder.Action.BUY) {
+                portfolio.buy(order.getInvestmentType(), order.getSymbol(), order.getName(), order.getPrice(), order.getQuantity());
+            } else {
+                gain = gain.add(portfolio.sell(order.getSymbol(), order.getQuantity(), order.getPrice()));
+            }
+        }
+        return gain;
+    }
+}
@@ -0,0 +1,161 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible portfolios for the benchmarks. Names are drawn from a skewed vocabulary so that name queries of
+ * very different selectivity can be made against the same data set
+ */
+final class PortfolioFixture {
+    /**
+     * Name tokens with roughly the share of holdings containing them
+     */
+    static final String COMMON_TOKEN = "fund";     // ~50%
+    static final String MEDIUM_TOKEN = "global";   // ~5%
+    static final String RARE_TOKEN = "lithium";    // ~0.1%
+
+    private static final String[] FILLER_TOKENS = {
+            "inc", "class", "corp", "holdings", "capital", "energy", "bank", "trust", "growth", "income",
+            "index", "bond", "equity", "north", "american", "pacific", "tech", "health", "gold", "realty"
+    };
+
+    private static final long SEED = 0x5EED_1234L;
+
+    private PortfolioFixture() {
+    }
+
+    /**
+     * The symbol of the i-th generated holding. Symbols are unique and spread across the alphabet
+     *
+     * @param i the index of the holding
+     * @return the symbol
+     */
+    static String symbol(int i) {
+        // scramble the index so that generation order is not symbol order
+        long scrambled = (i * 0x9E3779B1L) & 0xFFFFFFFFL;
+        var builder = new StringBuilder();
+        do {
+            builder.append((char) ('A' + scrambled % 26));
+            scrambled /= 26;
+        } while (scrambled > 0);
+        return builder.toString();
+    }
+
+    /**
+     * Generate a list of random holdings, alternating stocks and mutual funds
+     *
+     * @param holdings the number of holdings
+     * @return the investments, in generation (not symbol) order
+     */
+    static List<Investment> investments(int holdings) {
+        var random = new Random(SEED);
+        var result = new ArrayList<Investment>(holdings);
+
+        for (int i = 0; i < holdings; ++i) {
+            var symbol = symbol(i);
+            // the first holding carries every search token so that queries always have at least one hit
+            var name = i == 0 ? "Fund Global Lithium Inc" : name(random);
+            var quantity = 1 + random.nextInt(1000);
+            var price = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+            var bookValue = price.multiply(BigDecimal.valueOf(quantity)).add(BigDecimal.valueOf(random.nextInt(10_000), 2));
+
+            if (i % 2 == 0) {
+                result.add(new Stock(symbol, name, quantity, price, bookValue));
+            } else {
+                result.add(new MutualFund(symbol, name, quantity, price, bookValue));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build a portfolio holding the given number of random investments
+     *
+     * @param holdings the number of holdings
+     * @param directory scratch directory used to go through the regular loading path
+     * @return the portfolio
+     */
+    static ePortfolio portfolio(int holdings, File directory) throws IOException, InvalidInputFileFormatException {
+        var file = writeCsv(holdings, directory);
+        var portfolio = new ePortfolio();
+        portfolio.loadInvestments(file);
+        return portfolio;
+    }
+
+    /**
+     * Write a CSV file in the persistence format holding the given number of random investments
+     *
+     * @param holdings  the number of holdings
+     * @param directory the directory to put the file in
+     * @return the file
+     */
+    static File writeCsv(int holdings, File directory) throws IOException {
+        var file = new File(directory, "portfolio-" + holdings + ".csv");
+        try (var printWriter = new PrintWriter(file)) {
+            for (var investment : investments(holdings)) {
+                printWriter.println(investment.toCSVString());
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Create a scratch directory that is removed when the JVM exits
+     *
+     * @return the directory
+     */
+    static File scratchDirectory() throws IOException {
+        var directory = java.nio.file.Files.createTempDirectory("eportfolio-bench").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Recursively delete a scratch directory
+     *
+     * @param directory the directory
+     */
+    static void delete(File directory) {
+        var children = directory.listFiles();
+        if (children != null) {
+            for (var child : children) {
+                delete(child);
+            }
+        }
+        directory.delete();
+    }
+
+    private static String name(Random random) {
+        var tokens = new ArrayList<String>(4);
+        if (random.nextInt(2) == 0) {
+            tokens.add(COMMON_TOKEN);
+        }
+        if (random.nextInt(20) == 0) {
+            tokens.add(MEDIUM_TOKEN);
+        }
+        if (random.nextInt(1000) == 0) {
+            tokens.add(RARE_TOKEN);
+        }
+
+        var fillers = 1 + random.nextInt(3);
+        for (int i = 0; i < fillers; ++i) {
+            tokens.add(FILLER_TOKENS[random.nextInt(FILLER_TOKENS.length)]);
+        }
+
+        // capitalise like a real listing, queries are case-insensitive anyway
+        var builder = new StringBuilder();
+        for (var token : tokens) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(Character.toUpperCase(token.charAt(0))).append(token, 1, token.length());
+        }
+        return builder.toString();
+    }
+}
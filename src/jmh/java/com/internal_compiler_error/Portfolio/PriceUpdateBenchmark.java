@@ -0,0 +1,76 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying an end-of-day quote batch that reprices every holding, as one batch and one quote at a time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PriceUpdateBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private ePortfolio portfolio;
+    // two days of quotes, applied in turn so that every run really changes the prices
+    private final List<List<Pair<String, BigDecimal>>> days = new ArrayList<>();
+    private int day;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        portfolio = PortfolioFixture.portfolio(holdings, directory);
+
+        // quote files come in any order, and a few symbols are not held
+        var random = new Random(7);
+        for (var d = 0; d < 2; ++d) {
+            var quotes = new ArrayList<Pair<String, BigDecimal>>(holdings);
+            for (var i = 0; i < holdings; ++i) {
+                var symbol = i % 100 == 0 ? "UNKNOWN" + i : PortfolioFixture.symbol(i);
+                quotes.add(new Pair<>(symbol, BigDecimal.valueOf(1 + random.nextInt(100_000), 2)));
+            }
+            days.add(quotes);
+        }
+    }
+
+    private List<Pair<String, BigDecimal>> nextDay() {
+        day ^= 1;
+        return days.get(day);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public List<String> updatePrices() {
+        return portfolio.updatePrices(nextDay());
+    }
+
+    @Benchmark
+    public int updatePriceOneByOne() {
+        var unknown = 0;
+        for (var quote : nextDay()) {
+            try {
+                portfolio.updatePrice(quote.getFirst(), quote.getSecond());
+            } catch (InvestmentNotFoundException e) {
+                ++unknown;
+            }
+        }
+        return unknown;
+    }
+}
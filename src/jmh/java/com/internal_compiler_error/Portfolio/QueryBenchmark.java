@@ -0,0 +1,102 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of searches with filters of varying selectivity
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private ePortfolio portfolio;
+    private String exactSymbol;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        portfolio = PortfolioFixture.portfolio(holdings, directory);
+        exactSymbol = PortfolioFixture.symbol(holdings / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public List<String> everything() {
+        return portfolio.query("", "", "");
+    }
+
+    @Benchmark
+    public List<String> nameCommon() {
+        return portfolio.query("", PortfolioFixture.COMMON_TOKEN, "");
+    }
+
+    @Benchmark
+    public List<String> nameMedium() {
+        return portfolio.query("", PortfolioFixture.MEDIUM_TOKEN, "");
+    }
+
+    @Benchmark
+    public List<String> nameRare() {
+        return portfolio.query("", PortfolioFixture.RARE_TOKEN, "");
+    }
+
+    @Benchmark
+    public List<String> nameMultiToken() {
+        return portfolio.query("", PortfolioFixture.COMMON_TOKEN + " " + PortfolioFixture.MEDIUM_TOKEN, "");
+    }
+
+    @Benchmark
+    public List<String> symbolBroad() {
+        return portfolio.query("A", "", "");
+    }
+
+    @Benchmark
+    public List<String> symbolExact() {
+        return portfolio.query(exactSymbol, "", "");
+    }
+
+    @Benchmark
+    public List<String> priceWide() {
+        return portfolio.query("", "", "100-900");
+    }
+
+    @Benchmark
+    public List<String> priceNarrow() {
+        return portfolio.query("", "", "500-500.50");
+    }
+
+    @Benchmark
+    public List<String> combined() {
+        return portfolio.query("A", PortfolioFixture.MEDIUM_TOKEN, "100-500");
+    }
+
+    @Benchmark
+    public List<String> suggestSymbol() {
+        return portfolio.suggest(exactSymbol.substring(0, 2), 20);
+    }
+
+    @Benchmark
+    public List<String> suggestName() {
+        return portfolio.suggest(PortfolioFixture.RARE_TOKEN.substring(0, 3), 20);
+    }
+
+    @Benchmark
+    public List<String> suggestMultiWord() {
+        return portfolio.suggest(PortfolioFixture.COMMON_TOKEN + " " + PortfolioFixture.RARE_TOKEN.substring(0, 3), 20);
+    }
+}
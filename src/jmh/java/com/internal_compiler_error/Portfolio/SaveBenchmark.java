@@ -0,0 +1,60 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of saving portfolios of millions of rows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SaveBenchmark {
+    @Param({"1000000", "5000000"})
+    int holdings;
+
+    private File directory;
+    private File output;
+    private ePortfolio portfolio;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        output = new File(directory, "output.csv");
+
+        portfolio = new ePortfolio();
+        portfolio.setInvestments(PortfolioFixture.investments(holdings));
+
+        // the buffered writer must produce exactly what the PrintWriter path does
+        var expected = new File(directory, "expected.csv");
+        portfolio.saveInvestmentsWithPrintWriter(expected);
+        portfolio.saveInvestments(output);
+        if (Files.mismatch(expected.toPath(), output.toPath()) != -1) {
+            throw new IllegalStateException("Buffered writer output differs from the PrintWriter output");
+        }
+        expected.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public File save() {
+        portfolio.saveInvestments(output);
+        return output;
+    }
+
+    @Benchmark
+    public File saveWithPrintWriter() {
+        portfolio.saveInvestmentsWithPrintWriter(output);
+        return output;
+    }
+}
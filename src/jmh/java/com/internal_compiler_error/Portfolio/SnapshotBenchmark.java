@@ -0,0 +1,53 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of loading and saving binary snapshots, to compare against {@link CsvBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private File input;
+    private File output;
+    private ePortfolio portfolio;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        portfolio = PortfolioFixture.portfolio(holdings, directory);
+
+        input = new File(directory, "portfolio.bin");
+        output = new File(directory, "output.bin");
+        portfolio.saveSnapshot(input);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public ePortfolio load() throws Exception {
+        var loaded = new ePortfolio();
+        loaded.loadSnapshot(input);
+        return loaded;
+    }
+
+    @Benchmark
+    public File save() throws Exception {
+        portfolio.saveSnapshot(output);
+        return output;
+    }
+}
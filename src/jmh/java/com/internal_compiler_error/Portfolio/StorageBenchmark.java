@@ -0,0 +1,72 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking a detached copy of the portfolio as one object per holding and as {@link HoldingColumns}. Run with
+ * the GC profiler, `./gradlew jmh -PjmhInclude=Storage -PjmhProfilers=gc`: gc.alloc.rate.norm divided by the number of
+ * holdings is the size of the copy in bytes per holding, and gc.count and gc.time are the collections it caused.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private List<Investment> investments;
+    private HoldingColumns columns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        investments = PortfolioFixture.portfolio(holdings, directory).getInvestments();
+        columns = HoldingColumns.of(investments);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    @Benchmark
+    public List<Investment> copyObjects() {
+        var copy = new ArrayList<Investment>(investments.size());
+        for (var investment : investments) {
+            copy.add(investment.copy());
+        }
+        return copy;
+    }
+
+    @Benchmark
+    public HoldingColumns copyColumns() {
+        return HoldingColumns.of(investments);
+    }
+
+    @Benchmark
+    public long scanObjects() {
+        long marketValue = 0;
+        for (var investment : investments) {
+            marketValue += investment.getMarketValueInCents();
+        }
+        return marketValue;
+    }
+
+    @Benchmark
+    public long scanColumns() {
+        long marketValue = 0;
+        for (var row = 0; row < columns.size(); ++row) {
+            marketValue += columns.priceInCents(row) * columns.quantity(row);
+        }
+        return marketValue;
+    }
+}
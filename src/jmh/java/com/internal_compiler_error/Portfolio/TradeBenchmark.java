@@ -0,0 +1,93 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of single trades against portfolios of different sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TradeBenchmark {
+    /**
+     * Percentage of operations in the mixed workload that buy more of an existing holding, sell part of one, or open
+     * and close a brand-new listing
+     */
+    private static final int BUY_PERCENT = 60;
+    private static final int SELL_PERCENT = 30;
+
+    @Param({"1000", "100000", "1000000"})
+    int holdings;
+
+    private File directory;
+    private ePortfolio portfolio;
+    private Random random;
+    private int newListingCounter = 0;
+
+    private final BigDecimal price = new BigDecimal("12.34");
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = PortfolioFixture.scratchDirectory();
+        portfolio = PortfolioFixture.portfolio(holdings, directory);
+        random = new Random(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PortfolioFixture.delete(directory);
+    }
+
+    /**
+     * Buy into an existing holding and sell the same amount again, which leaves the holding count unchanged
+     */
+    @Benchmark
+    public BigDecimal buyThenSellExisting() throws Exception {
+        var symbol = PortfolioFixture.symbol(random.nextInt(holdings));
+        portfolio.buy(InvestmentType.STOCK, symbol, "", price, 10);
+        return portfolio.sell(symbol, 10, price);
+    }
+
+    /**
+     * Open a brand-new listing and sell all of it, which inserts into and removes from the portfolio
+     */
+    @Benchmark
+    public BigDecimal openThenClose() throws Exception {
+        var symbol = "NEW" + newListingCounter++;
+        portfolio.buy(InvestmentType.MUTUAL_FUND, symbol, "Benchmark Fund Listing", price, 10);
+        return portfolio.sell(symbol, 10, price);
+    }
+
+    /**
+     * A mix of buys, partial sells and open/close round trips
+     */
+    @Benchmark
+    public Object mixed() throws Exception {
+        var dice = random.nextInt(100);
+
+        if (dice < BUY_PERCENT) {
+            var symbol = PortfolioFixture.symbol(random.nextInt(holdings));
+            portfolio.buy(InvestmentType.STOCK, symbol, "", price, 1);
+            return symbol;
+        } else if (dice < BUY_PERCENT + SELL_PERCENT) {
+            var symbol = PortfolioFixture.symbol(random.nextInt(holdings));
+            try {
+                return portfolio.sell(symbol, 1, price);
+            } catch (IllegalQuantityException e) {
+                // the holding would have been sold out, put it back instead so the portfolio size stays stable
+                portfolio.buy(InvestmentType.STOCK, symbol, "", price, 1);
+                return e;
+            }
+        } else {
+            return openThenClose();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Replaces files atomically: the new contents are written to a temporary file next to the target, synced, and renamed
+ * over the target, and the directory is synced so that the rename lasts, so a crash mid-write leaves the previous file
+ * intact. Every save writes a temporary file of its own, so saves of the same file running at once don't mix, the last
+ * rename wins.
+ */
+final class AtomicFile {
+    private static final String TEMPORARY_SUFFIX = ".saving";
+
+    // directories can't be opened for syncing on Windows, where a rename is durable once it returns
+    private static final boolean SYNC_DIRECTORIES = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    /**
+     * Writes the contents of a file to a channel
+     */
+    interface Contents {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    private AtomicFile() {
+    }
+
+    /**
+     * Atomically replace a file
+     *
+     * @param output   the file to replace
+     * @param contents writes the new contents
+     * @throws IOException if the file can't be written or the file system can't rename atomically, in which case the
+     *                     target is left untouched
+     */
+    static void write(File output, Contents contents) throws IOException {
+        var target = output.toPath().toAbsolutePath();
+        var directory = target.getParent();
+
+        // a leftover from a crashed save is never picked up again, it only has to be in the same directory to be renamed
+        var temporary = Files.createTempFile(directory, target.getFileName() + ".", TEMPORARY_SUFFIX);
+
+        try {
+            try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                contents.writeTo(channel);
+                channel.force(true);
+            }
+            replace(temporary, target);
+            syncDirectory(directory);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void replace(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // a plain move may leave a half-written target behind, which is what writing a temporary file avoids
+            throw new IOException("Can't replace " + target + " atomically", e);
+        }
+    }
+
+    private static void syncDirectory(Path directory) throws IOException {
+        if (!SYNC_DIRECTORIES) {
+            return;
+        }
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Versioned binary snapshot of a portfolio, made for fast startup. The file is read with a single memory map and holds
+ * everything in its final form: holdings in symbol order as fixed-width records, a string table for symbols, names and
+ * name tokens, and the name index. Loading it needs no regex, decimal string parsing, sort or index rebuild.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * header   int magic "EPFS", short version
+ * strings  int count, then per string: int length, UTF-8 bytes
+ * bigs     int count, then per number: int length, two's complement bytes
+ * holdings int count, then per holding: byte flags, int symbol, int name, int quantity,
+ *          long price, int price scale, long book value, int book value scale
+ * index    int count, then per token: int token, int count, int[count] holding positions
+ * lots     int count, then per holding kept in tax lots: int holding position, int next lot id,
+ *          long book value no lot carries yet, int count, then per lot: int id, int quantity, long book value in cents
+ * </pre>
+ * Prices and book values are stored as unscaled long and scale. Values whose unscaled part doesn't fit into a long set a
+ * flag, and their long field is an index into the big number table instead, so every value is stored exactly.
+ * <p>
+ * Version 1 files have no lots section, their holdings are read as single pools.
+ */
+final class BinarySnapshot {
+    static final int MAGIC = 0x45504653;
+    static final short VERSION = 2;
+    // the oldest version that can still be read
+    private static final short OLDEST_VERSION = 1;
+
+    private static final int FLAG_STOCK = 1;
+    private static final int FLAG_BIG_PRICE = 1 << 1;
+    private static final int FLAG_BIG_BOOK_VALUE = 1 << 2;
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * What a snapshot file holds
+     */
+    static final class Contents {
+        final List<Investment> investments;
+        final NameIndex investmentFinder;
+
+        Contents(List<Investment> investments, NameIndex investmentFinder) {
+            this.investments = investments;
+            this.investmentFinder = investmentFinder;
+        }
+    }
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Atomically write a snapshot of a list of investments, indexing their names on the way
+     *
+     * @param output      the file to write
+     * @param investments the investments, in symbol order
+     * @throws IOException if the file can't be written, in which case the target is left untouched
+     */
+    static void write(File output, List<Investment> investments) throws IOException {
+        var strings = new LinkedHashMap<String, Integer>();
+        var bigs = new ArrayList<BigInteger>();
+        var index = new LinkedHashMap<Integer, List<Integer>>();
+        var lotted = new ArrayList<Integer>();
+
+        for (var position = 0; position < investments.size(); ++position) {
+            var investment = investments.get(position);
+            intern(strings, investment.getSymbol());
+            intern(strings, investment.getName());
+            if (investment.getLots() != null) {
+                lotted.add(position);
+            }
+
+            for (var token : NameIndex.tokens(investment.getName())) {
+                var tokenId = intern(strings, token);
+                index.computeIfAbsent(tokenId, key -> new ArrayList<>()).add(position);
+            }
+
+            // big numbers are numbered in the order the holdings are written below
+            if (!fitsLong(investment.getPrice())) {
+                bigs.add(investment.getPrice().unscaledValue());
+            }
+            if (!fitsLong(investment.getBookValue())) {
+                bigs.add(investment.getBookValue().unscaledValue());
+            }
+        }
+
+        AtomicFile.write(output, channel -> {
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), OUTPUT_BUFFER_SIZE));
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+
+            out.writeInt(strings.size());
+            for (var string : strings.keySet()) {
+                var bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(bigs.size());
+            for (var big : bigs) {
+                var bytes = big.toByteArray();
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(investments.size());
+            var nextBig = 0;
+            for (var investment : investments) {
+                var price = investment.getPrice();
+                var bookValue = investment.getBookValue();
+
+                var flags = investment.getInvestmentType() == InvestmentType.STOCK ? FLAG_STOCK : 0;
+                flags |= fitsLong(price) ? 0 : FLAG_BIG_PRICE;
+                flags |= fitsLong(bookValue) ? 0 : FLAG_BIG_BOOK_VALUE;
+
+                out.writeByte(flags);
+                out.writeInt(strings.get(investment.getSymbol()));
+                out.writeInt(strings.get(investment.getName()));
+                out.writeInt(investment.getQuantity());
+                out.writeLong(fitsLong(price) ? price.unscaledValue().longValue() : nextBig++);
+                out.writeInt(price.scale());
+                out.writeLong(fitsLong(bookValue) ? bookValue.unscaledValue().longValue() : nextBig++);
+                out.writeInt(bookValue.scale());
+            }
+
+            out.writeInt(index.size());
+            for (var entry : index.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (var position : entry.getValue()) {
+                    out.writeInt(position);
+                }
+            }
+
+            out.writeInt(lotted.size());
+            for (var position : lotted) {
+                var lots = investments.get(position).getLots();
+                out.writeInt(position);
+                out.writeInt(lots.nextId());
+                out.writeLong(lots.unassigned());
+                out.writeInt(lots.size());
+                for (var lot : lots.toList()) {
+                    out.writeInt(lot.getId());
+                    out.writeInt(lot.getQuantity());
+                    out.writeLong(lot.getBookValueInCents());
+                }
+            }
+
+            out.flush();
+        });
+    }
+
+    /**
+     * Read a snapshot
+     *
+     * @param input the snapshot file
+     * @return the investments in symbol order and their name index
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if the file is not a snapshot of a supported version or is corrupt
+     */
+    static Contents read(File input) throws IOException, InvalidInputFileFormatException {
+        try (var channel = new FileInputStream(input).getChannel()) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < Integer.BYTES + Short.BYTES || buffer.getInt() != MAGIC) {
+                throw new InvalidInputFileFormatException();
+            }
+            var version = buffer.getShort();
+            if (version < OLDEST_VERSION || version > VERSION) {
+                throw new InvalidInputFileFormatException();
+            }
+
+            var strings = new String[count(buffer)];
+            var scratch = new byte[256];
+            for (var i = 0; i < strings.length; ++i) {
+                var length = count(buffer);
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                buffer.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+
+            var bigs = new BigInteger[count(buffer)];
+            for (var i = 0; i < bigs.length; ++i) {
+                var bytes = new byte[count(buffer)];
+                buffer.get(bytes);
+                bigs[i] = new BigInteger(bytes);
+            }
+
+            var holdings = count(buffer);
+            var investments = new ArrayList<Investment>(holdings);
+            for (var i = 0; i < holdings; ++i) {
+                var flags = buffer.get();
+                var symbol = strings[buffer.getInt()];
+                var name = strings[buffer.getInt()];
+                var quantity = buffer.getInt();
+                var price = readDecimal(buffer, (flags & FLAG_BIG_PRICE) != 0, bigs);
+                var bookValue = readDecimal(buffer, (flags & FLAG_BIG_BOOK_VALUE) != 0, bigs);
+
+                Investment investment = (flags & FLAG_STOCK) != 0
+                        ? new Stock(symbol, name, quantity, price, bookValue)
+                        : new MutualFund(symbol, name, quantity, price, bookValue);
+                investments.add(investment);
+            }
+
+            var tokens = count(buffer);
+            var investmentFinder = new NameIndex();
+            var postings = new int[256];
+            for (var i = 0; i < tokens; ++i) {
+                var token = strings[buffer.getInt()];
+                var count = count(buffer);
+                if (postings.length < count) {
+                    postings = new int[Math.max(count, postings.length * 2)];
+                }
+                for (var j = 0; j < count; ++j) {
+                    var position = buffer.getInt();
+                    if (position < 0 || position >= holdings) {
+                        throw new IndexOutOfBoundsException("Holding " + position);
+                    }
+                    postings[j] = position;
+                }
+                investmentFinder.addAll(token, postings, count);
+            }
+
+            if (version >= 2) {
+                readLots(buffer, investments);
+            }
+
+            return new Contents(investments, investmentFinder);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | ArithmeticException e) {
+            throw new InvalidInputFileFormatException();
+        }
+    }
+
+    /**
+     * Read the lots section and give the holdings their lots, which must add up to their quantity and book value
+     */
+    private static void readLots(ByteBuffer buffer, List<Investment> investments) {
+        var holdings = count(buffer);
+        var ids = new int[16];
+        var quantities = new int[16];
+        var bookValues = new long[16];
+        for (var i = 0; i < holdings; ++i) {
+            var investment = investments.get(buffer.getInt());
+            var nextId = buffer.getInt();
+            var unassigned = buffer.getLong();
+            var count = count(buffer);
+            if (ids.length < count) {
+                ids = new int[count];
+                quantities = new int[count];
+                bookValues = new long[count];
+            }
+
+            long quantity = 0;
+            var bookValue = unassigned;
+            for (var j = 0; j < count; ++j) {
+                ids[j] = buffer.getInt();
+                quantities[j] = buffer.getInt();
+                bookValues[j] = buffer.getLong();
+                quantity += quantities[j];
+                bookValue = Math.addExact(bookValue, bookValues[j]);
+            }
+            if (quantity != investment.getQuantity() || bookValue != investment.getBookValueInCents()) {
+                throw new IllegalArgumentException("Tax lots don't add up to holding " + investment.getSymbol());
+            }
+            investment.setLots(TaxLots.of(ids, quantities, bookValues, count, nextId, unassigned));
+        }
+    }
+
+    private static int intern(Map<String, Integer> strings, String string) {
+        return strings.computeIfAbsent(string, key -> strings.size());
+    }
+
+    private static boolean fitsLong(BigDecimal value) {
+        // up to 18 digits always fit, so most values never need their unscaled BigInteger
+        return value.precision() <= 18 || value.unscaledValue().bitLength() < Long.SIZE;
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer, boolean big, BigInteger[] bigs) {
+        var unscaled = buffer.getLong();
+        var scale = buffer.getInt();
+
+        if (big) {
+            if (unscaled < 0 || unscaled >= bigs.length) {
+                throw new IndexOutOfBoundsException("Big number " + unscaled);
+            }
+            return new BigDecimal(bigs[(int) unscaled], scale);
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * Read a count or length. Every counted item takes at least a byte, so anything larger than what is left of the
+     * file is corrupt, which keeps a corrupt count from allocating huge arrays.
+     */
+    private static int count(ByteBuffer buffer) {
+        var count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,53 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Hands changes over to another listener on an executor, coalescing all that come in before it gets to run into one.
+ * With {@code SwingUtilities::invokeLater} as the executor, a view is told at most once per turn of the event thread
+ * however fast the trades come, and a burst of trades while it is busy painting ends up as a single change.
+ */
+public final class CoalescingPortfolioListener implements PortfolioListener {
+    private final PortfolioListener target;
+    private final Executor executor;
+
+    // the changes that came in since the target was last told, null if there are none
+    private PortfolioChange.Builder pending;
+
+    /**
+     * @param target   the listener to tell, only ever on the executor
+     * @param executor runs the deliveries
+     */
+    public CoalescingPortfolioListener(PortfolioListener target, Executor executor) {
+        this.target = target;
+        this.executor = executor;
+    }
+
+    @Override
+    public void portfolioChanged(PortfolioChange change) {
+        synchronized (this) {
+            var scheduled = pending != null;
+            if (!scheduled) {
+                pending = new PortfolioChange.Builder();
+            }
+            pending.add(change);
+            if (scheduled) {
+                // a delivery is already on its way and will take this one along
+                return;
+            }
+        }
+        executor.execute(this::deliver);
+    }
+
+    private void deliver() {
+        PortfolioChange.Builder changes;
+        synchronized (this) {
+            changes = pending;
+            pending = null;
+        }
+        var change = changes.build();
+        if (!change.isEmpty()) {
+            target.portfolioChanged(change);
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe portfolio, for price feeds and trading threads running alongside readers such as the GUI. It guards an
+ * {@link ePortfolio} with a {@link StampedLock}: trades and loads take the write lock, one after the other. The gain,
+ * the totals, copies of the investments and saves read the {@link PortfolioVersion} published by the last operation
+ * instead, so they never take a lock, never wait for a trade and never hold one up. Queries, suggestions and binary
+ * snapshots, which need the secondary indexes, share the read lock, as a version has none and would have to look at
+ * every holding. Every read sees the portfolio between two whole operations, never in the middle of one.
+ * <p>
+ * With a journal open, a trade is journaled and applied under the write lock, but waits for the journal to make it
+ * durable only after releasing it, so that trades of other threads meanwhile go into the same commit and no reader
+ * waits for the disk.
+ * <p>
+ * Investments handed out are detached copies, as the holdings themselves change under the lock.
+ */
+public class ConcurrentPortfolio {
+    private final ePortfolio portfolio;
+    private final StampedLock lock = new StampedLock();
+
+    public ConcurrentPortfolio() {
+        this(null);
+    }
+
+    /**
+     * A portfolio that shares the strings of its holdings with other portfolios
+     *
+     * @param strings the pool of shared strings, or null to keep its own
+     */
+    ConcurrentPortfolio(StringPool strings) {
+        portfolio = new ePortfolio(strings);
+        // from here on every operation publishes a version
+        portfolio.currentVersion();
+        portfolio.deferJournalCommits();
+    }
+
+    /**
+     * Load a list of investments from a file, see {@link ePortfolio#loadInvestments(File)}
+     *
+     * @param input the file containing the investments
+     * @throws InvalidInputFileFormatException if error occurs while trying parse
+     */
+    public void loadInvestments(File input) throws InvalidInputFileFormatException {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.loadInvestments(input);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Load a binary snapshot, see {@link ePortfolio#loadSnapshot(File)}
+     *
+     * @param input the snapshot file
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if the file is not a snapshot or is corrupt
+     */
+    public void loadSnapshot(File input) throws IOException, InvalidInputFileFormatException {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.loadSnapshot(input);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Save the investments to a file, see {@link ePortfolio#saveInvestments(File)}. The current version is written,
+     * trades go on meanwhile.
+     *
+     * @param output the file containing the investments
+     */
+    public void saveInvestments(File output) {
+        try {
+            new CsvInvestmentWriter(Charset.defaultCharset()).write(output, getVersion().getInvestments());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Save the portfolio as a binary snapshot, see {@link ePortfolio#saveSnapshot(File)}. Trades wait until it is
+     * written.
+     *
+     * @param output the snapshot file
+     * @throws IOException if the file can't be written
+     */
+    public void saveSnapshot(File output) throws IOException {
+        var stamp = readLock();
+        try {
+            portfolio.saveSnapshot(output);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Restore the portfolio from a journal directory and record every following trade in it, see
+     * {@link ePortfolio#openJournal(File)}
+     *
+     * @param directory the journal directory
+     * @throws IOException                     if the journal can't be read or created
+     * @throws InvalidInputFileFormatException if the snapshot is corrupt
+     */
+    public void openJournal(File directory) throws IOException, InvalidInputFileFormatException {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.openJournal(directory);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Stop journaling, see {@link ePortfolio#closeJournal()}
+     *
+     * @throws IOException if the journal could not be written
+     */
+    public void closeJournal() throws IOException {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.closeJournal();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Purchase a type of product, see {@link ePortfolio#buy}
+     *
+     * @param type     the type of investment, stock or mutual fund
+     * @param symbol   the symbol name for the product
+     * @param name     the name of the product
+     * @param price    the price that the product will be purchased at
+     * @param quantity the quantity of the purchase
+     * @throws IllegalQuantityException if the quantity is negative
+     */
+    public void buy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity) throws Exception {
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            portfolio.buy(type, symbol, name, price, quantity);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+    }
+
+    /**
+     * Sell a type of product, see {@link ePortfolio#sell}
+     *
+     * @param symbol   the symbol name for the product
+     * @param quantity the quantity of the sale
+     * @param price    the selling price
+     * @return the gain of the trade
+     * @throws IllegalQuantityException    if the quantity is not positive or more than is held
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     */
+    public BigDecimal sell(String symbol, int quantity, BigDecimal price) throws IllegalQuantityException, InvestmentNotFoundException {
+        BigDecimal gain;
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            gain = portfolio.sell(symbol, quantity, price);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+        return gain;
+    }
+
+    /**
+     * Sell products of a tax lot, see {@link ePortfolio#sellLot}
+     *
+     * @param symbol   the symbol name for the product
+     * @param lotId    the lot to sell from
+     * @param quantity the quantity of the sale
+     * @param price    the selling price
+     * @return the gain of the trade
+     * @throws IllegalQuantityException    if the quantity is not positive or more than the lot holds
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     * @throws LotNotFoundException        if the holding has no such lot
+     */
+    public BigDecimal sellLot(String symbol, int lotId, int quantity, BigDecimal price)
+            throws IllegalQuantityException, InvestmentNotFoundException, LotNotFoundException {
+        BigDecimal gain;
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            gain = portfolio.sellLot(symbol, lotId, quantity, price);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+        return gain;
+    }
+
+    /**
+     * The tax lots of a holding, see {@link ePortfolio#getLots}. Lots are looked up by symbol, so this shares the read
+     * lock without touching the symbol ordered list.
+     *
+     * @param symbol the symbol name for the product
+     * @return the lots, oldest first
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     */
+    public List<TaxLot> getLots(String symbol) throws InvestmentNotFoundException {
+        var stamp = lock.readLock();
+        try {
+            return portfolio.getLots(symbol);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Getter for the cost basis method, see {@link ePortfolio#getCostBasisMethod()}
+     *
+     * @return how sales take book value off holdings
+     */
+    public CostBasisMethod getCostBasisMethod() {
+        var stamp = lock.readLock();
+        try {
+            return portfolio.getCostBasisMethod();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Choose how later sales take book value off holdings, see {@link ePortfolio#setCostBasisMethod}
+     *
+     * @param costBasisMethod the method
+     */
+    public void setCostBasisMethod(CostBasisMethod costBasisMethod) {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.setCostBasisMethod(costBasisMethod);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Update the price of a product, see {@link ePortfolio#updatePrice}
+     *
+     * @param symbol the symbol name for the product
+     * @param price  the new price
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     */
+    public void updatePrice(String symbol, BigDecimal price) throws InvestmentNotFoundException {
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            portfolio.updatePrice(symbol, price);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+    }
+
+    /**
+     * Update the prices of many products at once, see {@link ePortfolio#updatePrices(List)}
+     *
+     * @param quotes the symbols and their new prices
+     * @return the quoted symbols that are not in the portfolio, in symbol order without repeats
+     */
+    public List<String> updatePrices(List<Pair<String, BigDecimal>> quotes) {
+        List<String> unknown;
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            unknown = portfolio.updatePrices(quotes);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+        return unknown;
+    }
+
+    /**
+     * Update the prices of many products from a quote file, see {@link ePortfolio#updatePrices(File)}. The file is read
+     * before taking the lock.
+     *
+     * @param quotes the quote file
+     * @return the quoted symbols that are not in the portfolio, in symbol order
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed, in which case no price is changed
+     */
+    public List<String> updatePrices(File quotes) throws IOException, InvalidInputFileFormatException {
+        var parsed = new QuoteFileReader(Charset.defaultCharset()).read(quotes);
+        try {
+            return updatePrices(parsed);
+        } catch (ArithmeticException e) {
+            throw new InvalidInputFileFormatException();
+        }
+    }
+
+    /**
+     * Execute many buy and sell orders, see {@link ePortfolio#executeOrders(List)}. Readers see the portfolio before
+     * or after the whole batch.
+     *
+     * @param orders the orders
+     * @return the outcome of every order and their summary
+     */
+    public TradeBatchResult executeOrders(List<TradeOrder> orders) {
+        TradeBatchResult result;
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            result = portfolio.executeOrders(orders);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+        return result;
+    }
+
+    /**
+     * Execute the orders of a file, see {@link ePortfolio#executeOrders(File)}. The file is read before taking the
+     * lock.
+     *
+     * @param orders the order file
+     * @return the outcome of every order and their summary
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed, in which case no order is executed
+     */
+    public TradeBatchResult executeOrders(File orders) throws IOException, InvalidInputFileFormatException {
+        return executeOrders(new OrderFileReader(Charset.defaultCharset()).read(orders));
+    }
+
+    /**
+     * Rename a product, see {@link ePortfolio#rename}
+     *
+     * @param symbol the symbol name for the product
+     * @param name   the new name
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     */
+    public void rename(String symbol, String name) throws InvestmentNotFoundException {
+        TradeJournal.Commit commit;
+        var stamp = lock.writeLock();
+        try {
+            portfolio.rename(symbol, name);
+            commit = portfolio.takeJournalCommit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitCommit(commit);
+    }
+
+    /**
+     * Start telling a listener about every operation that changes the portfolio, see
+     * {@link ePortfolio#addPortfolioListener}. The listener is called with the write lock held.
+     *
+     * @param listener the listener
+     */
+    public void addPortfolioListener(PortfolioListener listener) {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.addPortfolioListener(listener);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Stop telling a listener about changes
+     *
+     * @param listener the listener
+     */
+    public void removePortfolioListener(PortfolioListener listener) {
+        var stamp = lock.writeLock();
+        try {
+            portfolio.removePortfolioListener(listener);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The portfolio as it was after the last operation, for reading several things that have to agree with each other
+     *
+     * @return the current version, see {@link ePortfolio#currentVersion()}
+     */
+    public PortfolioVersion getVersion() {
+        return portfolio.currentVersion();
+    }
+
+    /**
+     * Calculate the gain if all investment are sold at the current price, see {@link ePortfolio#calculateGain()}
+     *
+     * @return total gain in string
+     */
+    public String calculateGain() {
+        return getVersion().calculateGain();
+    }
+
+    /**
+     * The value of all investments at their current prices
+     *
+     * @return the total market value
+     */
+    public BigDecimal getMarketValue() {
+        return getVersion().getMarketValue();
+    }
+
+    /**
+     * The total book value of all investments
+     *
+     * @return the total book value
+     */
+    public BigDecimal getBookValue() {
+        return getVersion().getBookValue();
+    }
+
+    /**
+     * The fees that selling all investments would cost
+     *
+     * @return the total fees
+     */
+    public BigDecimal getFees() {
+        return getVersion().getFees();
+    }
+
+    /**
+     * Query the investments through the indexes, see {@link ePortfolio#query}
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return list of investments after filtering in string
+     */
+    public List<String> query(String symbolQuery, String nameQuery, String priceRangeStr) {
+        var stamp = readLock();
+        try {
+            return portfolio.query(symbolQuery, nameQuery, priceRangeStr);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Query the investments through the indexes like {@link #query}, but only find where the matches are in the
+     * current version, for views that show a few of them at a time
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return the version searched and the positions of the matches in its investments, in increasing order
+     */
+    Pair<PortfolioVersion, int[]> select(String symbolQuery, String nameQuery, String priceRangeStr) {
+        var stamp = readLock();
+        try {
+            return new Pair<>(portfolio.currentVersion(), portfolio.select(symbolQuery, nameQuery, priceRangeStr));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Suggest investments while a symbol or name is being typed, see {@link ePortfolio#suggest}
+     *
+     * @param prefix the text typed so far
+     * @param limit  the maximum number of suggestions
+     * @return the suggested investments in string
+     */
+    public List<String> suggest(String prefix, int limit) {
+        var stamp = readLock();
+        try {
+            return portfolio.suggest(prefix, limit);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Take a copy of all investments
+     *
+     * @return detached copies of the investments in symbol order, which later trades don't change
+     */
+    public List<Investment> getInvestments() {
+        return getVersion().getInvestments();
+    }
+
+    /**
+     * Wait until a trade is durable, once the write lock is released
+     *
+     * @param commit the commit of the trade, or null if the portfolio isn't journaling
+     */
+    private static void awaitCommit(TradeJournal.Commit commit) {
+        if (commit != null) {
+            commit.await();
+        }
+    }
+
+    /**
+     * Take the read lock, after merging the changes that the symbol ordered list hasn't caught up with yet. Reading
+     * the list would merge them, which is a write, so that is done under the write lock first.
+     *
+     * @return the stamp of the read lock
+     */
+    private long readLock() {
+        var stamp = lock.readLock();
+        if (!portfolio.hasPendingChanges()) {
+            return stamp;
+        }
+
+        var writeStamp = lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0) {
+            // other readers hold the lock as well
+            lock.unlockRead(stamp);
+            writeStamp = lock.writeLock();
+        }
+        portfolio.mergePendingChanges();
+        return lock.tryConvertToReadLock(writeStamp);
+    }
+}
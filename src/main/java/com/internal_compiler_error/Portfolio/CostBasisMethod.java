@@ -0,0 +1,25 @@
+package com.internal_compiler_error.Portfolio;
+
+/**
+ * How a sale picks the book value it takes off a holding, and so the gain it realizes
+ */
+public enum CostBasisMethod {
+    /**
+     * Every share costs the same, a proportional share of the book value of the holding. The holding is one pool, no
+     * tax lots are kept for it.
+     */
+    AVERAGE_COST,
+    /**
+     * The shares bought first are sold first
+     */
+    FIFO,
+    /**
+     * The shares bought last are sold first
+     */
+    LIFO,
+    /**
+     * Each sale names the lot it sells from, see {@link ePortfolio#sellLot}. A sale that names none sells the shares
+     * bought first, as with {@link #FIFO}.
+     */
+    SPECIFIC_LOT
+}
@@ -0,0 +1,298 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the CSV persistence format straight from the bytes of the file. The file is streamed through a large buffer and
+ * each line is tokenized in place, so no line strings, regex splits or decimal strings are created for well-formed rows.
+ * The result and the rejected inputs are the same as reading the file line by line with a Scanner and splitting on
+ * "[,]+".
+ */
+final class CsvInvestmentReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int FIELDS = 6;
+
+    // the largest number of digits that always fits into a long
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final int MAX_INT_DIGITS = 9;
+
+    private static final byte[] STOCK = "STOCK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MUTUAL_FUND = "MUTUAL FUND".getBytes(StandardCharsets.US_ASCII);
+
+    private final Charset charset;
+    private final int[] fieldStart = new int[FIELDS];
+    private final int[] fieldEnd = new int[FIELDS];
+
+    // a whitespace-only line is only legal if nothing but whitespace follows it
+    private boolean blankLineSeen = false;
+    private boolean contentSeen = false;
+
+    /**
+     * @param charset the charset of the file, must be ASCII compatible
+     */
+    CsvInvestmentReader(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Whether the tokenizer can work on the raw bytes of a file in the given charset, which is the case when commas,
+     * line breaks, digits and ASCII letters are encoded as single ASCII bytes
+     *
+     * @param charset the charset of the file
+     * @return true if supported
+     */
+    static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Read all the investments of a file, in file order. Investments read before a malformed line are kept.
+     *
+     * @param input       the file containing the investments
+     * @param investments the list to append to
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed
+     */
+    void read(File input, List<Investment> investments) throws IOException, InvalidInputFileFormatException {
+        try (var channel = new FileInputStream(input).getChannel()) {
+            var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            while (true) {
+                var eof = channel.read(buffer) < 0;
+                var bytes = buffer.array();
+                var limit = buffer.position();
+
+                var consumed = readLines(bytes, 0, limit, eof, investments);
+
+                if (eof) {
+                    break;
+                }
+
+                if (consumed == 0 && limit == bytes.length) {
+                    // a single line is longer than the buffer
+                    buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length * 2));
+                    buffer.position(limit);
+                } else {
+                    System.arraycopy(bytes, consumed, bytes, 0, limit - consumed);
+                    buffer.position(limit - consumed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read all the investments of an in-memory slice of a file, in order. The slice must start at a line boundary and
+     * is treated as ending at one.
+     *
+     * @param bytes       the bytes
+     * @param from        the first byte of the slice
+     * @param to          one past the last byte of the slice
+     * @param investments the list to append to
+     * @throws InvalidInputFileFormatException if a line is malformed
+     */
+    void read(byte[] bytes, int from, int to, List<Investment> investments) throws InvalidInputFileFormatException {
+        readLines(bytes, from, to, true, investments);
+    }
+
+    /**
+     * @return whether a whitespace-only line was read
+     */
+    boolean isBlankLineSeen() {
+        return blankLineSeen;
+    }
+
+    /**
+     * @return whether a line with anything but whitespace was read
+     */
+    boolean isContentSeen() {
+        return contentSeen;
+    }
+
+    /**
+     * Parse all complete lines in bytes[from, to)
+     *
+     * @return the offset of the first byte that was not consumed
+     */
+    private int readLines(byte[] bytes, int from, int to, boolean eof, List<Investment> investments) throws InvalidInputFileFormatException {
+        var lineStart = from;
+        var i = from;
+
+        while (i < to) {
+            var b = bytes[i];
+
+            if (b == '\n') {
+                readLine(bytes, lineStart, i, investments);
+                lineStart = ++i;
+            } else if (b == '\r') {
+                if (i + 1 == to && !eof) {
+                    // can't tell a lone \r from \r\n yet
+                    break;
+                }
+                readLine(bytes, lineStart, i, investments);
+                i += (i + 1 < to && bytes[i + 1] == '\n') ? 2 : 1;
+                lineStart = i;
+            } else {
+                ++i;
+            }
+        }
+
+        if (eof && lineStart < to) {
+            readLine(bytes, lineStart, to, investments);
+            lineStart = to;
+        }
+        return lineStart;
+    }
+
+    private void readLine(byte[] bytes, int from, int to, List<Investment> investments) throws InvalidInputFileFormatException {
+        if (isBlank(bytes, from, to)) {
+            blankLineSeen = true;
+            return;
+        }
+
+        if (blankLineSeen) {
+            throw new InvalidInputFileFormatException();
+        }
+        contentSeen = true;
+
+        // a leading comma produces an empty type field, which is never a valid type
+        if (bytes[from] == ',') {
+            throw new InvalidInputFileFormatException();
+        }
+
+        // runs of commas separate fields, fields past the sixth are ignored
+        var fields = 0;
+        var i = from;
+        while (i < to && fields < FIELDS) {
+            fieldStart[fields] = i;
+            while (i < to && bytes[i] != ',') {
+                ++i;
+            }
+            fieldEnd[fields++] = i;
+            while (i < to && bytes[i] == ',') {
+                ++i;
+            }
+        }
+
+        if (fields < FIELDS) {
+            throw new InvalidInputFileFormatException();
+        }
+
+        var isStock = fieldEquals(bytes, 0, STOCK);
+        if (!isStock && !fieldEquals(bytes, 0, MUTUAL_FUND)) {
+            throw new InvalidInputFileFormatException();
+        }
+
+        var symbol = fieldString(bytes, 1);
+        var name = fieldString(bytes, 2);
+        var quantity = parseInt(bytes, fieldStart[3], fieldEnd[3]);
+        var price = parseDecimal(bytes, fieldStart[4], fieldEnd[4]);
+        var bookValue = parseDecimal(bytes, fieldStart[5], fieldEnd[5]);
+
+        if (isStock) {
+            investments.add(new Stock(symbol, name, quantity, price, bookValue));
+        } else {
+            investments.add(new MutualFund(symbol, name, quantity, price, bookValue));
+        }
+    }
+
+    private boolean fieldEquals(byte[] bytes, int field, byte[] expected) {
+        return Arrays.equals(bytes, fieldStart[field], fieldEnd[field], expected, 0, expected.length);
+    }
+
+    private String fieldString(byte[] bytes, int field) {
+        return new String(bytes, fieldStart[field], fieldEnd[field] - fieldStart[field], charset);
+    }
+
+    /**
+     * Parse an int the way Integer.parseInt does, falling back to it for anything but plain short numbers so that
+     * errors and edge cases behave identically
+     */
+    private int parseInt(byte[] bytes, int from, int to) {
+        var i = from;
+        var negative = false;
+
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+
+        if (i == to || to - i > MAX_INT_DIGITS) {
+            return Integer.parseInt(new String(bytes, from, to - from, charset));
+        }
+
+        var value = 0;
+        for (; i < to; ++i) {
+            var digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(new String(bytes, from, to - from, charset));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a decimal the way new BigDecimal(String) does, building it from an unscaled long for plain numbers and
+     * falling back to the string constructor for exponents, long numbers and malformed input
+     */
+    private BigDecimal parseDecimal(byte[] bytes, int from, int to) {
+        var i = from;
+        var negative = false;
+
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+
+        long unscaled = 0;
+        var digits = 0;
+        var scale = 0;
+        var seenPoint = false;
+
+        for (; i < to; ++i) {
+            var b = bytes[i];
+
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_LONG_DIGITS) {
+                    return new BigDecimal(new String(bytes, from, to - from, charset));
+                }
+                unscaled = unscaled * 10 + (b - '0');
+                if (seenPoint) {
+                    ++scale;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return new BigDecimal(new String(bytes, from, to - from, charset));
+            }
+        }
+
+        if (digits == 0) {
+            return new BigDecimal(new String(bytes, from, to - from, charset));
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    /**
+     * Whether a line only holds whitespace in the sense of Character.isWhitespace
+     */
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (var i = from; i < to; ++i) {
+            var b = bytes[i];
+            if (b != ' ' && (b < '\t' || b > '\r') && (b < 0x1C || b > 0x1F)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * Writes the CSV persistence format in large blocks. Lines are appended into a reusable buffer, encoded and written
+ * through a FileChannel, and the target file is replaced atomically through {@link AtomicFile}. The output is byte for
+ * byte what printing {@link Investment#toCSVString()} line by line with a PrintWriter produces.
+ */
+final class CsvInvestmentWriter {
+    private static final int CHAR_BUFFER_SIZE = 1 << 16;
+    private static final int BYTE_BUFFER_SIZE = 1 << 20;
+
+    private final CharsetEncoder encoder;
+    private final String lineSeparator = System.lineSeparator();
+
+    private final StringBuilder line = new StringBuilder(CHAR_BUFFER_SIZE + 256);
+    private final char[] chars = new char[CHAR_BUFFER_SIZE + 256];
+    private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+    /**
+     * @param charset the charset of the file
+     */
+    CsvInvestmentWriter(Charset charset) {
+        // PrintWriter replaces what it can't encode instead of failing
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Atomically replace the target file with the given investments
+     *
+     * @param output      the file to write
+     * @param investments the investments, in the order to write them
+     * @throws IOException if the file can't be written, in which case the target is left untouched
+     */
+    void write(File output, List<Investment> investments) throws IOException {
+        AtomicFile.write(output, channel -> write(channel, investments));
+    }
+
+    private void write(FileChannel channel, List<Investment> investments) throws IOException {
+        encoder.reset();
+        line.setLength(0);
+        bytes.clear();
+
+        for (var investment : investments) {
+            append(investment);
+
+            if (line.length() >= CHAR_BUFFER_SIZE) {
+                encode(channel, false);
+            }
+        }
+
+        encode(channel, true);
+        drain(channel);
+    }
+
+    /**
+     * Append one investment in the format of {@link Investment#toCSVString()}
+     */
+    private void append(Investment investment) {
+        line.append(investment.getInvestmentType() == InvestmentType.STOCK ? "STOCK" : "MUTUAL FUND").append(',')
+                .append(investment.getSymbol()).append(',')
+                .append(investment.getName()).append(',')
+                .append(investment.getQuantity()).append(',');
+        Money.appendTo(line, investment.getPriceInCents()).append(',');
+        Money.appendTo(line, investment.getBookValueInCents())
+                .append(lineSeparator);
+    }
+
+    /**
+     * Encode the buffered characters into the byte buffer, writing it out whenever it fills up
+     */
+    private void encode(FileChannel channel, boolean endOfInput) throws IOException {
+        var length = line.length();
+        line.getChars(0, length, chars, 0);
+        line.setLength(0);
+
+        var input = CharBuffer.wrap(chars, 0, length);
+        while (true) {
+            var result = encoder.encode(input, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain(channel);
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+
+        if (endOfInput) {
+            while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+                drain(channel);
+            }
+        } else if (input.hasRemaining()) {
+            // keep a dangling high surrogate for the next round
+            line.append(chars, input.position(), input.remaining());
+        }
+    }
+
+    private void drain(FileChannel channel) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
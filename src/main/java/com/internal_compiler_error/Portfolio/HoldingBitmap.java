@@ -0,0 +1,405 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Compressed set of holding ids in the style of a roaring bitmap. Ids are split by their upper 16 bits into containers
+ * of up to 65536 ids each. A container with few ids keeps them as a sorted array of their lower 16 bits; once it
+ * holds more than {@link #ARRAY_LIMIT} ids it switches to a plain bitmap of 1024 words, which is smaller from that point
+ * on. Removing ids only switches it back once it is down to {@link #SHRINK_LIMIT}, so adding and removing around the
+ * limit doesn't convert the container every time. Intersections work on whole 64-bit words where both sides are
+ * bitmaps.
+ */
+final class HoldingBitmap {
+    // an array container of this many ids takes as much memory as a bitmap container
+    private static final int ARRAY_LIMIT = 4096;
+    // a bitmap container that removals bring down to this many ids goes back to being an array
+    private static final int SHRINK_LIMIT = ARRAY_LIMIT / 2;
+    private static final int BITMAP_WORDS = (1 << 16) / Long.SIZE;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+    private int cardinality;
+
+    /**
+     * The ids sharing one value of the upper 16 bits. Exactly one of values and words is set.
+     */
+    private static final class Container {
+        // sorted lower 16 bits of the ids, the first cardinality entries are used
+        char[] values;
+        long[] words;
+        int cardinality;
+
+        static Container ofArray(int capacity) {
+            var container = new Container();
+            container.values = new char[capacity];
+            return container;
+        }
+
+        static Container ofWords() {
+            var container = new Container();
+            container.words = new long[BITMAP_WORDS];
+            return container;
+        }
+
+        boolean contains(char value) {
+            if (words != null) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        boolean add(char value) {
+            if (words != null) {
+                var word = words[value >>> 6];
+                var bit = 1L << value;
+                if ((word & bit) != 0) {
+                    return false;
+                }
+                words[value >>> 6] = word | bit;
+                ++cardinality;
+                return true;
+            }
+
+            // ids mostly arrive in increasing order, so check the end before searching
+            var index = cardinality > 0 && values[cardinality - 1] < value
+                    ? -cardinality - 1
+                    : Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toWords();
+                return add(value);
+            }
+
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            ++cardinality;
+            return true;
+        }
+
+        boolean remove(char value) {
+            if (words != null) {
+                var word = words[value >>> 6];
+                var bit = 1L << value;
+                if ((word & bit) == 0) {
+                    return false;
+                }
+                words[value >>> 6] = word & ~bit;
+                if (--cardinality <= SHRINK_LIMIT) {
+                    toValues();
+                }
+                return true;
+            }
+
+            var index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            --cardinality;
+            return true;
+        }
+
+        private void toWords() {
+            words = new long[BITMAP_WORDS];
+            for (var i = 0; i < cardinality; ++i) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toValues() {
+            values = new char[cardinality];
+            var next = 0;
+            for (var i = 0; i < BITMAP_WORDS; ++i) {
+                for (var word = words[i]; word != 0; word &= word - 1) {
+                    values[next++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                }
+            }
+            words = null;
+        }
+
+        static Container and(Container lhs, Container rhs) {
+            if (lhs.words != null && rhs.words != null) {
+                var result = ofWords();
+                var cardinality = 0;
+                for (var i = 0; i < BITMAP_WORDS; ++i) {
+                    var word = lhs.words[i] & rhs.words[i];
+                    result.words[i] = word;
+                    cardinality += Long.bitCount(word);
+                }
+                result.cardinality = cardinality;
+                if (cardinality <= ARRAY_LIMIT) {
+                    result.toValues();
+                }
+                return result;
+            }
+
+            if (lhs.words != null) {
+                return and(rhs, lhs);
+            }
+
+            // lhs is an array, so the result is at most as large as it
+            var result = ofArray(lhs.cardinality);
+            if (rhs.words != null) {
+                for (var i = 0; i < lhs.cardinality; ++i) {
+                    if (rhs.contains(lhs.values[i])) {
+                        result.values[result.cardinality++] = lhs.values[i];
+                    }
+                }
+            } else {
+                for (int i = 0, j = 0; i < lhs.cardinality && j < rhs.cardinality; ) {
+                    var comp = Character.compare(lhs.values[i], rhs.values[j]);
+                    if (comp == 0) {
+                        result.values[result.cardinality++] = lhs.values[i];
+                    }
+                    if (comp <= 0) {
+                        ++i;
+                    }
+                    if (comp >= 0) {
+                        ++j;
+                    }
+                }
+            }
+            return result;
+        }
+
+        void or(Container other) {
+            if (words == null) {
+                toWords();
+            }
+            if (other.words != null) {
+                var cardinality = 0;
+                for (var i = 0; i < BITMAP_WORDS; ++i) {
+                    words[i] |= other.words[i];
+                    cardinality += Long.bitCount(words[i]);
+                }
+                this.cardinality = cardinality;
+            } else {
+                for (var i = 0; i < other.cardinality; ++i) {
+                    var value = other.values[i];
+                    var word = words[value >>> 6];
+                    var bit = 1L << value;
+                    if ((word & bit) == 0) {
+                        words[value >>> 6] = word | bit;
+                        ++cardinality;
+                    }
+                }
+            }
+        }
+
+        void trim() {
+            if (words != null && cardinality <= ARRAY_LIMIT) {
+                toValues();
+            }
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (words != null) {
+                for (var i = 0; i < BITMAP_WORDS; ++i) {
+                    for (var word = words[i]; word != 0; word &= word - 1) {
+                        action.accept(high | i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                    }
+                }
+            } else {
+                for (var i = 0; i < cardinality; ++i) {
+                    action.accept(high | values[i]);
+                }
+            }
+        }
+
+        boolean forEachWhile(int high, IntPredicate action) {
+            if (words != null) {
+                for (var i = 0; i < BITMAP_WORDS; ++i) {
+                    for (var word = words[i]; word != 0; word &= word - 1) {
+                        if (!action.test(high | i * Long.SIZE + Long.numberOfTrailingZeros(word))) {
+                            return false;
+                        }
+                    }
+                }
+            } else {
+                for (var i = 0; i < cardinality; ++i) {
+                    if (!action.test(high | values[i])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Add an id
+     *
+     * @param id the holding id, not negative
+     * @return whether the id was not in the set before
+     */
+    boolean add(int id) {
+        var key = (char) (id >>> 16);
+        var index = find(key);
+
+        if (index < 0) {
+            index = insert(-index - 1, key);
+        }
+
+        if (containers[index].add((char) id)) {
+            ++cardinality;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove an id
+     *
+     * @param id the holding id
+     * @return whether the id was in the set
+     */
+    boolean remove(int id) {
+        var index = find((char) (id >>> 16));
+        if (index < 0 || !containers[index].remove((char) id)) {
+            return false;
+        }
+
+        --cardinality;
+        if (containers[index].cardinality == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        }
+        return true;
+    }
+
+    boolean contains(int id) {
+        var index = find((char) (id >>> 16));
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Compute the intersection of two sets. Only containers present on both sides are looked at.
+     *
+     * @param lhs a set
+     * @param rhs another set
+     * @return a new set with the ids in both
+     */
+    static HoldingBitmap and(HoldingBitmap lhs, HoldingBitmap rhs) {
+        var result = new HoldingBitmap();
+        var capacity = Math.min(lhs.size, rhs.size);
+        result.keys = new char[capacity];
+        result.containers = new Container[capacity];
+
+        for (int i = 0, j = 0; i < lhs.size && j < rhs.size; ) {
+            var comp = Character.compare(lhs.keys[i], rhs.keys[j]);
+            if (comp == 0) {
+                var container = Container.and(lhs.containers[i], rhs.containers[j]);
+                if (container.cardinality > 0) {
+                    result.keys[result.size] = lhs.keys[i];
+                    result.containers[result.size++] = container;
+                    result.cardinality += container.cardinality;
+                }
+            }
+            if (comp <= 0) {
+                ++i;
+            }
+            if (comp >= 0) {
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add every id of another set. The containers this touches are kept as bitmaps until {@link #trim()}, so adding
+     * many small sets one after the other costs no more than the ids they hold.
+     *
+     * @param other the ids to add
+     */
+    void or(HoldingBitmap other) {
+        for (var i = 0; i < other.size; ++i) {
+            var key = other.keys[i];
+            var index = find(key);
+            if (index < 0) {
+                index = insert(-index - 1, key);
+            }
+
+            var container = containers[index];
+            cardinality -= container.cardinality;
+            container.or(other.containers[i]);
+            cardinality += container.cardinality;
+        }
+    }
+
+    /**
+     * Turn bitmap containers that have become sparse back into arrays
+     */
+    void trim() {
+        for (var i = 0; i < size; ++i) {
+            containers[i].trim();
+        }
+    }
+
+    /**
+     * Apply an action to every id in increasing order
+     *
+     * @param action the action
+     */
+    void forEach(IntConsumer action) {
+        for (var i = 0; i < size; ++i) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Apply an action to the ids in increasing order until it asks to stop
+     *
+     * @param action gets each id and returns whether to go on
+     * @return whether every id was seen
+     */
+    boolean forEachWhile(IntPredicate action) {
+        for (var i = 0; i < size; ++i) {
+            if (!containers[i].forEachWhile(keys[i] << 16, action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int insert(int index, char key) {
+        if (size == keys.length) {
+            var capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = Container.ofArray(4);
+        ++size;
+        return index;
+    }
+
+    private int find(char key) {
+        // the last container is the one bulk loads append to
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+}
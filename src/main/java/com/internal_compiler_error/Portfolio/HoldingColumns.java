@@ -0,0 +1,164 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column-oriented store of holdings. Every field lives in its own primitive array, so a million holdings take a handful
+ * of arrays instead of a million objects, which the garbage collector has to neither trace nor move one by one. Symbols
+ * and names are immutable and shared with the investments they were taken from rather than copied.
+ * <p>
+ * Rows are read through their columns, or as {@link Investment} views that are created on demand and detached from the
+ * store, so changing a view doesn't change the row.
+ * <p>
+ * Tax lots are copied along, into a column that only exists once a holding kept in lots is added.
+ */
+final class HoldingColumns {
+    private static final InvestmentType[] TYPES = InvestmentType.values();
+
+    private byte[] types;
+    private String[] symbols;
+    private String[] names;
+    private int[] quantities;
+    private long[] prices;
+    private long[] bookValues;
+    // the tax lots of each row, null for rows that are a single pool, or altogether while all are
+    private TaxLots[] lots;
+    private int size;
+
+    /**
+     * Create an empty store
+     *
+     * @param capacity the number of rows to make room for
+     */
+    HoldingColumns(int capacity) {
+        types = new byte[capacity];
+        symbols = new String[capacity];
+        names = new String[capacity];
+        quantities = new int[capacity];
+        prices = new long[capacity];
+        bookValues = new long[capacity];
+    }
+
+    /**
+     * Copy a list of investments into columns
+     *
+     * @param investments the investments
+     * @return the store, with a row per investment in list order
+     */
+    static HoldingColumns of(List<Investment> investments) {
+        var columns = new HoldingColumns(investments.size());
+        for (var investment : investments) {
+            columns.add(investment);
+        }
+        return columns;
+    }
+
+    /**
+     * Append a row holding the current state of an investment
+     *
+     * @param investment the investment
+     */
+    void add(Investment investment) {
+        if (size == types.length) {
+            grow();
+        }
+
+        types[size] = (byte) investment.getInvestmentType().ordinal();
+        symbols[size] = investment.getSymbol();
+        names[size] = investment.getName();
+        quantities[size] = investment.getQuantity();
+        prices[size] = investment.getPriceInCents();
+        bookValues[size] = investment.getBookValueInCents();
+        if (investment.getLots() != null) {
+            if (lots == null) {
+                lots = new TaxLots[types.length];
+            }
+            lots[size] = investment.getLots().copy();
+        }
+        ++size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    InvestmentType type(int row) {
+        return TYPES[types[row]];
+    }
+
+    String symbol(int row) {
+        return symbols[row];
+    }
+
+    String name(int row) {
+        return names[row];
+    }
+
+    int quantity(int row) {
+        return quantities[row];
+    }
+
+    long priceInCents(int row) {
+        return prices[row];
+    }
+
+    long bookValueInCents(int row) {
+        return bookValues[row];
+    }
+
+    /**
+     * Create an investment holding the values of a row
+     *
+     * @param row the row
+     * @return a new investment, changing it leaves the row as it is
+     */
+    Investment view(int row) {
+        Investment investment = type(row) == InvestmentType.STOCK
+                ? new Stock(symbols[row], names[row], quantities[row], prices[row], bookValues[row])
+                : new MutualFund(symbols[row], names[row], quantities[row], prices[row], bookValues[row]);
+        if (lots != null && lots[row] != null) {
+            investment.setLots(lots[row].copy());
+        }
+        return investment;
+    }
+
+    /**
+     * The rows as a read-only list of investments, each created when it is got
+     *
+     * @return the list
+     */
+    List<Investment> asList() {
+        return new Rows();
+    }
+
+    private void grow() {
+        var capacity = Math.max(16, size * 2);
+        types = Arrays.copyOf(types, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        names = Arrays.copyOf(names, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        bookValues = Arrays.copyOf(bookValues, capacity);
+        if (lots != null) {
+            lots = Arrays.copyOf(lots, capacity);
+        }
+    }
+
+    private final class Rows extends AbstractList<Investment> implements RandomAccess {
+        @Override
+        public Investment get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Row " + index);
+            }
+            return view(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
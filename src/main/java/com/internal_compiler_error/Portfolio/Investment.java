@@ -1,19 +1,24 @@
 package com.internal_compiler_error.Portfolio;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.Objects;
 
 /**
- * An investment having a symbol, name, quantity and book value
+ * An investment having a symbol, name, quantity and book value. Price and book value are held in cents, see
+ * {@link Money}, and exposed as decimals with two decimal places.
  */
 public abstract class Investment {
     private InvestmentType investmentType;
     private String symbol = "";
     private String name = "";
     private int quantity = 0;
-    private BigDecimal price = new BigDecimal(0);
-    private BigDecimal bookValue = new BigDecimal(0);
+    private long price = 0;
+    private long bookValue = 0;
+
+    // identifies the holding within its portfolio, not part of the value of the investment
+    private int holdingId = -1;
+    // the tax lots the quantity and book value are made of, null while the holding is a single pool, see trackLots()
+    private TaxLots lots;
 
     @Override
     public boolean equals(Object o) {
@@ -24,8 +29,8 @@ public abstract class Investment {
                 getInvestmentType() == that.getInvestmentType() &&
                 getSymbol().equals(that.getSymbol()) &&
                 getName().equals(that.getName()) &&
-                getPrice().equals(that.getPrice()) &&
-                getBookValue().equals(that.getBookValue());
+                price == that.price &&
+                bookValue == that.bookValue;
     }
 
     /**
@@ -34,12 +39,12 @@ public abstract class Investment {
      * @return CSV string representation of an investment
      */
     public String toCSVString() {
-        return String.format("%s,%s,%s,%s,%s,%s", investmentType == InvestmentType.STOCK ? "STOCK" : "MUTUAL FUND", symbol, name, quantity, price.toString(), bookValue.toString());
+        return String.format("%s,%s,%s,%s,%s,%s", investmentType == InvestmentType.STOCK ? "STOCK" : "MUTUAL FUND", symbol, name, quantity, getPrice().toString(), getBookValue().toString());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getInvestmentType(), getSymbol(), getName(), getQuantity(), getPrice(), getBookValue());
+        return Objects.hash(getInvestmentType(), getSymbol(), getName(), getQuantity(), price, bookValue);
     }
 
     /**
@@ -99,11 +104,12 @@ public abstract class Investment {
     }
 
     /**
-     * Setter for quantity
+     * Setter for quantity, which makes the holding a single pool again as its tax lots no longer add up
      * @param quantity
      */
     public void setQuantity(int quantity) {
         this.quantity = quantity;
+        lots = null;
     }
 
     /**
@@ -111,15 +117,15 @@ public abstract class Investment {
      * @return the price of investment
      */
     public BigDecimal getPrice() {
-        return price;
+        return Money.toBigDecimal(price);
     }
 
     /**
      * Setter for price
-     * @param price price of investment
+     * @param price price of investment, rounded to cents
      */
     public void setPrice(BigDecimal price) {
-        this.price = price;
+        this.price = Money.of(price);
     }
 
     /**
@@ -127,28 +133,138 @@ public abstract class Investment {
      * @return the book value
      */
     public BigDecimal getBookValue() {
-        return bookValue;
+        return Money.toBigDecimal(bookValue);
     }
 
     /**
-     * setter for book value
-     * @param bookValue the book value
+     * setter for book value, which makes the holding a single pool again as its tax lots no longer add up
+     * @param bookValue the book value, rounded to cents
      */
     public void setBookValue(BigDecimal bookValue) {
+        this.bookValue = Money.of(bookValue);
+        lots = null;
+    }
+
+    /**
+     * Getter for price in cents
+     * @return the price of investment in cents
+     */
+    long getPriceInCents() {
+        return price;
+    }
+
+    /**
+     * Setter for price in cents
+     * @param price the price of investment in cents
+     */
+    void setPriceInCents(long price) {
+        this.price = price;
+    }
+
+    /**
+     * Getter for book value in cents
+     * @return the book value in cents
+     */
+    long getBookValueInCents() {
+        return bookValue;
+    }
+
+    /**
+     * Setter for book value in cents, which makes the holding a single pool again as its tax lots no longer add up
+     * @param bookValue the book value in cents
+     */
+    void setBookValueInCents(long bookValue) {
         this.bookValue = bookValue;
+        lots = null;
+    }
+
+    /**
+     * Keep the holding in tax lots from now on, starting with everything held so far as the opening lot
+     */
+    void trackLots() {
+        if (lots == null) {
+            lots = TaxLots.opening(quantity, bookValue);
+        }
+    }
+
+    /**
+     * Getter for tax lots
+     * @return the tax lots, or null if the holding is a single pool
+     */
+    TaxLots getLots() {
+        return lots;
+    }
+
+    /**
+     * Setter for tax lots, used to restore saved holdings
+     * @param lots the tax lots, which must add up to the quantity and book value, or null for a single pool
+     */
+    void setLots(TaxLots lots) {
+        this.lots = lots;
     }
 
 
     /**
-     * Calculate the current gain if all is sold at the current price without any fees.
-     * Formula: bookValue - price * quantity
+     * Getter for holding id
+     * @return the id of the holding in its portfolio
+     */
+    int getHoldingId() {
+        return holdingId;
+    }
+
+    /**
+     * Setter for holding id
+     * @param holdingId the id of the holding in its portfolio
+     */
+    void setHoldingId(int holdingId) {
+        this.holdingId = holdingId;
+    }
+
+    /**
+     * Calculate the current gain if all is sold at the current price.
+     * Formula: price * quantity - bookValue - fee
      *
      * @return the total gain
      */
     BigDecimal getGain() {
-        var marketValue = price
-                .multiply(new BigDecimal(quantity));
-        return marketValue.subtract(bookValue);
+        return Money.toBigDecimal(getGainInCents());
+    }
+
+    /**
+     * Calculate the current gain in cents if all is sold at the current price.
+     *
+     * @return the total gain in cents
+     */
+    long getGainInCents() {
+        return Math.subtractExact(Math.subtractExact(getMarketValueInCents(), bookValue), getFeeInCents());
+    }
+
+    /**
+     * Calculate the value of the investment at the current price.
+     * Formula: price * quantity
+     *
+     * @return the market value in cents
+     */
+    long getMarketValueInCents() {
+        return Math.multiplyExact(price, quantity);
+    }
+
+    /**
+     * The fee charged when the investment is sold, which the gain takes off
+     *
+     * @return the fee in cents
+     */
+    long getFeeInCents() {
+        return 0;
+    }
+
+    /**
+     * The fee charged on a purchase, which is part of what the purchase cost, and of its tax lot
+     *
+     * @return the fee in cents
+     */
+    long getPurchaseFeeInCents() {
+        return 0;
     }
 
     /**
@@ -161,7 +277,7 @@ public abstract class Investment {
     }
 
     /**
-     * Sell some or all investment products. The selling price will become the new price.
+     * Sell some or all investment products at their average cost. The selling price will become the new price.
      *
      * @param quantity the quantity to be sold
      * @param price    the selling price
@@ -169,25 +285,94 @@ public abstract class Investment {
      * @throws IllegalQuantityException if the quantity is negative or exceeds the quantity possessed
      */
     BigDecimal sell(int quantity, BigDecimal price) throws IllegalQuantityException {
+        checkSale(quantity, this.quantity);
+
+        // the book value of the sold part, rounded to the cent, selling everything takes all of it
+        var bookValueForSell = Money.proportion(bookValue, quantity, this.quantity);
+        var gain = sold(quantity, price, bookValueForSell);
+        // a share of the pool is no share of any particular lot
+        lots = null;
+        return gain;
+    }
+
+    /**
+     * Sell some or all investment products, taking the book value of the sold part as a cost basis method has it. The
+     * selling price will become the new price.
+     *
+     * @param quantity the quantity to be sold
+     * @param price    the selling price
+     * @param method   how to pick the shares sold, lots are kept from now on unless it is average cost
+     * @return The gain from the trade
+     * @throws IllegalQuantityException if the quantity is negative or exceeds the quantity possessed
+     */
+    BigDecimal sell(int quantity, BigDecimal price, CostBasisMethod method) throws IllegalQuantityException {
+        if (method == CostBasisMethod.AVERAGE_COST) {
+            return sell(quantity, price);
+        }
+        checkSale(quantity, this.quantity);
+
+        var payment = Money.times(price, quantity);
+        trackLots();
+        var bookValueForSell = lots.take(quantity, method == CostBasisMethod.LIFO);
+        return sold(quantity, payment, price, bookValueForSell);
+    }
+
+    /**
+     * Sell products of one tax lot. The selling price will become the new price.
+     *
+     * @param lotId    the lot to sell from, see {@link TaxLot#getId()}
+     * @param quantity the quantity to be sold
+     * @param price    the selling price
+     * @return The gain from the trade
+     * @throws IllegalQuantityException if the quantity is negative or exceeds the quantity of the lot
+     * @throws LotNotFoundException     if the holding has no such lot
+     */
+    BigDecimal sellLot(int lotId, int quantity, BigDecimal price) throws IllegalQuantityException, LotNotFoundException {
+        // a single pool would open with everything as lot 0, so a failed sale leaves it a pool
+        var held = lots != null ? lots.quantityOf(lotId) : lotId == 0 ? this.quantity : 0;
+        if (held == 0) {
+            throw new LotNotFoundException();
+        }
+        checkSale(quantity, held);
+
+        var payment = Money.times(price, quantity);
+        trackLots();
+        var bookValueForSell = lots.takeFromLot(lotId, quantity);
+        return sold(quantity, payment, price, bookValueForSell);
+    }
+
+    private static void checkSale(int quantity, int held) throws IllegalQuantityException {
         if (quantity < 0) {
             throw new IllegalQuantityException(IllegalQuantity.NEGATIVE);
         } else if (quantity == 0) {
             throw new IllegalQuantityException(IllegalQuantity.ZERO);
-        } else if (quantity > this.quantity) {
+        } else if (quantity > held) {
             throw new IllegalQuantityException(IllegalQuantity.MORE_THAN_HOLDING);
         }
+    }
 
+    private BigDecimal sold(int quantity, BigDecimal price, long bookValueForSell) {
+        return sold(quantity, Money.times(price, quantity), price, bookValueForSell);
+    }
 
-        var payment = price.multiply(new BigDecimal(quantity));
+    /**
+     * Take a sale off the holding
+     *
+     * @param quantity         the quantity sold
+     * @param payment          what the sale paid in cents
+     * @param price            the selling price
+     * @param bookValueForSell the book value of the sold part in cents
+     * @return the gain from the trade
+     */
+    private BigDecimal sold(int quantity, long payment, BigDecimal price, long bookValueForSell) {
+        var gain = Math.subtractExact(Math.subtractExact(payment, bookValueForSell), getFeeInCents());
+        var newPrice = Money.of(price);
 
-        // we must set scale here, otherwise we'll always round to 0
-        var remainingProportion = new BigDecimal(quantity).setScale(32, RoundingMode.HALF_EVEN).divide(new BigDecimal(this.quantity), RoundingMode.HALF_EVEN);
-        var bookValueForSell = bookValue.multiply(remainingProportion);
-        bookValue = bookValue.subtract(bookValueForSell);
-        this.price = price.setScale(2, RoundingMode.HALF_EVEN);
+        bookValue -= bookValueForSell;
+        this.price = newPrice;
         this.quantity -= quantity;
 
-        return payment.subtract(bookValueForSell);
+        return Money.toBigDecimal(gain);
     }
 
     /**
@@ -203,11 +388,18 @@ public abstract class Investment {
         }
 
 
-        // bookValue = bookValue + quantity * price
-        bookValue = bookValue.
-                add(price.multiply(new BigDecimal(quantity)));
-        this.quantity += quantity;
-        this.price = price.setScale(2, RoundingMode.HALF_EVEN);
+        // bookValue = bookValue + quantity * price + purchase fee, all worked out before any field changes
+        var cost = Math.addExact(Money.times(price, quantity), getPurchaseFeeInCents());
+        var newBookValue = Math.addExact(bookValue, cost);
+        var newQuantity = Math.addExact(this.quantity, quantity);
+        var newPrice = Money.of(price);
+
+        bookValue = newBookValue;
+        this.quantity = newQuantity;
+        this.price = newPrice;
+        if (lots != null) {
+            lots.add(quantity, cost);
+        }
     }
 
     /**
@@ -233,10 +425,48 @@ public abstract class Investment {
         this.symbol = symbol;
         this.name = name;
         this.quantity = quantity;
-        this.price = price.setScale(2, RoundingMode.HALF_EVEN);
-        this.bookValue = new BigDecimal(quantity).setScale(2, RoundingMode.HALF_EVEN).multiply(price);
+        this.price = Money.of(price);
+        this.bookValue = Money.times(price, quantity);
+    }
+
+    /**
+     * Constructor for Investment from amounts already in cents, used to rebuild holdings from {@link HoldingColumns}
+     *
+     * @param symbol    the symbol of the investment
+     * @param name      the name of the investment
+     * @param quantity  the quantity held
+     * @param price     the price in cents
+     * @param bookValue the book value in cents
+     */
+    Investment(String symbol, String name, int quantity, long price, long bookValue) {
+        this.symbol = symbol;
+        this.name = name;
+        this.quantity = quantity;
+        this.price = price;
+        this.bookValue = bookValue;
+    }
+
+    /**
+     * Copy constructor, copies every field as is but the tax lots, the copy is a single pool
+     *
+     * @param other the investment to copy
+     */
+    protected Investment(Investment other) {
+        this.investmentType = other.investmentType;
+        this.symbol = other.symbol;
+        this.name = other.name;
+        this.quantity = other.quantity;
+        this.price = other.price;
+        this.bookValue = other.bookValue;
     }
 
+    /**
+     * Create a detached copy of the investment, used to take snapshots of a portfolio
+     *
+     * @return the copy
+     */
+    abstract Investment copy();
+
     /**
      * Constructor for Investment for use of reading from a file
      *
@@ -250,7 +480,7 @@ public abstract class Investment {
         this.symbol = symbol;
         this.name = name;
         this.quantity = quantity;
-        this.price = price.setScale(2, RoundingMode.HALF_EVEN);
-        this.bookValue = bookValue.setScale(2, RoundingMode.HALF_EVEN);
+        this.price = Money.of(price);
+        this.bookValue = Money.of(bookValue);
     }
 }
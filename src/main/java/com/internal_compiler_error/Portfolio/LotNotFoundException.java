@@ -0,0 +1,7 @@
+package com.internal_compiler_error.Portfolio;
+
+public class LotNotFoundException extends Exception {
+    LotNotFoundException() {
+        super("Attempted to sell from a tax lot not held");
+    }
+}
@@ -1,13 +1,96 @@
 package com.internal_compiler_error.Portfolio;
 
+import com.internal_compiler_error.utils.Pair;
+
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs portfolio operations off the event dispatch thread, so that a search or a gain calculation on a large portfolio
+ * doesn't freeze the window. An operation runs on a background thread and its outcome is handed back on the event
+ * dispatch thread, where it may touch the components. Trades run one after the other in the order they were asked for;
+ * reads run on a thread of their own, so a long search doesn't hold a trade up.
+ */
+final class PortfolioTasks {
+    private static final ExecutorService TRADES = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "portfolio-trades"));
+    private static final ExecutorService READS = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "portfolio-reads"));
+
+    private PortfolioTasks() {
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Run an operation that changes the portfolio in the background, after the ones asked for before
+     *
+     * @param operation runs on a background thread and must not touch any component
+     * @param onSuccess gets the result on the event dispatch thread
+     * @param onFailure gets what the operation threw on the event dispatch thread
+     * @return the task
+     */
+    static <T> SwingWorker<T, Void> trade(Callable<T> operation, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        return submit(TRADES, operation, onSuccess, onFailure);
+    }
+
+    /**
+     * Run an operation that only reads the portfolio in the background
+     *
+     * @param operation runs on a background thread and must not touch any component
+     * @param onSuccess gets the result on the event dispatch thread
+     * @param onFailure gets what the operation threw on the event dispatch thread
+     * @return the task, cancelling it skips it if it hasn't started yet and drops its outcome otherwise
+     */
+    static <T> SwingWorker<T, Void> read(Callable<T> operation, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        return submit(READS, operation, onSuccess, onFailure);
+    }
+
+    private static <T> SwingWorker<T, Void> submit(ExecutorService executor, Callable<T> operation, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        var worker = new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return operation.call();
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+
+                try {
+                    onSuccess.accept(get());
+                } catch (ExecutionException e) {
+                    onFailure.accept(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.execute(worker);
+        return worker;
+    }
+}
 
 class GreetingPane extends JPanel {
     GreetingPane() {
@@ -28,6 +111,7 @@ class GreetingPane extends JPanel {
 class MessagePane extends JPanel {
     private JLabel label = new JLabel();
     private JTextArea textArea = new JTextArea("");
+    private JProgressBar progressBar = new JProgressBar();
 
     MessagePane() {
         label.setText("Messages");
@@ -43,7 +127,11 @@ class MessagePane extends JPanel {
         var containerLayout = new BoxLayout(container, BoxLayout.Y_AXIS);
         container.setLayout(containerLayout);
 
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+
         container.add(label);
+        container.add(progressBar);
         container.add(scrollPane);
 
         add(container, BorderLayout.CENTER);
@@ -58,6 +146,388 @@ class MessagePane extends JPanel {
     void setText(String s) {
         textArea.setText(s);
     }
+
+    /**
+     * Show or hide the progress bar, which runs while an operation is working in the background
+     *
+     * @param busy whether an operation is running
+     */
+    void setBusy(boolean busy) {
+        progressBar.setVisible(busy);
+        revalidate();
+    }
+}
+
+/**
+ * Table model over the holdings of a portfolio version. A row is only looked up in the version when the table asks for
+ * it, which it does for the rows on screen, so a result of a million holdings opens as fast as one of ten.
+ */
+class HoldingTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Type", "Symbol", "Name", "Quantity", "Price", "Book Value", "Gain"};
+    private static final Class<?>[] COLUMN_CLASSES = {String.class, String.class, String.class, Integer.class, BigDecimal.class, BigDecimal.class, BigDecimal.class};
+
+    private PortfolioVersion version;
+    private List<Investment> investments;
+    // the position in the version of each row, null while the rows are all holdings in symbol order
+    private int[] rows;
+    // whether the rows are in symbol order, as search results are until they are sorted by another column
+    private boolean inSymbolOrder = true;
+
+    // the row painted last, as the table asks for its cells one after the other
+    private int cachedRow = -1;
+    private Investment cachedInvestment;
+
+    /**
+     * @param version the version the rows come from
+     * @param rows    the positions in the version to show, null for all holdings
+     */
+    HoldingTableModel(PortfolioVersion version, int[] rows) {
+        this.version = version;
+        this.investments = version.getInvestments();
+        this.rows = rows;
+    }
+
+    PortfolioVersion getVersion() {
+        return version;
+    }
+
+    int[] getRows() {
+        return rows;
+    }
+
+    /**
+     * Show the same holdings in another order
+     *
+     * @param rows the positions in the version to show
+     */
+    void setRows(int[] rows) {
+        this.rows = rows;
+        inSymbolOrder = false;
+        cachedRow = -1;
+        cachedInvestment = null;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Move the rows over to a newer version in which no holding was added or removed, so every row is still at the
+     * same position, and repaint the rows of the symbols that changed
+     *
+     * @param change what changed, and the version it led to
+     */
+    void update(PortfolioChange change) {
+        version = change.getVersion();
+        investments = version.getInvestments();
+        cachedRow = -1;
+        cachedInvestment = null;
+
+        var rowCount = getRowCount();
+        if (!inSymbolOrder || change.size() > rowCount) {
+            // finding the rows would cost more than repainting the visible ones, which is all that repainting does
+            fireTableRowsUpdated(0, rowCount - 1);
+            return;
+        }
+
+        var first = rowCount;
+        var last = -1;
+        for (var i = 0; i < change.size(); ++i) {
+            var symbol = change.getSymbol(i);
+            var position = version.indexOf(symbol);
+            // a loaded file may hold a symbol more than once
+            for (; position >= 0 && position < version.size(); ++position) {
+                if (investments.get(position).getSymbol().compareToIgnoreCase(symbol) != 0) {
+                    break;
+                }
+                var row = rows == null ? position : Arrays.binarySearch(rows, position);
+                if (row >= 0) {
+                    first = Math.min(first, row);
+                    last = Math.max(last, row);
+                }
+            }
+        }
+        if (first <= last) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows == null ? version.size() : rows.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (row != cachedRow) {
+            cachedInvestment = investments.get(rows == null ? row : rows[row]);
+            cachedRow = row;
+        }
+
+        switch (column) {
+            case 0:
+                return cachedInvestment.getInvestmentType() == InvestmentType.STOCK ? "Stock" : "Mutual Fund";
+            case 1:
+                return cachedInvestment.getSymbol();
+            case 2:
+                return cachedInvestment.getName();
+            case 3:
+                return cachedInvestment.getQuantity();
+            case 4:
+                return cachedInvestment.getPrice();
+            case 5:
+                return cachedInvestment.getBookValue();
+            default:
+                return cachedInvestment.getGain();
+        }
+    }
+
+    /**
+     * Order rows by a column. Reads only the version, so it can run in the background while the table shows the old
+     * order. The values of the column are read in one walk through the version, rather than a lookup per comparison.
+     *
+     * @param version   the version the rows come from
+     * @param rows      the positions in the version to order, null for all holdings
+     * @param column    the column
+     * @param ascending whether the smallest value comes first
+     * @return the positions in the new order, rows with equal values stay in symbol order
+     */
+    static int[] sort(PortfolioVersion version, int[] rows, int column, boolean ascending) {
+        var size = rows == null ? version.size() : rows.length;
+        var order = new Integer[size];
+        for (var i = 0; i < size; ++i) {
+            order[i] = rows == null ? i : rows[i];
+        }
+
+        Comparator<Integer> byColumn;
+        if (column == 1) {
+            // the version is in symbol order already
+            byColumn = Comparator.naturalOrder();
+        } else if (column == 2) {
+            var names = new String[version.size()];
+            var position = 0;
+            for (var investment : version.getInvestments()) {
+                names[position++] = investment.getName();
+            }
+            byColumn = Comparator.comparing((Integer row) -> names[row]);
+        } else {
+            var values = new long[version.size()];
+            var position = 0;
+            for (var investment : version.getInvestments()) {
+                values[position++] = value(investment, column);
+            }
+            byColumn = Comparator.comparingLong((Integer row) -> values[row]);
+        }
+
+        // only the column is reversed, equal values stay in symbol order either way
+        Arrays.sort(order, (ascending ? byColumn : byColumn.reversed()).thenComparing(Comparator.naturalOrder()));
+
+        var sorted = new int[size];
+        for (var i = 0; i < size; ++i) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    private static long value(Investment investment, int column) {
+        switch (column) {
+            case 0:
+                return investment.getInvestmentType().ordinal();
+            case 3:
+                return investment.getQuantity();
+            case 4:
+                return investment.getPriceInCents();
+            case 5:
+                return investment.getBookValueInCents();
+            default:
+                return investment.getGainInCents();
+        }
+    }
+}
+
+/**
+ * Scrollable table of holdings, sorted by clicking on a column header. Sorting runs in the background and the table
+ * keeps showing the old order until it is done.
+ * <p>
+ * The table follows the changes of the portfolio: rows whose values changed are repainted, and holdings that were added
+ * or removed are shown by reloading, all of them for a table of all holdings, or through the reload given for a table
+ * of some of them.
+ */
+class HoldingTable extends JPanel implements PortfolioListener {
+    private JLabel label = new JLabel();
+    private JProgressBar progressBar = new JProgressBar();
+    private JTable table = new JTable();
+
+    // the sort running in the background, cancelled when another column is clicked
+    private SwingWorker<int[], Void> sort;
+    private int sortedColumn = -1;
+    private boolean ascending;
+
+    // shows the holdings again after some were added or removed, for a table of only some of them
+    private Runnable reload;
+    // the changes that came in while new holdings were being loaded, null when nothing is loading
+    private PortfolioChange.Builder missed;
+
+    HoldingTable(String description) {
+        label.setText(description);
+
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                var column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+                if (column >= 0) {
+                    sortBy(column);
+                }
+            }
+        });
+
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+
+        var scrollPane = new JScrollPane(table);
+        label.setLabelFor(scrollPane);
+
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        add(label);
+        add(progressBar);
+        add(scrollPane);
+    }
+
+    /**
+     * Show holdings of a version
+     *
+     * @param version the version
+     * @param rows    the positions in the version to show, null for all holdings
+     */
+    void show(PortfolioVersion version, int[] rows) {
+        if (sort != null) {
+            sort.cancel(false);
+        }
+        sortedColumn = -1;
+        table.setModel(new HoldingTableModel(version, rows));
+        setStatus(String.format("%d investments", table.getRowCount()));
+
+        if (missed != null) {
+            // the holdings may have been read before some of these changes
+            var changes = missed;
+            missed = null;
+            setBusy(false);
+            portfolioChanged(changes.build());
+        }
+    }
+
+    /**
+     * Start loading holdings in the background to {@link #show}, keeping the changes that come in meanwhile to catch
+     * up with afterwards
+     */
+    void load() {
+        if (missed == null) {
+            missed = new PortfolioChange.Builder();
+        }
+        setBusy(true);
+    }
+
+    /**
+     * Stop loading, when it failed
+     */
+    void cancelLoad() {
+        missed = null;
+        setBusy(false);
+    }
+
+    /**
+     * Set how to show holdings again after some were added or removed, for a table of some of them
+     *
+     * @param reload loads the holdings and calls {@link #show}
+     */
+    void setReload(Runnable reload) {
+        this.reload = reload;
+    }
+
+    /**
+     * The version shown
+     *
+     * @return the version, or null while nothing is shown
+     */
+    PortfolioVersion getVersion() {
+        return table.getModel() instanceof HoldingTableModel ? ((HoldingTableModel) table.getModel()).getVersion() : null;
+    }
+
+    @Override
+    public void portfolioChanged(PortfolioChange change) {
+        if (missed != null) {
+            missed.add(change);
+            return;
+        }
+
+        var shown = getVersion();
+        if (shown == null || change.getVersion() == null || !change.getVersion().isAfter(shown)) {
+            return;
+        }
+
+        var model = (HoldingTableModel) table.getModel();
+        if (!change.isStructural()) {
+            model.update(change);
+        } else if (model.getRows() == null) {
+            show(change.getVersion(), null);
+        } else if (reload != null) {
+            reload.run();
+        } else {
+            setStatus("The portfolio changed, the investments shown are out of date");
+        }
+    }
+
+    void setStatus(String status) {
+        label.setText(status);
+    }
+
+    /**
+     * Show or hide the progress bar, which runs while an operation is working in the background
+     *
+     * @param busy whether an operation is running
+     */
+    void setBusy(boolean busy) {
+        progressBar.setVisible(busy);
+        revalidate();
+    }
+
+    private void sortBy(int column) {
+        if (!(table.getModel() instanceof HoldingTableModel)) {
+            return;
+        }
+        var model = (HoldingTableModel) table.getModel();
+
+        ascending = column != sortedColumn || !ascending;
+        sortedColumn = column;
+
+        if (sort != null) {
+            sort.cancel(false);
+        }
+        setBusy(true);
+        var version = model.getVersion();
+        var rows = model.getRows();
+        var sortAscending = ascending;
+        sort = PortfolioTasks.read(() -> HoldingTableModel.sort(version, rows, column, sortAscending), sorted -> {
+            setBusy(false);
+            model.setRows(sorted);
+        }, e -> {
+            setBusy(false);
+            setStatus(String.format("Error while sorting. %n Reason: %s", e.getMessage()));
+        });
+    }
 }
 
 class InputPanel extends JPanel {
@@ -96,6 +566,30 @@ class InputPanel extends JPanel {
     void setText(String s) {
         input.setText(s);
     }
+
+    /**
+     * Run an action whenever the text of the input changes, including changes made through {@link #setText(String)}
+     *
+     * @param action the action
+     */
+    void onTextChange(Runnable action) {
+        input.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                action.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                action.run();
+            }
+        });
+    }
 }
 
 class BuyComponent extends JPanel {
@@ -173,10 +667,10 @@ class BuyPane extends JPanel {
     private BuyComponent buyComponent = new BuyComponent();
     private BuyButtons buyButtons;
     private MessagePane messagePane = new MessagePane();
-    private ePortfolio portfolio;
+    private ConcurrentPortfolio portfolio;
 
 
-    BuyPane(ePortfolio portfolio) {
+    BuyPane(ConcurrentPortfolio portfolio) {
         this.portfolio = portfolio;
 
 
@@ -190,7 +684,8 @@ class BuyPane extends JPanel {
                 var price = buyComponent.getQuantityInput().getText();
                 var investmentType = (String) buyComponent.getInvestmentTypeInput().getSelectedItem();
 
-                try {
+                messagePane.setBusy(true);
+                PortfolioTasks.trade(() -> {
                     var type = investmentType.equalsIgnoreCase("Mutual Fund")
                             ? InvestmentType.MUTUAL_FUND : InvestmentType.STOCK;
                     var priceBigDecimal = new BigDecimal(price);
@@ -204,16 +699,20 @@ class BuyPane extends JPanel {
                             name,
                             priceBigDecimal,
                             Integer.parseInt(quantity));
+                    return null;
+                }, nothing -> {
+                    messagePane.setBusy(false);
                     JOptionPane.showMessageDialog(this, "Success!");
                     messagePane.setText("Success");
-                } catch (Exception e) {
+                }, e -> {
                     var stringWriter = new StringWriter();
                     var printWriter = new PrintWriter(stringWriter);
 
                     e.printStackTrace(printWriter);
+                    messagePane.setBusy(false);
                     messagePane.setText(stringWriter.toString());
                     JOptionPane.showMessageDialog(this, String.format("Error while trying to buy product. %n Reason: %s", e.getMessage()), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
 
 
             } else if (button.getText().equals("Reset")) {
@@ -298,9 +797,9 @@ class SellPane extends JPanel {
     private SellComponent sellComponent = new SellComponent();
     private SellButtons sellButtons;
     private MessagePane messagePane = new MessagePane();
-    private ePortfolio portfolio;
+    private ConcurrentPortfolio portfolio;
 
-    SellPane(ePortfolio portfolio) {
+    SellPane(ConcurrentPortfolio portfolio) {
         this.portfolio = portfolio;
 
 
@@ -308,27 +807,30 @@ class SellPane extends JPanel {
             var button = (JButton) actionEvent.getSource();
 
             if (button.getText().equals("Sell")) {
-                try {
-                    var symbol = sellComponent.getSymbolInput().getText();
-                    var price = sellComponent.getPriceInput().getText();
-                    var quantity = sellComponent.getQuantityInput().getText();
+                var symbol = sellComponent.getSymbolInput().getText();
+                var price = sellComponent.getPriceInput().getText();
+                var quantity = sellComponent.getQuantityInput().getText();
 
+                messagePane.setBusy(true);
+                PortfolioTasks.trade(() -> {
                     if (symbol.isEmpty() || Integer.parseInt(quantity) <= 0 || Double.parseDouble(price) <= 0) {
                         throw new Exception("Invalid inputs");
                     }
 
-                    var profit = portfolio.sell(symbol, Integer.parseInt(quantity), new BigDecimal(price));
-
+                    return portfolio.sell(symbol, Integer.parseInt(quantity), new BigDecimal(price));
+                }, profit -> {
+                    messagePane.setBusy(false);
                     messagePane.setText(String.format("Success profit: %s", profit.toString()));
                     JOptionPane.showMessageDialog(this, "Success!");
-                } catch (Exception e) {
+                }, e -> {
                     var stringWriter = new StringWriter();
                     var printWriter = new PrintWriter(stringWriter);
 
                     e.printStackTrace(printWriter);
+                    messagePane.setBusy(false);
                     messagePane.setText(stringWriter.toString());
                     JOptionPane.showMessageDialog(this, String.format("Error while trying to sell product. %n Reason: %s", e.getMessage()), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             } else if (button.getText().equals("Reset")) {
                 sellComponent.getInputPanels().forEach(inputPanel -> inputPanel.setText(""));
             }
@@ -409,16 +911,19 @@ class UpdateButtons extends JPanel {
     }
 }
 
-class UpdatePane extends JPanel {
+class UpdatePane extends JPanel implements PortfolioListener {
     private UpdateComponent updateComponent = new UpdateComponent();
     private UpdateButtons updateButtons;
     private MessagePane messagePane = new MessagePane();
-    private ePortfolio portfolio;
+    private ConcurrentPortfolio portfolio;
+    // the holdings being stepped through, read afresh after every update
+    private PortfolioVersion version;
     private int index = 0;
 
 
-    UpdatePane(ePortfolio portfolio) {
+    UpdatePane(ConcurrentPortfolio portfolio) {
         this.portfolio = portfolio;
+        this.version = portfolio.getVersion();
 
         updateGUIWithPortfolio(index);
 
@@ -426,27 +931,40 @@ class UpdatePane extends JPanel {
         updateButtons = new UpdateButtons(actionEvent -> {
             var button = (JButton) actionEvent.getSource();
 
+            if (version.size() == 0) {
+                return;
+            }
+
             if (button.getText().equals("Previous")) {
-                index = (index - 1 + portfolio.getSize()) % portfolio.getSize();
+                index = (index - 1 + version.size()) % version.size();
                 updateGUIWithPortfolio(index);
             } else if (button.getText().equals("Next")) {
-                index = (index + 1) % portfolio.getSize();
+                index = (index + 1) % version.size();
                 updateGUIWithPortfolio(index);
             } else if (button.getText().equals("Save")) {
-                try {
-                    var priceStr = updateComponent.getPriceInput().getText();
+                var priceStr = updateComponent.getPriceInput().getText();
+                var symbol = version.getInvestments().get(index).getSymbol();
 
+                messagePane.setBusy(true);
+                PortfolioTasks.trade(() -> {
                     if (Double.parseDouble(priceStr) <= 0) {
                         throw new Exception("Invalid Input");
                     }
 
-                    portfolio.get(index).updatePrice(new BigDecimal(priceStr));
-
+                    portfolio.updatePrice(symbol, new BigDecimal(priceStr));
+                    return portfolio.getVersion();
+                }, updated -> {
+                    if (updated.isAfter(version)) {
+                        version = updated;
+                        index = Math.min(index, Math.max(version.size() - 1, 0));
+                    }
+                    messagePane.setBusy(false);
                     messagePane.setText("Success");
                     JOptionPane.showMessageDialog(this, "Success!");
-                } catch (Exception e) {
+                }, e -> {
+                    messagePane.setBusy(false);
                     JOptionPane.showMessageDialog(this, String.format("Error while trying to update product. %n Reason: %s", e.getMessage()), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
         });
 
@@ -466,18 +984,52 @@ class UpdatePane extends JPanel {
         add(messagePane);
     }
 
+    /**
+     * Follow a change of the portfolio, staying on the holding shown as long as it is held. Its fields are only filled
+     * in again if it changed, so a price being typed for another one isn't lost.
+     *
+     * @param change what changed
+     */
+    @Override
+    public void portfolioChanged(PortfolioChange change) {
+        var changed = change.getVersion();
+        if (changed == null || !changed.isAfter(version)) {
+            return;
+        }
+
+        var shown = version.size() == 0 ? null : version.getInvestments().get(index).getSymbol();
+        version = changed;
+        if (version.size() == 0) {
+            return;
+        }
+
+        if (change.isStructural() && shown != null) {
+            var position = version.indexOf(shown);
+            index = Math.min(position >= 0 ? position : -position - 1, version.size() - 1);
+        } else {
+            index = Math.min(index, version.size() - 1);
+        }
+        if (shown == null || change.contains(shown) || !version.getInvestments().get(index).getSymbol().equals(shown)) {
+            updateGUIWithPortfolio(index);
+        }
+    }
+
     private void updateGUIWithPortfolio(int index) {
-        updateComponent.getSymbolInput().setText(portfolio.get(index).getSymbol());
-        updateComponent.getNameInput().setText(portfolio.get(index).getName());
-        updateComponent.getPriceInput().setText(portfolio.get(index).getPrice().toString());
+        var investment = version.getInvestments().get(index);
+        updateComponent.getSymbolInput().setText(investment.getSymbol());
+        updateComponent.getNameInput().setText(investment.getName());
+        updateComponent.getPriceInput().setText(investment.getPrice().toString());
     }
 }
 
-class GainPane extends JPanel {
+class GainPane extends JPanel implements PortfolioListener {
     private InputPanel totalGainPanel = new InputPanel("Total Gain", false);
-    private MessagePane messagePane = new MessagePane("Individual Gains");
+    private HoldingTable holdingTable = new HoldingTable("Individual Gains");
 
-    GainPane(String totalGain, String individualGains) {
+    /**
+     * Create the pane while the gains are still being calculated
+     */
+    GainPane() {
         var upperPanel = new JPanel();
         var upperPanelLayout = new BoxLayout(upperPanel, BoxLayout.Y_AXIS);
 
@@ -490,12 +1042,50 @@ class GainPane extends JPanel {
         var layout = new BoxLayout(this, BoxLayout.Y_AXIS);
         setLayout(layout);
 
+        holdingTable.load();
 
+        add(upperPanel);
+        add(holdingTable);
+    }
+
+    /**
+     * Show the calculated gains
+     *
+     * @param totalGain the gain of the whole portfolio
+     * @param version   the version it was calculated on, whose holdings are listed with their gains
+     */
+    void showGains(String totalGain, PortfolioVersion version) {
         totalGainPanel.setText(totalGain);
-        messagePane.setText(individualGains);
+        holdingTable.show(version, null);
+        if (holdingTable.getVersion() != version) {
+            // trades came in while the gains were calculated
+            totalGainPanel.setText(holdingTable.getVersion().calculateGain());
+        }
+    }
 
-        add(upperPanel);
-        add(messagePane);
+    /**
+     * Show why the gains could not be calculated
+     *
+     * @param message the reason
+     */
+    void showError(String message) {
+        holdingTable.cancelLoad();
+        holdingTable.setStatus(message);
+    }
+
+    /**
+     * Follow a change of the portfolio. The total is read off the totals of the new version, so it takes the same time
+     * however many holdings changed.
+     *
+     * @param change what changed
+     */
+    @Override
+    public void portfolioChanged(PortfolioChange change) {
+        var shown = holdingTable.getVersion();
+        holdingTable.portfolioChanged(change);
+        if (shown != null && holdingTable.getVersion() != shown) {
+            totalGainPanel.setText(holdingTable.getVersion().calculateGain());
+        }
     }
 }
 
@@ -564,14 +1154,38 @@ class QueryButtons extends JPanel {
     }
 }
 
-class QueryPane extends JPanel {
+class QueryPane extends JPanel implements PortfolioListener {
+    // suggest only once typing pauses for this many milliseconds, rather than on every keystroke
+    private static final int SUGGESTION_DELAY = 150;
+    private static final int SUGGESTION_LIMIT = 20;
+
     private QueryComponent queryComponent = new QueryComponent();
     private QueryButtons queryButtons;
-    private MessagePane messagePane = new MessagePane("Search Results");
-    private ePortfolio portfolio;
+    private MessagePane suggestionPane = new MessagePane("Suggestions");
+    private HoldingTable resultTable = new HoldingTable("Search Results");
+    private ConcurrentPortfolio portfolio;
 
-    QueryPane(ePortfolio portfolio) {
+    private InputPanel typedInput;
+    private Timer suggestionTimer = new Timer(SUGGESTION_DELAY, actionEvent -> suggest());
+
+    // the search and the suggestion running in the background, each cancelled as soon as a newer one supersedes it
+    private SwingWorker<Pair<PortfolioVersion, int[]>, Void> search;
+    private SwingWorker<List<String>, Void> suggestion;
+    // runs the last search again, null until there was one
+    private Runnable lastSearch;
+
+    QueryPane(ConcurrentPortfolio portfolio) {
         this.portfolio = portfolio;
+        // holdings added or removed may change what matches
+        resultTable.setReload(() -> lastSearch.run());
+
+        suggestionTimer.setRepeats(false);
+        for (var input : List.of(queryComponent.getSymbolInput(), queryComponent.getNameInput())) {
+            input.onTextChange(() -> {
+                typedInput = input;
+                suggestionTimer.restart();
+            });
+        }
 
         var pane = new JPanel();
         var paneLayout = new BoxLayout(pane, BoxLayout.LINE_AXIS);
@@ -588,9 +1202,9 @@ class QueryPane extends JPanel {
                         queryComponent.getLowPriceInput().getText(),
                         queryComponent.getHighPriceInput().getText());
 
-                var results = portfolio.query(symbol, name, price);
-
-                messagePane.setText(String.join("%n", results));
+                // the search supersedes a suggestion still waiting for typing to pause
+                suggestionTimer.stop();
+                search(symbol, name, price);
             } else if (button.getText().equals("Reset")) {
                 queryComponent.getInputPanels().forEach(inputPanel -> inputPanel.setText(""));
             }
@@ -604,7 +1218,65 @@ class QueryPane extends JPanel {
         var layout = new BoxLayout(this, BoxLayout.Y_AXIS);
         setLayout(layout);
         add(pane);
-        add(messagePane);
+        add(suggestionPane);
+        add(resultTable);
+    }
+
+    /**
+     * Show what the symbol or name typed last could complete to
+     */
+    private void suggest() {
+        var text = typedInput.getText();
+        if (text.isBlank()) {
+            return;
+        }
+
+        if (suggestion != null) {
+            suggestion.cancel(false);
+        }
+
+        suggestionPane.setBusy(true);
+        suggestion = PortfolioTasks.read(() -> portfolio.suggest(text, SUGGESTION_LIMIT), suggestions -> {
+            suggestionPane.setBusy(false);
+            suggestionPane.setText(String.join(System.lineSeparator(), suggestions));
+        }, e -> {
+            suggestionPane.setBusy(false);
+            suggestionPane.setText(String.format("Error while suggesting. %n Reason: %s", e.getMessage()));
+        });
+    }
+
+    /**
+     * Follow a change of the portfolio: results whose values changed are repainted, and the search runs again if
+     * holdings were added or removed
+     *
+     * @param change what changed
+     */
+    @Override
+    public void portfolioChanged(PortfolioChange change) {
+        resultTable.portfolioChanged(change);
+    }
+
+    /**
+     * Search in the background and show the results, dropping the search still running. Only where the matches are is
+     * looked up; the table reads the ones it shows from the version searched.
+     *
+     * @param symbol the symbol query
+     * @param name   the name query
+     * @param price  the price range
+     */
+    private void search(String symbol, String name, String price) {
+        if (search != null) {
+            search.cancel(false);
+        }
+
+        lastSearch = () -> search(symbol, name, price);
+        resultTable.load();
+        search = PortfolioTasks.read(() -> portfolio.select(symbol, name, price), results -> {
+            resultTable.show(results.getFirst(), results.getSecond());
+        }, e -> {
+            resultTable.cancelLoad();
+            resultTable.setStatus(String.format("Error while searching. %n Reason: %s", e.getMessage()));
+        });
     }
 }
 
@@ -619,7 +1291,7 @@ public class Main extends JFrame {
     private JMenuItem searchMenuItem = new JMenuItem("Search");
     private JMenuItem quitMenuItem = new JMenuItem("Quit");
 
-    private ePortfolio portfolio = new ePortfolio();
+    private ConcurrentPortfolio portfolio = new ConcurrentPortfolio();
 
     private JPanel currentPane = new GreetingPane();
 
@@ -627,6 +1299,13 @@ public class Main extends JFrame {
     public Main() {
         setTitle("ePortfolio");
 
+        // the pane on show follows the changes of the portfolio, at most once per turn of the event dispatch thread
+        portfolio.addPortfolioListener(new CoalescingPortfolioListener(change -> {
+            if (currentPane instanceof PortfolioListener) {
+                ((PortfolioListener) currentPane).portfolioChanged(change);
+            }
+        }, SwingUtilities::invokeLater));
+
         menu.add(buyMenuItem);
         menu.add(sellMenuItem);
         menu.add(updateMenuItem);
@@ -659,21 +1338,23 @@ public class Main extends JFrame {
 
 
         getGainMenuItem.addActionListener(actionEvent -> {
-            var individualGains = portfolio.getInvestments()
-                    .stream()
-                    .map(investment -> String.format("%s : %s", investment.getName(), investment.getGain().toString()))
-                    .collect(Collectors.toList());
-
+            var gainPane = new GainPane();
 
             remove(currentPane);
-            currentPane = new GainPane(portfolio.calculateGain(), String.join(System.lineSeparator(), individualGains));
+            currentPane = gainPane;
             add(currentPane);
             validate();
             repaint();
+
+            PortfolioTasks.read(() -> {
+                // the total and the individual gains come from the same version, so they always add up
+                var version = portfolio.getVersion();
+                return new Pair<>(version.calculateGain(), version);
+            }, gains -> gainPane.showGains(gains.getFirst(), gains.getSecond()), e -> gainPane.showError(e.toString()));
         });
 
         updateMenuItem.addActionListener(actionEvent -> {
-            if (!portfolio.isEmpty()) {
+            if (portfolio.getVersion().size() != 0) {
                 remove(currentPane);
                 currentPane = new UpdatePane(portfolio);
                 add(currentPane);
@@ -0,0 +1,144 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic on amounts of money held as a long number of cents. Prices and book values are kept this way inside the
+ * portfolio, so trades add and multiply plain longs instead of allocating decimals, and {@link BigDecimal} is only used
+ * where amounts come in or go out. Results that need rounding are rounded half to even, like the decimals were, and
+ * results that don't fit into a long throw {@link ArithmeticException} rather than wrap around.
+ */
+final class Money {
+    static final int SCALE = 2;
+
+    private static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Convert a decimal amount to cents, rounding half to even
+     *
+     * @param amount the amount
+     * @return the amount in cents
+     * @throws ArithmeticException if the amount is too large
+     */
+    static long of(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE, RoundingMode.HALF_EVEN).scaleByPowerOfTen(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Amount " + amount + " is out of range");
+        }
+    }
+
+    /**
+     * Convert cents to a decimal amount with two decimal places
+     *
+     * @param cents the amount in cents
+     * @return the amount
+     */
+    static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * Calculate the cost of a quantity at a price that may have more than two decimal places, rounding only the result
+     *
+     * @param price    the price
+     * @param quantity the quantity
+     * @return price * quantity in cents
+     * @throws ArithmeticException if the result is too large
+     */
+    static long times(BigDecimal price, int quantity) {
+        if (price.scale() <= SCALE && price.precision() <= 16) {
+            // exact in cents already, and up to 18 digits of cents always fit
+            return Math.multiplyExact(of(price), quantity);
+        }
+        return of(price.multiply(BigDecimal.valueOf(quantity)));
+    }
+
+    /**
+     * Calculate a share of an amount, rounding half to even
+     *
+     * @param cents the amount in cents
+     * @param part  the share
+     * @param whole what the share is out of, positive
+     * @return cents * part / whole
+     * @throws ArithmeticException if the result is too large
+     */
+    static long proportion(long cents, long part, long whole) {
+        var high = Math.multiplyHigh(cents, part);
+        var low = cents * part;
+
+        // the full product only fits into a long if its upper half is just the sign of its lower half
+        if (high != low >> (Long.SIZE - 1)) {
+            var exact = BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(part))
+                    .divide(BigDecimal.valueOf(whole), 0, RoundingMode.HALF_EVEN);
+            try {
+                return exact.longValueExact();
+            } catch (ArithmeticException e) {
+                throw new ArithmeticException("Amount " + exact + " cents is out of range");
+            }
+        }
+        return divide(low, whole);
+    }
+
+    /**
+     * Divide, rounding half to even
+     *
+     * @param dividend the dividend
+     * @param divisor  the divisor, positive
+     * @return the rounded quotient
+     */
+    static long divide(long dividend, long divisor) {
+        var quotient = dividend / divisor;
+        var remainder = Math.abs(dividend % divisor);
+        var comp = Long.compare(remainder, divisor - remainder);
+
+        if (comp > 0 || comp == 0 && (quotient & 1) != 0) {
+            quotient += dividend < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+
+    /**
+     * Convert a bound of a price range to cents. Prices are whole cents, so a range keeps the same prices when its
+     * bounds are rounded inwards, and bounds beyond what a long holds are clamped.
+     *
+     * @param bound    the bound
+     * @param rounding {@link RoundingMode#CEILING} for a lower bound, {@link RoundingMode#FLOOR} for an upper bound
+     * @return the bound in cents
+     */
+    static long bound(BigDecimal bound, RoundingMode rounding) {
+        var cents = bound.setScale(SCALE, rounding).scaleByPowerOfTen(SCALE);
+        if (cents.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (cents.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return cents.longValue();
+    }
+
+    /**
+     * Append an amount the way {@link BigDecimal#toString()} prints it with two decimal places
+     *
+     * @param builder the builder
+     * @param cents   the amount in cents
+     * @return the builder
+     */
+    static StringBuilder appendTo(StringBuilder builder, long cents) {
+        if (cents < 0) {
+            builder.append('-');
+        }
+
+        var units = Math.abs(cents / CENTS_PER_UNIT);
+        var fraction = Math.abs(cents % CENTS_PER_UNIT);
+        builder.append(units).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+}
@@ -3,7 +3,8 @@ package com.internal_compiler_error.Portfolio;
 import java.math.BigDecimal;
 
 public class MutualFund extends Investment {
-    private final BigDecimal REDEMPTION_FEE = new BigDecimal("45");
+    // 45 in cents
+    private static final long REDEMPTION_FEE = 4500;
 
 
     @Override
@@ -45,39 +46,51 @@ public class MutualFund extends Investment {
     }
 
     /**
-     * Dummy constructor only used for binary search. The returned object is not intended for actual use
+     * Constructor for mutual fund from amounts already in cents
      *
-     * @param symbol the symbol of the MutualFund
+     * @param symbol    the symbol of the investment
+     * @param name      the name of the investment
+     * @param quantity  the quantity held
+     * @param price     the price in cents
+     * @param bookValue the book value in cents
      */
-    public MutualFund(String symbol) {
-        setSymbol(symbol);
+    MutualFund(String symbol, String name, int quantity, long price, long bookValue) {
+        super(symbol, name, quantity, price, bookValue);
         setInvestmentType(InvestmentType.MUTUAL_FUND);
     }
 
-
     /**
-     * Calculate the current gain if all is sold at the current price.
-     * Formula: bookValue - price * quantity - 45
+     * Copy constructor
      *
-     * @return the total gain
+     * @param other the mutual fund to copy
      */
+    MutualFund(MutualFund other) {
+        super(other);
+    }
+
     @Override
-    BigDecimal getGain() {
-        var gainWithoutRedemptionFee = super.getGain();
-        return gainWithoutRedemptionFee.subtract(REDEMPTION_FEE);
+    Investment copy() {
+        return new MutualFund(this);
     }
 
     /**
-     * Sell some or all investment products. The selling price will become the new price.
+     * Dummy constructor only used for binary search. The returned object is not intended for actual use
+     *
+     * @param symbol the symbol of the MutualFund
+     */
+    public MutualFund(String symbol) {
+        setSymbol(symbol);
+        setInvestmentType(InvestmentType.MUTUAL_FUND);
+    }
+
+
+    /**
+     * The redemption fee charged on selling, which the gain of a sale and the current gain take off
      *
-     * @param quantity the quantity to be sold
-     * @param price    the selling price
-     * @return The gain from the trade
-     * @throws IllegalQuantityException if the quantity is negative or exceeds the quantity possessed
+     * @return 45 in cents
      */
     @Override
-    BigDecimal sell(int quantity, BigDecimal price) throws IllegalQuantityException {
-        var profitWithoutRedemptionFee = super.sell(quantity, price);
-        return profitWithoutRedemptionFee.subtract(REDEMPTION_FEE);
+    long getFeeInCents() {
+        return REDEMPTION_FEE;
     }
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index from lower case name tokens to the holdings whose name contains them. Holdings are identified by their
+ * holding id, which stays the same for as long as the holding is in the portfolio, so adding or removing a holding only
+ * touches the postings of its own tokens. Postings are compressed bitmaps, so a multi-token search is a handful of word
+ * wise intersections rather than set operations on boxed integers. The tokens themselves are also kept in a prefix trie
+ * for completing partly typed words.
+ * <p>
+ * Every distinct token is held once in a {@link StringDictionary}, and its postings are found by its id in an array.
+ * Names are split and lower cased in place while they are looked up there, so indexing a name whose words are already
+ * known, as most are, creates no strings at all.
+ */
+final class NameIndex {
+    private final StringDictionary tokenIds = new StringDictionary();
+    // the postings of each token id, null for free ids
+    private HoldingBitmap[] postings = new HoldingBitmap[16];
+    private final PrefixTrie dictionary = new PrefixTrie();
+
+    /**
+     * Receives the tokens of a name as ranges of it
+     */
+    @FunctionalInterface
+    interface TokenAction {
+        /**
+         * @param from the first character of the token
+         * @param to   one past the last character of the token
+         */
+        void accept(int from, int to);
+    }
+
+    /**
+     * Walk the tokens of a name, the runs between spaces, without cutting them out. The runs are those that splitting
+     * on {@code "[ ]+"} gives: an empty token for leading spaces, none for trailing ones, and a single empty token for
+     * an empty name.
+     *
+     * @param name   the name
+     * @param action gets the range of each token, in order
+     */
+    static void forEachToken(String name, TokenAction action) {
+        var end = name.length();
+        if (name.indexOf(' ') < 0) {
+            action.accept(0, end);
+            return;
+        }
+        while (end > 0 && name.charAt(end - 1) == ' ') {
+            --end;
+        }
+        if (end == 0) {
+            return;
+        }
+
+        var from = 0;
+        if (name.charAt(0) == ' ') {
+            action.accept(0, 0);
+            while (name.charAt(from) == ' ') {
+                ++from;
+            }
+        }
+        while (from < end) {
+            var to = name.indexOf(' ', from);
+            if (to < 0 || to > end) {
+                to = end;
+            }
+            action.accept(from, to);
+            from = to;
+            while (from < end && name.charAt(from) == ' ') {
+                ++from;
+            }
+        }
+    }
+
+    /**
+     * Split a name or a name query into index tokens
+     *
+     * @param name the name
+     * @return the lower case tokens
+     */
+    static String[] tokens(String name) {
+        var tokens = new ArrayList<String>();
+        forEachToken(name, (from, to) -> tokens.add(name.substring(from, to).toLowerCase(Locale.ROOT)));
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * Index a holding under every token of its name
+     *
+     * @param holdingId the holding
+     * @param name      the name of the holding
+     */
+    void add(int holdingId, String name) {
+        forEachToken(name, (from, to) -> postingsOf(name, from, to).add(holdingId));
+    }
+
+    /**
+     * Remove a holding from the postings of every token of its name
+     *
+     * @param holdingId the holding
+     * @param name      the name the holding was indexed under
+     */
+    void remove(int holdingId, String name) {
+        forEachToken(name, (from, to) -> {
+            var tokenId = tokenIds.findLowerCase(name, from, to);
+            if (tokenId >= 0) {
+                var holdings = postings[tokenId];
+                holdings.remove(holdingId);
+                if (holdings.isEmpty()) {
+                    dictionary.remove(tokenIds.get(tokenId));
+                    postings[tokenId] = null;
+                    tokenIds.release(tokenId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Add prebuilt postings of a token, used when loading in bulk
+     *
+     * @param token      the lower case token
+     * @param holdingIds the holdings whose name contains the token
+     */
+    void addAll(String token, Collection<Integer> holdingIds) {
+        var bitmap = postingsOf(token, 0, token.length());
+        for (var holdingId : holdingIds) {
+            bitmap.add(holdingId);
+        }
+    }
+
+    /**
+     * Add prebuilt postings of a token, used when loading in bulk
+     *
+     * @param token      the lower case token
+     * @param holdingIds the holdings whose name contains the token, preferably in increasing order
+     * @param count      the number of holdings to take from the array
+     */
+    void addAll(String token, int[] holdingIds, int count) {
+        var bitmap = postingsOf(token, 0, token.length());
+        for (var i = 0; i < count; ++i) {
+            bitmap.add(holdingIds[i]);
+        }
+    }
+
+    /**
+     * The holdings whose name contains every token of a name query, the same as {@code matchAll(tokens(query))} but
+     * without splitting the query into strings
+     *
+     * @param query the name query, in any case
+     * @return the holding ids, which may be the postings of the index itself and must not be modified
+     */
+    HoldingBitmap matchAll(String query) {
+        var matches = new ArrayList<HoldingBitmap>();
+        var missing = new boolean[1];
+        forEachToken(query, (from, to) -> {
+            var tokenId = tokenIds.findLowerCase(query, from, to);
+            if (tokenId < 0) {
+                missing[0] = true;
+            } else {
+                matches.add(postings[tokenId]);
+            }
+        });
+        if (missing[0] || matches.isEmpty()) {
+            return new HoldingBitmap();
+        }
+        return intersect(matches.toArray(new HoldingBitmap[0]));
+    }
+
+    /**
+     * The holdings whose name contains every one of the given tokens. The postings are intersected from the shortest
+     * up, so the work is bounded by the rarest token.
+     *
+     * @param tokens the lower case tokens, at least one
+     * @return the holding ids, which may be the postings of the index itself and must not be modified
+     */
+    HoldingBitmap matchAll(String[] tokens) {
+        var matches = new HoldingBitmap[tokens.length];
+        for (var i = 0; i < tokens.length; ++i) {
+            var tokenId = tokenIds.find(tokens[i]);
+            if (tokenId < 0) {
+                return new HoldingBitmap();
+            }
+            matches[i] = postings[tokenId];
+        }
+        return intersect(matches);
+    }
+
+    private static HoldingBitmap intersect(HoldingBitmap[] matches) {
+        Arrays.sort(matches, Comparator.comparingInt(HoldingBitmap::cardinality));
+
+        var result = matches[0];
+        for (var i = 1; i < matches.length && !result.isEmpty(); ++i) {
+            result = HoldingBitmap.and(result, matches[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Walk the tokens that start with a prefix in lexicographic order, together with their postings, until the action
+     * asks to stop
+     *
+     * @param prefix the lower case prefix
+     * @param action gets the postings of each token, which must not be modified, and returns whether to go on
+     */
+    void forEachCompletion(String prefix, Predicate<HoldingBitmap> action) {
+        dictionary.forEachWithPrefix(prefix, token -> action.test(postings[tokenIds.find(token)]));
+    }
+
+    /**
+     * The number of distinct tokens
+     *
+     * @return the number of tokens
+     */
+    int size() {
+        return tokenIds.size();
+    }
+
+    /**
+     * Remove every posting
+     */
+    void clear() {
+        tokenIds.clear();
+        postings = new HoldingBitmap[16];
+        dictionary.clear();
+    }
+
+    /**
+     * The postings of a range of a text in lower case, created empty if the token is new
+     */
+    private HoldingBitmap postingsOf(String text, int from, int to) {
+        var tokenId = tokenIds.findLowerCase(text, from, to);
+        if (tokenId >= 0) {
+            return postings[tokenId];
+        }
+
+        tokenId = tokenIds.acquireLowerCase(text, from, to);
+        if (tokenId >= postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(tokenId + 1, postings.length * 2));
+        }
+        var holdings = new HoldingBitmap();
+        postings[tokenId] = holdings;
+        dictionary.add(tokenIds.get(tokenId));
+        return holdings;
+    }
+}
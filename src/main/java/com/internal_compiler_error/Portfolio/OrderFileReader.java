@@ -0,0 +1,81 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads order files, one order per line in one of the forms
+ * <pre>
+ * BUY,STOCK,symbol,name,quantity,price
+ * BUY,MUTUAL FUND,symbol,name,quantity,price
+ * SELL,symbol,quantity,price
+ * </pre>
+ * Whitespace around the fields and blank lines are ignored.
+ */
+final class OrderFileReader {
+    private static final int BUY_FIELDS = 6;
+    private static final int SELL_FIELDS = 4;
+
+    private final Charset charset;
+
+    /**
+     * @param charset the charset of the file
+     */
+    OrderFileReader(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Read all the orders of a file, in file order
+     *
+     * @param input the order file
+     * @return the orders
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed
+     */
+    List<TradeOrder> read(File input) throws IOException, InvalidInputFileFormatException {
+        var orders = new ArrayList<TradeOrder>();
+
+        try (var reader = Files.newBufferedReader(input.toPath(), charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    orders.add(parse(line.split(",", -1)));
+                }
+            }
+        }
+        return orders;
+    }
+
+    private static TradeOrder parse(String[] fields) throws InvalidInputFileFormatException {
+        for (var i = 0; i < fields.length; ++i) {
+            fields[i] = fields[i].trim();
+        }
+
+        try {
+            if (fields[0].equals("BUY") && fields.length == BUY_FIELDS && !fields[2].isEmpty()) {
+                InvestmentType type;
+                if (fields[1].equals("STOCK")) {
+                    type = InvestmentType.STOCK;
+                } else if (fields[1].equals("MUTUAL FUND")) {
+                    type = InvestmentType.MUTUAL_FUND;
+                } else {
+                    throw new InvalidInputFileFormatException();
+                }
+                return TradeOrder.buy(type, fields[2], fields[3], new BigDecimal(fields[5]), Integer.parseInt(fields[4]));
+            }
+
+            if (fields[0].equals("SELL") && fields.length == SELL_FIELDS && !fields[1].isEmpty()) {
+                return TradeOrder.sell(fields[1], Integer.parseInt(fields[2]), new BigDecimal(fields[3]));
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidInputFileFormatException();
+        }
+        throw new InvalidInputFileFormatException();
+    }
+}
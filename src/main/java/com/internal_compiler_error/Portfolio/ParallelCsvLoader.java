@@ -0,0 +1,307 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Loads large CSV files on all cores. The file is split into chunks at line boundaries, each chunk is parsed, sorted
+ * by symbol and indexed by name token on its own, and the sorted chunks are then k-way merged into one symbol-ordered
+ * list. The result is the same as loading the file sequentially.
+ */
+final class ParallelCsvLoader {
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 28;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int BOUNDARY_WINDOW = 1 << 12;
+
+    private static final Comparator<Investment> BY_SYMBOL = (lhs, rhs) -> lhs.getSymbol().compareToIgnoreCase(rhs.getSymbol());
+
+    private final Charset charset;
+    private final ForkJoinPool pool;
+
+    /**
+     * One slice of the file (or the investments already in the portfolio) and everything derived from it
+     */
+    private static final class Chunk {
+        private final long start;
+        private final long end;
+        private List<Investment> investments = new ArrayList<>();
+        private final Map<String, List<Integer>> index = new HashMap<>();
+        private boolean blankLineSeen = false;
+        private boolean contentSeen = false;
+        private Exception error;
+
+        // position of each of the chunk's investments in the merged list
+        private int[] positions;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * @param charset the charset of the file, must be supported by {@link CsvInvestmentReader}
+     * @param pool    the pool to parse on
+     */
+    ParallelCsvLoader(Charset charset, ForkJoinPool pool) {
+        this.charset = charset;
+        this.pool = pool;
+    }
+
+    /**
+     * Load a file into an existing list of investments and its name index. On success the list is sorted by symbol and
+     * the index rebuilt. If a line is malformed, the investments before it are appended unsorted, like the sequential
+     * loader does, and the index is left alone.
+     *
+     * @param input            the file containing the investments
+     * @param investments      the investments already in the portfolio, appended to
+     * @param investmentFinder the name index, replaced on success by one keyed by the position in the sorted list
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed
+     */
+    void load(File input, List<Investment> investments, NameIndex investmentFinder) throws IOException, InvalidInputFileFormatException {
+        List<Chunk> chunks;
+
+        try (var channel = new FileInputStream(input).getChannel()) {
+            chunks = split(channel);
+            pool.invoke(new ForEachChunk(chunks, 0, chunks.size(), chunk -> parse(channel, chunk)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        failOnFirstError(chunks, investments);
+
+        // the investments already present go first, so ties keep their order like a stable sort would
+        var existing = new Chunk(0, 0);
+        existing.investments = new ArrayList<>(investments);
+
+        var runs = new ArrayList<Chunk>(chunks.size() + 1);
+        runs.add(existing);
+        runs.addAll(chunks);
+
+        pool.invoke(new ForEachChunk(runs, 0, runs.size(), chunk -> {
+            chunk.investments.sort(BY_SYMBOL);
+            indexChunk(chunk);
+        }));
+
+        var merged = merge(runs);
+
+        pool.invoke(new ForEachChunk(runs, 0, runs.size(), chunk -> {
+            for (var postings : chunk.index.values()) {
+                postings.replaceAll(position -> chunk.positions[position]);
+            }
+        }));
+
+        investments.clear();
+        investments.addAll(merged);
+
+        investmentFinder.clear();
+        for (var run : runs) {
+            for (var entry : run.index.entrySet()) {
+                investmentFinder.addAll(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Cut the file into chunks that each start right after a line break
+     */
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        var size = channel.size();
+        var chunkSize = Math.min(MAX_CHUNK_SIZE,
+                Math.max(MIN_CHUNK_SIZE, size / ((long) pool.getParallelism() * CHUNKS_PER_THREAD)));
+
+        var chunks = new ArrayList<Chunk>();
+        var window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+        long start = 0;
+
+        while (start < size) {
+            var end = start + chunkSize >= size ? size : lineBoundaryAfter(channel, start + chunkSize, window);
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the first position at or after offset that starts a new line, or the end of the file
+     */
+    private static long lineBoundaryAfter(FileChannel channel, long offset, ByteBuffer window) throws IOException {
+        var position = offset;
+
+        while (true) {
+            window.clear();
+            var read = channel.read(window, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+
+            var bytes = window.array();
+            for (var i = 0; i < read; ++i) {
+                if (bytes[i] == '\n') {
+                    return position + i + 1;
+                }
+                if (bytes[i] == '\r') {
+                    if (i + 1 < read) {
+                        return position + i + (bytes[i + 1] == '\n' ? 2 : 1);
+                    }
+                    // the \r is the last byte of the window, look at what follows it
+                    var next = ByteBuffer.allocate(1);
+                    var nextRead = channel.read(next, position + i + 1);
+                    return position + i + (nextRead > 0 && next.get(0) == '\n' ? 2 : 1);
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Report the error the sequential loader would have hit first, after appending what it would have read up to it
+     */
+    private static void failOnFirstError(List<Chunk> chunks, List<Investment> investments) throws InvalidInputFileFormatException {
+        var failed = -1;
+        Exception error = null;
+        var blankLineSeen = false;
+
+        for (var i = 0; i < chunks.size() && failed < 0; ++i) {
+            var chunk = chunks.get(i);
+
+            if (blankLineSeen && chunk.contentSeen) {
+                // a blank line in an earlier chunk is followed by content
+                failed = i;
+                error = new InvalidInputFileFormatException();
+                chunk.investments.clear();
+            } else if (chunk.error != null) {
+                failed = i;
+                error = chunk.error;
+            }
+            blankLineSeen |= chunk.blankLineSeen;
+        }
+
+        if (failed < 0) {
+            return;
+        }
+
+        for (var i = 0; i <= failed; ++i) {
+            investments.addAll(chunks.get(i).investments);
+        }
+
+        if (error instanceof InvalidInputFileFormatException) {
+            throw (InvalidInputFileFormatException) error;
+        }
+        throw (RuntimeException) error;
+    }
+
+    /**
+     * Merge the symbol-sorted runs into one list, recording where each investment ended up. Ties are broken by run
+     * order so the merge is stable.
+     */
+    private static List<Investment> merge(List<Chunk> runs) {
+        var total = 0;
+        for (var run : runs) {
+            total += run.investments.size();
+            run.positions = new int[run.investments.size()];
+        }
+
+        // each heap entry is {run, offset into the run}
+        var heap = new PriorityQueue<int[]>(Math.max(1, runs.size()), (lhs, rhs) -> {
+            var comp = BY_SYMBOL.compare(runs.get(lhs[0]).investments.get(lhs[1]), runs.get(rhs[0]).investments.get(rhs[1]));
+            return comp != 0 ? comp : Integer.compare(lhs[0], rhs[0]);
+        });
+
+        for (var i = 0; i < runs.size(); ++i) {
+            if (!runs.get(i).investments.isEmpty()) {
+                heap.add(new int[]{i, 0});
+            }
+        }
+
+        var merged = new ArrayList<Investment>(total);
+        while (!heap.isEmpty()) {
+            var cursor = heap.poll();
+            var run = runs.get(cursor[0]);
+
+            run.positions[cursor[1]] = merged.size();
+            merged.add(run.investments.get(cursor[1]));
+
+            if (++cursor[1] < run.investments.size()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Build the name index of a sorted chunk, with positions relative to the chunk
+     */
+    private static void indexChunk(Chunk chunk) {
+        var index = 0;
+        for (var investment : chunk.investments) {
+            for (var token : NameIndex.tokens(investment.getName())) {
+                chunk.index.computeIfAbsent(token, key -> new ArrayList<>()).add(index);
+            }
+            ++index;
+        }
+    }
+
+    /**
+     * Parse the lines of a chunk in file order, recording rather than throwing errors so that the first one in file
+     * order can be reported
+     */
+    private void parse(FileChannel channel, Chunk chunk) {
+        var reader = new CsvInvestmentReader(charset);
+        try {
+            var bytes = new byte[(int) (chunk.end - chunk.start)];
+            var buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, chunk.start + buffer.position()) < 0) {
+                    break;
+                }
+            }
+
+            reader.read(bytes, 0, buffer.position(), chunk.investments);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InvalidInputFileFormatException | RuntimeException e) {
+            chunk.error = e;
+        }
+        chunk.blankLineSeen = reader.isBlankLineSeen();
+        chunk.contentSeen = reader.isContentSeen() || chunk.error != null;
+    }
+
+    /**
+     * Applies an action to a range of chunks in parallel
+     */
+    private static final class ForEachChunk extends RecursiveAction {
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final Consumer<Chunk> action;
+
+        ForEachChunk(List<Chunk> chunks, int from, int to, Consumer<Chunk> action) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                var middle = (from + to) >>> 1;
+                invokeAll(new ForEachChunk(chunks, from, middle, action), new ForEachChunk(chunks, middle, to, action));
+            } else if (to > from) {
+                action.accept(chunks.get(from));
+            }
+        }
+    }
+}
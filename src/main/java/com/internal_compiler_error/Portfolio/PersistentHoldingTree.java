@@ -0,0 +1,387 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Immutable balanced search tree of holdings in symbol order, the storage behind {@link PortfolioVersion}. Every row is
+ * a node holding the values of the holding when it was put in, so nothing a trade does later shows through. Putting or
+ * removing a holding copies only the nodes on the path to it and shares everything else with the tree it was made
+ * from, so keeping every version alive costs a few dozen nodes per change rather than a copy of the portfolio.
+ * <p>
+ * Rows are ordered by symbol, case-insensitive, then by holding id, which keeps the order of the symbol ordered list
+ * for a file that lists a symbol more than once. Each node counts the rows below it, so a row is found by position
+ * in logarithmic time. Each node also keeps the start of its symbol packed into a long, which settles most comparisons
+ * on the way down without following the symbol string, and the two memory loads that takes, at every level.
+ */
+final class PersistentHoldingTree {
+    private static final InvestmentType[] TYPES = InvestmentType.values();
+
+    private static final Comparator<Investment> ROW_ORDER = Comparator
+            .comparing(Investment::getSymbol, String::compareToIgnoreCase)
+            .thenComparingInt(Investment::getHoldingId);
+
+    // the number of symbol characters packed into a key, a byte each
+    private static final int KEY_LENGTH = 7;
+    // the key of a symbol whose start doesn't pack, which always falls back to comparing the symbols
+    private static final long NO_KEY = -1;
+
+    private final Node root;
+
+    /**
+     * A row, with the subtree below it
+     */
+    static final class Node {
+        final byte type;
+        final long key;
+        final String symbol;
+        final String name;
+        final int holdingId;
+        final int quantity;
+        final long price;
+        final long bookValue;
+
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        private Node(Investment investment, Node left, Node right) {
+            this(investment, key(investment.getSymbol()), left, right);
+        }
+
+        private Node(Investment investment, long key, Node left, Node right) {
+            this((byte) investment.getInvestmentType().ordinal(), key, investment.getSymbol(), investment.getName(),
+                    investment.getHoldingId(), investment.getQuantity(), investment.getPriceInCents(),
+                    investment.getBookValueInCents(), left, right);
+        }
+
+        private Node(byte type, long key, String symbol, String name, int holdingId, int quantity, long price,
+                     long bookValue, Node left, Node right) {
+            this.type = type;
+            this.key = key;
+            this.symbol = symbol;
+            this.name = name;
+            this.holdingId = holdingId;
+            this.quantity = quantity;
+            this.price = price;
+            this.bookValue = bookValue;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        /**
+         * The same row over other subtrees
+         */
+        private Node with(Node left, Node right) {
+            return new Node(type, key, symbol, name, holdingId, quantity, price, bookValue, left, right);
+        }
+
+        InvestmentType type() {
+            return TYPES[type];
+        }
+
+        /**
+         * Whether two rows hold equal investments, see {@link Investment#equals(Object)}
+         */
+        boolean sameAs(Node other) {
+            return type == other.type && quantity == other.quantity && price == other.price
+                    && bookValue == other.bookValue && symbol.equals(other.symbol) && name.equals(other.name);
+        }
+
+        /**
+         * Create an investment holding the values of the row
+         *
+         * @return a new investment, changing it leaves the row as it is
+         */
+        Investment toInvestment() {
+            if (type() == InvestmentType.STOCK) {
+                return new Stock(symbol, name, quantity, price, bookValue);
+            }
+            return new MutualFund(symbol, name, quantity, price, bookValue);
+        }
+    }
+
+    private PersistentHoldingTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Build a tree out of holdings in linear time, plus the time to sort them if they aren't in order yet
+     *
+     * @param holdings the holdings, entries that are null are skipped
+     * @return the tree
+     */
+    static PersistentHoldingTree of(List<Investment> holdings) {
+        var rows = new ArrayList<Investment>(holdings.size());
+        for (var investment : holdings) {
+            if (investment != null) {
+                rows.add(investment);
+            }
+        }
+        rows.sort(ROW_ORDER);
+        return new PersistentHoldingTree(build(rows, 0, rows.size()));
+    }
+
+    private static Node build(List<Investment> rows, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        var middle = (from + to) >>> 1;
+        return new Node(rows.get(middle), build(rows, from, middle), build(rows, middle + 1, to));
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * A tree with the row of a holding put in, replacing the row with the same symbol and holding id if there is one
+     *
+     * @param investment the holding, with its current values
+     * @return the new tree, this one is left as it is
+     */
+    PersistentHoldingTree put(Investment investment) {
+        return new PersistentHoldingTree(put(root, investment, key(investment.getSymbol())));
+    }
+
+    private static Node put(Node node, Investment investment, long key) {
+        if (node == null) {
+            return new Node(investment, key, null, null);
+        }
+
+        var comparison = compare(investment, key, node);
+        if (comparison == 0) {
+            return new Node(investment, key, node.left, node.right);
+        }
+        if (comparison < 0) {
+            return balance(node, put(node.left, investment, key), node.right);
+        }
+        return balance(node, node.left, put(node.right, investment, key));
+    }
+
+    /**
+     * A tree without the row of a holding
+     *
+     * @param investment the holding, with the symbol and holding id it was put in with
+     * @return the new tree, this one is left as it is
+     */
+    PersistentHoldingTree remove(Investment investment) {
+        return new PersistentHoldingTree(remove(root, investment, key(investment.getSymbol())));
+    }
+
+    private static Node remove(Node node, Investment investment, long key) {
+        if (node == null) {
+            return null;
+        }
+
+        var comparison = compare(investment, key, node);
+        if (comparison < 0) {
+            return balance(node, remove(node.left, investment, key), node.right);
+        }
+        if (comparison > 0) {
+            return balance(node, node.left, remove(node.right, investment, key));
+        }
+
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        var successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor, node.left, removeFirst(node.right));
+    }
+
+    private static Node removeFirst(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node, removeFirst(node.left), node.right);
+    }
+
+    /**
+     * A tree of the same shape with every row read again from the holding that has its id now, for when most rows
+     * changed at once. Symbols must not have changed, so the order stays the same.
+     *
+     * @param holdings the holding of each holding id
+     * @return the new tree, this one is left as it is
+     */
+    PersistentHoldingTree reread(List<Investment> holdings) {
+        return new PersistentHoldingTree(reread(root, holdings));
+    }
+
+    private static Node reread(Node node, List<Investment> holdings) {
+        if (node == null) {
+            return null;
+        }
+        return new Node(holdings.get(node.holdingId), node.key, reread(node.left, holdings), reread(node.right, holdings));
+    }
+
+    /**
+     * The row at a position in symbol order
+     *
+     * @param index the position
+     * @return the row
+     */
+    Node get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Row " + index);
+        }
+
+        var node = root;
+        while (true) {
+            var leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * The position of the first row whose symbol doesn't come before a symbol, case-insensitive
+     *
+     * @param symbol the symbol
+     * @return the position, the number of rows if every symbol comes before it
+     */
+    int lowerBound(String symbol) {
+        var key = key(symbol);
+        var position = 0;
+        var node = root;
+        while (node != null) {
+            int comparison;
+            if (key != node.key && key != NO_KEY && node.key != NO_KEY) {
+                comparison = Long.compare(key, node.key);
+            } else {
+                comparison = symbol.compareToIgnoreCase(node.symbol);
+            }
+            if (comparison > 0) {
+                position += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Walk the rows in symbol order
+     *
+     * @param action gets every row
+     */
+    void forEach(Consumer<Node> action) {
+        forEach(root, action);
+    }
+
+    private static void forEach(Node node, Consumer<Node> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Iterate over the rows in symbol order, holding on to no more than the path down to the current one
+     *
+     * @return the iterator
+     */
+    Iterator<Node> iterator() {
+        return new Iterator<>() {
+            private final Deque<Node> path = new ArrayDeque<>();
+
+            {
+                descendLeft(root);
+            }
+
+            private void descendLeft(Node node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public Node next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                var node = path.pop();
+                descendLeft(node.right);
+                return node;
+            }
+        };
+    }
+
+    private static int compare(Investment investment, long key, Node node) {
+        if (key != node.key && key != NO_KEY && node.key != NO_KEY) {
+            return Long.compare(key, node.key);
+        }
+        var comparison = investment.getSymbol().compareToIgnoreCase(node.symbol);
+        return comparison != 0 ? comparison : Integer.compare(investment.getHoldingId(), node.holdingId);
+    }
+
+    /**
+     * Pack the first characters of a symbol, folded the way {@link String#compareToIgnoreCase(String)} compares them,
+     * into a long that orders like the symbols wherever two keys differ. Shorter symbols are padded with zeros.
+     *
+     * @param symbol the symbol
+     * @return the key, or {@link #NO_KEY} if one of the characters doesn't fit into a byte once folded
+     */
+    static long key(String symbol) {
+        long key = 0;
+        for (var i = 0; i < KEY_LENGTH; ++i) {
+            var folded = i < symbol.length() ? Character.toLowerCase(Character.toUpperCase(symbol.charAt(i))) : 0;
+            if (folded > 0xFF) {
+                return NO_KEY;
+            }
+            key = key << Byte.SIZE | folded;
+        }
+        return key;
+    }
+
+    /**
+     * A node with the row of another one over new subtrees, rotated back into balance if one subtree got two higher
+     * than the other
+     */
+    private static Node balance(Node row, Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return left.with(left.left, row.with(left.right, right));
+            }
+            var pivot = left.right;
+            return pivot.with(left.with(left.left, pivot.left), row.with(pivot.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return right.with(row.with(left, right.left), right.right);
+            }
+            var pivot = right.left;
+            return pivot.with(row.with(left, pivot.left), right.with(pivot.right, right.right));
+        }
+        return row.with(left, right);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,366 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.*;
+
+/**
+ * What one or more operations changed in a portfolio, one entry per symbol whatever happened to it in between. A
+ * holding bought and sold off again doesn't show up at all, and one whose price was updated twice shows up once. The
+ * entries are held in two parallel arrays, so a change of a hundred thousand holdings is a hundred thousand references
+ * and bytes rather than as many event objects.
+ * <p>
+ * A reset change stands for a portfolio replaced as a whole, such as by a load, and carries no entries.
+ * <p>
+ * A change of a portfolio that keeps versions comes with the version it led to, so that a view catching up with it
+ * shows values that agree with it, rather than those of whatever version is current by the time it gets to it.
+ */
+public final class PortfolioChange {
+    /**
+     * How a holding changed
+     */
+    public enum Kind {
+        ADDED, REMOVED, QUANTITY_CHANGED, PRICE_CHANGED, NAME_CHANGED
+    }
+
+    // whether the symbol was held before and is held after the change, and what changed while it was held throughout
+    private static final byte HELD_BEFORE = 1;
+    private static final byte HELD_AFTER = 2;
+    static final byte QUANTITY = 4;
+    static final byte PRICE = 8;
+    static final byte NAME = 16;
+    private static final byte ALL_VALUES = QUANTITY | PRICE | NAME;
+
+    private final boolean reset;
+    private final String[] symbols;
+    private final byte[] states;
+    private final int size;
+    private final PortfolioVersion version;
+
+    private PortfolioChange(boolean reset, String[] symbols, byte[] states, int size, PortfolioVersion version) {
+        this.reset = reset;
+        this.symbols = symbols;
+        this.states = states;
+        this.size = size;
+        this.version = version;
+    }
+
+    /**
+     * The version the portfolio was at right after the change
+     *
+     * @return the version, or null if the portfolio doesn't keep versions, see {@link ePortfolio#currentVersion()}
+     */
+    public PortfolioVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Whether the whole portfolio was replaced, in which case there are no entries and anything may have changed
+     *
+     * @return whether this is a reset
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    /**
+     * Whether holdings were added or removed, or the portfolio replaced, which moves holdings in the symbol order
+     *
+     * @return whether the order changed
+     */
+    public boolean isStructural() {
+        if (reset) {
+            return true;
+        }
+        for (var i = 0; i < size; ++i) {
+            if ((states[i] & (HELD_BEFORE | HELD_AFTER)) != (HELD_BEFORE | HELD_AFTER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The number of symbols that changed
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return !reset && size == 0;
+    }
+
+    /**
+     * The symbol of an entry
+     *
+     * @param entry the entry, from 0 to size - 1
+     * @return the symbol
+     */
+    public String getSymbol(int entry) {
+        Objects.checkIndex(entry, size);
+        return symbols[entry];
+    }
+
+    /**
+     * How the holding of an entry changed. A holding added or removed is only that; otherwise it is the values that
+     * changed.
+     *
+     * @param entry the entry, from 0 to size - 1
+     * @return the kinds of change
+     */
+    public Set<Kind> getKinds(int entry) {
+        Objects.checkIndex(entry, size);
+        var state = states[entry];
+        var kinds = EnumSet.noneOf(Kind.class);
+
+        if ((state & HELD_BEFORE) == 0) {
+            kinds.add(Kind.ADDED);
+        } else if ((state & HELD_AFTER) == 0) {
+            kinds.add(Kind.REMOVED);
+        } else {
+            if ((state & QUANTITY) != 0) {
+                kinds.add(Kind.QUANTITY_CHANGED);
+            }
+            if ((state & PRICE) != 0) {
+                kinds.add(Kind.PRICE_CHANGED);
+            }
+            if ((state & NAME) != 0) {
+                kinds.add(Kind.NAME_CHANGED);
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Whether a symbol changed, always true for a reset
+     *
+     * @param symbol the symbol, in any case
+     * @return whether it has an entry
+     */
+    public boolean contains(String symbol) {
+        if (reset) {
+            return true;
+        }
+        for (var i = 0; i < size; ++i) {
+            if (symbols[i].compareToIgnoreCase(symbol) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The symbols that changed in a way
+     *
+     * @param kind the kind of change
+     * @return the symbols, in the order they were first changed
+     */
+    public List<String> getSymbols(Kind kind) {
+        var found = new ArrayList<String>();
+        for (var i = 0; i < size; ++i) {
+            if (getKinds(i).contains(kind)) {
+                found.add(symbols[i]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Coalesce this change with the one that came right after it
+     *
+     * @param next the later change
+     * @return the change from before this one to after the next one
+     */
+    public PortfolioChange then(PortfolioChange next) {
+        var builder = new Builder();
+        builder.add(this);
+        builder.add(next);
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        if (reset) {
+            return "PortfolioChange[reset]";
+        }
+        var string = new StringBuilder("PortfolioChange[");
+        for (var i = 0; i < size; ++i) {
+            string.append(i == 0 ? "" : ", ").append(symbols[i]).append('=').append(getKinds(i));
+        }
+        return string.append(']').toString();
+    }
+
+    /**
+     * Collects the changes of an operation, merging those of the same symbol
+     */
+    static final class Builder {
+        private boolean reset;
+        private String[] symbols = new String[16];
+        private byte[] states = new byte[16];
+        private int size;
+        private PortfolioVersion version;
+
+        // the entry of each symbol key, built on first need, so that a batch appending unique symbols never hashes them
+        private Map<String, Integer> entries;
+        // the entry touched last
+        private int current = -1;
+
+        boolean isEmpty() {
+            return !reset && size == 0;
+        }
+
+        /**
+         * Set the version that the change collected so far led to
+         */
+        void setVersion(PortfolioVersion version) {
+            this.version = version;
+        }
+
+        /**
+         * Record that the whole portfolio was replaced
+         */
+        void reset() {
+            reset = true;
+        }
+
+        /**
+         * Record a new holding
+         */
+        void added(Investment investment) {
+            touch(investment.getSymbol(), false);
+            update(true, (byte) 0);
+        }
+
+        /**
+         * Record a holding that left the portfolio
+         */
+        void removed(Investment investment) {
+            touch(investment.getSymbol(), true);
+            update(false, (byte) 0);
+        }
+
+        /**
+         * Record values of a holding that changed
+         *
+         * @param investment the holding
+         * @param values     what changed, a combination of {@link #QUANTITY}, {@link #PRICE} and {@link #NAME}
+         */
+        void changed(Investment investment, byte values) {
+            touch(investment.getSymbol(), true);
+            update(true, values);
+        }
+
+        /**
+         * Record values of a holding that changed, which the caller knows no other record of this builder is about
+         *
+         * @param investment the holding
+         * @param values     what changed
+         */
+        void changedUnique(Investment investment, byte values) {
+            if (entries != null) {
+                changed(investment, values);
+                return;
+            }
+            append(investment.getSymbol(), (byte) (HELD_BEFORE | HELD_AFTER | values));
+        }
+
+        /**
+         * Record a change that came after everything recorded so far
+         *
+         * @param next the change
+         */
+        void add(PortfolioChange next) {
+            version = next.version;
+            if (next.reset) {
+                reset();
+            }
+            if (reset) {
+                return;
+            }
+            // the first change is taken over as it is, its symbols are unique
+            var first = size == 0 && entries == null;
+            for (var i = 0; i < next.size; ++i) {
+                var state = next.states[i];
+                if (first) {
+                    append(next.symbols[i], state);
+                    continue;
+                }
+                touch(next.symbols[i], (state & HELD_BEFORE) != 0);
+                update((state & HELD_AFTER) != 0, (byte) (state & ALL_VALUES));
+            }
+        }
+
+        /**
+         * Make the entry of a symbol the current one, creating it if it is new
+         *
+         * @param symbol     the symbol
+         * @param heldBefore whether the symbol was held before the change, should the entry be new
+         */
+        private void touch(String symbol, boolean heldBefore) {
+            if (entries == null) {
+                entries = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+                for (var i = 0; i < size; ++i) {
+                    entries.put(ePortfolio.symbolKey(symbols[i]), i);
+                }
+            }
+
+            var key = ePortfolio.symbolKey(symbol);
+            var entry = entries.get(key);
+            if (entry == null) {
+                entries.put(key, size);
+                append(symbol, heldBefore ? (byte) (HELD_BEFORE | HELD_AFTER) : 0);
+                entry = size - 1;
+            }
+            current = entry;
+        }
+
+        /**
+         * Apply a change to the current entry
+         *
+         * @param heldAfter whether the symbol is held after the change
+         * @param values    the values that changed
+         */
+        private void update(boolean heldAfter, byte values) {
+            var state = states[current];
+            if ((state & HELD_AFTER) == 0 && heldAfter) {
+                // a holding sold off and bought again within the change may differ in every value
+                values = ALL_VALUES;
+            }
+            state = (byte) ((state & ~HELD_AFTER) | (heldAfter ? HELD_AFTER : 0) | values);
+            states[current] = state;
+        }
+
+        private void append(String symbol, byte state) {
+            if (size == symbols.length) {
+                symbols = Arrays.copyOf(symbols, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            symbols[size] = symbol;
+            states[size++] = state;
+        }
+
+        /**
+         * The change collected, leaving out symbols that ended up where they started
+         *
+         * @return the change
+         */
+        PortfolioChange build() {
+            if (reset) {
+                return new PortfolioChange(true, new String[0], new byte[0], 0, version);
+            }
+
+            var kept = 0;
+            for (var i = 0; i < size; ++i) {
+                var state = states[i];
+                var held = state & (HELD_BEFORE | HELD_AFTER);
+                if (held == 0 || held == (HELD_BEFORE | HELD_AFTER) && (state & ALL_VALUES) == 0) {
+                    continue;
+                }
+                symbols[kept] = symbols[i];
+                states[kept++] = state;
+            }
+            return new PortfolioChange(false, Arrays.copyOf(symbols, kept), Arrays.copyOf(states, kept), kept, version);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.internal_compiler_error.Portfolio;
+
+/**
+ * Learns what changed in a portfolio. Every operation of an {@link ePortfolio} that changes it delivers one
+ * {@link PortfolioChange} once it is done, however many holdings it touched, so a batch of price updates is a single
+ * call rather than one per quote.
+ * <p>
+ * Listeners are called on the thread that made the change while the portfolio is still busy with it, through a
+ * {@link ConcurrentPortfolio} even with its lock held. They must not change the portfolio, and should hand anything
+ * slow to another thread, for example through a {@link CoalescingPortfolioListener}.
+ */
+@FunctionalInterface
+public interface PortfolioListener {
+    /**
+     * Called after an operation changed the portfolio
+     *
+     * @param change the holdings that changed and how
+     */
+    void portfolioChanged(PortfolioChange change);
+}
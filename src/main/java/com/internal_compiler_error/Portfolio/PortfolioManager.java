@@ -0,0 +1,368 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * The portfolios of many client accounts, keyed by account id. Each account is a {@link ConcurrentPortfolio} of its
+ * own, and all of them share one copy of every symbol and name through a {@link StringPool}, as the accounts of a firm
+ * mostly hold the same products.
+ * <p>
+ * Accounts are loaded and saved in parallel, one file per account, on a {@link ForkJoinPool}. Firm-wide figures are
+ * computed with fork-join as well, split over the accounts. They read the version each account published last, so they
+ * never hold up trading, and every account is counted between two whole operations; accounts that trade meanwhile
+ * may be counted before or after.
+ */
+public class PortfolioManager {
+    // the extension of account files, whose name is the account id
+    private static final String EXTENSION = ".csv";
+    // the number of accounts whose totals one task sums up, below which splitting further costs more than it saves
+    private static final int ACCOUNTS_PER_TASK = 64;
+    // the number of holdings one task sums up by symbol, short of a single account holding more
+    private static final int HOLDINGS_PER_TASK = 1 << 16;
+
+    private final ConcurrentMap<String, ConcurrentPortfolio> accounts = new ConcurrentHashMap<>();
+    private final StringPool strings = new StringPool();
+    private final ForkJoinPool pool;
+
+    public PortfolioManager() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool to load, save and aggregate on
+     */
+    public PortfolioManager(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The portfolio of an account, opening an empty one if there is none yet
+     *
+     * @param accountId the account id, which names the file of the account, so it must be a valid file name
+     * @return the portfolio
+     * @throws IllegalArgumentException if the account id can't be a file name
+     */
+    public ConcurrentPortfolio open(String accountId) {
+        var portfolio = accounts.get(accountId);
+        if (portfolio != null) {
+            return portfolio;
+        }
+        if (accountId.isEmpty() || accountId.equals(".") || accountId.equals("..")
+                || !new File(accountId).getName().equals(accountId)) {
+            throw new IllegalArgumentException("Account id \"" + accountId + "\" is not a valid file name");
+        }
+        return accounts.computeIfAbsent(accountId, id -> new ConcurrentPortfolio(strings));
+    }
+
+    /**
+     * The portfolio of an account
+     *
+     * @param accountId the account id
+     * @return the portfolio, or null if the account isn't open
+     */
+    public ConcurrentPortfolio get(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    /**
+     * Close an account
+     *
+     * @param accountId the account id
+     * @return the portfolio of the account, or null if it wasn't open
+     */
+    public ConcurrentPortfolio close(String accountId) {
+        return accounts.remove(accountId);
+    }
+
+    /**
+     * The ids of the open accounts
+     *
+     * @return the account ids, in order
+     */
+    public SortedSet<String> getAccountIds() {
+        return new TreeSet<>(accounts.keySet());
+    }
+
+    /**
+     * The number of open accounts
+     *
+     * @return the number of accounts
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Load every account file of a directory in parallel, see {@link ConcurrentPortfolio#loadInvestments(File)}. A
+     * file named {@code <account id>.csv} is loaded into that account, which is opened if need be. A file that fails
+     * to load doesn't stop the others.
+     *
+     * @param directory the directory of account files
+     * @return the accounts whose file failed to load, and why
+     * @throws IOException if the directory can't be listed
+     */
+    public SortedMap<String, Exception> loadAll(File directory) throws IOException {
+        var files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION) && name.length() > EXTENSION.length());
+        if (files == null) {
+            throw new IOException("Can't list " + directory);
+        }
+
+        var failures = new ConcurrentHashMap<String, Exception>();
+        pool.invoke(new ForEach<>(Arrays.asList(files), 0, files.length, file -> {
+            var accountId = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+            try {
+                open(accountId).loadInvestments(file);
+            } catch (Exception e) {
+                failures.put(accountId, e);
+            }
+        }));
+        return new TreeMap<>(failures);
+    }
+
+    /**
+     * Save every account in parallel into a file of a directory named {@code <account id>.csv}, the current version
+     * of each account, see {@link ConcurrentPortfolio#saveInvestments(File)}. Trading goes on meanwhile. A file that
+     * fails to save doesn't stop the others.
+     *
+     * @param directory the directory of account files, created if need be
+     * @return the accounts that failed to save, and why
+     * @throws IOException if the directory can't be created
+     */
+    public SortedMap<String, Exception> saveAll(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        var failures = new ConcurrentHashMap<String, Exception>();
+        var charset = Charset.defaultCharset();
+        var entries = new ArrayList<>(accounts.entrySet());
+        pool.invoke(new ForEach<>(entries, 0, entries.size(), account -> {
+            try {
+                new CsvInvestmentWriter(charset).write(new File(directory, account.getKey() + EXTENSION),
+                        account.getValue().getVersion().getInvestments());
+            } catch (IOException | RuntimeException e) {
+                failures.put(account.getKey(), e);
+            }
+        }));
+        return new TreeMap<>(failures);
+    }
+
+    /**
+     * Calculate the gain of all accounts together if everything is sold at the current prices. Every account's gain
+     * is read off its running totals, so this takes time in the number of accounts only.
+     *
+     * @return total gain in string
+     * @throws ArithmeticException if the totals are out of range
+     */
+    public String calculateGain() {
+        var versions = versions();
+        var totals = pool.invoke(new SumTotals(versions, 0, versions.size()));
+        return PortfolioTotals.gain(totals[0], totals[1], totals[2]).setScale(2, RoundingMode.HALF_EVEN).toString();
+    }
+
+    /**
+     * How much of each symbol all accounts hold together, walking every holding of every account
+     *
+     * @return the exposure of each symbol held, keyed case-insensitively, in symbol order
+     * @throws ArithmeticException if a total is out of range
+     */
+    public SortedMap<String, SymbolExposure> getExposureBySymbol() {
+        var versions = versions();
+        var exposures = pool.invoke(new SumExposures(versions, 0, versions.size()));
+
+        var bySymbol = new TreeMap<String, SymbolExposure>(String.CASE_INSENSITIVE_ORDER);
+        for (var exposure : exposures.values()) {
+            bySymbol.put(exposure.symbol, new SymbolExposure(exposure.symbol, exposure.quantity, exposure.marketValue,
+                    exposure.bookValue, exposure.accounts));
+        }
+        return bySymbol;
+    }
+
+    /**
+     * The current version of every account, in account id order
+     */
+    private List<PortfolioVersion> versions() {
+        var versions = new ArrayList<PortfolioVersion>(accounts.size());
+        for (var portfolio : new TreeMap<>(accounts).values()) {
+            versions.add(portfolio.getVersion());
+        }
+        return versions;
+    }
+
+    /**
+     * Apply an action to every element of a list, splitting it in halves down to single elements
+     */
+    private static final class ForEach<T> extends RecursiveAction {
+        private final List<T> elements;
+        private final int from;
+        private final int to;
+        private final Consumer<T> action;
+
+        ForEach(List<T> elements, int from, int to, Consumer<T> action) {
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                var middle = (from + to) >>> 1;
+                invokeAll(new ForEach<>(elements, from, middle, action), new ForEach<>(elements, middle, to, action));
+            } else if (to > from) {
+                action.accept(elements.get(from));
+            }
+        }
+    }
+
+    /**
+     * Sum the market values, book values and fees of a range of versions, in cents
+     */
+    private static final class SumTotals extends RecursiveTask<long[]> {
+        private final List<PortfolioVersion> versions;
+        private final int from;
+        private final int to;
+
+        SumTotals(List<PortfolioVersion> versions, int from, int to) {
+            this.versions = versions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > ACCOUNTS_PER_TASK) {
+                var middle = (from + to) >>> 1;
+                var right = new SumTotals(versions, middle, to);
+                right.fork();
+                var totals = new SumTotals(versions, from, middle).compute();
+                var rightTotals = right.join();
+                for (var i = 0; i < totals.length; ++i) {
+                    totals[i] = Math.addExact(totals[i], rightTotals[i]);
+                }
+                return totals;
+            }
+
+            var totals = new long[3];
+            for (var i = from; i < to; ++i) {
+                var version = versions.get(i);
+                totals[0] = Math.addExact(totals[0], version.getMarketValueInCents());
+                totals[1] = Math.addExact(totals[1], version.getBookValueInCents());
+                totals[2] = Math.addExact(totals[2], version.getFeesInCents());
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * The running sums of one symbol
+     */
+    private static final class Exposure {
+        final String symbol;
+        long quantity;
+        long marketValue;
+        long bookValue;
+        int accounts;
+        // the last version counted, so that an account holding a symbol twice counts once
+        int lastAccount = -1;
+
+        Exposure(String symbol) {
+            this.symbol = symbol;
+        }
+
+        void add(Exposure other) {
+            quantity = Math.addExact(quantity, other.quantity);
+            marketValue = Math.addExact(marketValue, other.marketValue);
+            bookValue = Math.addExact(bookValue, other.bookValue);
+            accounts += other.accounts;
+        }
+    }
+
+    /**
+     * Sum the holdings of a range of versions by symbol. The ranges are disjoint, so merging two of them adds their
+     * account counts as they are.
+     */
+    private static final class SumExposures extends RecursiveTask<Map<String, Exposure>> {
+        private final List<PortfolioVersion> versions;
+        private final int from;
+        private final int to;
+
+        SumExposures(List<PortfolioVersion> versions, int from, int to) {
+            this.versions = versions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<String, Exposure> compute() {
+            var holdings = 0L;
+            for (var i = from; i < to; ++i) {
+                holdings += versions.get(i).size();
+            }
+
+            if (to - from > 1 && holdings > HOLDINGS_PER_TASK) {
+                var middle = (from + to) >>> 1;
+                var right = new SumExposures(versions, middle, to);
+                right.fork();
+                var left = new SumExposures(versions, from, middle).compute();
+                return merge(left, right.join());
+            }
+
+            var exposures = new HashMap<String, Exposure>();
+            for (var i = from; i < to; ++i) {
+                var account = i;
+                versions.get(i).forEachRow(row -> {
+                    var exposure = exposures.computeIfAbsent(ePortfolio.symbolKey(row.symbol), key -> new Exposure(row.symbol));
+                    exposure.quantity = Math.addExact(exposure.quantity, row.quantity);
+                    exposure.marketValue = Math.addExact(exposure.marketValue, Math.multiplyExact(row.price, row.quantity));
+                    exposure.bookValue = Math.addExact(exposure.bookValue, row.bookValue);
+                    if (exposure.lastAccount != account) {
+                        exposure.lastAccount = account;
+                        ++exposure.accounts;
+                    }
+                });
+            }
+            return exposures;
+        }
+
+        /**
+         * Merge the sums of the right range into those of the left one, or the other way round if the right one has
+         * more symbols, keeping the symbol as the leftmost account spells it
+         */
+        private static Map<String, Exposure> merge(Map<String, Exposure> left, Map<String, Exposure> right) {
+            if (left.size() >= right.size()) {
+                for (var entry : right.entrySet()) {
+                    var exposure = left.get(entry.getKey());
+                    if (exposure == null) {
+                        left.put(entry.getKey(), entry.getValue());
+                    } else {
+                        exposure.add(entry.getValue());
+                    }
+                }
+                return left;
+            }
+
+            for (var entry : left.entrySet()) {
+                var exposure = right.get(entry.getKey());
+                if (exposure == null) {
+                    right.put(entry.getKey(), entry.getValue());
+                } else {
+                    // the left one comes first, so it keeps its spelling
+                    entry.getValue().add(exposure);
+                    right.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return right;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+
+/**
+ * Running sums over the holdings of a portfolio, in cents. A trade takes the holding it changes out of the sums before
+ * and puts it back in after, so the totals are always at hand without walking the portfolio. The sums are exact, so
+ * they are always what adding up all holdings from scratch would give, and overflowing them throws.
+ */
+final class PortfolioTotals {
+    private long marketValue;
+    private long bookValue;
+    private long fees;
+
+    /**
+     * Add a holding to the sums
+     *
+     * @param investment the holding
+     */
+    void add(Investment investment) {
+        marketValue = Math.addExact(marketValue, investment.getMarketValueInCents());
+        bookValue = Math.addExact(bookValue, investment.getBookValueInCents());
+        fees = Math.addExact(fees, investment.getFeeInCents());
+    }
+
+    /**
+     * Take a holding out of the sums, as it was when it was added
+     *
+     * @param investment the holding
+     */
+    void subtract(Investment investment) {
+        marketValue = Math.subtractExact(marketValue, investment.getMarketValueInCents());
+        bookValue = Math.subtractExact(bookValue, investment.getBookValueInCents());
+        fees = Math.subtractExact(fees, investment.getFeeInCents());
+    }
+
+    /**
+     * Account for a change in market value that didn't go through {@link #subtract} and {@link #add}, such as a batch
+     * of price updates
+     *
+     * @param change the change in cents
+     */
+    void addMarketValue(long change) {
+        marketValue = Math.addExact(marketValue, change);
+    }
+
+    void clear() {
+        marketValue = 0;
+        bookValue = 0;
+        fees = 0;
+    }
+
+    long getMarketValueInCents() {
+        return marketValue;
+    }
+
+    long getBookValueInCents() {
+        return bookValue;
+    }
+
+    long getFeesInCents() {
+        return fees;
+    }
+
+    /**
+     * The gain if every holding is sold at its current price, fees included, from sums read beforehand
+     *
+     * @param marketValue the total market value in cents
+     * @param bookValue   the total book value in cents
+     * @param fees        the total fees in cents
+     * @return market value - book value - fees
+     */
+    static BigDecimal gain(long marketValue, long bookValue, long fees) {
+        return Money.toBigDecimal(Math.subtractExact(Math.subtractExact(marketValue, bookValue), fees));
+    }
+
+    BigDecimal getMarketValue() {
+        return Money.toBigDecimal(marketValue);
+    }
+
+    BigDecimal getBookValue() {
+        return Money.toBigDecimal(bookValue);
+    }
+
+    BigDecimal getFees() {
+        return Money.toBigDecimal(fees);
+    }
+
+    /**
+     * The gain if every holding is sold at its current price, fees included
+     *
+     * @return market value - book value - fees
+     */
+    BigDecimal getGain() {
+        return gain(marketValue, bookValue, fees);
+    }
+}
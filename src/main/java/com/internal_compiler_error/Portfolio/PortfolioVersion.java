@@ -0,0 +1,340 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Immutable version of a portfolio as it was between two operations, see {@link ePortfolio#currentVersion()}. Taking
+ * one costs a single read, and a version never changes afterwards, so it can be read from any thread without a lock
+ * while trading goes on. Versions share all the holdings that didn't change between them, and one that is no longer
+ * referenced is simply garbage collected.
+ */
+public final class PortfolioVersion {
+    private final PersistentHoldingTree holdings;
+    private final long marketValue;
+    private final long bookValue;
+    private final long fees;
+    // counts the versions of a portfolio up, so that views can tell which of two is the newer one
+    private final long number;
+
+    PortfolioVersion(PersistentHoldingTree holdings, PortfolioTotals totals, long number) {
+        this.holdings = holdings;
+        this.number = number;
+        this.marketValue = totals.getMarketValueInCents();
+        this.bookValue = totals.getBookValueInCents();
+        this.fees = totals.getFeesInCents();
+    }
+
+    /**
+     * Whether this version was published after another version of the same portfolio
+     *
+     * @param other the other version
+     * @return whether this one is newer
+     */
+    boolean isAfter(PortfolioVersion other) {
+        return number > other.number;
+    }
+
+    /**
+     * The number of holdings
+     *
+     * @return the number of holdings
+     */
+    public int size() {
+        return holdings.size();
+    }
+
+    /**
+     * The investments of this version in symbol order. Each investment is created when it is got, and changing it
+     * leaves the version as it is.
+     *
+     * @return a read-only list of the investments
+     */
+    public List<Investment> getInvestments() {
+        return new Rows();
+    }
+
+    /**
+     * Where the holdings of a symbol are in {@link #getInvestments()}
+     *
+     * @param symbol the symbol, in any case
+     * @return the position of the first holding of the symbol, or -(position) - 1 where it would be inserted
+     */
+    int indexOf(String symbol) {
+        var position = holdings.lowerBound(symbol);
+        if (position < holdings.size() && holdings.get(position).symbol.compareToIgnoreCase(symbol) == 0) {
+            return position;
+        }
+        return -position - 1;
+    }
+
+    /**
+     * Calculate the gain if all investment are sold at the prices of this version
+     *
+     * @return total gain in string
+     * @throws IllegalStateException in verification mode, if the totals don't match a full recomputation
+     */
+    public String calculateGain() {
+        var gain = PortfolioTotals.gain(marketValue, bookValue, fees);
+
+        if (ePortfolio.VERIFY_TOTALS) {
+            var recalculated = new long[1];
+            holdings.forEach(row -> recalculated[0] = Math.addExact(recalculated[0], row.toInvestment().getGainInCents()));
+            if (Money.toBigDecimal(recalculated[0]).compareTo(gain) != 0) {
+                throw new IllegalStateException("Version total gain " + gain + " differs from the recomputed " + Money.toBigDecimal(recalculated[0]));
+            }
+        }
+
+        return gain.setScale(2, RoundingMode.HALF_EVEN).toString();
+    }
+
+    /**
+     * The value of all investments at the prices of this version
+     *
+     * @return the total market value
+     */
+    public BigDecimal getMarketValue() {
+        return Money.toBigDecimal(marketValue);
+    }
+
+    /**
+     * The total book value of all investments
+     *
+     * @return the total book value
+     */
+    public BigDecimal getBookValue() {
+        return Money.toBigDecimal(bookValue);
+    }
+
+    /**
+     * The fees that selling all investments would cost
+     *
+     * @return the total fees
+     */
+    public BigDecimal getFees() {
+        return Money.toBigDecimal(fees);
+    }
+
+    long getMarketValueInCents() {
+        return marketValue;
+    }
+
+    long getBookValueInCents() {
+        return bookValue;
+    }
+
+    long getFeesInCents() {
+        return fees;
+    }
+
+    /**
+     * Walk the rows of this version in symbol order, without creating investments for them
+     *
+     * @param action gets every row
+     */
+    void forEachRow(Consumer<PersistentHoldingTree.Node> action) {
+        holdings.forEach(action);
+    }
+
+    /**
+     * Query the investments of this version, with the same filters and results as {@link ePortfolio#query}. There are
+     * no secondary indexes to narrow the search down, so every holding is looked at, in symbol order. Readers of a
+     * {@link ConcurrentPortfolio} query through {@link ConcurrentPortfolio#query}, which uses the indexes.
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return list of investments after filtering in string
+     */
+    public List<String> query(String symbolQuery, String nameQuery, String priceRangeStr) {
+        var matches = new ArrayList<String>();
+        var filter = new Filter(symbolQuery, nameQuery, priceRangeStr);
+        holdings.forEach(row -> {
+            if (filter.passes(row)) {
+                matches.add(row.toInvestment().toString());
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Query the investments of this version like {@link #query}, but only find where the matches are instead of
+     * creating them, for views that show a few of them at a time
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return the positions of the matches in {@link #getInvestments()}, in increasing order
+     */
+    int[] select(String symbolQuery, String nameQuery, String priceRangeStr) {
+        return select(symbolQuery, nameQuery, priceRangeStr, null, null);
+    }
+
+    /**
+     * Find where the matches of a query are like {@link #select(String, String, String)}, looking only at candidates
+     * the indexes of the portfolio found, while this is its current version. Candidates are checked against every
+     * filter, so the indexes only have to find every match.
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @param candidates    the holding ids of the candidates, or null to look at every holding
+     * @param symbolOf      the symbol of a holding id
+     * @return the positions of the matches in {@link #getInvestments()}, in increasing order
+     */
+    int[] select(String symbolQuery, String nameQuery, String priceRangeStr, HoldingBitmap candidates, IntFunction<String> symbolOf) {
+        var filter = new Filter(symbolQuery, nameQuery, priceRangeStr);
+        var positions = new int[16];
+        var count = 0;
+
+        var size = holdings.size();
+        if (candidates == null || (long) candidates.cardinality() * (32 - Integer.numberOfLeadingZeros(size)) >= size) {
+            // looking each candidate up takes longer than walking every row
+            var rows = holdings.iterator();
+            for (var position = 0; rows.hasNext(); ++position) {
+                var row = rows.next();
+                if ((candidates == null || candidates.contains(row.holdingId)) && filter.passes(row)) {
+                    if (count == positions.length) {
+                        positions = Arrays.copyOf(positions, count * 2);
+                    }
+                    positions[count++] = position;
+                }
+            }
+            return Arrays.copyOf(positions, count);
+        }
+
+        var found = new int[candidates.cardinality()];
+        var foundCount = new int[1];
+        candidates.forEach(holdingId -> {
+            // holdings of the same symbol are next to each other
+            var symbol = symbolOf.apply(holdingId);
+            for (var position = holdings.lowerBound(symbol); position < size; ++position) {
+                var row = holdings.get(position);
+                if (row.holdingId == holdingId) {
+                    found[foundCount[0]++] = position;
+                    break;
+                }
+                if (!row.symbol.equalsIgnoreCase(symbol)) {
+                    break;
+                }
+            }
+        });
+        Arrays.sort(found, 0, foundCount[0]);
+
+        for (var i = 0; i < foundCount[0]; ++i) {
+            if (filter.passes(holdings.get(found[i]))) {
+                found[count++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * The query filters, which rows are passed to in symbol order. Rows equal to one already passed are left out.
+     */
+    private static final class Filter {
+        private final String symbol;
+        private final String[] nameTokens;
+        private final boolean filterPrice;
+        private final long from;
+        private final long to;
+
+        // the matches passed so far with the symbol of the current row, only equal symbols can be equal rows
+        private final List<PersistentHoldingTree.Node> sameSymbol = new ArrayList<>();
+
+        Filter(String symbolQuery, String nameQuery, String priceRangeStr) {
+            symbol = symbolQuery.trim().toUpperCase(Locale.ROOT);
+            var name = nameQuery.trim().toLowerCase(Locale.ROOT);
+            priceRangeStr = priceRangeStr.trim().toLowerCase(Locale.ROOT);
+
+            var priceRange = ePortfolio.findPriceRange(priceRangeStr);
+            filterPrice = priceRangeStr.contains("-");
+            from = Money.bound(priceRange.getFirst(), RoundingMode.CEILING);
+            to = Money.bound(priceRange.getSecond(), RoundingMode.FLOOR);
+            nameTokens = name.isEmpty() ? null : NameIndex.tokens(name);
+        }
+
+        /**
+         * Whether the next row in symbol order passes
+         */
+        boolean passes(PersistentHoldingTree.Node row) {
+            if (filterPrice && (row.price < from || row.price > to)) {
+                return false;
+            }
+            if (!symbol.isEmpty() && !row.symbol.contains(symbol)) {
+                return false;
+            }
+            if (nameTokens != null && !hasAllTokens(row.name, nameTokens)) {
+                return false;
+            }
+
+            if (!sameSymbol.isEmpty() && sameSymbol.get(0).symbol.compareToIgnoreCase(row.symbol) != 0) {
+                sameSymbol.clear();
+            }
+            for (var passed : sameSymbol) {
+                if (passed.sameAs(row)) {
+                    return false;
+                }
+            }
+            sameSymbol.add(row);
+            return true;
+        }
+    }
+
+    /**
+     * Whether a name has every one of some tokens, the way {@link NameIndex#matchAll} finds it. The name tokens are the
+     * runs between spaces of the lower case name, so each query token is looked for as such a run instead of splitting
+     * every name that is looked at.
+     */
+    private static boolean hasAllTokens(String name, String[] tokens) {
+        var lowerCase = name.toLowerCase(Locale.ROOT);
+        for (var token : tokens) {
+            if (!hasToken(lowerCase, token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasToken(String name, String token) {
+        for (var at = name.indexOf(token); at != -1; at = name.indexOf(token, at + 1)) {
+            var end = at + token.length();
+            if ((at == 0 || name.charAt(at - 1) == ' ') && (end == name.length() || name.charAt(end) == ' ')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Rows extends AbstractList<Investment> implements RandomAccess {
+        @Override
+        public Investment get(int index) {
+            return holdings.get(index).toInvestment();
+        }
+
+        @Override
+        public int size() {
+            return holdings.size();
+        }
+
+        @Override
+        public Iterator<Investment> iterator() {
+            // walking the tree beats looking every position up from the root
+            var rows = holdings.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public Investment next() {
+                    return rows.next().toInvestment();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Set of strings held as a trie, for walking the ones that start with a prefix in lexicographic order. Children are
+ * kept in sorted arrays rather than maps, and branches are pruned as soon as their last string is removed, so every
+ * node leads to a string and listing the first few completions of a prefix only visits the nodes on their paths.
+ */
+final class PrefixTrie {
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private Node root = new Node();
+
+    private static final class Node {
+        // the first size entries are used, sorted by label
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        int size;
+        boolean terminal;
+        // the number of strings ending in this node or below it
+        int strings;
+
+        Node child(char label) {
+            var index = Arrays.binarySearch(labels, 0, size, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node addChild(char label) {
+            var index = Arrays.binarySearch(labels, 0, size, label);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            index = -index - 1;
+            if (size == labels.length) {
+                var capacity = Math.max(2, size * 2);
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, index, labels, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+            labels[index] = label;
+            children[index] = new Node();
+            ++size;
+            return children[index];
+        }
+
+        void removeChild(char label) {
+            var index = Arrays.binarySearch(labels, 0, size, label);
+            System.arraycopy(labels, index + 1, labels, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            children[--size] = null;
+        }
+    }
+
+    /**
+     * Add a string
+     *
+     * @param string the string
+     * @return whether the string was not in the set before
+     */
+    boolean add(String string) {
+        if (contains(string)) {
+            return false;
+        }
+
+        var node = root;
+        ++node.strings;
+        for (var i = 0; i < string.length(); ++i) {
+            node = node.addChild(string.charAt(i));
+            ++node.strings;
+        }
+        node.terminal = true;
+        return true;
+    }
+
+    /**
+     * Remove a string
+     *
+     * @param string the string
+     * @return whether the string was in the set
+     */
+    boolean remove(String string) {
+        if (!contains(string)) {
+            return false;
+        }
+
+        var node = root;
+        --node.strings;
+        for (var i = 0; i < string.length(); ++i) {
+            var child = node.child(string.charAt(i));
+            if (--child.strings == 0) {
+                // nothing else goes through this branch
+                node.removeChild(string.charAt(i));
+                return true;
+            }
+            node = child;
+        }
+        node.terminal = false;
+        return true;
+    }
+
+    boolean contains(String string) {
+        var node = find(string);
+        return node != null && node.terminal;
+    }
+
+    /**
+     * Apply an action to the strings starting with a prefix in lexicographic order, until it asks to stop
+     *
+     * @param prefix the prefix
+     * @param action gets each string and returns whether to go on
+     */
+    void forEachWithPrefix(String prefix, Predicate<String> action) {
+        var node = find(prefix);
+        if (node != null) {
+            walk(node, new StringBuilder(prefix), action);
+        }
+    }
+
+    /**
+     * Remove every string
+     */
+    void clear() {
+        root = new Node();
+    }
+
+    private Node find(String string) {
+        var node = root;
+        for (var i = 0; i < string.length() && node != null; ++i) {
+            node = node.child(string.charAt(i));
+        }
+        return node;
+    }
+
+    private static boolean walk(Node node, StringBuilder path, Predicate<String> action) {
+        if (node.terminal && !action.test(path.toString())) {
+            return false;
+        }
+
+        for (var i = 0; i < node.size; ++i) {
+            path.append(node.labels[i]);
+            var goOn = walk(node.children[i], path, action);
+            path.setLength(path.length() - 1);
+            if (!goOn) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Secondary index of the holdings ordered by price. Holdings with the same price share a bucket, so a price range is
+ * answered by seeking to its lower end and walking the buckets up to its upper end, without looking at any holding
+ * outside of it. Prices are keyed in cents.
+ */
+final class PriceIndex {
+    private final TreeMap<Long, HoldingBitmap> holdingsByPrice = new TreeMap<>();
+
+    /**
+     * Index a holding at its price
+     *
+     * @param holdingId the holding
+     * @param price     the price of the holding in cents
+     */
+    void add(int holdingId, long price) {
+        holdingsByPrice.computeIfAbsent(price, key -> new HoldingBitmap()).add(holdingId);
+    }
+
+    /**
+     * Index many holdings at their prices. When every price fits into 31 bits, as with all prices up to some 21
+     * million, the holdings are sorted by price and id as packed longs first, so each bucket is looked up once and
+     * filled in id order instead of a tree lookup and a random insert per holding.
+     *
+     * @param holdingIds the holdings, the first count entries are used
+     * @param prices     the price of each of those holdings in cents
+     * @param count      the number of holdings
+     */
+    void addAll(int[] holdingIds, long[] prices, int count) {
+        var packed = new long[count];
+        for (var i = 0; i < count; ++i) {
+            if (prices[i] < 0 || prices[i] > Integer.MAX_VALUE) {
+                for (var j = 0; j < count; ++j) {
+                    add(holdingIds[j], prices[j]);
+                }
+                return;
+            }
+            packed[i] = prices[i] << Integer.SIZE | holdingIds[i];
+        }
+        Arrays.sort(packed);
+
+        HoldingBitmap bucket = null;
+        var bucketPrice = -1L;
+        for (var entry : packed) {
+            var price = entry >>> Integer.SIZE;
+            if (price != bucketPrice) {
+                bucket = holdingsByPrice.computeIfAbsent(price, key -> new HoldingBitmap());
+                bucketPrice = price;
+            }
+            bucket.add((int) entry);
+        }
+    }
+
+    /**
+     * Remove a holding from the index
+     *
+     * @param holdingId the holding
+     * @param price     the price the holding was indexed at in cents
+     */
+    void remove(int holdingId, long price) {
+        var holdings = holdingsByPrice.get(price);
+        if (holdings != null) {
+            holdings.remove(holdingId);
+            if (holdings.isEmpty()) {
+                holdingsByPrice.remove(price);
+            }
+        }
+    }
+
+    /**
+     * The holdings priced within a range, bounds included
+     *
+     * @param lowerBound the lowest price
+     * @param upperBound the highest price, not below the lowest
+     * @return the holding ids, a new set
+     */
+    HoldingBitmap between(BigDecimal lowerBound, BigDecimal upperBound) {
+        var holdings = new HoldingBitmap();
+        var from = Money.bound(lowerBound, RoundingMode.CEILING);
+        var to = Money.bound(upperBound, RoundingMode.FLOOR);
+        if (from > to) {
+            return holdings;
+        }
+
+        for (var bucket : holdingsByPrice.subMap(from, true, to, true).values()) {
+            holdings.or(bucket);
+        }
+        holdings.trim();
+        return holdings;
+    }
+
+    /**
+     * Remove every holding
+     */
+    void clear() {
+        holdingsByPrice.clear();
+    }
+}
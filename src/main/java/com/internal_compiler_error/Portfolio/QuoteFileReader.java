@@ -0,0 +1,65 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads end-of-day quote files, one quote per line in the form symbol,price. Whitespace around the fields and blank
+ * lines are ignored.
+ */
+final class QuoteFileReader {
+    private final Charset charset;
+
+    /**
+     * @param charset the charset of the file
+     */
+    QuoteFileReader(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Read all the quotes of a file, in file order
+     *
+     * @param input the quote file
+     * @return the symbols and their prices
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed
+     */
+    List<Pair<String, BigDecimal>> read(File input) throws IOException, InvalidInputFileFormatException {
+        var quotes = new ArrayList<Pair<String, BigDecimal>>();
+
+        try (var reader = Files.newBufferedReader(input.toPath(), charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                var comma = line.indexOf(',');
+                if (comma == -1 || line.indexOf(',', comma + 1) != -1) {
+                    throw new InvalidInputFileFormatException();
+                }
+
+                var symbol = line.substring(0, comma).trim();
+                var price = line.substring(comma + 1).trim();
+                if (symbol.isEmpty()) {
+                    throw new InvalidInputFileFormatException();
+                }
+
+                try {
+                    quotes.add(new Pair<>(symbol, new BigDecimal(price)));
+                } catch (NumberFormatException e) {
+                    throw new InvalidInputFileFormatException();
+                }
+            }
+        }
+        return quotes;
+    }
+}
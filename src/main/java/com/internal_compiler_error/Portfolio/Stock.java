@@ -4,15 +4,14 @@ import java.math.BigDecimal;
 import java.util.Objects;
 
 public class Stock extends Investment {
-    private final BigDecimal COMMISSION = new BigDecimal("9.99");
+    // 9.99 in cents
+    private static final long COMMISSION = 999;
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-        Stock stock = (Stock) o;
-        return COMMISSION.equals(stock.COMMISSION);
+        return super.equals(o);
     }
 
     @Override
@@ -43,8 +42,8 @@ public class Stock extends Investment {
         super(symbol, name, quantity, price);
 
         setInvestmentType(InvestmentType.STOCK);
-        var bookValueWithoutCommission = getBookValue();
-        setBookValue(bookValueWithoutCommission.add(COMMISSION));
+        var bookValueWithoutCommission = getBookValueInCents();
+        setBookValueInCents(Math.addExact(bookValueWithoutCommission, COMMISSION));
     }
 
     /**
@@ -72,51 +71,58 @@ public class Stock extends Investment {
     }
 
     /**
-     * Default constructor
+     * Constructor for stock from amounts already in cents
+     *
+     * @param symbol    the symbol of the investment
+     * @param name      the name of the investment
+     * @param quantity  the quantity held
+     * @param price     the price in cents
+     * @param bookValue the book value in cents
      */
-    public Stock() {
+    Stock(String symbol, String name, int quantity, long price, long bookValue) {
+        super(symbol, name, quantity, price, bookValue);
         setInvestmentType(InvestmentType.STOCK);
     }
 
     /**
-     * Purchase additional product
+     * Copy constructor
      *
-     * @param quantity the additional quantify
-     * @param price    the new purchase price
-     * @throws IllegalQuantityException if the quantity is negative
+     * @param other the stock to copy
      */
-    @Override
-    void buy(int quantity, BigDecimal price) throws IllegalQuantityException {
-        super.buy(quantity, price);
+    Stock(Stock other) {
+        super(other);
+    }
 
-        var bookValueWithoutCommission = getBookValue();
-        setBookValue(bookValueWithoutCommission.add(COMMISSION));
+    @Override
+    Investment copy() {
+        return new Stock(this);
     }
 
+    /**
+     * Default constructor
+     */
+    public Stock() {
+        setInvestmentType(InvestmentType.STOCK);
+    }
 
     /**
-     * Calculate the current gain if all is sold at the current price.
-     * Formula: bookValue - price * quantity - 9.99
+     * The commission charged on buying
      *
-     * @return the total gain
+     * @return 9.99 in cents
      */
     @Override
-    BigDecimal getGain() {
-        var gainWithoutCommission = super.getGain();
-        return gainWithoutCommission.subtract(COMMISSION);
+    long getPurchaseFeeInCents() {
+        return COMMISSION;
     }
 
+
     /**
-     * Sell some or all investment products. The selling price will become the new price.
+     * The commission charged on selling, which the gain of a sale and the current gain take off
      *
-     * @param quantity the quantity to be sold
-     * @param price    the selling price
-     * @return The gain from the trade
-     * @throws IllegalQuantityException if the quantity is negative or exceeds the quantity possessed
+     * @return 9.99 in cents
      */
     @Override
-    BigDecimal sell(int quantity, BigDecimal price) throws IllegalQuantityException {
-        var profitWithoutCommission = super.sell(quantity, price);
-        return profitWithoutCommission.subtract(COMMISSION);
+    long getFeeInCents() {
+        return COMMISSION;
     }
 }
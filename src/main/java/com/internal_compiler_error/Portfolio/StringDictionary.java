@@ -0,0 +1,254 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Dictionary giving every distinct string a compact int id, so that a string repeated across many holdings is held
+ * once and indexes can refer to it by id. Strings are counted as they are acquired and released, and the id of one
+ * that is no longer used is reused for the next new string, which keeps ids dense enough to index arrays with.
+ * <p>
+ * The dictionary is an open addressing hash table of ids with linear probing, plus the string and the count of each id
+ * in plain arrays, which is a few ints per string instead of an entry object, a boxed id and a table slot. A lower case
+ * string can also be looked up by a range of a longer text, without cutting it out first.
+ */
+final class StringDictionary {
+    private static final int EMPTY = 0;
+
+    // the string of each id, null for free ids
+    private String[] strings = new String[16];
+    private int[] references = new int[16];
+    // the ids that were used and are free again
+    private int[] freeIds = new int[0];
+    private int freeCount;
+    // one past the largest id handed out so far
+    private int idLimit;
+    private int size;
+
+    // id + 1 in each used slot, so that zero marks an empty one
+    private int[] table = new int[32];
+
+    /**
+     * The id of a string
+     *
+     * @param string the string
+     * @return the id, or -1 if the string isn't in the dictionary
+     */
+    int find(String string) {
+        var mask = table.length - 1;
+        for (var slot = mix(string.hashCode()) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            var id = table[slot] - 1;
+            if (strings[id].equals(string)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The id of a range of a text in lower case, the same as {@code find(text.substring(from, to).toLowerCase(Locale.ROOT))}
+     * but without creating either string when the range is ASCII
+     *
+     * @param text the text
+     * @param from the first character of the range
+     * @param to   one past the last character of the range
+     * @return the id, or -1 if the lower case range isn't in the dictionary
+     */
+    int findLowerCase(String text, int from, int to) {
+        var hash = 0;
+        for (var i = from; i < to; ++i) {
+            var c = text.charAt(i);
+            if (c >= 0x80) {
+                // lower casing beyond ASCII may change the length, leave it to String
+                return find(text.substring(from, to).toLowerCase(Locale.ROOT));
+            }
+            hash = 31 * hash + lowerCase(c);
+        }
+
+        var mask = table.length - 1;
+        for (var slot = mix(hash) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            var id = table[slot] - 1;
+            if (equalsLowerCase(strings[id], text, from, to)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Count one more use of a string, adding it if it is new
+     *
+     * @param string the string, which is kept as the one copy if it is new
+     * @return the id of the string
+     */
+    int acquire(String string) {
+        var id = find(string);
+        if (id < 0) {
+            id = add(string);
+        }
+        ++references[id];
+        return id;
+    }
+
+    /**
+     * Count one more use of a range of a text in lower case, like {@link #findLowerCase}, adding it if it is new
+     *
+     * @param text the text
+     * @param from the first character of the range
+     * @param to   one past the last character of the range
+     * @return the id of the lower case range
+     */
+    int acquireLowerCase(String text, int from, int to) {
+        var id = findLowerCase(text, from, to);
+        if (id < 0) {
+            id = add(text.substring(from, to).toLowerCase(Locale.ROOT));
+        }
+        ++references[id];
+        return id;
+    }
+
+    /**
+     * Count one use less of a string, removing it once it is no longer used
+     *
+     * @param id the id of the string
+     */
+    void release(int id) {
+        if (--references[id] > 0) {
+            return;
+        }
+
+        var mask = table.length - 1;
+        var slot = mix(strings[id].hashCode()) & mask;
+        while (table[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        removeSlot(slot);
+
+        strings[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(4, freeCount * 2));
+        }
+        freeIds[freeCount++] = id;
+        --size;
+    }
+
+    /**
+     * The string of an id
+     *
+     * @param id the id
+     * @return the string
+     */
+    String get(int id) {
+        return strings[id];
+    }
+
+    /**
+     * One past the largest id in use or used before, the length an array indexed by id needs
+     *
+     * @return the id limit
+     */
+    int idLimit() {
+        return idLimit;
+    }
+
+    /**
+     * The number of strings
+     *
+     * @return the number of strings
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove every string
+     */
+    void clear() {
+        strings = new String[16];
+        references = new int[16];
+        freeIds = new int[0];
+        freeCount = 0;
+        idLimit = 0;
+        size = 0;
+        table = new int[32];
+    }
+
+    private int add(String string) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = idLimit++;
+            if (id == strings.length) {
+                strings = Arrays.copyOf(strings, id * 2);
+                references = Arrays.copyOf(references, id * 2);
+            }
+        }
+        strings[id] = string;
+        references[id] = 0;
+
+        // kept at most half full, so that probes stay short, growing inserts the new string with the others
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    private void insert(int id) {
+        var mask = table.length - 1;
+        var slot = mix(strings[id].hashCode()) & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (var id = 0; id < idLimit; ++id) {
+            if (strings[id] != null) {
+                insert(id);
+            }
+        }
+    }
+
+    /**
+     * Empty a slot and move later entries of the same probe run back into the gap, so that no lookup stops short of
+     * them
+     */
+    private void removeSlot(int slot) {
+        var mask = table.length - 1;
+        table[slot] = EMPTY;
+        for (var next = (slot + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+            var home = mix(strings[table[next] - 1].hashCode()) & mask;
+            // the entry can move into the gap unless its home lies cyclically after the gap, up to where it is
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = EMPTY;
+                slot = next;
+            }
+        }
+    }
+
+    private static boolean equalsLowerCase(String string, String text, int from, int to) {
+        if (string.length() != to - from) {
+            return false;
+        }
+        for (var i = from; i < to; ++i) {
+            if (string.charAt(i - from) != lowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char lowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
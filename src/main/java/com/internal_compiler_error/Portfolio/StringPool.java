@@ -0,0 +1,37 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Strings shared by the portfolios of a {@link PortfolioManager}. The accounts of a firm hold the same few thousand
+ * symbols and names over and over, so each portfolio swaps the strings of its holdings for the pooled ones and keeps a
+ * single copy of each for all of them. Safe to use from any number of threads. Strings are never taken out, a symbol no
+ * account holds any more costs its one copy.
+ */
+final class StringPool {
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+    /**
+     * The pooled string equal to a string, which becomes the pooled one if there is none yet
+     *
+     * @param string the string
+     * @return the pooled string
+     */
+    String intern(String string) {
+        var pooled = strings.get(string);
+        if (pooled != null) {
+            return pooled;
+        }
+        pooled = strings.putIfAbsent(string, string);
+        return pooled != null ? pooled : string;
+    }
+
+    /**
+     * The number of pooled strings
+     *
+     * @return the number of strings
+     */
+    int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,73 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+
+/**
+ * How much of one symbol the accounts of a {@link PortfolioManager} hold between them
+ */
+public final class SymbolExposure {
+    private final String symbol;
+    private final long quantity;
+    private final long marketValue;
+    private final long bookValue;
+    private final int accounts;
+
+    SymbolExposure(String symbol, long quantity, long marketValue, long bookValue, int accounts) {
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.marketValue = marketValue;
+        this.bookValue = bookValue;
+        this.accounts = accounts;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * The quantity held by all accounts together
+     *
+     * @return the total quantity
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * The value of all that is held at the current price
+     *
+     * @return the total market value
+     */
+    public BigDecimal getMarketValue() {
+        return Money.toBigDecimal(marketValue);
+    }
+
+    /**
+     * The total book value
+     *
+     * @return the total book value
+     */
+    public BigDecimal getBookValue() {
+        return Money.toBigDecimal(bookValue);
+    }
+
+    /**
+     * The number of accounts that hold the symbol
+     *
+     * @return the number of accounts
+     */
+    public int getAccounts() {
+        return accounts;
+    }
+
+    @Override
+    public String toString() {
+        return "Exposure {\n" +
+                "symbol = " + symbol + ",\n" +
+                "quantity = " + quantity + ",\n" +
+                "marketValue = " + getMarketValue() + ",\n" +
+                "bookValue = " + getBookValue() + ",\n" +
+                "accounts = " + accounts + "\n" +
+                "}";
+    }
+}
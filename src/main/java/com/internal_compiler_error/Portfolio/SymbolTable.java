@@ -0,0 +1,184 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.function.IntFunction;
+
+/**
+ * Case-insensitive lookup from symbols to holding ids. The table holds nothing but the ids, in an open addressing int
+ * array with linear probing, and reads the symbol of an id from the holding itself when it needs to compare, so a
+ * holding costs two ints here instead of a map entry, a key string with its lower case copy of the symbol, and a
+ * boxed value.
+ * <p>
+ * Two symbols are the same when {@link ePortfolio#symbolKey(String)} maps them to the same key, as with
+ * {@link String#compareToIgnoreCase(String)}.
+ */
+final class SymbolTable {
+    private static final int EMPTY = 0;
+
+    // the symbol of a holding id, only asked for ids in the table
+    private final IntFunction<String> symbols;
+    // holding id + 1 in each used slot, so that zero marks an empty one
+    private int[] table;
+    private int size;
+
+    /**
+     * @param symbols  gives the symbol of a holding id in the table
+     * @param expected the number of symbols to make room for
+     */
+    SymbolTable(IntFunction<String> symbols, int expected) {
+        this.symbols = symbols;
+        this.table = new int[capacity(expected)];
+    }
+
+    /**
+     * The holding id of a symbol
+     *
+     * @param symbol the symbol, in any case
+     * @return the holding id, or -1 if no holding has the symbol
+     */
+    int get(String symbol) {
+        var mask = table.length - 1;
+        for (var slot = hash(symbol) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (sameSymbol(symbols.apply(table[slot] - 1), symbol)) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Map the symbol of a holding to it unless another holding has the same symbol
+     *
+     * @param holdingId the holding, whose symbol must already be known by the function the table was made with
+     * @return whether the holding was added, false if another one has the symbol
+     */
+    boolean putIfAbsent(int holdingId) {
+        var symbol = symbols.apply(holdingId);
+        var mask = table.length - 1;
+        var slot = hash(symbol) & mask;
+        for (; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (sameSymbol(symbols.apply(table[slot] - 1), symbol)) {
+                return false;
+            }
+        }
+
+        table[slot] = holdingId + 1;
+        // kept at most half full, so that probes stay short
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Map the symbol of a holding to it, in place of any other holding with the same symbol
+     *
+     * @param holdingId the holding, whose symbol must already be known by the function the table was made with
+     */
+    void put(int holdingId) {
+        var symbol = symbols.apply(holdingId);
+        var mask = table.length - 1;
+        for (var slot = hash(symbol) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (sameSymbol(symbols.apply(table[slot] - 1), symbol)) {
+                table[slot] = holdingId + 1;
+                return;
+            }
+        }
+        putIfAbsent(holdingId);
+    }
+
+    /**
+     * Remove a holding, if it is the one its symbol maps to
+     *
+     * @param holdingId the holding, whose symbol must still be known by the function the table was made with
+     * @return whether the holding was removed
+     */
+    boolean remove(int holdingId) {
+        var mask = table.length - 1;
+        var slot = hash(symbols.apply(holdingId)) & mask;
+        for (; table[slot] != holdingId + 1; slot = (slot + 1) & mask) {
+            if (table[slot] == EMPTY) {
+                return false;
+            }
+        }
+
+        // move later entries of the same probe run back into the gap, so that no lookup stops short of them
+        table[slot] = EMPTY;
+        for (var next = (slot + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+            var home = hash(symbols.apply(table[next] - 1)) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = EMPTY;
+                slot = next;
+            }
+        }
+        --size;
+        return true;
+    }
+
+    /**
+     * The number of symbols
+     *
+     * @return the number of symbols
+     */
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        var old = table;
+        table = new int[capacity];
+        var mask = capacity - 1;
+        for (var entry : old) {
+            if (entry != EMPTY) {
+                var slot = hash(symbols.apply(entry - 1)) & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+    }
+
+    private static int capacity(int expected) {
+        var capacity = 16;
+        while (capacity < expected * 2) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * The hash of the key of a symbol, computed without creating the key
+     */
+    private static int hash(String symbol) {
+        var hash = 0;
+        for (var i = 0; i < symbol.length(); ++i) {
+            hash = 31 * hash + fold(symbol.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameSymbol(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (var i = 0; i < a.length(); ++i) {
+            var c = a.charAt(i);
+            var d = b.charAt(i);
+            if (c != d && fold(c) != fold(d)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A character of the key of a symbol, see {@link ePortfolio#symbolKey(String)}
+     */
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
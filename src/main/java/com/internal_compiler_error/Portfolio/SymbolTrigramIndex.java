@@ -0,0 +1,79 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of every three character substring of the symbols. A symbol containing a search string contains all of its
+ * trigrams, so intersecting their postings narrows a substring search down to a few candidates that then only need to
+ * be verified. Symbols are indexed as they are stored, the same way the symbol filter compares them.
+ */
+final class SymbolTrigramIndex {
+    static final int GRAM_LENGTH = 3;
+
+    private final Map<String, HoldingBitmap> postings = new HashMap<>();
+
+    /**
+     * Index a holding under every trigram of its symbol
+     *
+     * @param holdingId the holding
+     * @param symbol    the symbol of the holding
+     */
+    void add(int holdingId, String symbol) {
+        for (var i = 0; i + GRAM_LENGTH <= symbol.length(); ++i) {
+            postings.computeIfAbsent(symbol.substring(i, i + GRAM_LENGTH), key -> new HoldingBitmap()).add(holdingId);
+        }
+    }
+
+    /**
+     * Remove a holding from the postings of every trigram of its symbol
+     *
+     * @param holdingId the holding
+     * @param symbol    the symbol the holding was indexed under
+     */
+    void remove(int holdingId, String symbol) {
+        for (var i = 0; i + GRAM_LENGTH <= symbol.length(); ++i) {
+            var gram = symbol.substring(i, i + GRAM_LENGTH);
+            var holdings = postings.get(gram);
+            if (holdings != null) {
+                holdings.remove(holdingId);
+                if (holdings.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * The holdings whose symbol may contain a search string. Every holding whose symbol does contain it is among them,
+     * but the trigrams may also occur apart from each other, so each candidate has to be checked.
+     *
+     * @param search the search string, at least {@link #GRAM_LENGTH} characters long
+     * @return the candidate holding ids, which may be the postings of the index itself and must not be modified
+     */
+    HoldingBitmap candidates(String search) {
+        var grams = new HoldingBitmap[search.length() - GRAM_LENGTH + 1];
+        for (var i = 0; i < grams.length; ++i) {
+            grams[i] = postings.get(search.substring(i, i + GRAM_LENGTH));
+            if (grams[i] == null) {
+                return new HoldingBitmap();
+            }
+        }
+        Arrays.sort(grams, Comparator.comparingInt(HoldingBitmap::cardinality));
+
+        var result = grams[0];
+        for (var i = 1; i < grams.length && !result.isEmpty(); ++i) {
+            result = HoldingBitmap.and(result, grams[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Remove every posting
+     */
+    void clear() {
+        postings.clear();
+    }
+}
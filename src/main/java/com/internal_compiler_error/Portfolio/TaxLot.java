@@ -0,0 +1,59 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+
+/**
+ * A tax lot of a holding, the shares of one purchase that are still held and what they cost
+ */
+public final class TaxLot {
+    private final int id;
+    private final int quantity;
+    private final long bookValue;
+
+    TaxLot(int id, int quantity, long bookValue) {
+        this.id = id;
+        this.quantity = quantity;
+        this.bookValue = bookValue;
+    }
+
+    /**
+     * The id of the lot, which numbers the purchases of a holding in order. The opening lot, what the holding held
+     * before lots were kept for it, is lot 0.
+     *
+     * @return the lot id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * The number of shares of the lot still held
+     *
+     * @return the quantity
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * What the shares still held cost, commission included
+     *
+     * @return the book value
+     */
+    public BigDecimal getBookValue() {
+        return Money.toBigDecimal(bookValue);
+    }
+
+    long getBookValueInCents() {
+        return bookValue;
+    }
+
+    @Override
+    public String toString() {
+        return "TaxLot {\n" +
+                "id = " + id + ",\n" +
+                "quantity = " + quantity + ",\n" +
+                "bookValue = " + getBookValue() + "\n" +
+                '}';
+    }
+}
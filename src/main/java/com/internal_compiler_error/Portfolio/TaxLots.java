@@ -0,0 +1,315 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tax lots of one holding, oldest first, in three parallel primitive arrays used as a double-ended queue. Sales
+ * from the oldest or the newest end take lots off that end, so a sale costs one step per lot it touches however many
+ * lots are held, and a lot picked by id is found by binary search, as lot ids grow with every purchase. A lot sold off
+ * from the middle is left in place with no shares and dropped when the arrays are next compacted, once such lots make
+ * up half of them or the arrays run full.
+ * <p>
+ * The book values of the lots add up to the book value of the holding. A cost that comes with no shares, such as the
+ * commission of buying none, goes to the newest lot, or to the next one bought if there is none.
+ */
+final class TaxLots {
+    private int[] ids;
+    // no shares marks a lot sold off in the middle, the lots at both ends always have shares
+    private int[] quantities;
+    private long[] bookValues;
+    // the lots in use are those from head up to tail
+    private int head;
+    private int tail;
+    private int soldOff;
+    private int nextId;
+    // cost waiting for a lot to carry it
+    private long unassigned;
+
+    private TaxLots(int capacity) {
+        ids = new int[capacity];
+        quantities = new int[capacity];
+        bookValues = new long[capacity];
+    }
+
+    /**
+     * Start the lots of a holding with everything it holds as one opening lot, lot 0
+     *
+     * @param quantity  the quantity held
+     * @param bookValue the book value in cents
+     * @return the lots
+     */
+    static TaxLots opening(int quantity, long bookValue) {
+        var lots = new TaxLots(4);
+        lots.nextId = 1;
+        if (quantity > 0) {
+            lots.append(0, quantity, bookValue);
+        } else {
+            lots.unassigned = bookValue;
+        }
+        return lots;
+    }
+
+    /**
+     * Rebuild lots as they were saved, see {@link #forEach}
+     *
+     * @param ids        the lot ids, increasing
+     * @param quantities the quantities, all positive
+     * @param bookValues the book values in cents
+     * @param count      the number of lots
+     * @param nextId     the id of the next lot bought, above every lot id
+     * @param unassigned the cost waiting for a lot to carry it
+     * @return the lots
+     * @throws IllegalArgumentException if the lots are inconsistent
+     */
+    static TaxLots of(int[] ids, int[] quantities, long[] bookValues, int count, int nextId, long unassigned) {
+        var lots = new TaxLots(Math.max(4, count));
+        for (var i = 0; i < count; ++i) {
+            if (quantities[i] <= 0 || i > 0 && ids[i] <= ids[i - 1] || ids[i] < 0) {
+                throw new IllegalArgumentException("Invalid tax lot " + ids[i]);
+            }
+            lots.append(ids[i], quantities[i], bookValues[i]);
+        }
+        if (count > 0 && nextId <= ids[count - 1]) {
+            throw new IllegalArgumentException("Invalid next tax lot " + nextId);
+        }
+        lots.nextId = nextId;
+        lots.unassigned = unassigned;
+        return lots;
+    }
+
+    /**
+     * Record a purchase as a new lot
+     *
+     * @param quantity  the quantity bought
+     * @param bookValue what the purchase cost in cents
+     */
+    void add(int quantity, long bookValue) {
+        if (quantity == 0) {
+            addCost(bookValue);
+            return;
+        }
+        append(nextId++, quantity, Math.addExact(bookValue, unassigned));
+        unassigned = 0;
+    }
+
+    /**
+     * Add a cost of the last purchase, such as its commission, to the newest lot
+     *
+     * @param cents the cost in cents
+     */
+    void addCost(long cents) {
+        if (head == tail) {
+            unassigned = Math.addExact(unassigned, cents);
+        } else {
+            bookValues[tail - 1] = Math.addExact(bookValues[tail - 1], cents);
+        }
+    }
+
+    /**
+     * Sell shares from the oldest or the newest lots
+     *
+     * @param quantity    the quantity to sell, at most what the lots hold
+     * @param newestFirst whether to sell from the newest lots rather than the oldest
+     * @return the book value of the shares sold, in cents
+     */
+    long take(int quantity, boolean newestFirst) {
+        long taken = 0;
+        while (quantity > 0) {
+            var lot = newestFirst ? tail - 1 : head;
+            if (quantity < quantities[lot]) {
+                taken = Math.addExact(taken, takeFrom(lot, quantity));
+                break;
+            }
+            quantity -= quantities[lot];
+            taken = Math.addExact(taken, bookValues[lot]);
+            quantities[lot] = 0;
+            bookValues[lot] = 0;
+            if (newestFirst) {
+                --tail;
+            } else {
+                ++head;
+            }
+            trimEnds();
+        }
+        return taken;
+    }
+
+    /**
+     * Sell shares from one lot
+     *
+     * @param id       the lot id
+     * @param quantity the quantity to sell, at most what the lot holds
+     * @return the book value of the shares sold, in cents
+     */
+    long takeFromLot(int id, int quantity) {
+        var lot = indexOf(id);
+        if (quantity < quantities[lot]) {
+            return takeFrom(lot, quantity);
+        }
+
+        var taken = bookValues[lot];
+        quantities[lot] = 0;
+        bookValues[lot] = 0;
+        ++soldOff;
+        trimEnds();
+        if (soldOff * 2 > tail - head) {
+            compact(ids.length);
+        }
+        return taken;
+    }
+
+    /**
+     * The quantity of a lot
+     *
+     * @param id the lot id
+     * @return the quantity, or 0 if there is no such lot left
+     */
+    int quantityOf(int id) {
+        var lot = indexOf(id);
+        return lot < 0 ? 0 : quantities[lot];
+    }
+
+    /**
+     * The number of lots
+     *
+     * @return the number of lots
+     */
+    int size() {
+        return tail - head - soldOff;
+    }
+
+    /**
+     * The id the next lot bought will get
+     *
+     * @return the next lot id
+     */
+    int nextId() {
+        return nextId;
+    }
+
+    /**
+     * The cost that no lot carries yet, see {@link #addCost}
+     *
+     * @return the cost in cents
+     */
+    long unassigned() {
+        return unassigned;
+    }
+
+    /**
+     * Walk the lots from the oldest
+     *
+     * @param action gets the id, quantity and book value of each lot
+     */
+    void forEach(LotAction action) {
+        for (var lot = head; lot < tail; ++lot) {
+            if (quantities[lot] > 0) {
+                action.accept(ids[lot], quantities[lot], bookValues[lot]);
+            }
+        }
+    }
+
+    /**
+     * Receives a lot
+     */
+    @FunctionalInterface
+    interface LotAction {
+        void accept(int id, int quantity, long bookValue);
+    }
+
+    /**
+     * The lots from the oldest
+     *
+     * @return the lots
+     */
+    List<TaxLot> toList() {
+        var lots = new ArrayList<TaxLot>(size());
+        forEach((id, quantity, bookValue) -> lots.add(new TaxLot(id, quantity, bookValue)));
+        return lots;
+    }
+
+    /**
+     * A copy that later sales and purchases don't affect
+     *
+     * @return the copy
+     */
+    TaxLots copy() {
+        var copy = new TaxLots(Math.max(4, size()));
+        forEach(copy::append);
+        copy.nextId = nextId;
+        copy.unassigned = unassigned;
+        return copy;
+    }
+
+    private long takeFrom(int lot, int quantity) {
+        // the book value of the part sold, rounded to the cent like a proportional sale of a whole holding
+        var taken = Money.proportion(bookValues[lot], quantity, quantities[lot]);
+        bookValues[lot] -= taken;
+        quantities[lot] -= quantity;
+        return taken;
+    }
+
+    /**
+     * The position of a lot
+     *
+     * @return the position, or -1 if there is no such lot left
+     */
+    private int indexOf(int id) {
+        var lot = Arrays.binarySearch(ids, head, tail, id);
+        return lot >= 0 && quantities[lot] > 0 ? lot : -1;
+    }
+
+    private void append(int id, int quantity, long bookValue) {
+        if (tail == ids.length) {
+            // reclaim the room of lots sold off before growing
+            var used = tail - head - soldOff;
+            compact(used * 4 / 3 < ids.length ? ids.length : Math.max(4, ids.length * 2));
+        }
+        ids[tail] = id;
+        quantities[tail] = quantity;
+        bookValues[tail++] = bookValue;
+    }
+
+    /**
+     * Move the lots with shares to the front of arrays of a capacity
+     */
+    private void compact(int capacity) {
+        var newIds = capacity == ids.length ? ids : new int[capacity];
+        var newQuantities = capacity == ids.length ? quantities : new int[capacity];
+        var newBookValues = capacity == ids.length ? bookValues : new long[capacity];
+        var kept = 0;
+        for (var lot = head; lot < tail; ++lot) {
+            if (quantities[lot] > 0) {
+                newIds[kept] = ids[lot];
+                newQuantities[kept] = quantities[lot];
+                newBookValues[kept++] = bookValues[lot];
+            }
+        }
+        ids = newIds;
+        quantities = newQuantities;
+        bookValues = newBookValues;
+        head = 0;
+        tail = kept;
+        soldOff = 0;
+    }
+
+    /**
+     * Drop the lots sold off from both ends
+     */
+    private void trimEnds() {
+        while (head < tail && quantities[head] == 0) {
+            ++head;
+            --soldOff;
+        }
+        while (tail > head && quantities[tail - 1] == 0) {
+            --tail;
+            --soldOff;
+        }
+        if (head == tail) {
+            head = 0;
+            tail = 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+
+/**
+ * The outcome of every order of a batch executed by {@link ePortfolio#executeOrders(java.util.List)}, in order, and a
+ * summary of them
+ */
+public final class TradeBatchResult {
+    // realized gain of each order in cents, zero for buys and rejected orders
+    private final long[] gains;
+    // why each order was rejected, null for executed ones
+    private final Exception[] rejections;
+    private int rejected;
+    private long totalGain;
+
+    TradeBatchResult(int orders) {
+        gains = new long[orders];
+        rejections = new Exception[orders];
+    }
+
+    void executed(int order, long gain) {
+        gains[order] = gain;
+        totalGain = Math.addExact(totalGain, gain);
+    }
+
+    void rejected(int order, Exception reason) {
+        rejections[order] = reason;
+        ++rejected;
+    }
+
+    /**
+     * @return the number of orders in the batch
+     */
+    public int size() {
+        return gains.length;
+    }
+
+    /**
+     * Whether an order was executed
+     *
+     * @param order the position of the order in the batch
+     * @return false if it was rejected
+     */
+    public boolean isExecuted(int order) {
+        return rejections[order] == null;
+    }
+
+    /**
+     * The gain realized by an order
+     *
+     * @param order the position of the order in the batch
+     * @return the gain of a sale, zero for a purchase or a rejected order
+     */
+    public BigDecimal getGain(int order) {
+        return Money.toBigDecimal(gains[order]);
+    }
+
+    /**
+     * Why an order was rejected
+     *
+     * @param order the position of the order in the batch
+     * @return the exception the single trade would have thrown, such as an {@link IllegalQuantityException} or an
+     * {@link InvestmentNotFoundException}, or null if the order was executed
+     */
+    public Exception getRejection(int order) {
+        return rejections[order];
+    }
+
+    public int getExecutedCount() {
+        return gains.length - rejected;
+    }
+
+    public int getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * @return the gain realized by all sales of the batch
+     */
+    public BigDecimal getTotalGain() {
+        return Money.toBigDecimal(totalGain);
+    }
+}
@@ -0,0 +1,725 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of the trades applied to a portfolio. Every buy, sell, price update and rename is
+ * appended as a small binary record before it is applied, and a committer thread writes and syncs whatever has
+ * accumulated in one go. Appending doesn't wait, the caller waits on the {@link Commit} it gets back once it has
+ * applied the trade and let go of whatever keeps other trades out, so trades of several threads share a single fsync.
+ * <p>
+ * A trade the journal refuses, because it is closed or has failed, is never applied. A trade applied before its commit
+ * fails stays in memory, the caller is told by the exception from {@link Commit#await()} and the journal refuses every
+ * later trade, so that what is on disk can be recovered by reopening it. A trade that is refused when applied is left
+ * in the journal: replaying it on the same portfolio fails the same way, so it is skipped.
+ * <p>
+ * The journal directory holds numbered generations: snapshot-N.bin, a {@link BinarySnapshot}, is the portfolio after
+ * every journal-M.log with M &lt; N has been applied. Recovery loads the newest snapshot and replays the journals from its generation on.
+ * Compaction starts a new journal generation and writes the snapshot for it in the background, after which the older
+ * journals and snapshots are deleted.
+ */
+final class TradeJournal implements Closeable {
+    static final byte BUY = 1;
+    static final byte SELL = 2;
+    static final byte UPDATE_PRICE = 3;
+    static final byte RENAME = 4;
+    // a sale by a cost basis method other than average cost, which plain sales were made by before lots were kept
+    static final byte SELL_BY_METHOD = 5;
+    static final byte SELL_LOT = 6;
+    // a purchase made into a tax lot of its own rather than into the pool
+    static final byte BUY_INTO_LOT = 7;
+    // a batch of price updates, which is applied whole or not at all
+    static final byte UPDATE_PRICES = 8;
+
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final Pattern JOURNAL_FILE = Pattern.compile("journal-(\\d+)\\.log");
+
+    // record header is the payload length, record trailer the CRC32 of the payload
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int TRAILER_SIZE = Integer.BYTES;
+
+    /**
+     * Journal size after which a compaction is started on its own
+     */
+    static final long DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+
+    private final File directory;
+    private final Supplier<List<Investment>> snapshotSource;
+    private final long compactionThreshold;
+
+    // guards the pending buffer, the sequence numbers and the state flags
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOutput = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private long appendedSequence = 0;
+    private long committedSequence = 0;
+    private IOException failure;
+    private boolean closed = false;
+
+    // held while writing to or switching the journal file
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private FileChannel channel;
+    private long generation;
+    private long journalSize = 0;
+
+    private final Thread committer;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "trade-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> compaction;
+
+    /**
+     * Start journaling into a directory whose existing generations have already been recovered
+     *
+     * @param directory           the journal directory
+     * @param generation          the generation of the journal to start, must be newer than any existing one
+     * @param snapshotSource      produces a detached copy of the portfolio for compaction
+     * @param compactionThreshold journal size in bytes after which a compaction is started
+     * @throws IOException if the journal can't be created
+     */
+    TradeJournal(File directory, long generation, Supplier<List<Investment>> snapshotSource, long compactionThreshold) throws IOException {
+        this.directory = directory;
+        this.snapshotSource = snapshotSource;
+        this.compactionThreshold = compactionThreshold;
+        this.generation = generation;
+        this.channel = openJournal(generation);
+
+        committer = new Thread(this::commitLoop, "trade-journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Load the newest snapshot of a journal directory into an empty portfolio and replay the journals on top of it
+     *
+     * @param directory the journal directory
+     * @param portfolio the portfolio to recover into, must not be journaling yet
+     * @return the generation the next journal must use
+     * @throws IOException                     if the journal can't be read or is corrupt
+     * @throws InvalidInputFileFormatException if the snapshot is corrupt
+     */
+    static long recover(File directory, ePortfolio portfolio) throws IOException, InvalidInputFileFormatException {
+        var snapshots = generations(directory, SNAPSHOT_FILE);
+        var journals = generations(directory, JOURNAL_FILE);
+
+        long snapshotGeneration = 0;
+        if (!snapshots.isEmpty()) {
+            snapshotGeneration = snapshots.lastKey();
+            portfolio.loadSnapshot(snapshots.lastEntry().getValue());
+        }
+
+        var replay = journals.tailMap(snapshotGeneration, true);
+        var last = replay.isEmpty() ? -1 : replay.lastKey();
+        for (var entry : replay.entrySet()) {
+            replay(entry.getValue(), portfolio, entry.getKey() == last);
+        }
+
+        var newest = Math.max(snapshotGeneration, journals.isEmpty() ? 0 : journals.lastKey());
+        return newest + 1;
+    }
+
+    /**
+     * Record a purchase about to be made
+     *
+     * @return the commit to wait on once the purchase is made
+     */
+    Commit recordBuy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity, boolean intoLot) {
+        return append(List.of(buyRecord(type, symbol, name, price, quantity, intoLot)));
+    }
+
+    /**
+     * Record a sale about to be made
+     *
+     * @return the commit to wait on once the sale is made
+     */
+    Commit recordSell(String symbol, int quantity, BigDecimal price, CostBasisMethod method) {
+        return append(List.of(sellRecord(symbol, quantity, price, method)));
+    }
+
+    /**
+     * Record a sale from a tax lot about to be made
+     *
+     * @return the commit to wait on once the sale is made
+     */
+    Commit recordSellLot(String symbol, int lotId, int quantity, BigDecimal price) {
+        return append(SELL_LOT, output -> {
+            output.writeUTF(symbol);
+            output.writeInt(lotId);
+            output.writeInt(quantity);
+            writeDecimal(output, price);
+        });
+    }
+
+    /**
+     * Record a batch of orders about to be executed, one record per order, all in the same commit. The orders are
+     * replayed one by one, those rejected in the batch are rejected again, and a crash may keep only the first part of
+     * the batch.
+     *
+     * @param orders the orders, in the order they are executed
+     * @param method the cost basis method the orders are executed by
+     * @return the commit to wait on once the orders are executed
+     */
+    Commit recordOrders(List<TradeOrder> orders, CostBasisMethod method) {
+        var records = new ArrayList<RecordWriter>(orders.size());
+        for (var order : orders) {
+            if (order.getAction() == TradeOrder.Action.BUY) {
+                records.add(buyRecord(order.getInvestmentType(), order.getSymbol(), order.getName(), order.getPrice(), order.getQuantity(),
+                        method != CostBasisMethod.AVERAGE_COST));
+            } else {
+                records.add(sellRecord(order.getSymbol(), order.getQuantity(), order.getPrice(), method));
+            }
+        }
+        return append(records);
+    }
+
+    /**
+     * Record a price update about to be made
+     *
+     * @return the commit to wait on once the price is updated
+     */
+    Commit recordPriceUpdate(String symbol, BigDecimal price) {
+        return append(UPDATE_PRICE, output -> {
+            output.writeUTF(symbol);
+            writeDecimal(output, price);
+        });
+    }
+
+    /**
+     * Record a batch of price updates about to be made, as a single record that is replayed as a batch again, so a
+     * batch that was refused as a whole is refused again and a crash keeps all of it or nothing
+     *
+     * @param updates the symbols and their new prices, as given to the batch
+     * @return the commit to wait on once the prices are updated
+     */
+    Commit recordPriceUpdates(List<Pair<String, BigDecimal>> updates) {
+        return append(UPDATE_PRICES, output -> {
+            output.writeInt(updates.size());
+            for (var update : updates) {
+                output.writeUTF(update.getFirst());
+                writeDecimal(output, update.getSecond());
+            }
+        });
+    }
+
+    /**
+     * Record a rename about to be made
+     *
+     * @return the commit to wait on once the product is renamed
+     */
+    Commit recordRename(String symbol, String name) {
+        return append(RENAME, output -> {
+            output.writeUTF(symbol);
+            output.writeUTF(name);
+        });
+    }
+
+    /**
+     * Start a compaction if the journal has grown past the threshold and none is running. Called once the trades
+     * appended so far have been applied, as the compaction snapshot must contain them.
+     */
+    void compactIfDue() {
+        boolean compactionDue;
+        synchronized (lock) {
+            compactionDue = journalSize >= compactionThreshold && (compaction == null || compaction.isDone());
+        }
+
+        if (compactionDue) {
+            compact();
+        }
+    }
+
+    /**
+     * Start a new journal generation and write a snapshot of the portfolio for it in the background. Does nothing if a
+     * compaction is already running.
+     */
+    void compact() {
+        synchronized (lock) {
+            if (compaction != null && !compaction.isDone()) {
+                return;
+            }
+        }
+
+        // the copy must be taken at the same point of the trade history the journal is switched at
+        var snapshot = snapshotSource.get();
+        long snapshotGeneration;
+        try {
+            snapshotGeneration = rotate();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (lock) {
+            compaction = compactor.submit(() -> {
+                writeSnapshot(snapshot, snapshotGeneration);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Wait for a running compaction to finish
+     *
+     * @throws IOException if the compaction failed
+     */
+    void awaitCompaction() throws IOException {
+        Future<?> running;
+        synchronized (lock) {
+            running = compaction;
+        }
+        if (running == null) {
+            return;
+        }
+
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Commit what is pending, wait for a running compaction and close the journal
+     *
+     * @throws IOException if the last commit or the compaction failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            awaitCompaction();
+        } finally {
+            compactor.shutdown();
+            channel.close();
+        }
+
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    private static RecordWriter buyRecord(InvestmentType type, String symbol, String name, BigDecimal price, int quantity, boolean intoLot) {
+        return record(intoLot ? BUY_INTO_LOT : BUY, output -> {
+            output.writeByte(type.ordinal());
+            output.writeUTF(symbol);
+            output.writeUTF(name);
+            writeDecimal(output, price);
+            output.writeInt(quantity);
+        });
+    }
+
+    private static RecordWriter sellRecord(String symbol, int quantity, BigDecimal price, CostBasisMethod method) {
+        RecordWriter payload = output -> {
+            output.writeUTF(symbol);
+            output.writeInt(quantity);
+            writeDecimal(output, price);
+        };
+        if (method == CostBasisMethod.AVERAGE_COST) {
+            return record(SELL, payload);
+        }
+        return record(SELL_BY_METHOD, output -> {
+            output.writeByte(method.ordinal());
+            payload.write(output);
+        });
+    }
+
+    /**
+     * Prefix the payload of a record with its type
+     */
+    private static RecordWriter record(byte type, RecordWriter payload) {
+        return output -> {
+            output.writeByte(type);
+            payload.write(output);
+        };
+    }
+
+    /**
+     * Frame a record and queue it for the committer
+     */
+    private Commit append(byte type, RecordWriter payload) {
+        return append(List.of(record(type, payload)));
+    }
+
+    /**
+     * Frame records and queue them for the committer together
+     *
+     * @throws UncheckedIOException  if the journal has failed
+     * @throws IllegalStateException if the journal is closed
+     */
+    private Commit append(List<RecordWriter> records) {
+        synchronized (lock) {
+            checkUsable();
+
+            if (records.isEmpty()) {
+                // the committer only wakes up for something to write, nothing new has to be waited for
+                return new Commit(appendedSequence);
+            }
+
+            try {
+                for (var writer : records) {
+                    record.reset();
+                    writer.write(recordOutput);
+                    frame(record, pending);
+                }
+            } catch (IOException e) {
+                // writing to memory can't fail
+                throw new UncheckedIOException(e);
+            }
+
+            lock.notifyAll();
+            return new Commit(++appendedSequence);
+        }
+    }
+
+    /**
+     * The point of the journal up to some records, which a caller waits on until they are durable
+     */
+    final class Commit {
+        private final long sequence;
+
+        private Commit(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Wait until the records, and every record appended before them, have been synced
+         *
+         * @throws UncheckedIOException if the journal failed before syncing them
+         */
+        void await() {
+            synchronized (lock) {
+                while (committedSequence < sequence && failure == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new InterruptedIOException());
+                    }
+                }
+                if (committedSequence < sequence) {
+                    throw new UncheckedIOException("Trade journal failed", failure);
+                }
+            }
+        }
+    }
+
+    private void frame(ByteArrayOutputStream payload, ByteArrayOutputStream into) throws IOException {
+        var bytes = payload.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+
+        var output = new DataOutputStream(into);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.writeInt((int) crc.getValue());
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Trade journal failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Trade journal is closed");
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+            }
+
+            writeLock.lock();
+            try {
+                commit();
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Write and sync everything pending as one group. Must hold the write lock.
+     */
+    private void commit() throws IOException {
+        ByteArrayOutputStream batch;
+        long sequence;
+
+        synchronized (lock) {
+            batch = pending;
+            sequence = appendedSequence;
+            pending = spare;
+            spare = batch;
+        }
+
+        if (batch.size() > 0) {
+            var buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+
+        synchronized (lock) {
+            journalSize += batch.size();
+            batch.reset();
+            committedSequence = sequence;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Commit what is pending to the current journal and switch to the next generation
+     *
+     * @return the new generation
+     */
+    private long rotate() throws IOException {
+        writeLock.lock();
+        try {
+            commit();
+
+            var next = generation + 1;
+            var nextChannel = openJournal(next);
+            channel.close();
+
+            channel = nextChannel;
+            generation = next;
+            synchronized (lock) {
+                journalSize = 0;
+            }
+            return next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private FileChannel openJournal(long generation) throws IOException {
+        var file = new File(directory, "journal-" + generation + ".log").toPath();
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Write the snapshot of a generation and delete everything it supersedes
+     */
+    private void writeSnapshot(List<Investment> snapshot, long snapshotGeneration) throws IOException {
+        var file = new File(directory, "snapshot-" + snapshotGeneration + ".bin");
+        BinarySnapshot.write(file, snapshot);
+
+        for (var entry : generations(directory, JOURNAL_FILE).headMap(snapshotGeneration).values()) {
+            Files.deleteIfExists(entry.toPath());
+        }
+        for (var entry : generations(directory, SNAPSHOT_FILE).headMap(snapshotGeneration).values()) {
+            Files.deleteIfExists(entry.toPath());
+        }
+    }
+
+    private static TreeMap<Long, File> generations(File directory, Pattern pattern) {
+        var result = new TreeMap<Long, File>();
+        var files = directory.listFiles();
+        if (files == null) {
+            return result;
+        }
+
+        for (var file : files) {
+            var matcher = pattern.matcher(file.getName());
+            if (matcher.matches()) {
+                result.put(Long.parseLong(matcher.group(1)), file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply every record of a journal file to the portfolio. A torn record at the end of the newest journal is the
+     * trace of a crash mid-commit and ends the replay, anywhere else it means the journal is corrupt.
+     */
+    private static void replay(File file, ePortfolio portfolio, boolean newest) throws IOException {
+        var bytes = Files.readAllBytes(file.toPath());
+        var buffer = ByteBuffer.wrap(bytes);
+        var crc = new CRC32();
+
+        while (buffer.hasRemaining()) {
+            var start = buffer.position();
+            var length = buffer.remaining() >= HEADER_SIZE ? buffer.getInt() : -1;
+
+            var torn = length < 0 || buffer.remaining() < (long) length + TRAILER_SIZE;
+            if (!torn) {
+                crc.reset();
+                crc.update(bytes, buffer.position(), length);
+                torn = (int) crc.getValue() != buffer.getInt(buffer.position() + length);
+            }
+
+            if (torn) {
+                if (newest) {
+                    return;
+                }
+                throw new IOException("Corrupt trade journal " + file + " at offset " + start);
+            }
+
+            var input = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), length));
+            apply(input, portfolio);
+            buffer.position(buffer.position() + length + TRAILER_SIZE);
+        }
+    }
+
+    private static void apply(DataInputStream input, ePortfolio portfolio) throws IOException {
+        var trade = read(input, portfolio);
+
+        try {
+            trade.apply();
+        } catch (Exception e) {
+            // the trade was refused when it was made and is refused again, the portfolio is as it was then
+        }
+    }
+
+    /**
+     * A trade read back from the journal, ready to apply
+     */
+    private interface Trade {
+        void apply() throws Exception;
+    }
+
+    /**
+     * Read a record into the trade it stands for
+     *
+     * @throws IOException if the record is malformed
+     */
+    private static Trade read(DataInputStream input, ePortfolio portfolio) throws IOException {
+        var type = input.readByte();
+
+        try {
+            switch (type) {
+                case BUY:
+                case BUY_INTO_LOT: {
+                    var investmentType = InvestmentType.values()[input.readByte()];
+                    var symbol = input.readUTF();
+                    var name = input.readUTF();
+                    var price = readDecimal(input);
+                    var quantity = input.readInt();
+                    return () -> portfolio.buy(investmentType, symbol, name, price, quantity, type == BUY_INTO_LOT);
+                }
+                case SELL: {
+                    var symbol = input.readUTF();
+                    var quantity = input.readInt();
+                    var price = readDecimal(input);
+                    return () -> portfolio.sell(symbol, quantity, price, CostBasisMethod.AVERAGE_COST);
+                }
+                case SELL_BY_METHOD: {
+                    var method = CostBasisMethod.values()[input.readByte()];
+                    var symbol = input.readUTF();
+                    var quantity = input.readInt();
+                    var price = readDecimal(input);
+                    return () -> portfolio.sell(symbol, quantity, price, method);
+                }
+                case SELL_LOT: {
+                    var symbol = input.readUTF();
+                    var lotId = input.readInt();
+                    var quantity = input.readInt();
+                    var price = readDecimal(input);
+                    return () -> portfolio.sellFromLot(symbol, lotId, quantity, price);
+                }
+                case UPDATE_PRICE: {
+                    var symbol = input.readUTF();
+                    var price = readDecimal(input);
+                    return () -> portfolio.updatePrice(symbol, price);
+                }
+                case UPDATE_PRICES: {
+                    var count = input.readInt();
+                    if (count < 0) {
+                        throw new IOException("Invalid price update count " + count);
+                    }
+                    var updates = new ArrayList<Pair<String, BigDecimal>>();
+                    for (var i = 0; i < count; ++i) {
+                        var symbol = input.readUTF();
+                        updates.add(new Pair<>(symbol, readDecimal(input)));
+                    }
+                    return () -> portfolio.updatePrices(updates);
+                }
+                case RENAME: {
+                    var symbol = input.readUTF();
+                    var name = input.readUTF();
+                    return () -> portfolio.rename(symbol, name);
+                }
+                default:
+                    throw new IOException("Unknown trade journal record " + type);
+            }
+        } catch (RuntimeException e) {
+            // an unknown enum constant, a negative length and the like
+            throw new IOException("Invalid trade journal record " + type, e);
+        }
+    }
+
+    private static void writeDecimal(DataOutputStream output, BigDecimal value) throws IOException {
+        var unscaled = value.unscaledValue().toByteArray();
+        output.writeInt(value.scale());
+        output.writeInt(unscaled.length);
+        output.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream input) throws IOException {
+        var scale = input.readInt();
+        var unscaled = new byte[input.readInt()];
+        input.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
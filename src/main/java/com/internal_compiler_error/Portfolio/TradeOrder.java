@@ -0,0 +1,106 @@
+package com.internal_compiler_error.Portfolio;
+
+import java.math.BigDecimal;
+
+/**
+ * A buy or sell order for {@link ePortfolio#executeOrders(java.util.List)}, taking the same arguments as
+ * {@link ePortfolio#buy} and {@link ePortfolio#sell}
+ */
+public final class TradeOrder {
+    /**
+     * Whether an order buys or sells
+     */
+    public enum Action {
+        BUY, SELL
+    }
+
+    private final Action action;
+    private final InvestmentType investmentType;
+    private final String symbol;
+    private final String name;
+    private final int quantity;
+    private final BigDecimal price;
+
+    private TradeOrder(Action action, InvestmentType investmentType, String symbol, String name, int quantity, BigDecimal price) {
+        this.action = action;
+        this.investmentType = investmentType;
+        this.symbol = symbol;
+        this.name = name;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    /**
+     * Create a buy order
+     *
+     * @param type     the type of investment, used if the symbol is a new listing
+     * @param symbol   the symbol name for the product
+     * @param name     the name of the product, used if the symbol is a new listing
+     * @param price    the purchase price
+     * @param quantity the quantity to buy
+     * @return the order
+     */
+    public static TradeOrder buy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity) {
+        return new TradeOrder(Action.BUY, type, symbol, name, quantity, price);
+    }
+
+    /**
+     * Create a sell order
+     *
+     * @param symbol   the symbol name for the product
+     * @param quantity the quantity to sell
+     * @param price    the selling price
+     * @return the order
+     */
+    public static TradeOrder sell(String symbol, int quantity, BigDecimal price) {
+        return new TradeOrder(Action.SELL, null, symbol, null, quantity, price);
+    }
+
+    /**
+     * Getter for action
+     * @return whether the order buys or sells
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * Getter for InvestmentType
+     * @return the type of investment, null for a sell order
+     */
+    public InvestmentType getInvestmentType() {
+        return investmentType;
+    }
+
+    /**
+     * Getter for symbol
+     * @return the symbol name for the product
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Getter for name
+     * @return the name of the product, null for a sell order
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for quantity
+     * @return the quantity to buy or sell
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Getter for price
+     * @return the price of the trade
+     */
+    public BigDecimal getPrice() {
+        return price;
+    }
+}
@@ -4,29 +4,110 @@ import com.internal_compiler_error.utils.Pair;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 public class ePortfolio {
+    // check the running totals against a full recomputation on every read, turned on with -DePortfolio.verifyTotals=true
+    static final boolean VERIFY_TOTALS = Boolean.getBoolean("ePortfolio.verifyTotals");
+
     private List<Investment> investments = new ArrayList<>();
-    private Map<String, List<Integer>> investmentFinder = new HashMap<>();
+    private NameIndex investmentFinder = new NameIndex();
+    private PriceIndex priceIndex = new PriceIndex();
+    private SymbolTrigramIndex symbolFinder = new SymbolTrigramIndex();
+    private PortfolioTotals totals = new PortfolioTotals();
+    private TradeJournal journal;
+    // with commits deferred, the caller waits for the commit of the last trade itself, see takeJournalCommit
+    private boolean deferJournalCommits = false;
+    private TradeJournal.Commit journalCommit;
+    // the strings shared with the other portfolios of a manager, null for a portfolio on its own
+    private final StringPool strings;
+    // the one copy of every name held, counted by the holdings that have it
+    private final StringDictionary names = new StringDictionary();
+    // how sales take book value off holdings
+    private CostBasisMethod costBasisMethod = CostBasisMethod.AVERAGE_COST;
+
+    // the holding of each holding id, null for ids that are free for reuse
+    private List<Investment> holdings = new ArrayList<>();
+    private Deque<Integer> freeHoldingIds = new ArrayDeque<>();
+
+    // the holding id of each symbol, case-insensitively, for lookups that don't need the symbol order
+    private SymbolTable holdingsBySymbol = new SymbolTable(this::symbolOf, 0);
+    private boolean duplicateSymbols;
+
+    // new listings and removed holdings that the symbol ordered list hasn't caught up with yet
+    private List<Investment> pendingListings = new ArrayList<>();
+    private int pendingRemovals;
+
+    // while a batch of orders runs, how each holding id it touched was indexed before, null outside of batches
+    private Map<Integer, IndexedHolding> deferredIndexing;
+
+    // the holdings as of now for the next version, null until a version is first asked for
+    private PersistentHoldingTree versionTree;
+    // the last version published at the end of an operation, for readers on other threads
+    private volatile PortfolioVersion published;
+    private long publishedVersions;
+
+    // told about every operation that changed the portfolio, and what the running one changed so far
+    private final List<PortfolioListener> listeners = new ArrayList<>();
+    private PortfolioChange.Builder changes;
+    // the quantity of the holding between beginChange and endChange, while changes are collected
+    private int quantityBeforeChange;
+
+    /**
+     * What the name, price and symbol indexes hold for a holding id
+     */
+    private static final class IndexedHolding {
+        static final IndexedHolding NONE = new IndexedHolding(null, null, 0);
+
+        final String symbol;
+        final String name;
+        final long price;
+
+        IndexedHolding(String symbol, String name, long price) {
+            this.symbol = symbol;
+            this.name = name;
+            this.price = price;
+        }
+    }
 
 
     public List<Investment> getInvestments() {
+        mergePendingChanges();
         return investments;
     }
 
+    /**
+     * Replace all investments. The list must be sorted by symbol.
+     *
+     * @param investments the investments
+     */
     public void setInvestments(List<Investment> investments) {
         this.investments = investments;
+        reindexInvestments();
     }
 
     /**
      * Default constructor, only used for testing and potential serialization
      */
     public ePortfolio() {
+        this(null);
+    }
+
+    /**
+     * A portfolio that shares the strings of its holdings with other portfolios
+     *
+     * @param strings the pool of shared strings, or null to keep its own
+     */
+    ePortfolio(StringPool strings) {
+        this.strings = strings;
     }
 
     /**
@@ -36,13 +117,90 @@ public class ePortfolio {
      * @throws InvalidInputFileFormatException if error occurs while trying parse
      */
     public void loadInvestments(File input) throws InvalidInputFileFormatException {
+        loadInvestments(input, Charset.defaultCharset());
+    }
+
+    /**
+     * Load a list of investments from a file in a given charset
+     *
+     * @param input   the file containing the investments
+     * @param charset the charset of the file
+     * @throws InvalidInputFileFormatException if error occurs while trying parse
+     */
+    void loadInvestments(File input, Charset charset) throws InvalidInputFileFormatException {
+        if (!CsvInvestmentReader.supports(charset)) {
+            loadInvestmentsWithScanner(input, charset);
+            return;
+        }
+
+        mergePendingChanges();
+        try {
+            new CsvInvestmentReader(charset).read(input, investments);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InvalidInputFileFormatException | RuntimeException e) {
+            // the lines before the malformed one stay in the portfolio
+            reindexInvestments();
+            throw e;
+        }
+
+        indexInvestments();
+    }
+
+    /**
+     * Load a list of investments from a file using all cores. Produces the same portfolio as
+     * {@link #loadInvestments(File)}, but is only worth it for files of many megabytes.
+     *
+     * @param input the file containing the investments
+     * @throws InvalidInputFileFormatException if error occurs while trying parse
+     */
+    public void loadInvestmentsInParallel(File input) throws InvalidInputFileFormatException {
+        loadInvestmentsInParallel(input, Charset.defaultCharset());
+    }
+
+    /**
+     * Load a list of investments from a file in a given charset using all cores
+     *
+     * @param input   the file containing the investments
+     * @param charset the charset of the file
+     * @throws InvalidInputFileFormatException if error occurs while trying parse
+     */
+    void loadInvestmentsInParallel(File input, Charset charset) throws InvalidInputFileFormatException {
+        if (!CsvInvestmentReader.supports(charset)) {
+            loadInvestmentsWithScanner(input, charset);
+            return;
+        }
+
+        mergePendingChanges();
+        try {
+            new ParallelCsvLoader(charset, ForkJoinPool.commonPool()).load(input, investments, investmentFinder);
+            assignHoldingIds();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InvalidInputFileFormatException | RuntimeException e) {
+            // the lines before the malformed one stay in the portfolio
+            reindexInvestments();
+            throw e;
+        }
+    }
+
+    /**
+     * Load a list of investments from a file line by line using a Scanner. Kept for charsets that the byte tokenizer
+     * doesn't understand and as the baseline for benchmarks.
+     *
+     * @param input   the file containing the investments
+     * @param charset the charset of the file
+     * @throws InvalidInputFileFormatException if error occurs while trying parse
+     */
+    void loadInvestmentsWithScanner(File input, Charset charset) throws InvalidInputFileFormatException {
+        mergePendingChanges();
         try {
-            Scanner scanner = new Scanner(input);
+            Scanner scanner = new Scanner(input, charset);
             while (scanner.hasNext()) {
                 String line = scanner.nextLine().replace(System.getProperty("line.separator"), "");
                 String[] fields = line.split("[,]+");
 
-                if (fields.length < 5) {
+                if (fields.length < 6) {
                     throw new InvalidInputFileFormatException();
                 }
 
@@ -57,237 +215,1357 @@ public class ePortfolio {
                     throw new InvalidInputFileFormatException();
                 }
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
+        } catch (InvalidInputFileFormatException | RuntimeException e) {
+            // the lines before the malformed one stay in the portfolio
+            reindexInvestments();
+            throw e;
         }
 
+        indexInvestments();
+    }
+
+    /**
+     * Sort the investments by symbol and build the name index from scratch
+     */
+    private void indexInvestments() {
         investments.sort((lhs, rhs) -> lhs.getSymbol().compareToIgnoreCase(rhs.getSymbol()));
+        reindexInvestments();
+    }
 
-        int index = 0;
+    /**
+     * Renumber the holdings and build the name index from scratch
+     */
+    private void reindexInvestments() {
+        assignHoldingIds();
+        investmentFinder.clear();
+
+        for (var investment : investments) {
+            investmentFinder.add(investment.getHoldingId(), investment.getName());
+        }
+    }
+
+    /**
+     * Number the holdings by their position in the list, which is what the bulk loaders build their name index on, and
+     * build the symbol lookup, the symbol trigram index, the price index and the running totals from scratch
+     */
+    private void assignHoldingIds() {
+        // loaded names are swapped for one copy of each, and symbols for the pooled ones if there is a pool, the
+        // copies read from the file are left to the collector
+        names.clear();
+        for (var investment : investments) {
+            if (strings != null) {
+                investment.setSymbol(strings.intern(investment.getSymbol()));
+            }
+            investment.setName(acquireName(investment.getName()));
+        }
+
+        holdings = new ArrayList<>(investments);
+        freeHoldingIds.clear();
+        pendingListings.clear();
+        pendingRemovals = 0;
+
+        holdingsBySymbol = new SymbolTable(this::symbolOf, investments.size());
+        duplicateSymbols = false;
+        priceIndex.clear();
+        symbolFinder.clear();
+        totals.clear();
+
+        var ids = new int[investments.size()];
+        var prices = new long[investments.size()];
+        int id = 0;
         for (var investment : investments) {
-            var nameTokens = investment.getName().split("[ ]+");
+            totals.add(investment);
+            ids[id] = id;
+            prices[id] = investment.getPriceInCents();
+            symbolFinder.add(id, investment.getSymbol());
+            investment.setHoldingId(id);
 
-            for (var name : nameTokens) {
-                name = name.toLowerCase(Locale.ROOT);
-                var list = investmentFinder.getOrDefault(name, new ArrayList<>());
-                list.add(index);
-                investmentFinder.put(name, list);
+            // a file may list a symbol more than once, lookups find the first one like the binary search used to
+            if (!holdingsBySymbol.putIfAbsent(id++)) {
+                duplicateSymbols = true;
             }
-            ++index;
         }
+        priceIndex.addAll(ids, prices, id);
 
+        if (versionTree != null) {
+            versionTree = PersistentHoldingTree.of(holdings);
+        }
+        if (changes != null) {
+            changes.reset();
+        }
+        endOperation();
     }
 
     /**
-     * Save a list of investments to a file
+     * The key of a symbol in the symbol lookup. Two symbols have the same key exactly when
+     * {@link String#compareToIgnoreCase(String)} considers them equal.
      *
-     * @param output the file containing the investments
+     * @param symbol the symbol
+     * @return the key
      */
-    public void saveInvestments(File output) {
-        try (PrintWriter printWriter = new PrintWriter(output)) {
-            for (var investment : investments) {
-                printWriter.println(investment.toCSVString());
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    static String symbolKey(String symbol) {
+        var key = new char[symbol.length()];
+        for (var i = 0; i < key.length; ++i) {
+            key[i] = Character.toLowerCase(Character.toUpperCase(symbol.charAt(i)));
         }
+        return new String(key);
     }
 
     /**
-     * Determines if whether a specific investment exists in the portfolio
-     *
-     * @param symbol the symbol name
-     * @return the index of the investment if found, or -(index) - 1 will be the location if inserted
+     * The shared copy of a string if the portfolio shares its strings, see {@link StringPool}
      */
-    public int has(String symbol) {
-        return Collections.binarySearch(investments,
-                new Stock(symbol),
-                (lhs, rhs) -> lhs.getSymbol().compareToIgnoreCase(rhs.getSymbol()));
+    private String share(String string) {
+        return strings == null ? string : strings.intern(string);
     }
 
     /**
-     * Return the investment at position i
-     *
-     * @param i index
-     * @return the investment
+     * The copy of a name that every holding with the name shares, counting one more holding with it
      */
-    public Investment get(int i) {
-        return investments.get(i);
+    private String acquireName(String name) {
+        return names.get(names.acquire(share(name)));
     }
 
     /**
-     * purchase a type of product
-     *
-     * @param type     the type of investment, stock or mutual fund
-     * @param symbol   the symbol name for the product
-     * @param name     the name of the product
-     * @param price    the price that the product will be purchased at
-     * @param quantity the quantity of the purchase
-     * @throws IllegalQuantityException if the quantity is negative
+     * Count one holding less with a name
      */
-    public void buy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity) throws Exception {
-        var index = has(symbol);
+    private void releaseName(String name) {
+        var id = names.find(name);
+        if (id >= 0) {
+            names.release(id);
+        }
+    }
 
+    /**
+     * The symbol of a holding id, for the symbol lookup and for finding holdings in versions
+     */
+    private String symbolOf(int holdingId) {
+        return holdings.get(holdingId).getSymbol();
+    }
 
-        if (index < 0) {
-            switch (type) {
-                case STOCK: {
-                    Stock newListing = new Stock(symbol.toUpperCase(Locale.ROOT), name, quantity, price);
-                    investments.add(-index - 1, newListing);
-                    break;
-                }
-                case MUTUAL_FUND:
-                    MutualFund newListing = new MutualFund(symbol.toUpperCase(Locale.ROOT), name, quantity, price);
-                    investments.add(-index - 1, newListing);
-                    break;
-            }
+    /**
+     * Find the holding of a symbol without touching the symbol ordered list
+     *
+     * @param symbol the symbol, in any case
+     * @return the holding, or null if the symbol is not in the portfolio
+     */
+    private Investment find(String symbol) {
+        var id = holdingsBySymbol.get(symbol);
+        return id < 0 ? null : holdings.get(id);
+    }
 
-            String[] nameTokens = name.split("[ ]+");
-            for (var token : nameTokens) {
-                token = token.toLowerCase(Locale.ROOT);
+    /**
+     * Bring the symbol ordered list up to date with the listings added and the holdings removed since it was last
+     * needed. Trades only record their changes, so a run of trades costs one merge here instead of shifting the list
+     * on every new or closed listing.
+     */
+    void mergePendingChanges() {
+        if (!hasPendingChanges()) {
+            return;
+        }
 
-                var list = investmentFinder.getOrDefault(token, new ArrayList<>());
-                list.add(-index - 1);
+        Comparator<Investment> bySymbol = (lhs, rhs) -> lhs.getSymbol().compareToIgnoreCase(rhs.getSymbol());
 
-                investmentFinder.put(token, list);
+        var listings = new ArrayList<Investment>(pendingListings.size());
+        for (var listing : pendingListings) {
+            if (isHeld(listing)) {
+                listings.add(listing);
             }
+        }
+        listings.sort(bySymbol);
 
-        } else {
-            var investment = investments.get(index);
-            investment.buy(quantity, price);
+        var merged = new ArrayList<Investment>(getSize());
+        var next = 0;
+        for (var investment : investments) {
+            if (!isHeld(investment)) {
+                continue;
+            }
+            while (next < listings.size() && bySymbol.compare(listings.get(next), investment) < 0) {
+                merged.add(listings.get(next++));
+            }
+            merged.add(investment);
         }
+        merged.addAll(listings.subList(next, listings.size()));
+
+        investments = merged;
+        pendingListings.clear();
+        pendingRemovals = 0;
     }
 
     /**
-     * sell a type of product
-     *
-     * @param symbol   the symbol name for the product
-     * @param quantity the quantity of the purchase
-     * @param price    the price that the product will be purchased at
-     * @return the gain of the trade
-     * @throws IllegalQuantityException if the quantity is negative
+     * Whether the symbol ordered list has changes to catch up with, which the next read of it would merge
      */
-    public BigDecimal sell(String symbol, int quantity, BigDecimal price) throws IllegalQuantityException, InvestmentNotFoundException {
-        var index = has(symbol.toUpperCase(Locale.ROOT));
+    boolean hasPendingChanges() {
+        return !pendingListings.isEmpty() || pendingRemovals != 0;
+    }
 
-        if (index < 0) {
-            throw new InvestmentNotFoundException();
+    /**
+     * The running totals, for readers that check them without locking
+     */
+    PortfolioTotals getTotals() {
+        return totals;
+    }
+
+    /**
+     * The portfolio as it was at the end of the last operation, as an immutable version that other threads can read
+     * without locking while this one goes on trading. Taking a version is a single read, and later operations publish
+     * new versions that share all unchanged holdings with it.
+     * <p>
+     * Versions are only kept from the first call on, so a portfolio that is never asked for one doesn't pay for them.
+     * That first call builds the initial version, and must not run concurrently with an operation.
+     *
+     * @return the current version
+     */
+    public PortfolioVersion currentVersion() {
+        var version = published;
+        if (version == null) {
+            versionTree = PersistentHoldingTree.of(holdings);
+            publishVersion();
+            version = published;
         }
+        return version;
+    }
 
-        var investment = investments.get(index);
-        var gain = investment.sell(quantity, price);
+    /**
+     * Make the holdings as of now the current version, at the end of an operation that changed them
+     */
+    private void publishVersion() {
+        if (versionTree != null) {
+            published = new PortfolioVersion(versionTree, totals, ++publishedVersions);
+        }
+    }
 
+    /**
+     * Start telling a listener about every operation that changes the portfolio, see {@link PortfolioListener}
+     *
+     * @param listener the listener
+     */
+    public void addPortfolioListener(PortfolioListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+        if (changes == null) {
+            changes = new PortfolioChange.Builder();
+        }
+    }
 
-        if (investment.getQuantity() == 0) {
-            investments.remove(index);
+    /**
+     * Stop telling a listener about changes
+     *
+     * @param listener the listener
+     */
+    public void removePortfolioListener(PortfolioListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            changes = null;
         }
+    }
 
+    /**
+     * Finish an operation that changed the portfolio: publish the version and tell the listeners what changed, all of
+     * it at once however many holdings the operation touched
+     */
+    private void endOperation() {
+        publishVersion();
 
-        // update the hash table to reflect the change of indexes in out list
-        investmentFinder.clear();
-        int counter = 0;
-        for (var listing : investments) {
-            for (var token : listing.getName().split("[ ]+")) {
-                token = token.toLowerCase(Locale.ROOT);
-                var list = investmentFinder.getOrDefault(token, new ArrayList<>());
-                list.add(counter);
-                investmentFinder.put(token, list);
-            }
-            ++counter;
+        if (changes == null || changes.isEmpty()) {
+            return;
         }
+        changes.setVersion(published);
+        var change = changes.build();
+        changes = new PortfolioChange.Builder();
+        for (var listener : List.copyOf(listeners)) {
+            listener.portfolioChanged(change);
+        }
+    }
 
-
-        return gain;
+    /**
+     * Bring the row of a holding in the next version up to date, if versions are kept
+     *
+     * @param investment the holding
+     */
+    private void updateVersionRow(Investment investment) {
+        if (versionTree != null) {
+            versionTree = versionTree.put(investment);
+        }
     }
 
+    /**
+     * Whether an investment is still a holding of the portfolio, as opposed to one sold off
+     */
+    private boolean isHeld(Investment investment) {
+        var id = investment.getHoldingId();
+        return id >= 0 && id < holdings.size() && holdings.get(id) == investment;
+    }
 
     /**
-     * Calculate the gain if all investment are sold at the current price
+     * Give a new holding an id, reusing the ids of removed holdings
      *
-     * @return total gain in string
+     * @param investment the new holding
      */
-    public String calculateGain() {
-        BigDecimal gain = new BigDecimal(0);
+    private void registerHolding(Investment investment) {
+        investment.setName(acquireName(investment.getName()));
+        pendingListings.add(investment);
 
-        for (var investment : investments) {
-            gain = gain.add(investment.getGain());
+        if (freeHoldingIds.isEmpty()) {
+            investment.setHoldingId(holdings.size());
+            holdings.add(investment);
+        } else {
+            investment.setHoldingId(freeHoldingIds.pop());
+            holdings.set(investment.getHoldingId(), investment);
+        }
+        holdingsBySymbol.put(investment.getHoldingId());
+        totals.add(investment);
+        updateVersionRow(investment);
+        if (changes != null) {
+            changes.added(investment);
         }
 
-        gain = gain.setScale(2, RoundingMode.HALF_EVEN);
-        return gain.toString();
+        if (deferredIndexing != null) {
+            // an id freed before the batch is not indexed, one freed during it was recorded then
+            deferredIndexing.putIfAbsent(investment.getHoldingId(), IndexedHolding.NONE);
+        } else {
+            investmentFinder.add(investment.getHoldingId(), investment.getName());
+            priceIndex.add(investment.getHoldingId(), investment.getPriceInCents());
+            symbolFinder.add(investment.getHoldingId(), investment.getSymbol());
+        }
     }
 
     /**
-     * Query all the investment products using filter string. The symbol query string is case-insensitive. Name query
-     * string matches word-wise and order doesn't matter, also case-insensitive. Price range is in the schema of
-     * begin-end, both can be omitted.
+     * Remember how a holding is indexed before a batch of orders first changes it
      *
-     * @param symbolQuery   filter all those that do not contain the symbol
-     * @param nameQuery     filter all those at do not contain all the words of the name
-     * @param priceRangeStr filter those do not fit into the [begin, end]
-     * @return list of investments after filtering in string
+     * @param investment the holding, still as it is indexed
      */
-    public List<String> query(String symbolQuery, String nameQuery, String priceRangeStr) {
-        symbolQuery = symbolQuery.trim().toLowerCase(Locale.ROOT);
-        nameQuery = nameQuery.trim().toLowerCase(Locale.ROOT);
-        priceRangeStr = priceRangeStr.trim().toLowerCase(Locale.ROOT);
+    private void deferIndexing(Investment investment) {
+        deferredIndexing.computeIfAbsent(investment.getHoldingId(),
+                id -> new IndexedHolding(investment.getSymbol(), investment.getName(), investment.getPriceInCents()));
+    }
 
-        List<Investment> candidates;
+    /**
+     * Bring the name, price and symbol indexes up to date with every holding a batch of orders touched: take out what
+     * was indexed for its id before the batch and put in the holding that has the id now, if any
+     */
+    private void applyDeferredIndexing() {
+        var touched = deferredIndexing;
+        deferredIndexing = null;
 
-        var nameSplits = Arrays.asList(nameQuery.split("[ ]+"));
-        var priceRange = findPriceRange(priceRangeStr);
+        // like for a batch of price updates, past half the portfolio the price index is cheaper to build afresh
+        var rebuildPriceIndex = touched.size() > getSize() / 2;
 
-        // starting off, this is our universal set, we will continue to find the intersection to narrow down
-        Set<Integer> nameMatchingCandidates = new HashSet<>();
+        for (var entry : touched.entrySet()) {
+            int id = entry.getKey();
+            var before = entry.getValue();
+            var now = id < holdings.size() ? holdings.get(id) : null;
 
-        if (nameQuery.isEmpty()) {
-            // as specification dictates, empty query means match all
-            for (var indexList : investmentFinder.values()) {
-                nameMatchingCandidates.addAll(indexList);
-            }
-        } else {
-            // we use just use the first list to start off
-            var firstCandidateList = investmentFinder.get(nameSplits.get(0));
-            nameMatchingCandidates.addAll(firstCandidateList);
-
-            // then compute the intersection of all of them
-            List<Integer> candidatePool = new ArrayList<>();
-            for (var split : nameSplits) {
-                candidatePool.addAll(investmentFinder.get(split));
+            if (before != IndexedHolding.NONE) {
+                if (now == null || !before.name.equals(now.getName())) {
+                    investmentFinder.remove(id, before.name);
+                }
+                if (now == null || !before.symbol.equals(now.getSymbol())) {
+                    symbolFinder.remove(id, before.symbol);
+                }
+                if (!rebuildPriceIndex && (now == null || before.price != now.getPriceInCents())) {
+                    priceIndex.remove(id, before.price);
+                }
             }
 
-            nameMatchingCandidates.retainAll(candidatePool);
+            if (now != null) {
+                if (before == IndexedHolding.NONE || !before.name.equals(now.getName())) {
+                    investmentFinder.add(id, now.getName());
+                }
+                if (before == IndexedHolding.NONE || !before.symbol.equals(now.getSymbol())) {
+                    symbolFinder.add(id, now.getSymbol());
+                }
+                if (!rebuildPriceIndex && (before == IndexedHolding.NONE || before.price != now.getPriceInCents())) {
+                    priceIndex.add(id, now.getPriceInCents());
+                }
+            }
         }
 
-        // convert from the set of indexes to list of investments with duplicates removed
-        candidates = nameMatchingCandidates
-                .stream()
-                .map((integer -> investments.get(integer)))
-                .distinct()
-                .collect(Collectors.toList());
+        if (rebuildPriceIndex) {
+            rebuildPriceIndex();
+        }
+    }
 
+    /**
+     * Build the price index from scratch out of all holdings
+     */
+    private void rebuildPriceIndex() {
+        var ids = new int[holdings.size()];
+        var prices = new long[holdings.size()];
+        var held = 0;
+        for (var investment : holdings) {
+            if (investment != null) {
+                ids[held] = investment.getHoldingId();
+                prices[held++] = investment.getPriceInCents();
+            }
+        }
+        priceIndex.clear();
+        priceIndex.addAll(ids, prices, held);
+    }
 
-        // get rid all investments that doesn't contain the symbol
-        if (!symbolQuery.isEmpty()) {
-            String finalSymbolQuery = symbolQuery;
-            candidates.removeIf((Investment investment) -> !investment.getSymbol().contains(finalSymbolQuery.toUpperCase(Locale.ROOT)));
+    /**
+     * Take a holding out of the running totals before a trade changes it
+     *
+     * @param investment the holding
+     * @return the price in cents it has before the trade
+     */
+    private long beginChange(Investment investment) {
+        if (deferredIndexing != null) {
+            deferIndexing(investment);
         }
+        totals.subtract(investment);
+        quantityBeforeChange = investment.getQuantity();
+        return investment.getPriceInCents();
+    }
 
-        // remove all those that do not fit under [lower, upper]
-        candidates.removeIf(investment -> {
-            var price = investment.getPrice();
-            var lowerBound = priceRange.getFirst();
-            var upperBound = priceRange.getSecond();
+    /**
+     * Put a holding back into the running totals after a trade, whether it went through or failed without changing
+     * anything, and move it to its new place in the price index if its price changed
+     *
+     * @param investment the holding
+     * @param oldPrice   the price in cents it had before the trade
+     */
+    private void endChange(Investment investment, long oldPrice) {
+        totals.add(investment);
+        updateVersionRow(investment);
+        if (changes != null) {
+            var values = (quantityBeforeChange != investment.getQuantity() ? PortfolioChange.QUANTITY : 0)
+                    | (oldPrice != investment.getPriceInCents() ? PortfolioChange.PRICE : 0);
+            if (values != 0) {
+                changes.changed(investment, (byte) values);
+            }
+        }
 
+        if (deferredIndexing == null && oldPrice != investment.getPriceInCents()) {
+            priceIndex.remove(investment.getHoldingId(), oldPrice);
+            priceIndex.add(investment.getHoldingId(), investment.getPriceInCents());
+        }
+    }
 
-            return !(lowerBound.compareTo(price) <= 0 && price.compareTo(upperBound) <= 0);
-        });
+    /**
+     * Release the id of a holding that left the portfolio
+     *
+     * @param investment the removed holding
+     */
+    private void unregisterHolding(Investment investment) {
+        if (deferredIndexing != null) {
+            deferIndexing(investment);
+        } else {
+            investmentFinder.remove(investment.getHoldingId(), investment.getName());
+            priceIndex.remove(investment.getHoldingId(), investment.getPriceInCents());
+            symbolFinder.remove(investment.getHoldingId(), investment.getSymbol());
+        }
+        totals.subtract(investment);
+        if (versionTree != null) {
+            versionTree = versionTree.remove(investment);
+        }
+        if (changes != null) {
+            changes.removed(investment);
+        }
+        releaseName(investment.getName());
+        // the symbol lookup reads the symbol of the holding, so it goes first
+        var removed = holdingsBySymbol.remove(investment.getHoldingId());
+        holdings.set(investment.getHoldingId(), null);
+        freeHoldingIds.push(investment.getHoldingId());
+        investment.setHoldingId(-1);
+        ++pendingRemovals;
 
+        // only a loaded file can hold the same symbol twice, then the next one takes over the lookup
+        if (removed && duplicateSymbols) {
+            mergePendingChanges();
+            var index = has(investment.getSymbol());
+            if (index >= 0) {
+                holdingsBySymbol.put(investments.get(index).getHoldingId());
+            }
+        }
+    }
 
-        return
-                candidates.stream()
-                        .map(Object::toString)
-                        .collect(Collectors.toList());
+    /**
+     * Save a list of investments to a file. The file is replaced atomically, so it either holds the previous or the new
+     * contents even if the program dies while saving.
+     *
+     * @param output the file containing the investments
+     */
+    public void saveInvestments(File output) {
+        try {
+            new CsvInvestmentWriter(Charset.defaultCharset()).write(output, getInvestments());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Save a list of investments to a file line by line, writing the file in place. Kept as the baseline for
+     * benchmarks and to check the output of {@link #saveInvestments(File)} against.
+     *
+     * @param output the file containing the investments
+     */
+    void saveInvestmentsWithPrintWriter(File output) {
+        try (PrintWriter printWriter = new PrintWriter(output)) {
+            for (var investment : getInvestments()) {
+                printWriter.println(investment.toCSVString());
+            }
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Load a binary snapshot written by {@link #saveSnapshot(File)}, replacing the current contents of the portfolio.
+     * Prices and book values are restored exactly, and the name index is read as is instead of being rebuilt.
+     *
+     * @param input the snapshot file
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if the file is not a snapshot or is corrupt
+     */
+    public void loadSnapshot(File input) throws IOException, InvalidInputFileFormatException {
+        var contents = BinarySnapshot.read(input);
+        investments = contents.investments;
+        investmentFinder = contents.investmentFinder;
+        assignHoldingIds();
+    }
+
+    /**
+     * Save the portfolio as a binary snapshot. The file is replaced atomically.
+     *
+     * @param output the snapshot file
+     * @throws IOException if the file can't be written
+     */
+    public void saveSnapshot(File output) throws IOException {
+        BinarySnapshot.write(output, getInvestments());
+    }
+
+    /**
+     * Convert a CSV file into a binary snapshot
+     *
+     * @param csv      the CSV file to read
+     * @param snapshot the snapshot file to write
+     * @throws IOException                     if a file can't be read or written
+     * @throws InvalidInputFileFormatException if the CSV file is malformed
+     */
+    public static void convertCsvToSnapshot(File csv, File snapshot) throws IOException, InvalidInputFileFormatException {
+        var portfolio = new ePortfolio();
+        portfolio.loadInvestments(csv);
+        portfolio.saveSnapshot(snapshot);
+    }
+
+    /**
+     * Convert a binary snapshot into a CSV file
+     *
+     * @param snapshot the snapshot file to read
+     * @param csv      the CSV file to write
+     * @throws IOException                     if a file can't be read or written
+     * @throws InvalidInputFileFormatException if the snapshot is corrupt
+     */
+    public static void convertSnapshotToCsv(File snapshot, File csv) throws IOException, InvalidInputFileFormatException {
+        var portfolio = new ePortfolio();
+        portfolio.loadSnapshot(snapshot);
+        new CsvInvestmentWriter(Charset.defaultCharset()).write(csv, portfolio.investments);
+    }
+
+    /**
+     * Restore the portfolio from a journal directory and record every following trade in it. The newest snapshot in
+     * the directory is loaded and the trade journal replayed on top of it; an empty or missing directory starts an
+     * empty portfolio. Any investments already in the portfolio are discarded.
+     *
+     * @param directory the journal directory
+     * @throws IOException                     if the journal can't be read or created
+     * @throws InvalidInputFileFormatException if the snapshot is corrupt
+     */
+    public void openJournal(File directory) throws IOException, InvalidInputFileFormatException {
+        openJournal(directory, TradeJournal.DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Restore the portfolio from a journal directory and record every following trade in it
+     *
+     * @param directory           the journal directory
+     * @param compactionThreshold journal size in bytes after which the journal is folded into a new snapshot
+     * @throws IOException                     if the journal can't be read or created
+     * @throws InvalidInputFileFormatException if the snapshot is corrupt
+     */
+    public void openJournal(File directory, long compactionThreshold) throws IOException, InvalidInputFileFormatException {
+        if (journal != null) {
+            throw new IllegalStateException("A trade journal is already open");
+        }
+
+        Files.createDirectories(directory.toPath());
+
+        // listeners learn about the recovered portfolio as a whole rather than about every replayed trade
+        var collecting = changes;
+        changes = null;
+        long generation;
+        try {
+            investments = new ArrayList<>();
+            reindexInvestments();
+            generation = TradeJournal.recover(directory, this);
+        } finally {
+            changes = collecting;
+            if (changes != null) {
+                changes.reset();
+                endOperation();
+            }
+        }
+        journal = new TradeJournal(directory, generation, this::copyInvestments, compactionThreshold);
+    }
+
+    /**
+     * Fold the trade journal into a new snapshot in the background. Trading can go on meanwhile.
+     */
+    public void compactJournal() {
+        if (journal != null) {
+            journal.compact();
+        }
+    }
+
+    /**
+     * Stop journaling, after everything recorded so far is durable and a running compaction has finished
+     *
+     * @throws IOException if the journal could not be written
+     */
+    public void closeJournal() throws IOException {
+        if (journal != null) {
+            try {
+                journal.close();
+            } finally {
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Leave waiting until journaled trades are durable to the caller, who takes the commit to wait on with
+     * {@link #takeJournalCommit()} after each trade. Lets a caller that keeps other threads out while a trade runs
+     * wait once it has let them in again, so that their trades go into the same commit.
+     */
+    void deferJournalCommits() {
+        deferJournalCommits = true;
+    }
+
+    /**
+     * The commit of the trades journaled since the last call, when commits are deferred
+     *
+     * @return the commit to wait on, or null if nothing was journaled
+     */
+    TradeJournal.Commit takeJournalCommit() {
+        var commit = journalCommit;
+        journalCommit = null;
+        return commit;
+    }
+
+    /**
+     * Finish journaling a trade that has been applied: start a compaction if one is due, which has to see the trade,
+     * and wait until the trade is durable unless commits are deferred
+     *
+     * @param commit the commit of the trade, or null if the portfolio isn't journaling
+     */
+    private void journaled(TradeJournal.Commit commit) {
+        if (commit == null) {
+            return;
+        }
+
+        journal.compactIfDue();
+        if (deferJournalCommits) {
+            journalCommit = commit;
+        } else {
+            commit.await();
+        }
+    }
+
+    /**
+     * Take a copy of all investments that later trades don't affect. The copy is held in columns, so snapshotting a
+     * large portfolio allocates a few arrays instead of an object per holding.
+     *
+     * @return the copy, in symbol order
+     */
+    private List<Investment> copyInvestments() {
+        mergePendingChanges();
+        return HoldingColumns.of(investments).asList();
+    }
+
+    /**
+     * Determines if whether a specific investment exists in the portfolio. Only needed for the position, trades look
+     * symbols up by hash.
+     *
+     * @param symbol the symbol name
+     * @return the index of the investment if found, or -(index) - 1 will be the location if inserted
+     */
+    public int has(String symbol) {
+        mergePendingChanges();
+        return Collections.binarySearch(investments,
+                new Stock(symbol),
+                (lhs, rhs) -> lhs.getSymbol().compareToIgnoreCase(rhs.getSymbol()));
+    }
+
+    /**
+     * Return the investment at position i
+     *
+     * @param i index
+     * @return the investment
+     */
+    public Investment get(int i) {
+        mergePendingChanges();
+        return investments.get(i);
+    }
+
+    /**
+     * purchase a type of product
+     *
+     * @param type     the type of investment, stock or mutual fund
+     * @param symbol   the symbol name for the product
+     * @param name     the name of the product
+     * @param price    the price that the product will be purchased at
+     * @param quantity the quantity of the purchase
+     * @throws IllegalQuantityException if the quantity is negative
+     */
+    public void buy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity) throws Exception {
+        buy(type, symbol, name, price, quantity, costBasisMethod != CostBasisMethod.AVERAGE_COST);
+    }
+
+    /**
+     * purchase a type of product into a tax lot of its own or into the pool, used to replay the trade journal the way
+     * the purchase was made
+     */
+    void buy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity, boolean keepLots) throws Exception {
+        var commit = journal == null ? null : journal.recordBuy(type, symbol, name, price, quantity, keepLots);
+        executeBuy(type, symbol, name, price, quantity, keepLots);
+        endOperation();
+        journaled(commit);
+    }
+
+    private void executeBuy(InvestmentType type, String symbol, String name, BigDecimal price, int quantity, boolean keepLots) throws Exception {
+        var investment = find(symbol);
+
+
+        if (investment == null) {
+            symbol = share(symbol.toUpperCase(Locale.ROOT));
+            name = share(name);
+            Investment newListing = type == InvestmentType.STOCK
+                    ? new Stock(symbol, name, quantity, price)
+                    : new MutualFund(symbol, name, quantity, price);
+            if (keepLots) {
+                newListing.trackLots();
+            }
+
+            registerHolding(newListing);
+        } else {
+            var oldPrice = beginChange(investment);
+            try {
+                if (keepLots) {
+                    // what was held before becomes the opening lot, so that the purchase is a lot of its own
+                    investment.trackLots();
+                }
+                investment.buy(quantity, price);
+            } finally {
+                endChange(investment, oldPrice);
+            }
+        }
+    }
+
+    /**
+     * sell a type of product, taking the book value of the shares sold by the cost basis method of the portfolio
+     *
+     * @param symbol   the symbol name for the product
+     * @param quantity the quantity of the purchase
+     * @param price    the price that the product will be purchased at
+     * @return the gain of the trade
+     * @throws IllegalQuantityException if the quantity is negative
+     */
+    public BigDecimal sell(String symbol, int quantity, BigDecimal price) throws IllegalQuantityException, InvestmentNotFoundException {
+        return sell(symbol, quantity, price, costBasisMethod);
+    }
+
+    /**
+     * sell a type of product by a given cost basis method, used to replay the trade journal the way the sale was made
+     */
+    BigDecimal sell(String symbol, int quantity, BigDecimal price, CostBasisMethod method) throws IllegalQuantityException, InvestmentNotFoundException {
+        var commit = journal == null ? null : journal.recordSell(symbol, quantity, price, method);
+        var gain = executeSell(symbol, quantity, price, method);
+        endOperation();
+        journaled(commit);
+
+        return gain;
+    }
+
+    /**
+     * Sell products of a tax lot of a holding, specific identification of the shares sold. The holding is kept in
+     * lots from then on.
+     *
+     * @param symbol   the symbol name for the product
+     * @param lotId    the lot to sell from, see {@link #getLots(String)}
+     * @param quantity the quantity to sell
+     * @param price    the selling price
+     * @return the gain of the trade
+     * @throws IllegalQuantityException    if the quantity is not positive or more than the lot holds
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     * @throws LotNotFoundException        if the holding has no such lot
+     * @throws IllegalStateException       if the portfolio uses average cost, which keeps no lots
+     */
+    public BigDecimal sellLot(String symbol, int lotId, int quantity, BigDecimal price)
+            throws IllegalQuantityException, InvestmentNotFoundException, LotNotFoundException {
+        if (costBasisMethod == CostBasisMethod.AVERAGE_COST) {
+            throw new IllegalStateException("Tax lots are not kept with average cost");
+        }
+        return sellFromLot(symbol, lotId, quantity, price);
+    }
+
+    /**
+     * Sell products of a tax lot whatever the cost basis method, used to replay the trade journal
+     */
+    BigDecimal sellFromLot(String symbol, int lotId, int quantity, BigDecimal price)
+            throws IllegalQuantityException, InvestmentNotFoundException, LotNotFoundException {
+        var commit = journal == null ? null : journal.recordSellLot(symbol, lotId, quantity, price);
+        var investment = find(symbol);
+
+        if (investment == null) {
+            throw new InvestmentNotFoundException();
+        }
+
+        var oldPrice = beginChange(investment);
+        BigDecimal gain;
+        try {
+            gain = investment.sellLot(lotId, quantity, price);
+        } finally {
+            endChange(investment, oldPrice);
+        }
+
+        if (investment.getQuantity() == 0) {
+            unregisterHolding(investment);
+        }
+        endOperation();
+        journaled(commit);
+
+        return gain;
+    }
+
+    /**
+     * The tax lots of a holding, oldest first. A holding the portfolio keeps no lots for, as with average cost, is a
+     * single opening lot of what it holds.
+     *
+     * @param symbol the symbol name for the product
+     * @return the lots
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     */
+    public List<TaxLot> getLots(String symbol) throws InvestmentNotFoundException {
+        var investment = find(symbol);
+
+        if (investment == null) {
+            throw new InvestmentNotFoundException();
+        }
+
+        var lots = investment.getLots();
+        if (lots != null) {
+            return lots.toList();
+        }
+        return investment.getQuantity() == 0
+                ? List.of()
+                : List.of(new TaxLot(0, investment.getQuantity(), investment.getBookValueInCents()));
+    }
+
+    /**
+     * Getter for the cost basis method
+     *
+     * @return how sales take book value off holdings
+     */
+    public CostBasisMethod getCostBasisMethod() {
+        return costBasisMethod;
+    }
+
+    /**
+     * Choose how later sales take book value off holdings. With any method but average cost, holdings are kept in tax
+     * lots from their next trade on, starting with what they held before as one opening lot. A sale at average cost
+     * turns the holding back into a single pool. Sales are journaled with the method they were made by, so a journal
+     * replays the same whatever the method is when it is reopened.
+     *
+     * @param costBasisMethod the method
+     */
+    public void setCostBasisMethod(CostBasisMethod costBasisMethod) {
+        this.costBasisMethod = Objects.requireNonNull(costBasisMethod);
+    }
+
+    private BigDecimal executeSell(String symbol, int quantity, BigDecimal price, CostBasisMethod method) throws IllegalQuantityException, InvestmentNotFoundException {
+        var investment = find(symbol);
+
+        if (investment == null) {
+            throw new InvestmentNotFoundException();
+        }
+
+        var oldPrice = beginChange(investment);
+        BigDecimal gain;
+        try {
+            gain = investment.sell(quantity, price, method);
+        } finally {
+            endChange(investment, oldPrice);
+        }
+
+
+        if (investment.getQuantity() == 0) {
+            unregisterHolding(investment);
+        }
+
+        return gain;
+    }
+
+    /**
+     * Execute the buy and sell orders of a file, see {@link #executeOrders(List)}
+     *
+     * @param orders the order file, as read by {@link OrderFileReader}
+     * @return the outcome of every order and their summary
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed, in which case no order is executed
+     */
+    public TradeBatchResult executeOrders(File orders) throws IOException, InvalidInputFileFormatException {
+        return executeOrders(new OrderFileReader(Charset.defaultCharset()).read(orders));
+    }
+
+    /**
+     * Execute many buy and sell orders in order, each with the same effect as a single {@link #buy} or {@link #sell}.
+     * An order the single trade would refuse, such as a sale of more than is held, is rejected and the batch goes on.
+     * The holdings and the running totals change with every order, but the name, price and symbol indexes are only
+     * brought up to date once at the end, and the orders are journaled together.
+     *
+     * @param orders the orders
+     * @return the outcome of every order and their summary
+     */
+    public TradeBatchResult executeOrders(List<TradeOrder> orders) {
+        var commit = journal == null ? null : journal.recordOrders(orders, costBasisMethod);
+        var result = new TradeBatchResult(orders.size());
+
+        deferredIndexing = new HashMap<>();
+        try {
+            for (var i = 0; i < orders.size(); ++i) {
+                var order = orders.get(i);
+                try {
+                    if (order.getAction() == TradeOrder.Action.BUY) {
+                        executeBuy(order.getInvestmentType(), order.getSymbol(), order.getName(), order.getPrice(), order.getQuantity(),
+                                costBasisMethod != CostBasisMethod.AVERAGE_COST);
+                        result.executed(i, 0);
+                    } else {
+                        var gain = executeSell(order.getSymbol(), order.getQuantity(), order.getPrice(), costBasisMethod);
+                        result.executed(i, Money.of(gain));
+                    }
+                } catch (Exception e) {
+                    result.rejected(i, e);
+                }
+            }
+        } finally {
+            applyDeferredIndexing();
+            endOperation();
+        }
+        journaled(commit);
+
+        return result;
+    }
+
+    /**
+     * Update the price of a product
+     *
+     * @param symbol the symbol name for the product
+     * @param price  the new price
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     * @throws ArithmeticException         if the price or the market value is out of range, in which case nothing changes
+     */
+    public void updatePrice(String symbol, BigDecimal price) throws InvestmentNotFoundException {
+        var commit = journal == null ? null : journal.recordPriceUpdate(symbol, price);
+        var investment = find(symbol);
+
+        if (investment == null) {
+            throw new InvestmentNotFoundException();
+        }
+
+        // work the change out first, so that a price out of range fails before the holding leaves the running totals
+        var newPrice = Money.of(price);
+        var change = Math.subtractExact(Math.multiplyExact(newPrice, investment.getQuantity()), investment.getMarketValueInCents());
+        Math.addExact(totals.getMarketValueInCents(), change);
+
+        var oldPrice = beginChange(investment);
+        try {
+            investment.setPriceInCents(newPrice);
+        } finally {
+            endChange(investment, oldPrice);
+        }
+        endOperation();
+        journaled(commit);
+    }
+
+    /**
+     * Update the prices of many products from a quote file, see {@link #updatePrices(List)}
+     *
+     * @param quotes the quote file, one symbol,price per line
+     * @return the quoted symbols that are not in the portfolio, in symbol order
+     * @throws IOException                     if the file can't be read
+     * @throws InvalidInputFileFormatException if a line is malformed, in which case no price is changed
+     */
+    public List<String> updatePrices(File quotes) throws IOException, InvalidInputFileFormatException {
+        var parsed = new QuoteFileReader(Charset.defaultCharset()).read(quotes);
+        try {
+            return updatePrices(parsed);
+        } catch (ArithmeticException e) {
+            throw new InvalidInputFileFormatException();
+        }
+    }
+
+    /**
+     * Update the prices of many products at once. Each quote is matched to its holding in one pass through the symbol
+     * lookup, and the running totals and the price index are brought up to date once for the whole batch instead of
+     * once per quote. A symbol quoted more than once gets its last price.
+     *
+     * @param quotes the symbols, in any case, and their new prices
+     * @return the quoted symbols that are not in the portfolio, in symbol order without repeats
+     * @throws ArithmeticException if a price or a market value is out of range, in which case no price is changed
+     */
+    public List<String> updatePrices(List<Pair<String, BigDecimal>> quotes) {
+        var commit = journal == null ? null : journal.recordPriceUpdates(quotes);
+        var unknown = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        var changed = new Investment[quotes.size()];
+        var newPrices = new long[quotes.size()];
+        var count = 0;
+
+        // where each holding is in changed, plus one, so that a holding quoted again is updated in place
+        var slots = new int[holdings.size()];
+
+        // work out every change first, so that a price out of range fails the batch before anything is touched
+        for (var quote : quotes) {
+            var investment = find(quote.getFirst());
+            if (investment == null) {
+                unknown.add(quote.getFirst());
+                continue;
+            }
+
+            var price = Money.of(quote.getSecond());
+            var slot = slots[investment.getHoldingId()] - 1;
+            if (slot < 0) {
+                slot = count++;
+                slots[investment.getHoldingId()] = count;
+                changed[slot] = investment;
+            }
+            newPrices[slot] = price;
+        }
+
+        long marketValueChange = 0;
+        for (var i = 0; i < count; ++i) {
+            var newMarketValue = Math.multiplyExact(newPrices[i], changed[i].getQuantity());
+            var change = Math.subtractExact(newMarketValue, changed[i].getMarketValueInCents());
+            marketValueChange = Math.addExact(marketValueChange, change);
+        }
+        totals.addMarketValue(marketValueChange);
+
+        // moving a holding between buckets costs about twice as much as indexing it afresh
+        var rebuildPriceIndex = count > getSize() / 2;
+        for (var i = 0; i < count; ++i) {
+            var investment = changed[i];
+            if (!rebuildPriceIndex && investment.getPriceInCents() != newPrices[i]) {
+                priceIndex.remove(investment.getHoldingId(), investment.getPriceInCents());
+                priceIndex.add(investment.getHoldingId(), newPrices[i]);
+            }
+            if (changes != null && investment.getPriceInCents() != newPrices[i]) {
+                // each holding is in changed once
+                changes.changedUnique(investment, PortfolioChange.PRICE);
+            }
+            investment.setPriceInCents(newPrices[i]);
+            if (!rebuildPriceIndex) {
+                updateVersionRow(investment);
+            }
+        }
+
+        if (rebuildPriceIndex) {
+            rebuildPriceIndex();
+            if (versionTree != null) {
+                versionTree = versionTree.reread(holdings);
+            }
+        }
+        endOperation();
+        journaled(commit);
+
+        return new ArrayList<>(unknown);
+    }
+
+    /**
+     * Rename a product
+     *
+     * @param symbol the symbol name for the product
+     * @param name   the new name
+     * @throws InvestmentNotFoundException if the product is not in the portfolio
+     */
+    public void rename(String symbol, String name) throws InvestmentNotFoundException {
+        var commit = journal == null ? null : journal.recordRename(symbol, name);
+        var investment = find(symbol);
+
+        if (investment == null) {
+            throw new InvestmentNotFoundException();
+        }
+
+        var oldName = investment.getName();
+        investmentFinder.remove(investment.getHoldingId(), oldName);
+        releaseName(oldName);
+        investment.setName(acquireName(name));
+        investmentFinder.add(investment.getHoldingId(), name);
+        updateVersionRow(investment);
+        if (changes != null && !oldName.equals(name)) {
+            changes.changed(investment, PortfolioChange.NAME);
+        }
+        endOperation();
+        journaled(commit);
+    }
+
+
+    /**
+     * Calculate the gain if all investment are sold at the current price. Read off the running totals, so it takes the
+     * same time however large the portfolio is.
+     *
+     * @return total gain in string
+     * @throws IllegalStateException in verification mode, if the running totals don't match a full recomputation
+     */
+    public String calculateGain() {
+        var gain = totals.getGain();
+
+        if (VERIFY_TOTALS) {
+            var recalculated = recalculateGain();
+            if (recalculated.compareTo(gain) != 0) {
+                throw new IllegalStateException("Running total gain " + gain + " differs from the recomputed " + recalculated);
+            }
+        }
+
+        gain = gain.setScale(2, RoundingMode.HALF_EVEN);
+        return gain.toString();
+    }
+
+    /**
+     * Calculate the gain if all investment are sold at the current price by adding up the gain of every holding. Kept
+     * for verifying the running totals and as the baseline for benchmarks.
+     *
+     * @return the exact total gain
+     */
+    BigDecimal recalculateGain() {
+        long gain = 0;
+
+        for (var investment : getInvestments()) {
+            gain = Math.addExact(gain, investment.getGainInCents());
+        }
+
+        return Money.toBigDecimal(gain);
+    }
+
+    /**
+     * The value of all investments at their current prices
+     *
+     * @return the total market value
+     */
+    public BigDecimal getMarketValue() {
+        return totals.getMarketValue();
+    }
+
+    /**
+     * The total book value of all investments
+     *
+     * @return the total book value
+     */
+    public BigDecimal getBookValue() {
+        return totals.getBookValue();
+    }
+
+    /**
+     * The fees that selling all investments would cost
+     *
+     * @return the total fees
+     */
+    public BigDecimal getFees() {
+        return totals.getFees();
+    }
+
+    /**
+     * Query all the investment products using filter string. The symbol query string is case-insensitive. Name query
+     * string matches word-wise and order doesn't matter, also case-insensitive. Price range is in the schema of
+     * begin-end, both can be omitted.
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return list of investments after filtering in string
+     */
+    public List<String> query(String symbolQuery, String nameQuery, String priceRangeStr) {
+        symbolQuery = symbolQuery.trim().toLowerCase(Locale.ROOT);
+
+        List<Investment> candidates;
+
+        var matches = candidates(symbolQuery, nameQuery, priceRangeStr);
+
+        if (matches == null) {
+            // as specification dictates, empty query means match all
+            candidates = getInvestments().stream().distinct().collect(Collectors.toList());
+        } else {
+            candidates = inSymbolOrder(matches);
+        }
+
+
+        // get rid all investments that doesn't contain the symbol, also verifying the trigram candidates
+        if (!symbolQuery.isEmpty()) {
+            String finalSymbolQuery = symbolQuery;
+            candidates.removeIf((Investment investment) -> !investment.getSymbol().contains(finalSymbolQuery.toUpperCase(Locale.ROOT)));
+        }
+
+        return
+                candidates.stream()
+                        .map(Object::toString)
+                        .collect(Collectors.toList());
+    }
+
+    /**
+     * Query the investments like {@link #query}, but only find where the matches are in the current version, see
+     * {@link PortfolioVersion#select}. The indexes narrow the search down, so only the candidates they find are looked
+     * at in the version.
+     *
+     * @param symbolQuery   filter all those that do not contain the symbol
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return the positions of the matches in the investments of {@link #currentVersion()}, in increasing order
+     */
+    int[] select(String symbolQuery, String nameQuery, String priceRangeStr) {
+        var matches = candidates(symbolQuery.trim().toLowerCase(Locale.ROOT), nameQuery, priceRangeStr);
+        return currentVersion().select(symbolQuery, nameQuery, priceRangeStr, matches, this::symbolOf);
+    }
+
+    /**
+     * Look the holdings that may pass the query filters up in the indexes. Holdings of a symbol that only has the
+     * trigrams of the symbol query still have to be checked for containing it.
+     *
+     * @param symbolQuery   the symbol query, trimmed and in lower case
+     * @param nameQuery     filter all those at do not contain all the words of the name
+     * @param priceRangeStr filter those do not fit into the [begin, end]
+     * @return the holding ids, or null while no index restricts anything
+     */
+    private HoldingBitmap candidates(String symbolQuery, String nameQuery, String priceRangeStr) {
+        nameQuery = nameQuery.trim().toLowerCase(Locale.ROOT);
+        priceRangeStr = priceRangeStr.trim().toLowerCase(Locale.ROOT);
+
+        var priceRange = findPriceRange(priceRangeStr);
+
+        // the holdings that may pass the filters, null while none restricts anything
+        HoldingBitmap matches = null;
+
+        if (symbolQuery.length() >= SymbolTrigramIndex.GRAM_LENGTH) {
+            // narrow down to the symbols that have every trigram of the query, they are verified below
+            matches = symbolFinder.candidates(symbolQuery.toUpperCase(Locale.ROOT));
+        }
+
+        if (!nameQuery.isEmpty()) {
+            // the holdings whose name has every word of the query
+            var nameMatches = investmentFinder.matchAll(nameQuery);
+            matches = matches == null ? nameMatches : HoldingBitmap.and(matches, nameMatches);
+        }
+
+        if (priceRangeStr.contains("-")) {
+            // seek to the range in the price index instead of comparing the price of every candidate
+            var inRange = priceIndex.between(priceRange.getFirst(), priceRange.getSecond());
+            matches = matches == null ? inRange : HoldingBitmap.and(matches, inRange);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Suggest investments while a symbol or name is being typed. Symbols starting with the text come first, in symbol
+     * order. They are followed by the investments that have a name word starting with the last word of the text and
+     * also contain every word before it, grouped by the completed word. Both are case-insensitive. Only as many
+     * candidates as needed are looked at, so the time taken doesn't grow with the portfolio.
+     *
+     * @param prefix the text typed so far
+     * @param limit  the maximum number of suggestions
+     * @return the suggested investments in string
+     */
+    public List<String> suggest(String prefix, int limit) {
+        var text = prefix.trim();
+        var suggestions = new ArrayList<Investment>();
+        var suggested = new HoldingBitmap();
+
+        if (text.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        if (text.indexOf(' ') == -1) {
+            var investments = getInvestments();
+            for (var i = symbolLowerBound(text); i < investments.size() && suggestions.size() < limit; ++i) {
+                var investment = investments.get(i);
+                if (!investment.getSymbol().regionMatches(true, 0, text, 0, text.length())) {
+                    break;
+                }
+                suggestions.add(investment);
+                suggested.add(investment.getHoldingId());
+            }
+        }
+
+        // the words before the last one are complete and must all be in the name
+        var tokens = NameIndex.tokens(text.toLowerCase(Locale.ROOT));
+        var wholeWords = tokens.length > 1 ? investmentFinder.matchAll(Arrays.copyOf(tokens, tokens.length - 1)) : null;
+
+        investmentFinder.forEachCompletion(tokens[tokens.length - 1], completion -> {
+            if (suggestions.size() >= limit) {
+                return false;
+            }
+
+            // walk the smaller of the two sets and look the ids up in the other
+            var walked = wholeWords == null || completion.cardinality() <= wholeWords.cardinality() ? completion : wholeWords;
+            var other = walked == completion ? wholeWords : completion;
+            return walked.forEachWhile(holdingId -> {
+                if ((other == null || other.contains(holdingId)) && suggested.add(holdingId)) {
+                    suggestions.add(holdings.get(holdingId));
+                }
+                return suggestions.size() < limit;
+            });
+        });
+
+        return suggestions.stream()
+                .map(Object::toString)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Find the position of the first investment whose symbol is not before a string
+     *
+     * @param symbol the string
+     * @return the position, the size of the portfolio if every symbol is before it
+     */
+    private int symbolLowerBound(String symbol) {
+        var investments = getInvestments();
+        int low = 0;
+        int high = investments.size();
+
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (investments.get(middle).getSymbol().compareToIgnoreCase(symbol) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Convert a set of holding ids to the list of investments in symbol order with duplicates removed
+     *
+     * @param matches the holding ids
+     * @return the investments
+     */
+    private List<Investment> inSymbolOrder(HoldingBitmap matches) {
+        var count = matches.cardinality();
+
+        // sorting the matches only pays off while they are a small part of the portfolio
+        if ((long) count * (32 - Integer.numberOfLeadingZeros(count)) >= getSize()) {
+            return getInvestments()
+                    .stream()
+                    .filter(investment -> matches.contains(investment.getHoldingId()))
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+
+        var found = new ArrayList<Investment>(count);
+        matches.forEach(holdingId -> found.add(holdings.get(holdingId)));
+        return found
+                .stream()
+                .sorted((lhs, rhs) -> lhs.getSymbol().compareToIgnoreCase(rhs.getSymbol()))
+                .distinct()
+                .collect(Collectors.toList());
     }
 
     /**
@@ -297,7 +1575,7 @@ public class ePortfolio {
      * @param str the str
      * @return the pair of [begin, end]
      */
-    Pair<BigDecimal, BigDecimal> findPriceRange(String str) {
+    static Pair<BigDecimal, BigDecimal> findPriceRange(String str) {
         var doubleMax = BigDecimal.valueOf(Double.MAX_VALUE);
         var doubleMin = doubleMax.negate();
         Pair<BigDecimal, BigDecimal> priceRange = new Pair<>(doubleMin, doubleMax);
@@ -331,10 +1609,10 @@ public class ePortfolio {
     }
 
     boolean isEmpty() {
-        return investments.isEmpty();
+        return getSize() == 0;
     }
 
     int getSize() {
-        return investments.size();
+        return investments.size() + pendingListings.size() - pendingRemovals;
     }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicFileTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void replacesContents() throws Exception {
+        var target = new File(directory, "target");
+        Files.write(target.toPath(), new byte[]{1, 2, 3});
+
+        AtomicFile.write(target, channel -> channel.write(ByteBuffer.wrap(new byte[]{4, 5})));
+
+        assertArrayEquals(new byte[]{4, 5}, Files.readAllBytes(target.toPath()));
+        assertArrayEquals(new String[]{"target"}, directory.list());
+    }
+
+    @Test
+    void failedWriteLeavesTargetUntouched() throws Exception {
+        var target = new File(directory, "target");
+        Files.write(target.toPath(), new byte[]{1, 2, 3});
+
+        assertThrows(IOException.class, () -> AtomicFile.write(target, channel -> {
+            channel.write(ByteBuffer.wrap(new byte[]{9}));
+            throw new IOException("disk full");
+        }));
+
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(target.toPath()));
+        assertArrayEquals(new String[]{"target"}, directory.list());
+    }
+
+    @Test
+    void overlappingSavesDoNotMix() throws Exception {
+        var target = new File(directory, "target");
+        var threads = 4;
+        var rounds = 200;
+        var start = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var saves = new ArrayList<Future<?>>();
+            for (var t = 0; t < threads; ++t) {
+                var contents = new byte[64 * 1024 + t];
+                Arrays.fill(contents, (byte) t);
+                saves.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (var i = 0; i < rounds; ++i) {
+                        // written in small pieces, so that saves running at once interleave
+                        AtomicFile.write(target, channel -> {
+                            for (var offset = 0; offset < contents.length; offset += 4096) {
+                                channel.write(ByteBuffer.wrap(contents, offset, Math.min(4096, contents.length - offset)));
+                            }
+                        });
+                        assertWhole(Files.readAllBytes(target.toPath()));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var save : saves) {
+                save.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertWhole(Files.readAllBytes(target.toPath()));
+        assertArrayEquals(new String[]{"target"}, directory.list());
+    }
+
+    /**
+     * Check that a file is what one save wrote, all of it and nothing else
+     */
+    private static void assertWhole(byte[] bytes) {
+        var writer = bytes[0];
+        assertEquals(64 * 1024 + writer, bytes.length);
+        for (var b : bytes) {
+            assertEquals(writer, b);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySnapshotTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void restoresValuesExactly() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.setInvestments(sample());
+        var snapshot = new File(directory, "portfolio.snapshot");
+        portfolio.saveSnapshot(snapshot);
+
+        var loaded = new ePortfolio();
+        loaded.loadSnapshot(snapshot);
+        assertEquals(describe(portfolio.getInvestments()), describe(loaded.getInvestments()));
+        assertEquals(portfolio.calculateGain(), loaded.calculateGain());
+        for (var name : List.of("fund", "Growth", "Über", "alpha fund", "日本", "missing")) {
+            assertEquals(portfolio.query("", name, ""), loaded.query("", name, ""), name);
+        }
+    }
+
+    @Test
+    void restoresEmptyPortfolio() throws Exception {
+        var snapshot = new File(directory, "empty.snapshot");
+        new ePortfolio().saveSnapshot(snapshot);
+
+        var loaded = new ePortfolio();
+        loaded.loadSnapshot(snapshot);
+        assertEquals(0, loaded.getSize());
+    }
+
+    @Test
+    void refusesWhatIsNoSnapshot() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.setInvestments(sample());
+        var snapshot = new File(directory, "portfolio.snapshot");
+        portfolio.saveSnapshot(snapshot);
+        var bytes = Files.readAllBytes(snapshot.toPath());
+
+        var damaged = new File(directory, "damaged.snapshot");
+        // every truncation is refused, not just the ones that cut into the header
+        for (var length = 0; length < bytes.length; ++length) {
+            Files.write(damaged.toPath(), Arrays.copyOf(bytes, length));
+            assertThrows(InvalidInputFileFormatException.class, () -> new ePortfolio().loadSnapshot(damaged), "length " + length);
+        }
+
+        var wrongMagic = bytes.clone();
+        wrongMagic[0] ^= 1;
+        Files.write(damaged.toPath(), wrongMagic);
+        assertThrows(InvalidInputFileFormatException.class, () -> new ePortfolio().loadSnapshot(damaged));
+
+        var newerVersion = bytes.clone();
+        newerVersion[5] = (byte) (BinarySnapshot.VERSION + 1);
+        Files.write(damaged.toPath(), newerVersion);
+        assertThrows(InvalidInputFileFormatException.class, () -> new ePortfolio().loadSnapshot(damaged));
+
+        var csv = new File(directory, "portfolio.csv");
+        portfolio.saveInvestments(csv);
+        assertThrows(InvalidInputFileFormatException.class, () -> new ePortfolio().loadSnapshot(csv));
+    }
+
+    @Test
+    void convertsBetweenCsvAndSnapshot() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.setInvestments(sample());
+        var csv = new File(directory, "portfolio.csv");
+        portfolio.saveInvestments(csv);
+
+        var snapshot = new File(directory, "portfolio.snapshot");
+        ePortfolio.convertCsvToSnapshot(csv, snapshot);
+        var back = new File(directory, "back.csv");
+        ePortfolio.convertSnapshotToCsv(snapshot, back);
+        assertArrayEquals(Files.readAllBytes(csv.toPath()), Files.readAllBytes(back.toPath()));
+    }
+
+    @Test
+    void restoresTaxLots() throws Exception {
+        var portfolio = lotted();
+        var snapshot = new File(directory, "lots.snapshot");
+        portfolio.saveSnapshot(snapshot);
+
+        var loaded = new ePortfolio();
+        loaded.setCostBasisMethod(CostBasisMethod.FIFO);
+        loaded.loadSnapshot(snapshot);
+        assertEquals(describe(portfolio.getInvestments()), describe(loaded.getInvestments()));
+        for (var symbol : List.of("AAA", "BBB", "CCC")) {
+            assertEquals(lots(portfolio, symbol), lots(loaded, symbol), symbol);
+        }
+        assertNull(loaded.getInvestments().get(2).getLots());
+
+        // lots bought and sold after loading get the same ids and book values as without saving
+        for (var restored : List.of(portfolio, loaded)) {
+            restored.buy(InvestmentType.STOCK, "AAA", "alpha", new BigDecimal("3"), 4);
+            restored.buy(InvestmentType.MUTUAL_FUND, "BBB", "beta", new BigDecimal("2"), 1);
+            restored.sell("AAA", 6, new BigDecimal("5"));
+        }
+        assertEquals(lots(portfolio, "AAA"), lots(loaded, "AAA"));
+        assertEquals(lots(portfolio, "BBB"), lots(loaded, "BBB"));
+    }
+
+    @Test
+    void readsVersionOneAsPools() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.setInvestments(sample());
+        var snapshot = new File(directory, "portfolio.snapshot");
+        portfolio.saveSnapshot(snapshot);
+
+        // version 1 is version 2 without the lots section, which is an empty count here
+        var bytes = Files.readAllBytes(snapshot.toPath());
+        var versionOne = Arrays.copyOf(bytes, bytes.length - Integer.BYTES);
+        versionOne[5] = 1;
+        var old = new File(directory, "old.snapshot");
+        Files.write(old.toPath(), versionOne);
+
+        var loaded = new ePortfolio();
+        loaded.loadSnapshot(old);
+        assertEquals(describe(portfolio.getInvestments()), describe(loaded.getInvestments()));
+        for (var investment : loaded.getInvestments()) {
+            assertNull(investment.getLots());
+        }
+    }
+
+    @Test
+    void refusesLotsThatDontAddUp() throws Exception {
+        var snapshot = new File(directory, "lots.snapshot");
+        lotted().saveSnapshot(snapshot);
+        var bytes = Files.readAllBytes(snapshot.toPath());
+
+        // the book value of the last lot is the end of the file
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot.toPath(), bytes);
+        assertThrows(InvalidInputFileFormatException.class, () -> new ePortfolio().loadSnapshot(snapshot));
+    }
+
+    private static ePortfolio lotted() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.buy(InvestmentType.STOCK, "CCC", "gamma", new BigDecimal("7"), 3);
+        portfolio.setCostBasisMethod(CostBasisMethod.FIFO);
+        portfolio.buy(InvestmentType.STOCK, "AAA", "alpha", new BigDecimal("10"), 5);
+        portfolio.buy(InvestmentType.STOCK, "AAA", "alpha", new BigDecimal("11"), 5);
+        portfolio.buy(InvestmentType.STOCK, "AAA", "alpha", new BigDecimal("12"), 5);
+        portfolio.sell("AAA", 7, new BigDecimal("13"));
+        // the commission of buying none goes to the newest lot
+        portfolio.buy(InvestmentType.MUTUAL_FUND, "BBB", "beta", new BigDecimal("1"), 2);
+        portfolio.sell("BBB", 1, new BigDecimal("1"));
+        portfolio.buy(InvestmentType.MUTUAL_FUND, "BBB", "beta", new BigDecimal("1"), 0);
+        return portfolio;
+    }
+
+    private static List<String> lots(ePortfolio portfolio, String symbol) throws Exception {
+        var lots = new ArrayList<String>();
+        for (var lot : portfolio.getLots(symbol)) {
+            lots.add(lot.getId() + "|" + lot.getQuantity() + "|" + lot.getBookValueInCents());
+        }
+        return lots;
+    }
+
+    static List<Investment> sample() {
+        var investments = new ArrayList<Investment>();
+        investments.add(new Stock("AAA", "alpha fund", 10, new BigDecimal("12.5"), new BigDecimal("134.99")));
+        investments.add(new MutualFund("BIG", "Growth fund", 7,
+                new BigDecimal("12.345678901234567890123"), new BigDecimal("86.41975230864197523086")));
+        investments.add(new Stock("NEG", "Über negative", 1, new BigDecimal("-3.00"), new BigDecimal("-2.001")));
+        investments.add(new Stock("NEG", "Über negative", 1, new BigDecimal("-3.00"), new BigDecimal("-2.001")));
+        investments.add(new MutualFund("ZERO", "日本 fund", 0, BigDecimal.ZERO, new BigDecimal("0.00")));
+        investments.add(new Stock("ZZZ", "z", 2147483647, new BigDecimal("0.01"), new BigDecimal("21474836.47")));
+        return investments;
+    }
+
+    static List<String> describe(List<Investment> investments) {
+        var described = new ArrayList<String>();
+        for (var investment : investments) {
+            // equal BigDecimals of another scale would print the same, so the scales are compared too
+            described.add(investment.getInvestmentType() + "|" + investment.getSymbol() + "|" + investment.getName()
+                    + "|" + investment.getQuantity() + "|" + investment.getPrice() + "/" + investment.getPrice().scale()
+                    + "|" + investment.getBookValue() + "/" + investment.getBookValue().scale());
+        }
+        return described;
+    }
+}
@@ -0,0 +1,302 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentPortfolioTest {
+    private static final int WRITERS = 4;
+    private static final int READERS = 3;
+    private static final int TRADES = 1500;
+
+    @TempDir
+    File directory;
+
+    /**
+     * Writers of their own symbols, so that the outcome doesn't depend on how their trades interleave, and a sequential
+     * replay of every writer in turn has to end up the same
+     */
+    @Test
+    void concurrentTradesMatchSequentialReplay() throws Exception {
+        var portfolio = new ConcurrentPortfolio();
+        var trades = new ArrayList<List<Trade>>();
+        for (var writer = 0; writer < WRITERS; ++writer) {
+            trades.add(trades(new Random(writer), "W" + writer + "S", 6));
+        }
+
+        run(portfolio, trades, null);
+
+        var replayed = new ePortfolio();
+        for (var writerTrades : trades) {
+            for (var trade : writerTrades) {
+                trade.tryApply(replayed);
+            }
+        }
+        assertEquals(state(replayed.getInvestments()), state(portfolio.getInvestments()));
+        assertEquals(replayed.calculateGain(), portfolio.calculateGain());
+        assertEquals(replayed.getBookValue(), portfolio.getBookValue());
+    }
+
+    /**
+     * Writers of the same symbols while journaling, the journal being the order the trades were applied in, so
+     * recovering it is a sequential replay of that order
+     */
+    @Test
+    void sharedSymbolsMatchJournalReplay() throws Exception {
+        var portfolio = new ConcurrentPortfolio();
+        portfolio.openJournal(directory);
+        var trades = new ArrayList<List<Trade>>();
+        for (var writer = 0; writer < WRITERS; ++writer) {
+            trades.add(trades(new Random(100 + writer), "S", 5));
+        }
+
+        // pairs bought together in one batch, which no reader may see apart
+        var pairs = new ArrayList<Trade>();
+        for (var i = 0; i < TRADES / 3; ++i) {
+            var price = BigDecimal.valueOf(100 + i, 2);
+            pairs.add(Trade.orders(List.of(
+                    TradeOrder.buy(InvestmentType.STOCK, "PAIRA", "Pair A", price, 1 + i % 3),
+                    TradeOrder.buy(InvestmentType.MUTUAL_FUND, "PAIRB", "Pair B", price, 1 + i % 3))));
+        }
+        trades.add(pairs);
+
+        run(portfolio, trades, version -> {
+            var investments = version.getInvestments();
+            var a = quantityOf(investments, "PAIRA");
+            var b = quantityOf(investments, "PAIRB");
+            assertEquals(a, b, "a batch seen half done");
+        });
+        var expected = state(portfolio.getInvestments());
+        portfolio.closeJournal();
+
+        var recovered = new ePortfolio();
+        recovered.openJournal(directory);
+        assertEquals(expected, state(recovered.getInvestments()));
+        recovered.closeJournal();
+    }
+
+    private interface VersionCheck {
+        void check(PortfolioVersion version);
+    }
+
+    /**
+     * Run every list of trades on a thread of its own against readers, until all trades are done
+     */
+    private static void run(ConcurrentPortfolio portfolio, List<List<Trade>> trades, VersionCheck check) throws Exception {
+        var executor = Executors.newFixedThreadPool(trades.size() + READERS);
+        var start = new CountDownLatch(1);
+        var writing = new AtomicBoolean(true);
+        try {
+            var writers = new ArrayList<Future<?>>();
+            for (var writerTrades : trades) {
+                writers.add(submit(executor, () -> {
+                    start.await();
+                    for (var trade : writerTrades) {
+                        trade.tryApply(portfolio);
+                    }
+                    return null;
+                }));
+            }
+
+            var readers = new ArrayList<Future<Integer>>();
+            for (var reader = 0; reader < READERS; ++reader) {
+                var suggests = reader == 0;
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    var reads = 0;
+                    var previous = portfolio.getVersion();
+                    while (writing.get()) {
+                        var version = portfolio.getVersion();
+                        assertFalse(previous.isAfter(version), "versions went back");
+                        assertConsistent(version);
+                        if (check != null) {
+                            check.check(version);
+                        }
+                        assertNotNull(portfolio.calculateGain());
+                        if (suggests) {
+                            portfolio.suggest("s", 5);
+                        }
+                        previous = version;
+                        ++reads;
+                    }
+                    return reads;
+                }));
+            }
+
+            start.countDown();
+            try {
+                for (var writer : writers) {
+                    writer.get();
+                }
+            } finally {
+                writing.set(false);
+            }
+            for (var reader : readers) {
+                assertTrue(reader.get() > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertConsistent(portfolio.getVersion());
+    }
+
+    private static Future<?> submit(ExecutorService executor, Callable<Void> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Check that the totals of a version are those of its holdings
+     */
+    private static void assertConsistent(PortfolioVersion version) {
+        var investments = version.getInvestments();
+        long marketValue = 0;
+        long bookValue = 0;
+        long fees = 0;
+        String previous = null;
+        for (var investment : investments) {
+            marketValue += investment.getMarketValueInCents();
+            bookValue += investment.getBookValueInCents();
+            fees += investment.getFeeInCents();
+            assertTrue(investment.getQuantity() > 0, investment.getSymbol());
+            assertTrue(previous == null || previous.compareToIgnoreCase(investment.getSymbol()) < 0, "symbol order");
+            previous = investment.getSymbol();
+        }
+
+        assertEquals(version.size(), investments.size());
+        assertEquals(marketValue, version.getMarketValueInCents());
+        assertEquals(bookValue, version.getBookValueInCents());
+        assertEquals(fees, version.getFeesInCents());
+        assertEquals(Money.toBigDecimal(marketValue - bookValue - fees).setScale(2).toString(), version.calculateGain());
+    }
+
+    private static int quantityOf(List<Investment> investments, String symbol) {
+        for (var investment : investments) {
+            if (investment.getSymbol().equals(symbol)) {
+                return investment.getQuantity();
+            }
+        }
+        return 0;
+    }
+
+    private static List<String> state(List<Investment> investments) {
+        var state = new ArrayList<String>();
+        for (var investment : investments) {
+            state.add(investment.toCSVString());
+        }
+        return state;
+    }
+
+    /**
+     * Random buys, sales, price updates and batches of a writer, on symbols of a prefix
+     */
+    private static List<Trade> trades(Random random, String prefix, int symbols) {
+        var trades = new ArrayList<Trade>();
+        for (var i = 0; i < TRADES; ++i) {
+            var symbol = prefix + random.nextInt(symbols);
+            var price = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+            var kind = random.nextInt(10);
+            if (kind < 4) {
+                var type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+                var quantity = 1 + random.nextInt(50);
+                trades.add(new Trade() {
+                    void apply(ePortfolio portfolio) throws Exception {
+                        portfolio.buy(type, symbol, "Name of " + symbol, price, quantity);
+                    }
+
+                    void apply(ConcurrentPortfolio portfolio) throws Exception {
+                        portfolio.buy(type, symbol, "Name of " + symbol, price, quantity);
+                    }
+                });
+            } else if (kind < 7) {
+                var quantity = 1 + random.nextInt(40);
+                trades.add(new Trade() {
+                    void apply(ePortfolio portfolio) throws Exception {
+                        portfolio.sell(symbol, quantity, price);
+                    }
+
+                    void apply(ConcurrentPortfolio portfolio) throws Exception {
+                        portfolio.sell(symbol, quantity, price);
+                    }
+                });
+            } else if (kind < 9) {
+                trades.add(new Trade() {
+                    void apply(ePortfolio portfolio) throws Exception {
+                        portfolio.updatePrice(symbol, price);
+                    }
+
+                    void apply(ConcurrentPortfolio portfolio) throws Exception {
+                        portfolio.updatePrice(symbol, price);
+                    }
+                });
+            } else if (random.nextBoolean()) {
+                var quotes = List.of(new Pair<>(symbol, price), new Pair<>(prefix + random.nextInt(symbols), price.add(BigDecimal.ONE)));
+                trades.add(new Trade() {
+                    void apply(ePortfolio portfolio) {
+                        portfolio.updatePrices(quotes);
+                    }
+
+                    void apply(ConcurrentPortfolio portfolio) {
+                        portfolio.updatePrices(quotes);
+                    }
+                });
+            } else {
+                trades.add(Trade.orders(List.of(
+                        TradeOrder.buy(InvestmentType.STOCK, symbol, "Name of " + symbol, price, 1 + random.nextInt(20)),
+                        TradeOrder.sell(prefix + random.nextInt(symbols), 1 + random.nextInt(20), price))));
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * A trade that can be made on either kind of portfolio. Trades the portfolio refuses are part of the test, as
+     * both portfolios have to refuse them alike.
+     */
+    private abstract static class Trade {
+        abstract void apply(ePortfolio portfolio) throws Exception;
+
+        abstract void apply(ConcurrentPortfolio portfolio) throws Exception;
+
+        void tryApply(ePortfolio portfolio) throws Exception {
+            try {
+                apply(portfolio);
+            } catch (IllegalQuantityException | InvestmentNotFoundException e) {
+                // refused
+            }
+        }
+
+        void tryApply(ConcurrentPortfolio portfolio) throws Exception {
+            try {
+                apply(portfolio);
+            } catch (IllegalQuantityException | InvestmentNotFoundException e) {
+                // refused
+            }
+        }
+
+        static Trade orders(List<TradeOrder> orders) {
+            return new Trade() {
+                void apply(ePortfolio portfolio) {
+                    portfolio.executeOrders(orders);
+                }
+
+                void apply(ConcurrentPortfolio portfolio) {
+                    portfolio.executeOrders(orders);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvInvestmentReaderTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void readsWhatScannerReads() throws Exception {
+        var lines = List.of(
+                "STOCK,AAA,alpha fund,10,12.50,135.99",
+                "MUTUAL FUND,BBB,beta,3,0.5,1.5",
+                "STOCK,,,CCC,,gamma,,7,1,7,extra,fields",
+                "STOCK,DDD,Über 日本,+5,-0.00,+12",
+                "STOCK,EEE,e,-3,.5,5.",
+                "STOCK,FFF,f,0,1e3,1E-2",
+                "STOCK,GGG,g,2147483647,12345678901234567890.123456789,0.0000000000000000001",
+                "MUTUAL FUND,HHH,h,0012,007.10,-.25",
+                "STOCK,III,tab\tname,1,1,1");
+        var valid = String.join("\n", lines) + "\n";
+
+        var files = new ArrayList<String>();
+        files.add("");
+        files.add(valid);
+        files.add(valid.replace("\n", "\r\n"));
+        files.add(valid.substring(0, valid.length() - 1));
+        files.add(valid + "\n  \n\t\n");
+        files.add("\n" + valid);
+        // a blank line is only allowed at the end
+        files.add(lines.get(0) + "\n \n" + lines.get(1) + "\n");
+        for (var bad : List.of("STOCK,X,Y,1", "BOND,X,Y,1,1,1", ",STOCK,X,Y,1,1,1", "STOCK,X,Y,1.5,1,1", "STOCK,X,Y,2147483648,1,1",
+                "STOCK,X,Y,1,1..0,1", "STOCK,X,Y,1,-,1", "STOCK,X,Y,1,1,abc", "STOCK,X,Y,,1,1", "stock,X,Y,1,1,1",
+                "STOCK,X,Y,1,1,1,", "STOCK ,X,Y,1,1,1", "STOCK,X,Y,+,1,1", "STOCK,X,Y,1,1,1e")) {
+            files.add(lines.get(0) + "\n" + bad + "\n" + lines.get(1) + "\n");
+        }
+
+        for (var contents : files) {
+            assertSameAsScanner(contents);
+        }
+    }
+
+    @Test
+    void readsLinesAcrossBuffers() throws Exception {
+        var random = new Random(29);
+        var contents = new StringBuilder();
+        for (var i = 0; i < 60_000; ++i) {
+            contents.append(i % 2 == 0 ? "STOCK" : "MUTUAL FUND").append(",S").append(random.nextInt(100_000))
+                    .append(",name ").append(random.nextInt(50)).append(',').append(1 + random.nextInt(100))
+                    .append(',').append(random.nextInt(1000)).append('.').append(random.nextInt(100))
+                    .append(',').append(random.nextInt(100_000)).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        // a line longer than the buffer
+        contents.append("STOCK,LONG,").append("long name ".repeat(150_000)).append(",1,1,1\n");
+        assertSameAsScanner(contents.toString());
+    }
+
+    private void assertSameAsScanner(String contents) throws Exception {
+        var file = new File(directory, "portfolio.csv");
+        Files.writeString(file.toPath(), contents, StandardCharsets.UTF_8);
+
+        var read = new ePortfolio();
+        var scanned = new ePortfolio();
+        assertEquals(outcome(() -> scanned.loadInvestmentsWithScanner(file, StandardCharsets.UTF_8)), outcome(() -> read.loadInvestments(file, StandardCharsets.UTF_8)), contents);
+        assertEquals(BinarySnapshotTest.describe(scanned.getInvestments()), BinarySnapshotTest.describe(read.getInvestments()), contents);
+        for (var name : List.of("fund", "name 7", "über", "日本", "h")) {
+            assertEquals(scanned.query("", name, ""), read.query("", name, ""), name);
+        }
+    }
+
+    private interface Load {
+        void run() throws Exception;
+    }
+
+    private static String outcome(Load load) {
+        try {
+            load.run();
+            return "loaded";
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+}
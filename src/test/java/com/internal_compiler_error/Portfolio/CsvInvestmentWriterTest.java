@@ -0,0 +1,59 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CsvInvestmentWriterTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void writesWhatPrintWriterWrites() throws Exception {
+        var investments = new ArrayList<Investment>();
+        investments.add(new Stock("AAPL", "Apple Inc.", 10, new BigDecimal("189.25")));
+        investments.add(new MutualFund("BIG", "Big Fund", 100_000, new BigDecimal("900000000.99"), new BigDecimal("92233720368547.75")));
+        investments.add(new Stock("LOSS", "Written Off", 0, new BigDecimal("0.00"), new BigDecimal("-1234.56")));
+        investments.add(new MutualFund("NEG", "Negative Small", 3, new BigDecimal("0.01"), new BigDecimal("-0.05")));
+        investments.add(new Stock("UNI", "Société Générale 株式 Ωμέγα", 7, new BigDecimal("1.5"), new BigDecimal("10.5")));
+        investments.add(new Stock("ZERO", "Zero", 0, new BigDecimal("0"), new BigDecimal("0")));
+
+        assertSameOutput(investments);
+    }
+
+    @Test
+    void writesLongPortfoliosAcrossBuffers() throws Exception {
+        var investments = new ArrayList<Investment>();
+        for (var i = 0; i < 20_000; ++i) {
+            // names of multi-byte characters make lines end at any byte of the buffers
+            investments.add(new Stock(String.format("S%05d", i), "Ünïcödé 名前 " + i, i, BigDecimal.valueOf(i * 37L, 2), BigDecimal.valueOf(-i * 11L, 2)));
+        }
+
+        assertSameOutput(investments);
+    }
+
+    @Test
+    void writesEmptyPortfolio() throws Exception {
+        assertSameOutput(List.of());
+    }
+
+    private void assertSameOutput(List<Investment> investments) throws IOException {
+        var portfolio = new ePortfolio();
+        portfolio.setInvestments(new ArrayList<>(investments));
+
+        var expected = new File(directory, "expected.csv");
+        var actual = new File(directory, "actual.csv");
+        portfolio.saveInvestmentsWithPrintWriter(expected);
+        portfolio.saveInvestments(actual);
+
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+}
@@ -0,0 +1,122 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldingBitmapTest {
+    @Test
+    void matchesSetUnderRandomChanges() {
+        var random = new Random(3);
+        var bitmap = new HoldingBitmap();
+        var model = new TreeSet<Integer>();
+
+        for (var i = 0; i < 200_000; ++i) {
+            // three containers, dense enough for the middle one to become a bitmap
+            var id = random.nextInt(3) << 16 | random.nextInt(random.nextBoolean() ? 8000 : 65536);
+            if (random.nextInt(3) == 0) {
+                assertEquals(model.remove(id), bitmap.remove(id));
+            } else {
+                assertEquals(model.add(id), bitmap.add(id));
+            }
+        }
+        assertSameIds(model, bitmap);
+        for (var id = 0; id < 3 << 16; id += 7) {
+            assertEquals(model.contains(id), bitmap.contains(id));
+        }
+    }
+
+    @Test
+    void churnAroundTheArrayLimit() {
+        var bitmap = new HoldingBitmap();
+        var model = new TreeSet<Integer>();
+        for (var id = 0; id <= 4096; ++id) {
+            bitmap.add(id * 3);
+            model.add(id * 3);
+        }
+
+        for (var round = 0; round < 10_000; ++round) {
+            var id = round % 2000 * 3;
+            assertTrue(bitmap.remove(id));
+            assertFalse(bitmap.contains(id));
+            assertTrue(bitmap.add(id));
+            assertTrue(bitmap.contains(id));
+        }
+        assertSameIds(model, bitmap);
+
+        // shrinking all the way down and growing again
+        for (var id = 0; id < 4000; ++id) {
+            assertEquals(model.remove(id * 3), bitmap.remove(id * 3));
+        }
+        assertSameIds(model, bitmap);
+        for (var id = 0; id < 4000; ++id) {
+            assertEquals(model.add(id * 3 + 1), bitmap.add(id * 3 + 1));
+        }
+        assertSameIds(model, bitmap);
+    }
+
+    @Test
+    void andAndOrMatchSets() {
+        var random = new Random(5);
+        for (var round = 0; round < 50; ++round) {
+            var lhs = new HoldingBitmap();
+            var rhs = new HoldingBitmap();
+            var lhsModel = new TreeSet<Integer>();
+            var rhsModel = new TreeSet<Integer>();
+            fill(random, lhs, lhsModel);
+            fill(random, rhs, rhsModel);
+
+            var both = new TreeSet<>(lhsModel);
+            both.retainAll(rhsModel);
+            assertSameIds(both, HoldingBitmap.and(lhs, rhs));
+            assertSameIds(both, HoldingBitmap.and(rhs, lhs));
+
+            var either = new TreeSet<>(lhsModel);
+            either.addAll(rhsModel);
+            lhs.or(rhs);
+            assertSameIds(either, lhs);
+            lhs.trim();
+            assertSameIds(either, lhs);
+        }
+    }
+
+    @Test
+    void forEachWhileStops() {
+        var bitmap = new HoldingBitmap();
+        for (var id = 0; id < 100; ++id) {
+            bitmap.add(id << 15);
+        }
+        var seen = new ArrayList<Integer>();
+        assertFalse(bitmap.forEachWhile(id -> {
+            seen.add(id);
+            return seen.size() < 10;
+        }));
+        assertEquals(10, seen.size());
+        assertEquals(9 << 15, seen.get(9));
+        assertTrue(bitmap.forEachWhile(id -> true));
+        assertTrue(new HoldingBitmap().isEmpty());
+    }
+
+    private static void fill(Random random, HoldingBitmap bitmap, TreeSet<Integer> model) {
+        var bound = random.nextBoolean() ? 3000 : 65536;
+        var count = random.nextInt(20_000);
+        for (var i = 0; i < count; ++i) {
+            var id = random.nextInt(2) << 16 | random.nextInt(bound);
+            bitmap.add(id);
+            model.add(id);
+        }
+    }
+
+    private static void assertSameIds(TreeSet<Integer> expected, HoldingBitmap bitmap) {
+        List<Integer> ids = new ArrayList<>();
+        bitmap.forEach(ids::add);
+        assertEquals(new ArrayList<>(expected), ids);
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.internal_compiler_error.Portfolio.BinarySnapshotTest.describe;
+import static com.internal_compiler_error.Portfolio.BinarySnapshotTest.sample;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldingColumnsTest {
+    @Test
+    void columnsHoldTheInvestments() {
+        var investments = sample();
+        var columns = HoldingColumns.of(investments);
+
+        assertEquals(investments.size(), columns.size());
+        for (var row = 0; row < columns.size(); ++row) {
+            var investment = investments.get(row);
+            assertEquals(investment.getInvestmentType(), columns.type(row));
+            assertSame(investment.getSymbol(), columns.symbol(row));
+            assertSame(investment.getName(), columns.name(row));
+            assertEquals(investment.getQuantity(), columns.quantity(row));
+            assertEquals(investment.getPriceInCents(), columns.priceInCents(row));
+            assertEquals(investment.getBookValueInCents(), columns.bookValueInCents(row));
+        }
+        assertEquals(describe(investments), describe(columns.asList()));
+    }
+
+    @Test
+    void growsPastItsCapacity() {
+        var investments = new ArrayList<Investment>();
+        var columns = new HoldingColumns(0);
+        for (var i = 0; i < 100; ++i) {
+            var investment = i % 2 == 0
+                    ? new Stock("S" + i, "stock " + i, i + 1, new BigDecimal(i + ".25"), new BigDecimal(i * 3 + ".5"))
+                    : new MutualFund("M" + i, "fund " + i, i + 1, new BigDecimal(i + ".75"), new BigDecimal(i * 2 + ".125"));
+            investments.add(investment);
+            columns.add(investment);
+        }
+        assertEquals(describe(investments), describe(columns.asList()));
+    }
+
+    @Test
+    void viewsAreDetached() throws Exception {
+        var columns = HoldingColumns.of(sample());
+        var before = describe(columns.asList());
+
+        var view = columns.view(0);
+        assertNotSame(view, columns.view(0));
+        view.buy(5, new BigDecimal("99"));
+        view.setPrice(new BigDecimal("1"));
+        assertEquals(before, describe(columns.asList()));
+    }
+
+    @Test
+    void copiesTaxLots() throws Exception {
+        var pool = new Stock("AAA", "alpha", 3, new BigDecimal("7"), new BigDecimal("30.99"));
+        var lotted = new Stock("BBB", "beta", 5, new BigDecimal("10"), new BigDecimal("59.99"));
+        lotted.trackLots();
+        lotted.buy(5, new BigDecimal("11"));
+        var columns = HoldingColumns.of(List.of(pool, lotted));
+
+        // changing the source after the copy leaves the row alone
+        var lotsBefore = lots(lotted);
+        lotted.buy(1, new BigDecimal("12"));
+        var copy = columns.view(1);
+        assertEquals(lotsBefore, lots(copy));
+        assertNull(columns.view(0).getLots());
+
+        // and so does changing the view
+        copy.buy(1, new BigDecimal("13"));
+        assertEquals(lotsBefore, lots(columns.view(1)));
+    }
+
+    @Test
+    void refusesRowsPastTheEnd() {
+        var rows = HoldingColumns.of(sample()).asList();
+        assertThrows(IndexOutOfBoundsException.class, () -> rows.get(rows.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> rows.get(-1));
+    }
+
+    private static List<String> lots(Investment investment) {
+        var lots = new ArrayList<String>();
+        for (var lot : investment.getLots().toList()) {
+            lots.add(lot.getId() + "|" + lot.getQuantity() + "|" + lot.getBookValueInCents());
+        }
+        return lots;
+    }
+}
@@ -0,0 +1,139 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldingTableModelTest {
+    @Test
+    void rowsShowTheirHoldings() throws Exception {
+        var version = portfolio(new Random(53)).currentVersion();
+        var investments = version.getInvestments();
+
+        var all = new HoldingTableModel(version, null);
+        assertEquals(version.size(), all.getRowCount());
+        for (var row = 0; row < all.getRowCount(); ++row) {
+            assertRow(investments.get(row), all, row);
+        }
+
+        var some = new HoldingTableModel(version, version.select("", "fund", ""));
+        assertEquals(version.select("", "fund", "").length, some.getRowCount());
+        for (var row = 0; row < some.getRowCount(); ++row) {
+            assertRow(investments.get(some.getRows()[row]), some, row);
+        }
+    }
+
+    @Test
+    void sortsEveryColumnBothWays() throws Exception {
+        var version = portfolio(new Random(59)).currentVersion();
+        var investments = version.getInvestments();
+        var selected = version.select("", "", "10-70");
+
+        for (var column = 0; column < 7; ++column) {
+            for (var ascending : new boolean[]{true, false}) {
+                for (var rows : new int[][]{null, selected}) {
+                    var expected = new ArrayList<Integer>();
+                    for (var i = 0; i < (rows == null ? version.size() : rows.length); ++i) {
+                        expected.add(rows == null ? i : rows[i]);
+                    }
+                    var byColumn = byColumn(investments, column);
+                    expected.sort((ascending ? byColumn : byColumn.reversed()).thenComparing(Comparator.naturalOrder()));
+
+                    var sorted = HoldingTableModel.sort(version, rows, column, ascending);
+                    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), sorted,
+                            "column " + column + (ascending ? " ascending" : " descending"));
+                }
+            }
+        }
+    }
+
+    @Test
+    void updatesRepaintTheRowsThatChanged() throws Exception {
+        var random = new Random(61);
+        var portfolio = portfolio(random);
+        var changes = new ArrayList<PortfolioChange>();
+        portfolio.addPortfolioListener(changes::add);
+        var version = portfolio.currentVersion();
+
+        var model = new HoldingTableModel(version, version.select("", "fund", ""));
+        var events = new ArrayList<TableModelEvent>();
+        model.addTableModelListener(events::add);
+
+        for (var i = 0; i < 200; ++i) {
+            var quotes = new ArrayList<Pair<String, BigDecimal>>();
+            for (var j = 1 + random.nextInt(3); j > 0; --j) {
+                quotes.add(new Pair<>("S" + random.nextInt(100), BigDecimal.valueOf(1 + random.nextInt(10_000), 2)));
+            }
+            portfolio.updatePrices(quotes);
+            if (changes.isEmpty()) {
+                continue;
+            }
+            var change = changes.remove(0);
+            model.update(change);
+            assertSame(change.getVersion(), model.getVersion());
+
+            // every shown row of a changed symbol is repainted, and shows the new values
+            var investments = change.getVersion().getInvestments();
+            for (var row = 0; row < model.getRowCount(); ++row) {
+                var investment = investments.get(model.getRows()[row]);
+                assertRow(investment, model, row);
+                if (change.contains(investment.getSymbol())) {
+                    var repainted = false;
+                    for (var event : events) {
+                        repainted |= event.getFirstRow() <= row && row <= event.getLastRow();
+                    }
+                    assertTrue(repainted, investment.getSymbol());
+                }
+            }
+            events.clear();
+        }
+    }
+
+    private static void assertRow(Investment investment, HoldingTableModel model, int row) {
+        assertEquals(investment.getInvestmentType() == InvestmentType.STOCK ? "Stock" : "Mutual Fund", model.getValueAt(row, 0));
+        assertEquals(investment.getSymbol(), model.getValueAt(row, 1));
+        assertEquals(investment.getName(), model.getValueAt(row, 2));
+        assertEquals(investment.getQuantity(), model.getValueAt(row, 3));
+        assertEquals(investment.getPrice(), model.getValueAt(row, 4));
+        assertEquals(investment.getBookValue(), model.getValueAt(row, 5));
+        assertEquals(investment.getGain(), model.getValueAt(row, 6));
+    }
+
+    private static Comparator<Integer> byColumn(List<Investment> investments, int column) {
+        switch (column) {
+            case 0:
+                return Comparator.comparing(row -> investments.get(row).getInvestmentType());
+            case 1:
+                return Comparator.naturalOrder();
+            case 2:
+                return Comparator.comparing(row -> investments.get(row).getName());
+            case 3:
+                return Comparator.comparing(row -> investments.get(row).getQuantity());
+            case 4:
+                return Comparator.comparing(row -> investments.get(row).getPrice());
+            case 5:
+                return Comparator.comparing(row -> investments.get(row).getBookValue());
+            default:
+                return Comparator.comparing(row -> investments.get(row).getGain());
+        }
+    }
+
+    private static ePortfolio portfolio(Random random) throws Exception {
+        var portfolio = new ePortfolio();
+        for (var i = 0; i < 100; ++i) {
+            // few distinct values, so that every column has ties
+            var type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+            portfolio.buy(type, "S" + i, random.nextBoolean() ? "fund " + random.nextInt(3) : "stock", BigDecimal.valueOf(10 * (1 + random.nextInt(8))),
+                    1 + random.nextInt(5));
+        }
+        return portfolio;
+    }
+}
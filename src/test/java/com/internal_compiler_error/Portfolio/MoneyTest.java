@@ -0,0 +1,102 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+    private static final BigDecimal CENTS = BigDecimal.valueOf(100);
+
+    @Test
+    void matchesBigDecimalArithmetic() {
+        var random = new Random(23);
+        for (var i = 0; i < 200_000; ++i) {
+            var amount = decimal(random);
+            var cents = amount.setScale(2, RoundingMode.HALF_EVEN).movePointRight(2);
+            assertEquals(cents.longValueExact(), Money.of(amount), amount.toString());
+            assertEquals(BigDecimal.valueOf(cents.longValueExact(), 2), Money.toBigDecimal(Money.of(amount)));
+            assertEquals(Money.toBigDecimal(Money.of(amount)).toString(),
+                    Money.appendTo(new StringBuilder(), Money.of(amount)).toString());
+
+            var quantity = random.nextInt(1_000_000);
+            var product = amount.multiply(BigDecimal.valueOf(quantity)).setScale(2, RoundingMode.HALF_EVEN).movePointRight(2);
+            assertEquals(product.longValueExact(), Money.times(amount, quantity), amount + " * " + quantity);
+
+            var whole = 1 + random.nextInt(1_000_000);
+            var part = random.nextInt(whole + 1);
+            var whole64 = random.nextBoolean() ? whole : Long.MAX_VALUE / (1 + random.nextInt(1000));
+            var share = BigDecimal.valueOf(Money.of(amount)).multiply(BigDecimal.valueOf(part))
+                    .divide(BigDecimal.valueOf(whole64), 0, RoundingMode.HALF_EVEN);
+            assertEquals(share.longValueExact(), Money.proportion(Money.of(amount), part, whole64));
+
+            var lower = amount.setScale(2, RoundingMode.CEILING).movePointRight(2).longValueExact();
+            var upper = amount.setScale(2, RoundingMode.FLOOR).movePointRight(2).longValueExact();
+            assertEquals(lower, Money.bound(amount, RoundingMode.CEILING));
+            assertEquals(upper, Money.bound(amount, RoundingMode.FLOOR));
+        }
+    }
+
+    @Test
+    void overflowThrows() {
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1e17")));
+        assertThrows(ArithmeticException.class, () -> Money.times(new BigDecimal("1e15"), 100_000));
+        assertThrows(ArithmeticException.class, () -> Money.times(new BigDecimal("92233720368547758.075"), 1));
+        assertThrows(ArithmeticException.class, () -> Money.proportion(Long.MAX_VALUE, Long.MAX_VALUE, 2));
+        assertEquals(Long.MAX_VALUE, Money.proportion(Long.MAX_VALUE, 3, 3));
+        assertEquals(Long.MAX_VALUE, Money.bound(new BigDecimal("1e30"), RoundingMode.FLOOR));
+        assertEquals(Long.MIN_VALUE, Money.bound(new BigDecimal("-1e30"), RoundingMode.CEILING));
+    }
+
+    @Test
+    void overflowingPurchaseLeavesTheHoldingAlone() throws Exception {
+        // room for the cost of the shares but not for the commission on top
+        var stock = new Stock("AAA", "alpha", 5, new BigDecimal("10"), new BigDecimal("92233720368547750.00"));
+        assertThrows(ArithmeticException.class, () -> stock.buy(1, new BigDecimal("0.01")));
+        assertEquals(5, stock.getQuantity());
+        assertEquals(1000, stock.getPriceInCents());
+        assertEquals(Long.MAX_VALUE - 807, stock.getBookValueInCents());
+
+        stock.trackLots();
+        assertThrows(ArithmeticException.class, () -> stock.buy(0, new BigDecimal("0.01")));
+        assertEquals(1, stock.getLots().size());
+        assertEquals(Long.MAX_VALUE - 807, stock.getLots().toList().get(0).getBookValueInCents());
+
+        // a mutual fund charges nothing on a purchase, so the same purchase fits
+        var fund = new MutualFund("BBB", "beta", 5, new BigDecimal("10"), new BigDecimal("92233720368547750.00"));
+        fund.buy(1, new BigDecimal("0.01"));
+        assertEquals(6, fund.getQuantity());
+        assertEquals(Long.MAX_VALUE - 806, fund.getBookValueInCents());
+    }
+
+    @Test
+    void roundsHalfToEven() {
+        assertEquals(2, Money.of(new BigDecimal("0.025")));
+        assertEquals(4, Money.of(new BigDecimal("0.035")));
+        assertEquals(-2, Money.of(new BigDecimal("-0.025")));
+        assertEquals(2, Money.divide(5, 2));
+        assertEquals(4, Money.divide(7, 2));
+        assertEquals(-2, Money.divide(-5, 2));
+        assertEquals(-2, Money.divide(-3, 2));
+        assertEquals("-0.05", Money.appendTo(new StringBuilder(), -5).toString());
+        assertEquals("0.00", Money.appendTo(new StringBuilder(), 0).toString());
+        assertEquals(Money.toBigDecimal(Long.MIN_VALUE).toString(), Money.appendTo(new StringBuilder(), Long.MIN_VALUE).toString());
+    }
+
+    private static BigDecimal decimal(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return BigDecimal.valueOf(random.nextInt(100_000) - 50_000, 2);
+            case 1:
+                // more decimal places than cents
+                return BigDecimal.valueOf(random.nextLong() % 1_000_000_000L, 2 + random.nextInt(8));
+            case 2:
+                return BigDecimal.valueOf(random.nextInt(1000), random.nextInt(3));
+            default:
+                return new BigDecimal(random.nextInt(10_000) + "." + random.nextInt(10) + "5");
+        }
+    }
+}
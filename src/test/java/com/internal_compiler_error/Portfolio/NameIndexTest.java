@@ -0,0 +1,147 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameIndexTest {
+    private static final Pattern SEPARATOR = Pattern.compile("[ ]+");
+    private static final String[] WORDS = {"Fund", "fund", "INC", "Global", "Σigma", "lithium", "class", "İ", ""};
+
+    @Test
+    void tokensMatchRegexSplit() {
+        var random = new Random(7);
+        var alphabet = "  aBzİΣß1".toCharArray();
+        for (var i = 0; i < 100_000; ++i) {
+            var name = new StringBuilder();
+            for (var j = random.nextInt(8); j > 0; --j) {
+                name.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            var expected = SEPARATOR.split(name);
+            for (var j = 0; j < expected.length; ++j) {
+                expected[j] = expected[j].toLowerCase(Locale.ROOT);
+            }
+            assertArrayEquals(expected, NameIndex.tokens(name.toString()), "'" + name + "'");
+        }
+    }
+
+    @Test
+    void matchesNamesUnderAddAndRemove() {
+        var random = new Random(11);
+        var index = new NameIndex();
+        var names = new HashMap<Integer, String>();
+
+        for (var i = 0; i < 20_000; ++i) {
+            var holdingId = random.nextInt(500);
+            var old = names.remove(holdingId);
+            if (old != null) {
+                index.remove(holdingId, old);
+            }
+            if (random.nextInt(4) != 0) {
+                var name = name(random);
+                names.put(holdingId, name);
+                index.add(holdingId, name);
+            }
+
+            if (i % 100 == 0) {
+                var query = name(random);
+                assertEquals(matching(names, query), ids(index.matchAll(query)), query);
+                assertEquals(matching(names, query), ids(index.matchAll(NameIndex.tokens(query))), query);
+                assertEquals(tokens(names).size(), index.size());
+
+                var prefix = WORDS[random.nextInt(WORDS.length)].toLowerCase(Locale.ROOT);
+                prefix = prefix.substring(0, random.nextInt(prefix.length() + 1));
+                var completions = new ArrayList<List<Integer>>();
+                index.forEachCompletion(prefix, postings -> completions.add(ids(postings)));
+                var expected = new ArrayList<List<Integer>>();
+                for (var token : tokens(names)) {
+                    if (token.startsWith(prefix)) {
+                        expected.add(matching(names, token));
+                    }
+                }
+                assertEquals(expected, completions, prefix);
+            }
+        }
+
+        for (var entry : names.entrySet()) {
+            index.remove(entry.getKey(), entry.getValue());
+        }
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void portfolioQueriesFollowTrades() throws Exception {
+        var random = new Random(13);
+        var portfolio = new ePortfolio();
+
+        for (var i = 0; i < 10_000; ++i) {
+            var symbol = "S" + random.nextInt(300);
+            var name = name(random);
+            var price = BigDecimal.valueOf(1 + random.nextInt(9000), 2);
+            try {
+                switch (random.nextInt(5)) {
+                    case 0, 1 -> portfolio.buy(InvestmentType.STOCK, symbol, name.isBlank() ? "x" : name, price, 1 + random.nextInt(20));
+                    case 2 -> portfolio.sell(symbol, 1 + random.nextInt(20), price);
+                    case 3 -> portfolio.rename(symbol, name.isBlank() ? "y" : name);
+                    default -> {
+                        var query = name(random).trim();
+                        var expected = new ArrayList<String>();
+                        var wanted = Arrays.asList(NameIndex.tokens(query.toLowerCase(Locale.ROOT)));
+                        for (var investment : portfolio.getInvestments()) {
+                            // an empty query doesn't filter by name
+                            if (query.isEmpty() || Arrays.asList(NameIndex.tokens(investment.getName())).containsAll(wanted)) {
+                                expected.add(investment.toString());
+                            }
+                        }
+                        assertEquals(expected, portfolio.query("", query, ""), query);
+                    }
+                }
+            } catch (InvestmentNotFoundException | IllegalQuantityException e) {
+                // refused trades change nothing
+            }
+        }
+    }
+
+    private static String name(Random random) {
+        var name = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        for (var i = random.nextInt(3); i > 0; --i) {
+            name.append(random.nextBoolean() ? " " : "  ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return name.toString();
+    }
+
+    private static TreeSet<String> tokens(HashMap<Integer, String> names) {
+        var tokens = new TreeSet<String>();
+        for (var name : names.values()) {
+            tokens.addAll(Arrays.asList(NameIndex.tokens(name)));
+        }
+        return tokens;
+    }
+
+    private static List<Integer> matching(HashMap<Integer, String> names, String query) {
+        var wanted = Arrays.asList(NameIndex.tokens(query));
+        var matches = new TreeSet<Integer>();
+        for (var entry : names.entrySet()) {
+            if (Arrays.asList(NameIndex.tokens(entry.getValue())).containsAll(wanted)) {
+                matches.add(entry.getKey());
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private static List<Integer> ids(HoldingBitmap bitmap) {
+        var ids = new ArrayList<Integer>();
+        bitmap.forEach(ids::add);
+        return ids;
+    }
+}
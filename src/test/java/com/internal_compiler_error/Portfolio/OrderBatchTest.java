@@ -0,0 +1,122 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.internal_compiler_error.Portfolio.BinarySnapshotTest.describe;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBatchTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void batchesMatchSingleTrades() throws Exception {
+        var random = new Random(31);
+        for (var method : CostBasisMethod.values()) {
+            var batched = new ePortfolio();
+            var single = new ePortfolio();
+            batched.setCostBasisMethod(method);
+            single.setCostBasisMethod(method);
+
+            for (var round = 0; round < 100; ++round) {
+                var orders = new ArrayList<TradeOrder>();
+                for (var i = random.nextInt(30); i > 0; --i) {
+                    // some orders are refused: sales of more than is held or of nothing, buys of none of something new
+                    var symbol = "S" + random.nextInt(40);
+                    var price = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+                    var type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+                    orders.add(random.nextInt(3) == 0
+                            ? TradeOrder.sell(symbol, 1 + random.nextInt(30), price)
+                            : TradeOrder.buy(type, symbol, "name " + random.nextInt(5), price, random.nextInt(30)));
+                }
+
+                var result = batched.executeOrders(orders);
+                assertEquals(orders.size(), result.size());
+                long totalGain = 0;
+                var rejected = 0;
+                for (var i = 0; i < orders.size(); ++i) {
+                    var order = orders.get(i);
+                    Exception rejection = null;
+                    var gain = BigDecimal.ZERO;
+                    try {
+                        if (order.getAction() == TradeOrder.Action.BUY) {
+                            single.buy(order.getInvestmentType(), order.getSymbol(), order.getName(), order.getPrice(), order.getQuantity());
+                        } else {
+                            gain = single.sell(order.getSymbol(), order.getQuantity(), order.getPrice());
+                        }
+                    } catch (Exception e) {
+                        rejection = e;
+                        ++rejected;
+                    }
+
+                    assertEquals(rejection == null, result.isExecuted(i), method + " order " + i);
+                    if (rejection != null) {
+                        assertEquals(rejection.getClass(), result.getRejection(i).getClass());
+                    }
+                    assertEquals(Money.of(gain), Money.of(result.getGain(i)), method + " order " + i);
+                    totalGain += Money.of(gain);
+                }
+                assertEquals(rejected, result.getRejectedCount());
+                assertEquals(orders.size() - rejected, result.getExecutedCount());
+                assertEquals(totalGain, Money.of(result.getTotalGain()));
+
+                assertEquals(describe(single.getInvestments()), describe(batched.getInvestments()), method.toString());
+                assertEquals(single.calculateGain(), batched.calculateGain());
+                // the indexes are brought up to date at the end of the batch
+                var name = "name " + random.nextInt(5);
+                assertEquals(single.query("", name, ""), batched.query("", name, ""));
+                var range = random.nextInt(1000) + "-" + random.nextInt(1000);
+                assertEquals(single.query("", "", range), batched.query("", "", range));
+                var symbol = "S" + random.nextInt(40);
+                assertEquals(single.has(symbol), batched.has(symbol));
+            }
+        }
+    }
+
+    @Test
+    void readsOrderFiles() throws Exception {
+        var orders = new File(directory, "orders.csv");
+        Files.writeString(orders.toPath(), String.join("\n",
+                "BUY,STOCK,AAA,alpha inc,10,12.5",
+                "",
+                "  BUY , MUTUAL FUND , BBB , beta fund , 4 , 3  ",
+                "SELL,AAA,3,13",
+                "SELL,AAA,30,13",
+                "SELL,CCC,1,1"), StandardCharsets.UTF_8);
+
+        var read = new OrderFileReader(StandardCharsets.UTF_8).read(orders);
+        assertEquals(5, read.size());
+        assertEquals(InvestmentType.MUTUAL_FUND, read.get(1).getInvestmentType());
+        assertEquals("beta fund", read.get(1).getName());
+        assertEquals(TradeOrder.Action.SELL, read.get(2).getAction());
+
+        var portfolio = new ePortfolio();
+        var result = portfolio.executeOrders(orders);
+        assertEquals(3, result.getExecutedCount());
+        assertInstanceOf(IllegalQuantityException.class, result.getRejection(3));
+        assertInstanceOf(InvestmentNotFoundException.class, result.getRejection(4));
+        assertEquals(7, portfolio.getInvestments().get(portfolio.has("AAA")).getQuantity());
+        assertEquals(4, portfolio.getInvestments().get(portfolio.has("BBB")).getQuantity());
+    }
+
+    @Test
+    void refusesMalformedOrderFiles() throws Exception {
+        var orders = new File(directory, "orders.csv");
+        for (var malformed : List.of("BUY,BOND,AAA,a,1,1", "BUY,STOCK,,a,1,1", "BUY,STOCK,AAA,a,1", "BUY,STOCK,AAA,a,one,1",
+                "SELL,AAA,1", "SELL,,1,1", "SELL,AAA,1,x", "HOLD,AAA,1,1", "buy,STOCK,AAA,a,1,1")) {
+            Files.writeString(orders.toPath(), "BUY,STOCK,ZZZ,z,1,1\n" + malformed + "\n", StandardCharsets.UTF_8);
+            var portfolio = new ePortfolio();
+            assertThrows(InvalidInputFileFormatException.class, () -> portfolio.executeOrders(orders), malformed);
+            assertEquals(0, portfolio.getSize(), malformed);
+        }
+    }
+}
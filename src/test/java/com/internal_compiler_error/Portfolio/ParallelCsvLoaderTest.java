@@ -0,0 +1,91 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelCsvLoaderTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void loadsWhatSequentialLoadingLoads() throws Exception {
+        // several megabytes, so the file is cut into more than one chunk
+        var base = rows(200_000, 31);
+
+        var half = base.indexOf('\n', base.length() / 2) + 1;
+        var threeQuarters = base.indexOf('\n', base.length() * 3 / 4) + 1;
+        for (var contents : List.of(
+                base,
+                base.replace("\n", "\r\n"),
+                base + "\n  \n\t\n",
+                base.substring(0, half) + "  \n" + base.substring(half),
+                base.substring(0, threeQuarters) + "STOCK,X,Y,1\n" + base.substring(threeQuarters),
+                base.substring(0, half) + "STOCK,X,Y,1,1,oops\n" + base.substring(half, threeQuarters) + "BOND,X,Y,1,1,1\n")) {
+            assertSameAsSequential(contents, null);
+        }
+    }
+
+    @Test
+    void addsToHoldingsAlreadyLoaded() throws Exception {
+        var already = new File(directory, "already.csv");
+        Files.writeString(already.toPath(), rows(1000, 37), Charset.defaultCharset());
+
+        var contents = rows(100_000, 41);
+        assertSameAsSequential(contents, already);
+        var threeQuarters = contents.indexOf('\n', contents.length() * 3 / 4) + 1;
+        assertSameAsSequential(contents.substring(0, threeQuarters) + ",\n" + contents.substring(threeQuarters), already);
+    }
+
+    private void assertSameAsSequential(String contents, File already) throws Exception {
+        var file = new File(directory, "portfolio.csv");
+        Files.writeString(file.toPath(), contents, Charset.defaultCharset());
+
+        var sequential = new ePortfolio();
+        var parallel = new ePortfolio();
+        if (already != null) {
+            sequential.loadInvestments(already);
+            parallel.loadInvestments(already);
+        }
+
+        assertEquals(outcome(() -> sequential.loadInvestments(file)), outcome(() -> parallel.loadInvestmentsInParallel(file)));
+        assertEquals(BinarySnapshotTest.describe(sequential.getInvestments()), BinarySnapshotTest.describe(parallel.getInvestments()));
+        for (var name : List.of("fund", "global inc", "a b", "c")) {
+            assertEquals(sequential.query("", name, ""), parallel.query("", name, ""), name);
+        }
+        assertEquals(sequential.calculateGain(), parallel.calculateGain());
+    }
+
+    private static String rows(int count, long seed) {
+        var random = new Random(seed);
+        var words = new String[]{"fund", "inc", "global", "a", "b", "c"};
+        var rows = new StringBuilder();
+        for (var i = 0; i < count; ++i) {
+            rows.append(i % 2 == 0 ? "STOCK" : "MUTUAL FUND").append(",S").append(random.nextInt(100_000))
+                    .append(',').append(words[random.nextInt(words.length)]).append(' ').append(words[random.nextInt(words.length)])
+                    .append(',').append(1 + random.nextInt(100)).append(',').append(random.nextInt(1000)).append(".5,")
+                    .append(random.nextInt(10_000)).append('\n');
+        }
+        return rows.toString();
+    }
+
+    private interface Load {
+        void run() throws Exception;
+    }
+
+    private static String outcome(Load load) {
+        try {
+            load.run();
+            return "loaded";
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHoldingTreeTest {
+    private static final Comparator<Investment> ROW_ORDER = Comparator
+            .comparing(Investment::getSymbol, String::compareToIgnoreCase)
+            .thenComparingInt(Investment::getHoldingId);
+
+    // symbols that only differ past the packed key, fold case beyond ASCII or don't pack at all
+    private static final String[] SYMBOLS = {"A", "a", "AB", "ABCDEFG", "ABCDEFGH", "abcdefgi", "ABCDEFGHIJ", "Z",
+            "ÄPFEL", "äpfel", "ſ", "S", "st", "ÿ", "Ÿ", "Σ", "σ", "ς", "İ", "i", "µ", "Μ", "ﬀ", "日本", "a日本", "", "ZZZZZZZZ"};
+
+    @Test
+    void matchesSortedMapUnderPutAndRemove() {
+        var random = new Random(17);
+        var tree = PersistentHoldingTree.of(List.of());
+        var model = new TreeMap<Investment, Investment>(ROW_ORDER);
+
+        for (var i = 0; i < 20_000; ++i) {
+            var investment = investment(random, random.nextInt(300));
+            var previous = tree;
+            var before = nodes(previous);
+            if (random.nextInt(3) == 0) {
+                model.remove(investment);
+                tree = tree.remove(investment);
+            } else {
+                model.put(investment, investment);
+                tree = tree.put(investment);
+            }
+
+            // the tree it was made from is left as it is, after every change
+            assertSameNodes(before, nodes(previous));
+            if (i % 200 == 0) {
+                assertSameRows(model, tree);
+            }
+        }
+        assertSameRows(model, tree);
+    }
+
+    @Test
+    void buildsBalancedTreesOfAnyOrder() {
+        var random = new Random(19);
+        var investments = new ArrayList<Investment>();
+        for (var id = 0; id < 5000; ++id) {
+            investments.add(random.nextInt(10) == 0 ? null : investment(random, id));
+        }
+        var tree = PersistentHoldingTree.of(investments);
+
+        var model = new TreeMap<Investment, Investment>(ROW_ORDER);
+        for (var investment : investments) {
+            if (investment != null) {
+                model.put(investment, investment);
+            }
+        }
+        assertSameRows(model, tree);
+    }
+
+    @Test
+    void findsLowerBounds() {
+        var random = new Random(23);
+        var investments = new ArrayList<Investment>();
+        for (var id = 0; id < 500; ++id) {
+            investments.add(investment(random, id));
+        }
+        var tree = PersistentHoldingTree.of(investments);
+        var rows = new ArrayList<PersistentHoldingTree.Node>();
+        tree.forEach(rows::add);
+
+        var probes = new ArrayList<>(Arrays.asList(SYMBOLS));
+        probes.addAll(List.of("ABCDEF", "abcdefgh", "ABCDEFGHIJK", "0", "zzzzzzzzz", "SS", "ß", "日", "Σa"));
+        for (var probe : probes) {
+            var expected = 0;
+            while (expected < rows.size() && rows.get(expected).symbol.compareToIgnoreCase(probe) < 0) {
+                ++expected;
+            }
+            assertEquals(expected, tree.lowerBound(probe), probe);
+        }
+    }
+
+    @Test
+    void keysOrderLikeSymbols() {
+        for (var lhs : SYMBOLS) {
+            for (var rhs : SYMBOLS) {
+                var lhsKey = PersistentHoldingTree.key(lhs);
+                var rhsKey = PersistentHoldingTree.key(rhs);
+                // keys that differ settle the comparison, so they must agree with it
+                if (lhsKey != -1 && rhsKey != -1 && lhsKey != rhsKey) {
+                    assertEquals(Integer.signum(lhs.compareToIgnoreCase(rhs)), Long.signum(Long.compare(lhsKey, rhsKey)), lhs + " " + rhs);
+                }
+            }
+        }
+        assertEquals(PersistentHoldingTree.key("abc"), PersistentHoldingTree.key("ABC"));
+        assertEquals(-1, PersistentHoldingTree.key("日本"));
+    }
+
+    @Test
+    void rereadsRowsInPlace() {
+        var holdings = new ArrayList<Investment>();
+        for (var id = 0; id < 100; ++id) {
+            var investment = new Stock("S" + id, "n", id + 1, new BigDecimal("1.00"), new BigDecimal("10.00"));
+            investment.setHoldingId(id);
+            holdings.add(investment);
+        }
+        var tree = PersistentHoldingTree.of(holdings);
+        var before = rows(tree);
+
+        for (var investment : holdings) {
+            investment.setPrice(new BigDecimal("2.50"));
+        }
+        var reread = tree.reread(holdings);
+        assertEquals(before, rows(tree));
+        for (var i = 0; i < reread.size(); ++i) {
+            assertEquals(250, reread.get(i).price);
+            assertEquals(tree.get(i).holdingId, reread.get(i).holdingId);
+        }
+    }
+
+    private static Investment investment(Random random, int holdingId) {
+        var symbol = SYMBOLS[random.nextInt(SYMBOLS.length)];
+        if (symbol.isEmpty()) {
+            symbol = "X" + random.nextInt(50);
+        }
+        Investment investment = random.nextBoolean()
+                ? new Stock(symbol, "name " + holdingId, 1 + random.nextInt(9), BigDecimal.valueOf(random.nextInt(10_000), 2), BigDecimal.TEN)
+                : new MutualFund(symbol, "name " + holdingId, 1 + random.nextInt(9), BigDecimal.valueOf(random.nextInt(10_000), 2), BigDecimal.TEN);
+        investment.setHoldingId(holdingId);
+        return investment;
+    }
+
+    private static List<String> rows(PersistentHoldingTree tree) {
+        var rows = new ArrayList<String>();
+        tree.forEach(row -> rows.add(row.holdingId + " " + row.toInvestment()));
+        return rows;
+    }
+
+    /**
+     * The nodes of a tree in order. Nodes are immutable, so a tree that still has the very same nodes in the same order
+     * holds the same rows, which is much cheaper to check than comparing their values.
+     */
+    private static List<PersistentHoldingTree.Node> nodes(PersistentHoldingTree tree) {
+        var nodes = new ArrayList<PersistentHoldingTree.Node>(tree.size());
+        tree.forEach(nodes::add);
+        return nodes;
+    }
+
+    private static void assertSameNodes(List<PersistentHoldingTree.Node> expected, List<PersistentHoldingTree.Node> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (var i = 0; i < expected.size(); ++i) {
+            assertSame(expected.get(i), actual.get(i), "row " + i);
+        }
+    }
+
+    private static void assertSameRows(TreeMap<Investment, Investment> model, PersistentHoldingTree tree) {
+        var expected = new ArrayList<String>();
+        for (var investment : model.values()) {
+            expected.add(investment.getHoldingId() + " " + investment);
+        }
+        assertEquals(expected, rows(tree));
+        assertEquals(model.size(), tree.size());
+
+        var iterated = new ArrayList<String>();
+        for (var rows = tree.iterator(); rows.hasNext(); ) {
+            var row = rows.next();
+            iterated.add(row.holdingId + " " + row.toInvestment());
+        }
+        assertEquals(expected, iterated);
+
+        var position = 0;
+        PersistentHoldingTree.Node root = null;
+        for (var investment : model.values()) {
+            var row = tree.get(position++);
+            assertEquals(investment.getHoldingId(), row.holdingId);
+            if (row.size == tree.size()) {
+                root = row;
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.get(model.size()));
+        if (root != null) {
+            assertBalanced(root);
+        }
+    }
+
+    private static int assertBalanced(PersistentHoldingTree.Node node) {
+        if (node == null) {
+            return 0;
+        }
+        var left = assertBalanced(node.left);
+        var right = assertBalanced(node.right);
+        assertTrue(Math.abs(left - right) <= 1, "unbalanced at " + node.symbol);
+        assertEquals(Math.max(left, right) + 1, node.height);
+        assertEquals((node.left == null ? 0 : node.left.size) + (node.right == null ? 0 : node.right.size) + 1, node.size);
+        return node.height;
+    }
+}
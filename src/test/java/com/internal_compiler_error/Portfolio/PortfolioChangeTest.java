@@ -0,0 +1,200 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioChangeTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void everyOperationMatchesTheVersionDiff() throws Exception {
+        var random = new Random(37);
+        var portfolio = new ePortfolio();
+        var delivered = new ArrayList<PortfolioChange>();
+        portfolio.addPortfolioListener(delivered::add);
+        var version = portfolio.currentVersion();
+
+        for (var i = 0; i < 5000; ++i) {
+            operate(portfolio, random);
+
+            var next = portfolio.currentVersion();
+            var expected = diff(version, next);
+            if (expected.isEmpty()) {
+                assertTrue(delivered.isEmpty(), "operation " + i + " " + delivered);
+            } else {
+                assertEquals(1, delivered.size(), "operation " + i);
+                var change = delivered.get(0);
+                assertSame(next, change.getVersion());
+                assertFalse(change.isReset());
+                assertEquals(expected, kinds(change), "operation " + i);
+                assertEquals(structural(expected), change.isStructural());
+            }
+            delivered.clear();
+            version = next;
+        }
+    }
+
+    @Test
+    void loadsAreResets() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.buy(InvestmentType.STOCK, "AAA", "alpha", new BigDecimal("1"), 1);
+        var csv = new File(directory, "portfolio.csv");
+        portfolio.saveInvestments(csv);
+
+        var delivered = new ArrayList<PortfolioChange>();
+        portfolio.addPortfolioListener(delivered::add);
+        portfolio.loadInvestments(csv);
+        assertEquals(1, delivered.size());
+        assertTrue(delivered.get(0).isReset());
+        assertTrue(delivered.get(0).contains("anything"));
+
+        // a reset swallows whatever comes next
+        var next = new PortfolioChange.Builder();
+        next.changed(portfolio.getInvestments().get(0), PortfolioChange.PRICE);
+        assertTrue(delivered.get(0).then(next.build()).isReset());
+    }
+
+    @Test
+    void coalescesBurstsIntoOneChange() throws Exception {
+        var random = new Random(41);
+        var portfolio = new ePortfolio();
+        var queued = new ArrayDeque<Runnable>();
+        var delivered = new ArrayList<PortfolioChange>();
+        var single = new ArrayList<PortfolioChange>();
+        portfolio.addPortfolioListener(new CoalescingPortfolioListener(delivered::add, queued::add));
+        portfolio.addPortfolioListener(single::add);
+        var version = portfolio.currentVersion();
+
+        for (var burst = 0; burst < 500; ++burst) {
+            for (var i = random.nextInt(20); i >= 0; --i) {
+                operate(portfolio, random);
+            }
+            // the listener asks for one delivery however many changes came in
+            assertEquals(single.isEmpty() ? 0 : 1, queued.size());
+            while (!queued.isEmpty()) {
+                queued.poll().run();
+            }
+
+            var next = portfolio.currentVersion();
+            if (single.isEmpty()) {
+                assertTrue(delivered.isEmpty());
+            } else {
+                var folded = single.get(0);
+                for (var change : single.subList(1, single.size())) {
+                    folded = folded.then(change);
+                }
+                if (folded.isEmpty()) {
+                    // changes that cancel out aren't delivered
+                    assertTrue(delivered.isEmpty());
+                } else {
+                    assertEquals(1, delivered.size());
+                    // refused trades after the last change publish versions of their own that no change leads to
+                    assertSame(single.get(single.size() - 1).getVersion(), delivered.get(0).getVersion());
+                    assertEquals(kinds(folded), kinds(delivered.get(0)));
+                }
+
+                // whatever a holding went through in between, every value that differs is in the change
+                var actual = kinds(folded);
+                diff(version, next).forEach((symbol, kinds) -> {
+                    assertTrue(actual.containsKey(symbol), symbol);
+                    assertTrue(actual.get(symbol).containsAll(kinds), symbol);
+                });
+            }
+            single.clear();
+            delivered.clear();
+            version = next;
+        }
+    }
+
+    /**
+     * Apply a random operation, one change at most. Each symbol is always bought as the same type so that it is held
+     * once, and sales never sell off and buy back a holding within the operation.
+     */
+    private static void operate(ePortfolio portfolio, Random random) throws Exception {
+        var symbol = "S" + random.nextInt(30);
+        var price = BigDecimal.valueOf(1 + random.nextInt(5), 0);
+        var type = symbol.hashCode() % 2 == 0 ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+        try {
+            switch (random.nextInt(6)) {
+                case 0, 1 -> portfolio.buy(type, symbol, "name " + random.nextInt(3), price,
+                        portfolio.has(symbol) >= 0 ? random.nextInt(3) : 1 + random.nextInt(3));
+                case 2 -> portfolio.sell(symbol, 1 + random.nextInt(4), price);
+                case 3 -> portfolio.updatePrice(symbol, price);
+                case 4 -> portfolio.rename(symbol, "name " + random.nextInt(3));
+                default -> {
+                    var quotes = new ArrayList<Pair<String, BigDecimal>>();
+                    for (var i = random.nextInt(10); i > 0; --i) {
+                        quotes.add(new Pair<>("S" + random.nextInt(35), BigDecimal.valueOf(1 + random.nextInt(5), 0)));
+                    }
+                    portfolio.updatePrices(quotes);
+                }
+            }
+        } catch (InvestmentNotFoundException | IllegalQuantityException e) {
+            // refused trades change nothing
+        }
+    }
+
+    /**
+     * How each symbol differs between two versions
+     */
+    private static Map<String, Set<PortfolioChange.Kind>> diff(PortfolioVersion before, PortfolioVersion after) {
+        var old = bySymbol(before);
+        var now = bySymbol(after);
+        var diff = new TreeMap<String, Set<PortfolioChange.Kind>>();
+
+        for (var symbol : old.keySet()) {
+            if (!now.containsKey(symbol)) {
+                diff.put(symbol, EnumSet.of(PortfolioChange.Kind.REMOVED));
+            }
+        }
+        now.forEach((symbol, investment) -> {
+            var was = old.get(symbol);
+            if (was == null) {
+                diff.put(symbol, EnumSet.of(PortfolioChange.Kind.ADDED));
+                return;
+            }
+            var kinds = EnumSet.noneOf(PortfolioChange.Kind.class);
+            if (was.getQuantity() != investment.getQuantity()) {
+                kinds.add(PortfolioChange.Kind.QUANTITY_CHANGED);
+            }
+            if (was.getPriceInCents() != investment.getPriceInCents()) {
+                kinds.add(PortfolioChange.Kind.PRICE_CHANGED);
+            }
+            if (!was.getName().equals(investment.getName())) {
+                kinds.add(PortfolioChange.Kind.NAME_CHANGED);
+            }
+            if (!kinds.isEmpty()) {
+                diff.put(symbol, kinds);
+            }
+        });
+        return diff;
+    }
+
+    private static Map<String, Investment> bySymbol(PortfolioVersion version) {
+        var bySymbol = new HashMap<String, Investment>();
+        for (var investment : version.getInvestments()) {
+            assertNull(bySymbol.put(investment.getSymbol(), investment), investment.getSymbol());
+        }
+        return bySymbol;
+    }
+
+    private static Map<String, Set<PortfolioChange.Kind>> kinds(PortfolioChange change) {
+        var kinds = new TreeMap<String, Set<PortfolioChange.Kind>>();
+        for (var i = 0; i < change.size(); ++i) {
+            assertNull(kinds.put(change.getSymbol(i), change.getKinds(i)), change.getSymbol(i));
+        }
+        return kinds;
+    }
+
+    private static boolean structural(Map<String, Set<PortfolioChange.Kind>> kinds) {
+        return kinds.values().stream().anyMatch(set -> set.contains(PortfolioChange.Kind.ADDED) || set.contains(PortfolioChange.Kind.REMOVED));
+    }
+}
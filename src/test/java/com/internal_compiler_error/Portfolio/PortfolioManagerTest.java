@@ -0,0 +1,186 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+
+import static com.internal_compiler_error.Portfolio.BinarySnapshotTest.describe;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioManagerTest {
+    // more accounts than one task sums up, and more holdings than one task sums up by symbol
+    private static final int ACCOUNTS = 100;
+    private static final int HOLDINGS_PER_ACCOUNT = 800;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void aggregatesMatchSumsOverEveryHolding() throws Exception {
+        var manager = loaded(new File(directory, "accounts"));
+        assertEquals(ACCOUNTS, manager.size());
+
+        var random = new Random(43);
+        for (var i = 0; i < 500; ++i) {
+            var account = manager.get(accountId(random.nextInt(ACCOUNTS)));
+            var symbol = "S" + random.nextInt(1200);
+            try {
+                switch (random.nextInt(3)) {
+                    case 0 -> account.buy(InvestmentType.STOCK, symbol, "bought", BigDecimal.valueOf(1 + random.nextInt(10_000), 2), 1 + random.nextInt(10));
+                    case 1 -> account.sell(symbol, 1 + random.nextInt(10), BigDecimal.valueOf(1 + random.nextInt(10_000), 2));
+                    default -> account.updatePrice(symbol, BigDecimal.valueOf(1 + random.nextInt(10_000), 2));
+                }
+            } catch (InvestmentNotFoundException | IllegalQuantityException e) {
+                // refused trades change nothing
+            }
+        }
+
+        assertEquals(gain(manager), manager.calculateGain());
+        assertEquals(exposures(manager), describeExposures(manager.getExposureBySymbol()));
+    }
+
+    @Test
+    void accountsShareTheirStrings() throws Exception {
+        var manager = loaded(new File(directory, "accounts"));
+        var symbols = new HashMap<String, String>();
+        var names = new HashMap<String, String>();
+        for (var accountId : manager.getAccountIds()) {
+            for (var investment : manager.get(accountId).getInvestments()) {
+                assertSame(symbols.computeIfAbsent(investment.getSymbol(), symbol -> symbol), investment.getSymbol());
+                assertSame(names.computeIfAbsent(investment.getName(), name -> name), investment.getName());
+            }
+        }
+
+        // trades take the pooled copies as well
+        manager.get(accountId(0)).buy(InvestmentType.STOCK, "new", new String("traded name"), BigDecimal.ONE, 1);
+        manager.get(accountId(1)).buy(InvestmentType.STOCK, "NEW", new String("traded name"), BigDecimal.ONE, 1);
+        var first = manager.get(accountId(0)).getInvestments();
+        var second = manager.get(accountId(1)).getInvestments();
+        var one = first.get(manager.get(accountId(0)).getVersion().indexOf("NEW"));
+        var other = second.get(manager.get(accountId(1)).getVersion().indexOf("NEW"));
+        assertSame(one.getSymbol(), other.getSymbol());
+        assertSame(one.getName(), other.getName());
+    }
+
+    @Test
+    void savesAndLoadsEveryAccount() throws Exception {
+        var manager = loaded(new File(directory, "accounts"));
+        var saved = new File(directory, "saved");
+        assertTrue(manager.saveAll(saved).isEmpty());
+
+        var reloaded = new PortfolioManager();
+        assertTrue(reloaded.loadAll(saved).isEmpty());
+        assertEquals(manager.getAccountIds(), reloaded.getAccountIds());
+        for (var accountId : manager.getAccountIds()) {
+            assertEquals(describe(manager.get(accountId).getInvestments()), describe(reloaded.get(accountId).getInvestments()));
+        }
+        assertEquals(manager.calculateGain(), reloaded.calculateGain());
+    }
+
+    @Test
+    void reportsFilesThatFailToLoad() throws Exception {
+        var accounts = new File(directory, "accounts");
+        Files.createDirectories(accounts.toPath());
+        Files.writeString(new File(accounts, "bad.csv").toPath(), "not a portfolio\n");
+        new CsvInvestmentWriter(Charset.defaultCharset()).write(new File(accounts, "good.csv"), BinarySnapshotTest.sample());
+
+        var manager = new PortfolioManager();
+        var failures = manager.loadAll(accounts);
+        assertEquals(Set.of("bad"), failures.keySet());
+        assertEquals(6, manager.get("good").getInvestments().size());
+
+        for (var accountId : List.of("", ".", "..", "a/b")) {
+            assertThrows(IllegalArgumentException.class, () -> manager.open(accountId), accountId);
+        }
+    }
+
+    /**
+     * Write the account files and load them. Every symbol is spelt in upper case by even accounts and in lower case by
+     * odd ones, and some accounts hold a symbol twice.
+     */
+    private static PortfolioManager loaded(File accounts) throws Exception {
+        Files.createDirectories(accounts.toPath());
+        var random = new Random(47);
+        var writer = new CsvInvestmentWriter(Charset.defaultCharset());
+        for (var account = 0; account < ACCOUNTS; ++account) {
+            var investments = new ArrayList<Investment>();
+            for (var i = 0; i < HOLDINGS_PER_ACCOUNT; ++i) {
+                var symbol = "S" + random.nextInt(1000);
+                symbol = account % 2 == 0 ? symbol : symbol.toLowerCase(Locale.ROOT);
+                var name = "name " + random.nextInt(50);
+                var quantity = 1 + random.nextInt(1000);
+                var price = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+                var bookValue = BigDecimal.valueOf(1 + random.nextInt(10_000_000), 2);
+                investments.add(random.nextBoolean()
+                        ? new Stock(symbol, name, quantity, price, bookValue)
+                        : new MutualFund(symbol, name, quantity, price, bookValue));
+            }
+            writer.write(new File(accounts, accountId(account) + ".csv"), investments);
+        }
+
+        var manager = new PortfolioManager();
+        assertTrue(manager.loadAll(accounts).isEmpty());
+        return manager;
+    }
+
+    private static String accountId(int account) {
+        return String.format("a%03d", account);
+    }
+
+    /**
+     * The gain of all accounts, summed holding by holding
+     */
+    private static String gain(PortfolioManager manager) {
+        var gain = BigDecimal.ZERO;
+        for (var accountId : manager.getAccountIds()) {
+            for (var investment : manager.get(accountId).getInvestments()) {
+                gain = gain.add(Money.toBigDecimal(investment.getGainInCents()));
+            }
+        }
+        return gain.setScale(2, RoundingMode.HALF_EVEN).toString();
+    }
+
+    /**
+     * The exposures of all accounts, summed holding by holding with the symbol as the first account spells it
+     */
+    private static List<String> exposures(PortfolioManager manager) {
+        var bySymbol = new TreeMap<String, Object[]>(String.CASE_INSENSITIVE_ORDER);
+        for (var accountId : manager.getAccountIds()) {
+            var counted = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+            for (var investment : manager.get(accountId).getInvestments()) {
+                var sums = bySymbol.computeIfAbsent(investment.getSymbol(),
+                        symbol -> new Object[]{symbol, 0L, BigDecimal.ZERO, BigDecimal.ZERO, 0});
+                sums[1] = (long) sums[1] + investment.getQuantity();
+                sums[2] = ((BigDecimal) sums[2]).add(Money.toBigDecimal(investment.getPriceInCents() * investment.getQuantity()));
+                sums[3] = ((BigDecimal) sums[3]).add(investment.getBookValue());
+                if (counted.add(investment.getSymbol())) {
+                    sums[4] = (int) sums[4] + 1;
+                }
+            }
+        }
+
+        var described = new ArrayList<String>();
+        for (var sums : bySymbol.values()) {
+            described.add(sums[0] + "|" + sums[1] + "|" + ((BigDecimal) sums[2]).stripTrailingZeros().toPlainString()
+                    + "|" + ((BigDecimal) sums[3]).stripTrailingZeros().toPlainString() + "|" + sums[4]);
+        }
+        return described;
+    }
+
+    private static List<String> describeExposures(SortedMap<String, SymbolExposure> exposures) {
+        var described = new ArrayList<String>();
+        exposures.forEach((key, exposure) -> {
+            assertEquals(0, key.compareToIgnoreCase(exposure.getSymbol()));
+            described.add(exposure.getSymbol() + "|" + exposure.getQuantity() + "|"
+                    + exposure.getMarketValue().stripTrailingZeros().toPlainString() + "|"
+                    + exposure.getBookValue().stripTrailingZeros().toPlainString() + "|" + exposure.getAccounts());
+        });
+        return described;
+    }
+}
@@ -0,0 +1,95 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioTasksTest {
+    @Test
+    void tradesRunInOrderAndReportOnTheEventThread() throws Exception {
+        var ran = Collections.synchronizedList(new ArrayList<Integer>());
+        var reported = new ArrayList<Integer>();
+        var offEventThread = new AtomicBoolean(true);
+        var onEventThread = new AtomicBoolean(true);
+        var done = new CountDownLatch(100);
+
+        for (var i = 0; i < 100; ++i) {
+            var trade = i;
+            PortfolioTasks.trade(() -> {
+                offEventThread.compareAndSet(true, !SwingUtilities.isEventDispatchThread());
+                ran.add(trade);
+                return trade;
+            }, result -> {
+                onEventThread.compareAndSet(true, SwingUtilities.isEventDispatchThread());
+                reported.add(result);
+                done.countDown();
+            }, e -> fail(e));
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        var expected = new ArrayList<Integer>();
+        for (var i = 0; i < 100; ++i) {
+            expected.add(i);
+        }
+        assertEquals(expected, ran);
+        SwingUtilities.invokeAndWait(() -> assertEquals(expected, reported));
+        assertTrue(offEventThread.get());
+        assertTrue(onEventThread.get());
+    }
+
+    @Test
+    void failuresGetWhatTheOperationThrew() throws Exception {
+        var failure = new IOException("disk full");
+        var reported = new AtomicReference<Exception>();
+        var done = new CountDownLatch(1);
+
+        PortfolioTasks.trade(() -> {
+            throw failure;
+        }, result -> fail("succeeded"), e -> {
+            reported.set(e);
+            done.countDown();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertSame(failure, reported.get());
+    }
+
+    @Test
+    void cancelledReadsAreSkipped() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var finished = new CountDownLatch(1);
+        var skippedRan = new AtomicBoolean();
+        List<String> outcomes = Collections.synchronizedList(new ArrayList<>());
+
+        // the reads run one after the other, so the second waits behind the first
+        PortfolioTasks.read(() -> {
+            started.countDown();
+            return release.await(30, TimeUnit.SECONDS);
+        }, result -> outcomes.add("first"), e -> outcomes.add("first failed"));
+        assertTrue(started.await(30, TimeUnit.SECONDS));
+        var skipped = PortfolioTasks.read(() -> {
+            skippedRan.set(true);
+            return null;
+        }, result -> outcomes.add("skipped"), e -> outcomes.add("skipped failed"));
+        PortfolioTasks.read(() -> null, result -> finished.countDown(), e -> finished.countDown());
+
+        skipped.cancel(false);
+        release.countDown();
+        assertTrue(finished.await(30, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+        });
+
+        assertFalse(skippedRan.get());
+        assertEquals(List.of("first"), outcomes);
+    }
+}
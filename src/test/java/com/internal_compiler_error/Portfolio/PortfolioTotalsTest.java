@@ -0,0 +1,115 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioTotalsTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void runningTotalsMatchRecomputation() throws Exception {
+        var random = new Random(17);
+        var portfolio = new ePortfolio();
+        var csv = new File(directory, "portfolio.csv");
+
+        for (var i = 0; i < 20_000; ++i) {
+            var symbol = "S" + random.nextInt(200);
+            var price = BigDecimal.valueOf(1 + random.nextInt(1_000_000), 2);
+            // buying none only adds to a holding that is already there
+            var quantity = portfolio.has(symbol) >= 0 ? random.nextInt(50) : 1 + random.nextInt(50);
+            var type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+            try {
+                switch (random.nextInt(12)) {
+                    case 0, 1, 2 -> portfolio.buy(type, symbol, "n " + random.nextInt(5), price, quantity);
+                    case 3, 4 -> portfolio.sell(symbol, 1 + random.nextInt(50), price);
+                    case 5, 6 -> portfolio.updatePrice(symbol, price);
+                    case 7 -> portfolio.rename(symbol, "renamed");
+                    case 8 -> {
+                        var quotes = new ArrayList<Pair<String, BigDecimal>>();
+                        for (var j = random.nextInt(100); j > 0; --j) {
+                            quotes.add(new Pair<>("S" + random.nextInt(220), BigDecimal.valueOf(1 + random.nextInt(1_000_000), 2)));
+                        }
+                        portfolio.updatePrices(quotes);
+                    }
+                    case 9 -> {
+                        var orders = new ArrayList<TradeOrder>();
+                        for (var j = random.nextInt(20); j > 0; --j) {
+                            var other = "S" + random.nextInt(200);
+                            orders.add(random.nextBoolean()
+                                    ? TradeOrder.buy(type, other, "batch", price, 1 + random.nextInt(20))
+                                    : TradeOrder.sell(other, 1 + random.nextInt(20), price));
+                        }
+                        portfolio.executeOrders(orders);
+                    }
+                    case 10 -> portfolio.setCostBasisMethod(CostBasisMethod.values()[random.nextInt(CostBasisMethod.values().length)]);
+                    default -> {
+                        if (random.nextInt(50) == 0) {
+                            portfolio.saveInvestments(csv);
+                            portfolio = new ePortfolio();
+                            portfolio.loadInvestments(csv);
+                        }
+                    }
+                }
+            } catch (InvestmentNotFoundException | IllegalQuantityException e) {
+                // refused trades change nothing
+            }
+
+            assertTotals(portfolio);
+        }
+    }
+
+    @Test
+    void pricesOutOfRangeLeaveTheTotalsAlone() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.buy(InvestmentType.STOCK, "AAA", "alpha", new BigDecimal("10"), 10);
+        portfolio.buy(InvestmentType.MUTUAL_FUND, "BBB", "beta", new BigDecimal("20"), 1);
+        var before = portfolio.calculateGain();
+
+        // a price that isn't a long of cents, a market value that isn't, and a total market value that isn't
+        assertThrows(ArithmeticException.class, () -> portfolio.updatePrice("AAA", new BigDecimal("1e30")));
+        assertThrows(ArithmeticException.class, () -> portfolio.updatePrice("AAA", new BigDecimal("90000000000000000")));
+        portfolio.updatePrice("BBB", new BigDecimal("50000000000000000"));
+        assertThrows(ArithmeticException.class, () -> portfolio.updatePrice("AAA", new BigDecimal("5000000000000000")));
+        assertTotals(portfolio);
+
+        portfolio.updatePrice("BBB", new BigDecimal("20"));
+        assertEquals(before, portfolio.calculateGain());
+        assertEquals(new BigDecimal("10.00"), portfolio.getInvestments().get(portfolio.has("AAA")).getPrice());
+        assertTotals(portfolio);
+    }
+
+    private static void assertTotals(ePortfolio portfolio) {
+        long marketValue = 0;
+        long bookValue = 0;
+        long fees = 0;
+        var gain = BigDecimal.ZERO;
+        for (var investment : portfolio.getInvestments()) {
+            marketValue += investment.getMarketValueInCents();
+            bookValue += investment.getBookValueInCents();
+            fees += investment.getFeeInCents();
+            gain = gain.add(investment.getGain());
+        }
+
+        assertEquals(Money.toBigDecimal(marketValue), portfolio.getMarketValue());
+        assertEquals(Money.toBigDecimal(bookValue), portfolio.getBookValue());
+        assertEquals(Money.toBigDecimal(fees), portfolio.getFees());
+        assertEquals(gain.setScale(2, RoundingMode.HALF_EVEN).toString(), portfolio.calculateGain());
+        assertEquals(0, gain.compareTo(portfolio.recalculateGain()));
+
+        var version = portfolio.currentVersion();
+        assertEquals(portfolio.getMarketValue(), version.getMarketValue());
+        assertEquals(portfolio.getBookValue(), version.getBookValue());
+        assertEquals(portfolio.getFees(), version.getFees());
+        assertEquals(portfolio.calculateGain(), version.calculateGain());
+    }
+}
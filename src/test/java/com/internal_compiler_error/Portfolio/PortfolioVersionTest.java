@@ -0,0 +1,109 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioVersionTest {
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "Fund", "Index", "growth", "ünï"};
+
+    @Test
+    void indexedQueriesMatchScanningTheVersion() throws Exception {
+        var random = new Random(7);
+        var portfolio = new ConcurrentPortfolio();
+        for (var i = 0; i < 3000; ++i) {
+            portfolio.buy(random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND, symbol(random), name(random),
+                    BigDecimal.valueOf(1 + random.nextInt(100_000), 2), 1 + random.nextInt(10));
+        }
+
+        for (var round = 0; round < 5; ++round) {
+            for (var i = 0; i < 200; ++i) {
+                assertSameResults(portfolio, query(random));
+            }
+            // trades change the indexes and the version alike
+            for (var i = 0; i < 300; ++i) {
+                var symbol = symbol(random);
+                try {
+                    if (random.nextBoolean()) {
+                        portfolio.sell(symbol, 1 + random.nextInt(5), BigDecimal.TEN);
+                    } else {
+                        portfolio.updatePrice(symbol, BigDecimal.valueOf(1 + random.nextInt(100_000), 2));
+                    }
+                    if (random.nextInt(10) == 0) {
+                        portfolio.rename(symbol, name(random));
+                    }
+                } catch (InvestmentNotFoundException | IllegalQuantityException e) {
+                    // sold off, or less held than sold
+                }
+            }
+        }
+    }
+
+    @Test
+    void equalRowsAreListedOnce() {
+        var investments = new ArrayList<Investment>();
+        investments.add(new Stock("AAA", "alpha fund", 1, new BigDecimal("5"), new BigDecimal("5")));
+        investments.add(new Stock("DUP", "beta fund", 2, new BigDecimal("10"), new BigDecimal("20")));
+        investments.add(new Stock("DUP", "beta fund", 2, new BigDecimal("10"), new BigDecimal("20")));
+        investments.add(new Stock("DUP", "beta fund", 3, new BigDecimal("10"), new BigDecimal("30")));
+        investments.add(new MutualFund("ZZZ", "gamma fund", 1, new BigDecimal("7"), new BigDecimal("7")));
+        var portfolio = new ePortfolio();
+        portfolio.setInvestments(investments);
+        var version = portfolio.currentVersion();
+
+        assertArrayEquals(new int[]{1, 3}, version.select("", "beta", ""));
+        assertArrayEquals(new int[]{1, 3}, portfolio.select("", "beta", ""));
+        assertArrayEquals(new int[]{1, 3}, portfolio.select("DUP", "", "9-11"));
+        assertArrayEquals(new int[]{0, 1, 3, 4}, portfolio.select("", "fund", ""));
+        assertEquals(portfolio.query("", "fund", ""), version.query("", "fund", ""));
+    }
+
+    private static void assertSameResults(ConcurrentPortfolio portfolio, String[] query) {
+        var version = portfolio.getVersion();
+        var scanned = version.query(query[0], query[1], query[2]);
+        var message = String.join("|", query);
+
+        assertEquals(scanned, portfolio.query(query[0], query[1], query[2]), message);
+
+        var selected = portfolio.select(query[0], query[1], query[2]);
+        assertSame(version, selected.getFirst());
+        assertArrayEquals(version.select(query[0], query[1], query[2]), selected.getSecond(), message);
+        var shown = new ArrayList<String>();
+        for (var position : selected.getSecond()) {
+            shown.add(version.getInvestments().get(position).toString());
+        }
+        assertEquals(scanned, shown, message);
+    }
+
+    private static String symbol(Random random) {
+        var symbol = new StringBuilder();
+        for (var i = 0; i < 2 + random.nextInt(3); ++i) {
+            symbol.append((char) ('A' + random.nextInt(6)));
+        }
+        return symbol.toString();
+    }
+
+    private static String name(Random random) {
+        var words = new ArrayList<String>();
+        for (var i = 0; i < 1 + random.nextInt(3); ++i) {
+            words.add(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return String.join(" ", words);
+    }
+
+    private static String[] query(Random random) {
+        var symbols = List.of("", "", "a", "AB", "abc", "CAB", "DEF", symbol(random));
+        var names = List.of("", "", "alpha", "fund index", "GROWTH beta", "ünï", "missing", WORDS[random.nextInt(WORDS.length)]);
+        var low = random.nextInt(1000);
+        var prices = List.of("", "", low + "-" + (low + random.nextInt(200)), "-" + low, low + "-", "5.5-5.5");
+        return new String[]{
+                symbols.get(random.nextInt(symbols.size())),
+                names.get(random.nextInt(names.size())),
+                prices.get(random.nextInt(prices.size()))};
+    }
+}
@@ -0,0 +1,165 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixTrieTest {
+    @Test
+    void matchesSortedSet() {
+        var random = new Random(9);
+        var trie = new PrefixTrie();
+        var model = new TreeSet<String>();
+
+        for (var i = 0; i < 50_000; ++i) {
+            var string = string(random, 6);
+            if (random.nextInt(3) == 0) {
+                assertEquals(model.remove(string), trie.remove(string), string);
+            } else {
+                assertEquals(model.add(string), trie.add(string), string);
+            }
+
+            if (i % 500 == 0) {
+                for (var j = 0; j < 20; ++j) {
+                    var prefix = string(random, 3);
+                    assertEquals(withPrefix(model, prefix), walk(trie, prefix, Integer.MAX_VALUE), prefix);
+                    assertEquals(model.contains(prefix), trie.contains(prefix));
+                }
+            }
+        }
+        assertEquals(new ArrayList<>(model), walk(trie, "", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void stopsWhenAsked() {
+        var trie = new PrefixTrie();
+        for (var string : List.of("fund", "funds", "fun", "fur", "a", "")) {
+            trie.add(string);
+        }
+        assertEquals(List.of("", "a", "fun"), walk(trie, "", 3));
+        assertEquals(List.of("fun", "fund"), walk(trie, "fu", 2));
+        assertEquals(List.of(), walk(trie, "x", 5));
+
+        // removing a string leaves the ones it is a prefix of and the ones that are a prefix of it
+        assertTrue(trie.remove("fund"));
+        assertFalse(trie.remove("fund"));
+        assertEquals(List.of("fun", "funds", "fur"), walk(trie, "fu", 10));
+        assertTrue(trie.remove("funds"));
+        assertEquals(List.of("fun"), walk(trie, "fun", 10));
+
+        trie.clear();
+        assertEquals(List.of(), walk(trie, "", 10));
+        assertFalse(trie.contains(""));
+    }
+
+    @Test
+    void suggestionsMatchBruteForce() throws Exception {
+        var random = new Random(13);
+        var words = new String[]{"alpha", "Alps", "al", "beta", "Bet", "fund", "FUNDS", "über", "growth"};
+        var portfolio = new ePortfolio();
+        for (var i = 0; i < 400; ++i) {
+            var name = new StringBuilder(words[random.nextInt(words.length)]);
+            for (var j = random.nextInt(3); j > 0; --j) {
+                name.append(' ').append(words[random.nextInt(words.length)]);
+            }
+            portfolio.buy(InvestmentType.STOCK, "AL" + random.nextInt(60), name.toString(), BigDecimal.ONE, 1);
+            try {
+                if (random.nextInt(4) == 0) {
+                    portfolio.sell("AL" + random.nextInt(60), 1, BigDecimal.ONE);
+                }
+            } catch (InvestmentNotFoundException e) {
+                // never bought
+            }
+        }
+
+        for (var text : List.of("a", "AL1", "al", "alp", "be", "fund", "FUND", "alpha f", "beta al", "ü", "x", "fund zz", " al ")) {
+            for (var limit : new int[]{1, 5, 1000}) {
+                assertEquals(suggest(portfolio, text, limit), portfolio.suggest(text, limit), text + " " + limit);
+            }
+        }
+        assertEquals(List.of(), portfolio.suggest("  ", 10));
+        assertEquals(List.of(), portfolio.suggest("al", 0));
+    }
+
+    /**
+     * What {@link ePortfolio#suggest} is documented to find, by looking at every holding
+     */
+    private static List<String> suggest(ePortfolio portfolio, String prefix, int limit) {
+        var text = prefix.trim();
+        var investments = portfolio.getInvestments();
+        var suggestions = new ArrayList<Investment>();
+
+        if (text.indexOf(' ') == -1) {
+            for (var investment : investments) {
+                if (investment.getSymbol().regionMatches(true, 0, text, 0, text.length())) {
+                    suggestions.add(investment);
+                }
+            }
+        }
+
+        var tokens = NameIndex.tokens(text.toLowerCase(Locale.ROOT));
+        var whole = Arrays.asList(tokens).subList(0, tokens.length - 1);
+        var last = tokens[tokens.length - 1];
+        var completions = new TreeSet<String>();
+        for (var investment : investments) {
+            for (var token : NameIndex.tokens(investment.getName())) {
+                if (token.startsWith(last)) {
+                    completions.add(token);
+                }
+            }
+        }
+        var byId = new ArrayList<>(investments);
+        byId.sort(Comparator.comparingInt(Investment::getHoldingId));
+        for (var completion : completions) {
+            for (var investment : byId) {
+                var nameTokens = Arrays.asList(NameIndex.tokens(investment.getName()));
+                if (nameTokens.contains(completion) && nameTokens.containsAll(whole) && !suggestions.contains(investment)) {
+                    suggestions.add(investment);
+                }
+            }
+        }
+
+        var suggested = new ArrayList<String>();
+        for (var investment : suggestions.subList(0, Math.min(limit, suggestions.size()))) {
+            suggested.add(investment.toString());
+        }
+        return suggested;
+    }
+
+    private static List<String> withPrefix(TreeSet<String> model, String prefix) {
+        var found = new ArrayList<String>();
+        for (var string : model.tailSet(prefix)) {
+            if (!string.startsWith(prefix)) {
+                break;
+            }
+            found.add(string);
+        }
+        return found;
+    }
+
+    private static List<String> walk(PrefixTrie trie, String prefix, int limit) {
+        var found = new ArrayList<String>();
+        trie.forEachWithPrefix(prefix, string -> {
+            found.add(string);
+            return found.size() < limit;
+        });
+        return found;
+    }
+
+    private static String string(Random random, int maxLength) {
+        var string = new StringBuilder();
+        for (var i = random.nextInt(maxLength + 1); i > 0; --i) {
+            string.append("abcé".charAt(random.nextInt(4)));
+        }
+        return string.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceIndexTest {
+    @Test
+    void matchesPricesUnderChanges() {
+        var random = new Random(3);
+        var index = new PriceIndex();
+        var prices = new HashMap<Integer, Long>();
+
+        for (var i = 0; i < 50_000; ++i) {
+            var holdingId = random.nextInt(2000);
+            var old = prices.remove(holdingId);
+            if (old != null) {
+                index.remove(holdingId, old);
+            }
+            if (random.nextInt(3) != 0) {
+                var price = price(random);
+                prices.put(holdingId, price);
+                index.add(holdingId, price);
+            }
+
+            if (i % 500 == 0) {
+                assertSameRanges(random, prices, index);
+            }
+        }
+    }
+
+    @Test
+    void addsInBulk() {
+        var random = new Random(5);
+        for (var round = 0; round < 20; ++round) {
+            var count = random.nextInt(5000);
+            var holdingIds = new int[count];
+            var amounts = new long[count];
+            var prices = new HashMap<Integer, Long>();
+            for (var i = 0; i < count; ++i) {
+                holdingIds[i] = i;
+                // now and then a price that doesn't pack, which takes the slow path
+                amounts[i] = round % 4 == 0 && random.nextInt(1000) == 0 ? -1 - random.nextInt(100) : random.nextInt(1_000_000);
+                prices.put(i, amounts[i]);
+            }
+
+            var index = new PriceIndex();
+            index.addAll(holdingIds, amounts, count);
+            assertSameRanges(random, prices, index);
+        }
+    }
+
+    @Test
+    void roundsBoundsInwards() {
+        var index = new PriceIndex();
+        index.add(0, 100);
+        index.add(1, 101);
+        index.add(2, -5);
+        index.add(3, Long.MAX_VALUE);
+
+        assertEquals(List.of(1), ids(index.between(new BigDecimal("1.001"), new BigDecimal("1.019"))));
+        assertEquals(List.of(), ids(index.between(new BigDecimal("1.001"), new BigDecimal("1.009"))));
+        assertEquals(List.of(0, 1, 2), ids(index.between(new BigDecimal("-0.05"), new BigDecimal("1.01"))));
+        assertEquals(List.of(3), ids(index.between(new BigDecimal("2"), new BigDecimal("1e30"))));
+        assertEquals(List.of(0, 1, 2, 3), ids(index.between(new BigDecimal("-1e30"), new BigDecimal("1e30"))));
+        index.clear();
+        assertEquals(List.of(), ids(index.between(new BigDecimal("-1e30"), new BigDecimal("1e30"))));
+    }
+
+    private static void assertSameRanges(Random random, Map<Integer, Long> prices, PriceIndex index) {
+        for (var i = 0; i < 20; ++i) {
+            var from = BigDecimal.valueOf(random.nextInt(1_100_000) - 50_000, 2 + random.nextInt(2));
+            var to = from.add(BigDecimal.valueOf(random.nextInt(200_000), 2 + random.nextInt(2)));
+            var expected = new ArrayList<Integer>();
+            for (var entry : prices.entrySet()) {
+                var price = Money.toBigDecimal(entry.getValue());
+                if (price.compareTo(from) >= 0 && price.compareTo(to) <= 0) {
+                    expected.add(entry.getKey());
+                }
+            }
+            expected.sort(null);
+            assertEquals(expected, ids(index.between(from, to)), from + "-" + to);
+        }
+    }
+
+    private static long price(Random random) {
+        // few distinct prices, so that buckets hold many holdings
+        return random.nextBoolean() ? random.nextInt(100) * 100L : random.nextInt(1_000_000);
+    }
+
+    private static List<Integer> ids(HoldingBitmap bitmap) {
+        var ids = new ArrayList<Integer>();
+        bitmap.forEach(ids::add);
+        return ids;
+    }
+}
@@ -0,0 +1,116 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static com.internal_compiler_error.Portfolio.BinarySnapshotTest.describe;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceUpdatesTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void batchesMatchSingleUpdates() throws Exception {
+        var random = new Random(29);
+        var batched = portfolio(random.nextLong());
+        var single = portfolio(batched);
+
+        for (var round = 0; round < 200; ++round) {
+            // small batches move holdings within the price index, large ones rebuild it
+            var quotes = new ArrayList<Pair<String, BigDecimal>>();
+            for (var i = random.nextInt(round % 2 == 0 ? 10 : 400); i > 0; --i) {
+                var symbol = "S" + random.nextInt(330);
+                quotes.add(new Pair<>(random.nextBoolean() ? symbol : symbol.toLowerCase(),
+                        BigDecimal.valueOf(1 + random.nextInt(100_000), 2)));
+            }
+
+            var unknown = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+            for (var quote : quotes) {
+                try {
+                    single.updatePrice(quote.getFirst(), quote.getSecond());
+                } catch (InvestmentNotFoundException e) {
+                    unknown.add(quote.getFirst());
+                }
+            }
+            assertEquals(new ArrayList<>(unknown), batched.updatePrices(quotes));
+
+            assertEquals(describe(single.getInvestments()), describe(batched.getInvestments()));
+            assertEquals(single.calculateGain(), batched.calculateGain());
+            var range = random.nextInt(1000) + "-" + random.nextInt(1000);
+            assertEquals(single.query("", "", range), batched.query("", "", range), range);
+            assertEquals(describe(single.currentVersion().getInvestments()), describe(batched.currentVersion().getInvestments()));
+        }
+    }
+
+    @Test
+    void priceOutOfRangeChangesNothing() throws Exception {
+        var portfolio = portfolio(5);
+        var before = describe(portfolio.getInvestments());
+        var gain = portfolio.calculateGain();
+
+        var quotes = List.of(new Pair<>("S1", new BigDecimal("2")), new Pair<>("S2", new BigDecimal("1e30")));
+        assertThrows(ArithmeticException.class, () -> portfolio.updatePrices(quotes));
+        assertEquals(before, describe(portfolio.getInvestments()));
+        assertEquals(gain, portfolio.calculateGain());
+    }
+
+    @Test
+    void readsQuoteFiles() throws Exception {
+        var quotes = new File(directory, "quotes.csv");
+        Files.writeString(quotes.toPath(), "S1,1.5\n\n  s2 ,  2.25  \n   \nNONE,3\nS1,4\n", StandardCharsets.UTF_8);
+
+        var read = new QuoteFileReader(StandardCharsets.UTF_8).read(quotes);
+        assertEquals(4, read.size());
+        assertEquals("s2", read.get(1).getFirst());
+        assertEquals(new BigDecimal("2.25"), read.get(1).getSecond());
+
+        var portfolio = portfolio(7);
+        assertEquals(List.of("NONE"), portfolio.updatePrices(quotes));
+        assertEquals(new BigDecimal("4.00"), portfolio.getInvestments().get(portfolio.has("S1")).getPrice());
+        assertEquals(new BigDecimal("2.25"), portfolio.getInvestments().get(portfolio.has("S2")).getPrice());
+    }
+
+    @Test
+    void refusesMalformedQuoteFiles() throws Exception {
+        var portfolio = portfolio(11);
+        var before = describe(portfolio.getInvestments());
+
+        var quotes = new File(directory, "quotes.csv");
+        for (var malformed : List.of("S1", "S1,2,3", ",2", "S1,two", "S1,", "S1,1e40")) {
+            Files.writeString(quotes.toPath(), "S2,1\n" + malformed + "\n", StandardCharsets.UTF_8);
+            assertThrows(InvalidInputFileFormatException.class, () -> portfolio.updatePrices(quotes), malformed);
+            assertEquals(before, describe(portfolio.getInvestments()), malformed);
+        }
+    }
+
+    private static ePortfolio portfolio(long seed) throws Exception {
+        var random = new Random(seed);
+        var portfolio = new ePortfolio();
+        for (var i = 0; i < 300; ++i) {
+            var type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+            portfolio.buy(type, "S" + i, "name " + random.nextInt(20), BigDecimal.valueOf(1 + random.nextInt(100_000), 2),
+                    1 + random.nextInt(1000));
+        }
+        return portfolio;
+    }
+
+    private static ePortfolio portfolio(ePortfolio original) throws Exception {
+        var copy = new ePortfolio();
+        for (var investment : original.getInvestments()) {
+            copy.buy(investment.getInvestmentType(), investment.getSymbol(), investment.getName(), investment.getPrice(),
+                    investment.getQuantity());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,143 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringDictionaryTest {
+    @Test
+    void matchesMapUnderAcquireAndRelease() {
+        var random = new Random(7);
+        var dictionary = new StringDictionary();
+        var counts = new HashMap<String, Integer>();
+        var ids = new HashMap<String, Integer>();
+
+        for (var i = 0; i < 300_000; ++i) {
+            // few strings at first, then many more, so that the table grows and ids are reused
+            var string = "t" + random.nextInt(i < 150_000 ? 300 : 3000);
+            if (random.nextInt(i < 150_000 ? 3 : 2) > 0) {
+                var id = dictionary.acquire(string);
+                assertEquals(id, (int) ids.computeIfAbsent(string, key -> id));
+                counts.merge(string, 1, Integer::sum);
+            } else {
+                var id = dictionary.find(string);
+                var count = counts.get(string);
+                assertEquals(count != null, id >= 0, string);
+                if (count != null) {
+                    dictionary.release(id);
+                    if (count == 1) {
+                        counts.remove(string);
+                        ids.remove(string);
+                    } else {
+                        counts.put(string, count - 1);
+                    }
+                }
+            }
+
+            if (i % 1000 == 0) {
+                assertSameStrings(ids, dictionary);
+            }
+        }
+        assertSameStrings(ids, dictionary);
+    }
+
+    @Test
+    void removalKeepsProbeRunsReachable() {
+        // every string of "Aa" and "BB" pieces has the same hash code, so they all share one probe run
+        var colliding = new ArrayList<String>();
+        for (var bits = 0; bits < 64; ++bits) {
+            var string = new StringBuilder();
+            for (var i = 0; i < 6; ++i) {
+                string.append((bits >> i & 1) == 0 ? "Aa" : "BB");
+            }
+            colliding.add(string.toString());
+        }
+        // and some that land in between
+        for (var i = 0; i < 64; ++i) {
+            colliding.add("x" + i);
+        }
+
+        var random = new Random(11);
+        for (var round = 0; round < 20; ++round) {
+            var dictionary = new StringDictionary();
+            var ids = new HashMap<String, Integer>();
+            for (var string : colliding) {
+                ids.put(string, dictionary.acquire(string));
+            }
+
+            var order = new ArrayList<>(colliding);
+            Collections.shuffle(order, random);
+            for (var string : order) {
+                dictionary.release(ids.remove(string));
+                assertEquals(-1, dictionary.find(string));
+                assertSameStrings(ids, dictionary);
+            }
+            assertEquals(0, dictionary.size());
+        }
+    }
+
+    @Test
+    void reusesReleasedIds() {
+        var dictionary = new StringDictionary();
+        var a = dictionary.acquire("a");
+        var b = dictionary.acquire("b");
+        assertEquals(a, dictionary.acquire("a"));
+
+        dictionary.release(a);
+        assertEquals(a, dictionary.find("a"));
+        dictionary.release(a);
+        assertEquals(-1, dictionary.find("a"));
+        assertNull(dictionary.get(a));
+
+        assertEquals(a, dictionary.acquire("c"));
+        assertEquals(b, dictionary.find("b"));
+        assertEquals(2, dictionary.idLimit());
+        assertEquals(2, dictionary.size());
+
+        dictionary.clear();
+        assertEquals(0, dictionary.size());
+        assertEquals(0, dictionary.idLimit());
+        assertEquals(-1, dictionary.find("b"));
+    }
+
+    @Test
+    void findsLowerCaseRanges() {
+        var dictionary = new StringDictionary();
+        var words = List.of("fund", "global", "σigma", "i̇stanbul", "straße", "a1");
+        for (var word : words) {
+            dictionary.acquire(word);
+        }
+
+        var text = "Global FUND Σigma İstanbul STRASSE Straße A1 funds";
+        for (var from = 0; from < text.length(); ++from) {
+            for (var to = from; to <= text.length(); ++to) {
+                var expected = dictionary.find(text.substring(from, to).toLowerCase(Locale.ROOT));
+                assertEquals(expected, dictionary.findLowerCase(text, from, to), text.substring(from, to));
+            }
+        }
+        assertEquals(dictionary.find("fund"), dictionary.findLowerCase(text, 7, 11));
+        assertEquals(-1, dictionary.findLowerCase(text, 45, 50));
+
+        var id = dictionary.acquireLowerCase(text, 0, 6);
+        assertEquals(dictionary.find("global"), id);
+        var added = dictionary.acquireLowerCase(text, 27, 34);
+        assertEquals("strasse", dictionary.get(added));
+    }
+
+    private static void assertSameStrings(HashMap<String, Integer> ids, StringDictionary dictionary) {
+        assertEquals(ids.size(), dictionary.size());
+        for (var entry : ids.entrySet()) {
+            assertEquals((int) entry.getValue(), dictionary.find(entry.getKey()), entry.getKey());
+            assertEquals(entry.getKey(), dictionary.get(entry.getValue()));
+            assertTrue(entry.getValue() < dictionary.idLimit());
+        }
+        assertEquals(-1, dictionary.find("absent"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+    private static final String[] SYMBOLS = {"abc", "ABC", "Abc", "ß", "SS", "ſ", "s", "S", "Σ", "σ", "ς", "İ", "i", "I",
+            "Aa", "BB", "AaAa", "BBBB", "AaBB", "日本", "x", "X1", "x1", ""};
+
+    @Test
+    void matchesMapByKey() {
+        var random = new Random(3);
+        var symbols = new ArrayList<String>();
+        var table = new SymbolTable(symbols::get, 4);
+        var model = new HashMap<String, Integer>();
+
+        for (var i = 0; i < 100_000; ++i) {
+            var symbol = SYMBOLS[random.nextInt(SYMBOLS.length)] + (random.nextBoolean() ? "" : random.nextInt(40));
+            var key = ePortfolio.symbolKey(symbol);
+
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    var holdingId = symbols.size();
+                    symbols.add(symbol);
+                    assertEquals(!model.containsKey(key), table.putIfAbsent(holdingId), symbol);
+                    model.putIfAbsent(key, holdingId);
+                }
+                case 1 -> {
+                    var holdingId = symbols.size();
+                    symbols.add(symbol);
+                    table.put(holdingId);
+                    model.put(key, holdingId);
+                }
+                case 2 -> {
+                    var holdingId = model.getOrDefault(key, -1);
+                    if (holdingId >= 0 && random.nextBoolean()) {
+                        assertTrue(table.remove(holdingId));
+                        model.remove(key);
+                    } else if (!symbols.isEmpty()) {
+                        // only the holding a symbol maps to is removed
+                        var other = random.nextInt(symbols.size());
+                        var mapped = model.get(ePortfolio.symbolKey(symbols.get(other)));
+                        assertEquals(mapped != null && mapped == other, table.remove(other));
+                        if (mapped != null && mapped == other) {
+                            model.remove(ePortfolio.symbolKey(symbols.get(other)));
+                        }
+                    }
+                }
+                default -> assertEquals((int) model.getOrDefault(key, -1), table.get(symbol), symbol);
+            }
+
+            if (i % 1000 == 0) {
+                assertEquals(model.size(), table.size());
+                for (var entry : model.entrySet()) {
+                    assertEquals((int) entry.getValue(), table.get(symbols.get(entry.getValue())));
+                    assertEquals((int) entry.getValue(), table.get(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void portfolioFindsSymbolsInAnyCase() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.buy(InvestmentType.STOCK, "abc", "lower", BigDecimal.TEN, 10);
+        portfolio.buy(InvestmentType.STOCK, "ABC", "upper", BigDecimal.TEN, 5);
+        portfolio.buy(InvestmentType.MUTUAL_FUND, "σ", "sigma", BigDecimal.TEN, 5);
+        assertEquals(2, portfolio.getSize());
+        assertEquals(15, portfolio.getInvestments().get(0).getQuantity());
+
+        portfolio.sell("Abc", 15, BigDecimal.ONE);
+        portfolio.updatePrice("Σ", new BigDecimal("11"));
+        portfolio.sell("ς", 1, BigDecimal.ONE);
+        assertThrows(InvestmentNotFoundException.class, () -> portfolio.sell("ABC", 1, BigDecimal.ONE));
+        assertEquals(4, portfolio.getInvestments().get(0).getQuantity());
+    }
+}
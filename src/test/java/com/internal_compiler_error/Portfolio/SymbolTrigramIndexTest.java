@@ -0,0 +1,85 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTrigramIndexTest {
+    @Test
+    void findsEveryMatchAsCandidate() {
+        var random = new Random(7);
+        var index = new SymbolTrigramIndex();
+        var symbols = new HashMap<Integer, String>();
+
+        for (var i = 0; i < 30_000; ++i) {
+            var holdingId = random.nextInt(1000);
+            var old = symbols.remove(holdingId);
+            if (old != null) {
+                index.remove(holdingId, old);
+            }
+            if (random.nextInt(3) != 0) {
+                var symbol = string(random, 2 + random.nextInt(6));
+                symbols.put(holdingId, symbol);
+                index.add(holdingId, symbol);
+            }
+
+            if (i % 200 == 0) {
+                var search = string(random, 3 + random.nextInt(3));
+                var candidates = ids(index.candidates(search));
+                for (var entry : symbols.entrySet()) {
+                    if (entry.getValue().contains(search)) {
+                        assertTrue(candidates.contains(entry.getKey()), entry.getValue() + " " + search);
+                    }
+                }
+                // a candidate has every trigram of the search
+                for (var candidate : candidates) {
+                    var symbol = symbols.get(candidate);
+                    assertNotNull(symbol);
+                    for (var j = 0; j + 3 <= search.length(); ++j) {
+                        assertTrue(symbol.contains(search.substring(j, j + 3)), symbol + " " + search);
+                    }
+                }
+            }
+        }
+
+        for (var entry : symbols.entrySet()) {
+            index.remove(entry.getKey(), entry.getValue());
+        }
+        assertTrue(index.candidates("ABC").isEmpty());
+    }
+
+    @Test
+    void symbolQueriesUseTheIndexCaseInsensitively() throws Exception {
+        var portfolio = new ePortfolio();
+        for (var symbol : List.of("ABCD", "XABCY", "ABXC", "AB", "abcde", "ZZZ")) {
+            portfolio.buy(InvestmentType.STOCK, symbol, "n", BigDecimal.ONE, 1);
+        }
+        var found = new ArrayList<String>();
+        for (var investment : portfolio.query("abc", "", "")) {
+            found.add(investment.substring(investment.indexOf("symbol = ") + 9, investment.indexOf(',')));
+        }
+        assertEquals(List.of("ABCD", "ABCDE", "XABCY"), found);
+        // shorter searches than a trigram go without the index
+        assertEquals(5, portfolio.query("Ab", "", "").size());
+    }
+
+    private static String string(Random random, int length) {
+        var string = new StringBuilder();
+        for (var i = 0; i < length; ++i) {
+            string.append("ABCD".charAt(random.nextInt(4)));
+        }
+        return string.toString();
+    }
+
+    private static List<Integer> ids(HoldingBitmap bitmap) {
+        var ids = new ArrayList<Integer>();
+        bitmap.forEach(ids::add);
+        return ids;
+    }
+}
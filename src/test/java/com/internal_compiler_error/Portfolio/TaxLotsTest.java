@@ -0,0 +1,224 @@
+package com.internal_compiler_error.Portfolio;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaxLotsTest {
+    /**
+     * A lot of the model, what the portfolio should hold
+     */
+    private static final class Lot {
+        final int id;
+        int quantity;
+        long bookValue;
+
+        Lot(int id, int quantity, long bookValue) {
+            this.id = id;
+            this.quantity = quantity;
+            this.bookValue = bookValue;
+        }
+    }
+
+    /**
+     * The lots of a holding of the model
+     */
+    private static final class Holding {
+        final boolean stock;
+        final ArrayDeque<Lot> lots = new ArrayDeque<>();
+        int nextId = 1;
+        // a cost no lot carries yet
+        long unassigned;
+
+        Holding(boolean stock) {
+            this.stock = stock;
+        }
+
+        int quantity() {
+            return lots.stream().mapToInt(lot -> lot.quantity).sum();
+        }
+    }
+
+    @Test
+    void fifoMatchesModel() throws Exception {
+        tradeAgainstModel(CostBasisMethod.FIFO);
+    }
+
+    @Test
+    void lifoMatchesModel() throws Exception {
+        tradeAgainstModel(CostBasisMethod.LIFO);
+    }
+
+    @Test
+    void specificLotMatchesModel() throws Exception {
+        tradeAgainstModel(CostBasisMethod.SPECIFIC_LOT);
+    }
+
+    @Test
+    void failedLotSaleLeavesPoolAlone() throws Exception {
+        var stock = new Stock("X", "x", 10, new BigDecimal("5.00"), new BigDecimal("59.99"));
+
+        assertThrows(LotNotFoundException.class, () -> stock.sellLot(1, 1, BigDecimal.ONE));
+        assertThrows(IllegalQuantityException.class, () -> stock.sellLot(0, 11, BigDecimal.ONE));
+        assertThrows(IllegalQuantityException.class, () -> stock.sellLot(0, 0, BigDecimal.ONE));
+        assertThrows(IllegalQuantityException.class, () -> stock.sellLot(0, -1, BigDecimal.ONE));
+        assertNull(stock.getLots());
+        assertEquals(10, stock.getQuantity());
+
+        stock.sellLot(0, 4, BigDecimal.ONE);
+        assertEquals(6, stock.getQuantity());
+        var lots = stock.getLots().toList();
+        assertEquals(1, lots.size());
+        assertEquals(0, lots.get(0).getId());
+        assertEquals(6, lots.get(0).getQuantity());
+        assertEquals(stock.getBookValueInCents(), lots.get(0).getBookValueInCents());
+    }
+
+    @Test
+    void averageCostKeepsNoLots() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.buy(InvestmentType.STOCK, "X", "x", new BigDecimal("10"), 5);
+        portfolio.buy(InvestmentType.STOCK, "X", "x", new BigDecimal("20"), 5);
+
+        var lots = portfolio.getLots("X");
+        assertEquals(1, lots.size());
+        assertEquals(10, lots.get(0).getQuantity());
+        assertThrows(IllegalStateException.class, () -> portfolio.sellLot("X", 0, 1, BigDecimal.ONE));
+
+        portfolio.setCostBasisMethod(CostBasisMethod.SPECIFIC_LOT);
+        assertThrows(LotNotFoundException.class, () -> portfolio.sellLot("X", 1, 1, BigDecimal.ONE));
+        portfolio.buy(InvestmentType.STOCK, "X", "x", new BigDecimal("30"), 5);
+        lots = portfolio.getLots("X");
+        assertEquals(2, lots.size());
+        assertEquals(0, lots.get(0).getId());
+        assertEquals(10, lots.get(0).getQuantity());
+        assertEquals(1, lots.get(1).getId());
+    }
+
+    private static void tradeAgainstModel(CostBasisMethod method) throws Exception {
+        var stockFee = new Stock("X", "x", 1, BigDecimal.ONE).getFeeInCents();
+        var fundFee = new MutualFund("X", "x", 1, BigDecimal.ONE).getFeeInCents();
+        var commission = new Stock("X", "x", 1, BigDecimal.ONE).getBookValueInCents() - 100;
+        var random = new Random(5);
+        var portfolio = new ePortfolio();
+        portfolio.setCostBasisMethod(method);
+        var model = new HashMap<String, Holding>();
+
+        for (var i = 0; i < 30_000; ++i) {
+            var symbol = "S" + random.nextInt(20);
+            var price = BigDecimal.valueOf(1 + random.nextInt(90_000), 2);
+            var holding = model.get(symbol);
+            var action = random.nextInt(10);
+
+            if (action < 5) {
+                // buying none only adds the commission, to the newest lot
+                var quantity = random.nextInt(8) == 0 && holding != null ? 0 : 1 + random.nextInt(100);
+                var stock = holding == null ? random.nextBoolean() : holding.stock;
+                portfolio.buy(stock ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND, symbol, "n", price, quantity);
+                var cost = Money.times(price, quantity) + (stock ? commission : 0);
+                if (holding == null) {
+                    holding = new Holding(stock);
+                    holding.lots.add(new Lot(0, quantity, cost));
+                    model.put(symbol, holding);
+                } else if (quantity > 0) {
+                    holding.lots.add(new Lot(holding.nextId++, quantity, cost + holding.unassigned));
+                    holding.unassigned = 0;
+                } else if (holding.lots.isEmpty()) {
+                    holding.unassigned += cost;
+                } else {
+                    holding.lots.peekLast().bookValue += cost;
+                }
+            } else if (holding != null) {
+                var held = holding.quantity();
+                long bookValue = 0;
+                BigDecimal gain;
+                int sold;
+
+                if (method == CostBasisMethod.SPECIFIC_LOT && action < 8) {
+                    var lot = new ArrayList<>(holding.lots).get(random.nextInt(holding.lots.size()));
+                    sold = 1 + random.nextInt(lot.quantity + 3);
+                    if (sold > lot.quantity) {
+                        final var tooMany = sold;
+                        assertThrows(IllegalQuantityException.class, () -> portfolio.sellLot(symbol, lot.id, tooMany, price));
+                        continue;
+                    }
+                    gain = portfolio.sellLot(symbol, lot.id, sold, price);
+                    if (sold == lot.quantity) {
+                        bookValue = lot.bookValue;
+                        holding.lots.remove(lot);
+                    } else {
+                        bookValue = Money.proportion(lot.bookValue, sold, lot.quantity);
+                        lot.bookValue -= bookValue;
+                        lot.quantity -= sold;
+                    }
+                    if (!holding.lots.isEmpty()) {
+                        assertThrows(LotNotFoundException.class, () -> portfolio.sellLot(symbol, 12_345_678, 1, price));
+                    }
+                } else {
+                    sold = 1 + random.nextInt(held + 2);
+                    if (sold > held) {
+                        final var tooMany = sold;
+                        assertThrows(IllegalQuantityException.class, () -> portfolio.sell(symbol, tooMany, price));
+                        continue;
+                    }
+                    gain = portfolio.sell(symbol, sold, price);
+                    var newestFirst = method == CostBasisMethod.LIFO;
+                    for (var left = sold; left > 0; ) {
+                        var lot = newestFirst ? holding.lots.peekLast() : holding.lots.peekFirst();
+                        if (left < lot.quantity) {
+                            var taken = Money.proportion(lot.bookValue, left, lot.quantity);
+                            bookValue += taken;
+                            lot.bookValue -= taken;
+                            lot.quantity -= left;
+                            left = 0;
+                        } else {
+                            left -= lot.quantity;
+                            bookValue += lot.bookValue;
+                            if (newestFirst) {
+                                holding.lots.pollLast();
+                            } else {
+                                holding.lots.pollFirst();
+                            }
+                        }
+                    }
+                }
+
+                var fee = holding.stock ? stockFee : fundFee;
+                assertEquals(0, Money.toBigDecimal(Money.times(price, sold) - bookValue - fee).compareTo(gain), "gain of trade " + i);
+                if (holding.lots.isEmpty()) {
+                    model.remove(symbol);
+                    continue;
+                }
+            } else {
+                continue;
+            }
+            assertSameLots(holding, portfolio, symbol);
+        }
+
+        for (var entry : model.entrySet()) {
+            assertSameLots(entry.getValue(), portfolio, entry.getKey());
+        }
+    }
+
+    private static void assertSameLots(Holding holding, ePortfolio portfolio, String symbol) throws Exception {
+        var lots = portfolio.getLots(symbol);
+        assertEquals(holding.lots.size(), lots.size(), symbol);
+        var i = 0;
+        long bookValue = holding.unassigned;
+        for (var expected : holding.lots) {
+            var lot = lots.get(i++);
+            assertEquals(expected.id, lot.getId(), symbol);
+            assertEquals(expected.quantity, lot.getQuantity(), symbol);
+            assertEquals(expected.bookValue, lot.getBookValueInCents(), symbol);
+            bookValue += expected.bookValue;
+        }
+        var investment = portfolio.getInvestments().stream().filter(x -> x.getSymbol().equals(symbol)).findFirst().orElseThrow();
+        assertEquals(bookValue, investment.getBookValueInCents(), symbol);
+    }
+}
@@ -0,0 +1,184 @@
+package com.internal_compiler_error.Portfolio;
+
+import com.internal_compiler_error.utils.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeJournalTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void recoversEveryKindOfTrade() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.openJournal(directory);
+        portfolio.buy(InvestmentType.STOCK, "AAPL", "Apple Inc", new BigDecimal("150.25"), 10);
+        portfolio.buy(InvestmentType.MUTUAL_FUND, "VFIAX", "Vanguard 500", new BigDecimal("400"), 5);
+        portfolio.buy(InvestmentType.STOCK, "aapl", "Apple Inc", new BigDecimal("160"), 4);
+        portfolio.sell("AAPL", 3, new BigDecimal("170.10"));
+        portfolio.updatePrice("VFIAX", new BigDecimal("410.5"));
+        portfolio.updatePrices(List.of(new Pair<>("AAPL", new BigDecimal("175")), new Pair<>("NONE", BigDecimal.ONE)));
+        portfolio.rename("VFIAX", "Vanguard 500 Index");
+        portfolio.setCostBasisMethod(CostBasisMethod.FIFO);
+        portfolio.buy(InvestmentType.STOCK, "MSFT", "Microsoft", new BigDecimal("300"), 10);
+        portfolio.buy(InvestmentType.STOCK, "MSFT", "Microsoft", new BigDecimal("310"), 10);
+        portfolio.sell("MSFT", 12, new BigDecimal("320"));
+        portfolio.setCostBasisMethod(CostBasisMethod.SPECIFIC_LOT);
+        portfolio.buy(InvestmentType.STOCK, "MSFT", "Microsoft", new BigDecimal("305"), 6);
+        portfolio.sellLot("MSFT", 2, 5, new BigDecimal("330"));
+        portfolio.executeOrders(List.of(
+                TradeOrder.buy(InvestmentType.STOCK, "TSLA", "Tesla", new BigDecimal("200"), 3),
+                TradeOrder.sell("VFIAX", 100, new BigDecimal("420")),
+                TradeOrder.sell("VFIAX", 2, new BigDecimal("420"))));
+        var expected = state(portfolio);
+        portfolio.closeJournal();
+
+        assertEquals(expected, recover());
+    }
+
+    @Test
+    void refusedTradesStayRefused() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.openJournal(directory);
+        portfolio.buy(InvestmentType.STOCK, "AAPL", "Apple Inc", new BigDecimal("150"), 10);
+
+        assertThrows(IllegalQuantityException.class, () -> portfolio.sell("AAPL", 11, BigDecimal.TEN));
+        assertThrows(InvestmentNotFoundException.class, () -> portfolio.updatePrice("NONE", BigDecimal.TEN));
+        assertThrows(IllegalQuantityException.class, () -> portfolio.buy(InvestmentType.STOCK, "AAPL", "Apple Inc", BigDecimal.TEN, -1));
+        // a price that doesn't fit the market value refuses the whole batch, the first quote included
+        assertThrows(ArithmeticException.class, () -> portfolio.updatePrices(List.of(
+                new Pair<>("AAPL", new BigDecimal("151")), new Pair<>("AAPL", new BigDecimal("1e17")))));
+        portfolio.sell("AAPL", 4, new BigDecimal("155"));
+        var expected = state(portfolio);
+        portfolio.closeJournal();
+
+        assertEquals(expected, recover());
+    }
+
+    @Test
+    void tornLastRecordIsDropped() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.openJournal(directory);
+        portfolio.buy(InvestmentType.STOCK, "AAPL", "Apple Inc", new BigDecimal("150"), 10);
+        var expected = state(portfolio);
+        portfolio.sell("AAPL", 4, new BigDecimal("155"));
+        portfolio.closeJournal();
+
+        // a crash in the middle of writing the sale
+        try (var file = new RandomAccessFile(journal(1), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        assertEquals(expected, recover());
+    }
+
+    @Test
+    void damagedLastRecordIsDropped() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.openJournal(directory);
+        portfolio.buy(InvestmentType.STOCK, "AAPL", "Apple Inc", new BigDecimal("150"), 10);
+        var expected = state(portfolio);
+        portfolio.sell("AAPL", 4, new BigDecimal("155"));
+        portfolio.closeJournal();
+
+        flipByte(journal(1), -6);
+
+        assertEquals(expected, recover());
+    }
+
+    @Test
+    void damageBeforeTheNewestJournalIsAnError() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.openJournal(directory);
+        portfolio.buy(InvestmentType.STOCK, "AAPL", "Apple Inc", new BigDecimal("150"), 10);
+        portfolio.closeJournal();
+        // reopening starts a second journal
+        portfolio.openJournal(directory);
+        portfolio.sell("AAPL", 4, new BigDecimal("155"));
+        portfolio.closeJournal();
+
+        flipByte(journal(1), 10);
+
+        assertThrows(IOException.class, this::recover);
+    }
+
+    @Test
+    void compactionKeepsEverything() throws Exception {
+        var portfolio = new ePortfolio();
+        portfolio.openJournal(directory, 2048);
+        portfolio.setCostBasisMethod(CostBasisMethod.LIFO);
+        for (var i = 0; i < 2000; ++i) {
+            var symbol = "S" + i % 37;
+            portfolio.buy(InvestmentType.STOCK, symbol, "Name " + symbol, BigDecimal.valueOf(1000 + i, 2), 1 + i % 5);
+            if (i % 3 == 0) {
+                portfolio.sell(symbol, 1, BigDecimal.valueOf(1100 + i, 2));
+            }
+        }
+        var expected = state(portfolio);
+        portfolio.closeJournal();
+
+        var files = directory.list();
+        assertTrue(List.of(files).stream().anyMatch(name -> name.startsWith("snapshot-")), String.join(",", files));
+        assertTrue(List.of(files).stream().filter(name -> name.startsWith("journal-")).count() <= 2, String.join(",", files));
+        assertEquals(expected, recover());
+    }
+
+    @Test
+    void closedJournalRefusesTrades() throws Exception {
+        var journal = new TradeJournal(directory, 1, List::of, TradeJournal.DEFAULT_COMPACTION_THRESHOLD);
+        var commit = journal.recordRename("AAPL", "Apple");
+        journal.close();
+
+        // everything appended before closing is committed
+        commit.await();
+        assertThrows(IllegalStateException.class, () -> journal.recordRename("AAPL", "Apple Inc"));
+    }
+
+    private List<String> recover() throws Exception {
+        var recovered = new ePortfolio();
+        recovered.openJournal(directory);
+        try {
+            return state(recovered);
+        } finally {
+            recovered.closeJournal();
+        }
+    }
+
+    private File journal(long generation) {
+        return new File(directory, "journal-" + generation + ".log");
+    }
+
+    private static void flipByte(File file, long offset) throws IOException {
+        try (var access = new RandomAccessFile(file, "rw")) {
+            var position = offset < 0 ? access.length() + offset : offset;
+            access.seek(position);
+            var b = access.read();
+            access.seek(position);
+            access.write(b ^ 0x55);
+        }
+    }
+
+    /**
+     * Everything about the holdings that recovery has to restore
+     */
+    static List<String> state(ePortfolio portfolio) throws InvestmentNotFoundException {
+        var state = new ArrayList<String>();
+        for (var investment : portfolio.getInvestments()) {
+            var line = new StringBuilder(investment.toCSVString());
+            for (var lot : portfolio.getLots(investment.getSymbol())) {
+                line.append(';').append(lot.getId()).append(':').append(lot.getQuantity()).append(':').append(lot.getBookValue());
+            }
+            state.add(line.toString());
+        }
+        return state;
+    }
+}